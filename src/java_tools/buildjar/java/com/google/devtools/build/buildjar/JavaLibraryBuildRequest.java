@@ -70,6 +70,7 @@ public final class JavaLibraryBuildRequest {
   private JacocoInstrumentationProcessor jacocoInstrumentationProcessor;
 
   private final boolean compressJar;
+  private final int jarThreads;
 
   private final OptionsParser.ReduceClasspathMode reduceClasspathMode;
   private final int fullClasspathLength;
@@ -151,6 +152,7 @@ public final class JavaLibraryBuildRequest {
     this.plugins = pluginsBuilder.build();
 
     this.compressJar = optionsParser.compressJar();
+    this.jarThreads = optionsParser.jarThreads();
     this.reduceClasspathMode = optionsParser.reduceClasspathMode();
     this.fullClasspathLength = optionsParser.fullClasspathLength();
     this.reducedClasspathLength = optionsParser.reducedClasspathLength();
@@ -278,6 +280,10 @@ public final class JavaLibraryBuildRequest {
     return compressJar;
   }
 
+  public int jarThreads() {
+    return jarThreads;
+  }
+
   public OptionsParser.ReduceClasspathMode reduceClasspathMode() {
     return reduceClasspathMode;
   }
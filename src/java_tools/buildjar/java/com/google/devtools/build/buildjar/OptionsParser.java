@@ -95,6 +95,7 @@ public final class OptionsParser {
   private final Map<String, List<String>> postProcessors = new LinkedHashMap<>();
 
   private boolean compressJar;
+  private int jarThreads = 1;
 
   private String targetLabel;
   private String injectingRuleKind;
@@ -211,6 +212,12 @@ public final class OptionsParser {
         case "--compress_jar":
           compressJar = true;
           break;
+        case "--jar_threads":
+          jarThreads = Integer.parseInt(getArgument(argQueue, arg));
+          if (jarThreads < 1) {
+            throw new InvalidCommandLineException("--jar_threads must be positive: " + jarThreads);
+          }
+          break;
         case "--target_label":
           targetLabel = getArgument(argQueue, arg);
           break;
@@ -462,6 +469,10 @@ public final class OptionsParser {
     return compressJar;
   }
 
+  public int jarThreads() {
+    return jarThreads;
+  }
+
   public String getTargetLabel() {
     return targetLabel;
   }
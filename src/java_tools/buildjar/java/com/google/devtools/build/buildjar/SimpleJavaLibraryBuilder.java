@@ -148,6 +148,7 @@ public class SimpleJavaLibraryBuilder implements Closeable {
     try {
       jar.setNormalize(true);
       jar.setCompression(build.compressJar());
+      jar.setThreads(build.jarThreads());
       jar.addDirectory(build.getClassDir());
       jar.setJarOwner(build.getTargetLabel(), build.getInjectingRuleKind());
       processor = build.getJacocoInstrumentationProcessor();
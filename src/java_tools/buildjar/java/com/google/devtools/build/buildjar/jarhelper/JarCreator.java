@@ -47,6 +47,7 @@ public class JarCreator extends JarHelper {
   private String mainClass;
   private String targetLabel;
   private String injectingRuleKind;
+  private int threads = 1;
 
   /** @deprecated use {@link JarCreator(Path)} instead */
   @Deprecated
@@ -199,6 +200,20 @@ public class JarCreator extends JarHelper {
     this.manifestFile = manifestFile;
   }
 
+  /**
+   * Sets the number of threads used to compress entries. With more than one thread, entries are
+   * buffered in memory, compressed in parallel and then written in sorted order, so the Jar is the
+   * same for any number of threads above one.
+   *
+   * @param threads the number of threads, 1 (the default) compresses entries as they are written.
+   */
+  public void setThreads(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be positive: " + threads);
+    }
+    this.threads = threads;
+  }
+
   private byte[] manifestContent() throws IOException {
     if (manifestFile != null) {
       try (FileInputStream in = new FileInputStream(manifestFile)) {
@@ -238,7 +253,8 @@ public class JarCreator extends JarHelper {
   public void execute() throws IOException {
     try (OutputStream os = Files.newOutputStream(jarPath);
         BufferedOutputStream bos = new BufferedOutputStream(os);
-        JarOutputStream out = new JarOutputStream(bos)) {
+        JarOutputStream out =
+            threads > 1 ? new ParallelJarOutputStream(bos, threads) : new JarOutputStream(bos)) {
 
       // Create the manifest entry in the Jar file
       writeManifestEntry(out, manifestContent());
@@ -251,15 +267,22 @@ public class JarCreator extends JarHelper {
 
   /** A simple way to create Jar file using the JarCreator class. */
   public static void main(String[] args) {
-    if (args.length < 1) {
-      System.err.println("usage: CreateJar output [root directories]");
+    int threads = 1;
+    int first = 0;
+    if (args.length > 0 && args[0].startsWith("--threads=")) {
+      threads = Integer.parseInt(args[0].substring("--threads=".length()));
+      first = 1;
+    }
+    if (args.length < first + 1) {
+      System.err.println("usage: CreateJar [--threads=N] output [root directories]");
       System.exit(1);
     }
-    String output = args[0];
+    String output = args[first];
     JarCreator createJar = new JarCreator(output);
-    for (int i = 1; i < args.length; i++) {
+    for (int i = first + 1; i < args.length; i++) {
       createJar.addDirectory(args[i]);
     }
+    createJar.setThreads(threads);
     createJar.setCompression(true);
     createJar.setNormalize(true);
     createJar.setVerbose(true);
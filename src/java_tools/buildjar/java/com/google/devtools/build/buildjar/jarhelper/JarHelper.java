@@ -63,6 +63,7 @@ public class JarHelper {
   // The properties to describe how to create the Jar
   protected boolean normalize;
   protected int storageMethod = JarEntry.DEFLATED;
+  protected int storedEntryThreshold = 0;
   protected boolean verbose = false;
 
   // The state needed to create the Jar
@@ -90,6 +91,20 @@ public class JarHelper {
     storageMethod = compression ? JarEntry.DEFLATED : JarEntry.STORED;
   }
 
+  /**
+   * Stores entries smaller than the given size uncompressed even if compression is enabled. Small
+   * class files and resources frequently don't shrink when deflated, so compressing them only
+   * costs time at build time and when the Jar is read.
+   *
+   * @param storedEntryThreshold the minimum size in bytes of entries that are compressed.
+   */
+  public void setStoredEntryThreshold(int storedEntryThreshold) {
+    if (storedEntryThreshold < 0) {
+      throw new IllegalArgumentException("negative threshold: " + storedEntryThreshold);
+    }
+    this.storedEntryThreshold = storedEntryThreshold;
+  }
+
   /**
    * Enables or disables verbose messages.
    *
@@ -128,6 +143,11 @@ public class JarHelper {
     return normalize ? normalizedTimestamp(filename) : System.currentTimeMillis();
   }
 
+  /** Returns the storage method for an entry of the given size. */
+  protected int storageMethodFor(long size) {
+    return size == 0 || size < storedEntryThreshold ? JarEntry.STORED : storageMethod;
+  }
+
   /**
    * Writes an entry with specific contents to the jar. Directory entries must include the trailing
    * '/'.
@@ -144,8 +164,8 @@ public class JarHelper {
         entry.setCrc(0);
         out.putNextEntry(entry);
       } else {
-        entry.setMethod(storageMethod);
-        if (storageMethod == JarEntry.STORED) {
+        entry.setMethod(storageMethodFor(size));
+        if (entry.getMethod() == JarEntry.STORED) {
           CRC32 crc = new CRC32();
           crc.update(content);
           entry.setCrc(crc.getValue());
@@ -208,8 +228,8 @@ public class JarHelper {
           outEntry.setCrc(0);
           out.putNextEntry(outEntry);
         } else {
-          outEntry.setMethod(storageMethod);
-          if (storageMethod == JarEntry.STORED) {
+          outEntry.setMethod(storageMethodFor(size));
+          if (outEntry.getMethod() == JarEntry.STORED) {
             // ZipFile requires us to calculate the CRC-32 for any STORED entry.
             // It would be nicer to do this via DigestInputStream, but
             // the architecture of ZipOutputStream requires us to know the CRC-32
@@ -0,0 +1,391 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.buildjar.jarhelper;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * A {@link JarOutputStream} that compresses entries on several threads. {@link JarOutputStream}
+ * always compresses an entry while it is written, which makes it impossible to deflate several
+ * entries at once. This stream instead buffers the contents of each entry, compresses it on a
+ * thread pool once the entry is closed, and writes the compressed entries in the order they were
+ * added.
+ *
+ * <p>Only the name, time and storage method of the entries are used. The output only depends on
+ * the entries written, so it is deterministic no matter how many threads are used. It doesn't use
+ * data descriptors since the sizes and CRC-32 of every entry are known before it is written, and
+ * it switches to the Zip64 format for Jars with more than 65535 entries or more than 4GB of data.
+ */
+final class ParallelJarOutputStream extends JarOutputStream {
+
+  private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+  private static final int CENTRAL_DIRECTORY_HEADER_SIGNATURE = 0x02014b50;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064b50;
+  private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+  // The extra field JarOutputStream adds to the first entry to mark the file as a Jar.
+  private static final byte[] JAR_MAGIC = {(byte) 0xfe, (byte) 0xca, 0, 0};
+  private static final byte[] NO_EXTRA = {};
+  // Entry names are UTF-8 encoded (general purpose bit 11).
+  private static final int UTF8_FLAG = 0x0800;
+  private static final int VERSION_STORED = 10;
+  private static final int VERSION_DEFLATED = 20;
+  private static final int VERSION_ZIP64 = 45;
+  private static final long ZIP64_MAGIC = 0xffffffffL;
+  private static final int ZIP64_MAGIC_COUNT = 0xffff;
+
+  /** A Jar entry with its compressed contents, ready to be written. */
+  private static final class Entry {
+    private final byte[] name;
+    private final int method;
+    private final long dosTime;
+    private final long crc;
+    private final int size;
+    private final byte[] data;
+    private final int dataLength;
+
+    private Entry(
+        String name, int method, long dosTime, long crc, int size, byte[] data, int dataLength) {
+      this.name = name.getBytes(UTF_8);
+      this.method = method;
+      this.dosTime = dosTime;
+      this.crc = crc;
+      this.size = size;
+      this.data = data;
+      this.dataLength = dataLength;
+    }
+
+    /**
+     * Computes the CRC-32 of the first {@code size} bytes of {@code content} and deflates them if
+     * {@code method} is {@link ZipEntry#DEFLATED}. Empty entries are always stored.
+     */
+    static Entry create(String name, long timeMillis, int method, byte[] content, int size) {
+      CRC32 crc = new CRC32();
+      crc.update(content, 0, size);
+      long dosTime = toDosTime(timeMillis);
+      if (method == ZipEntry.STORED || size == 0) {
+        return new Entry(name, ZipEntry.STORED, dosTime, crc.getValue(), size, content, size);
+      }
+      Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, /* nowrap= */ true);
+      try {
+        deflater.setInput(content, 0, size);
+        deflater.finish();
+        ExposedByteArrayOutputStream out = new ExposedByteArrayOutputStream(Math.max(64, size / 2));
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+          out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return new Entry(
+            name, ZipEntry.DEFLATED, dosTime, crc.getValue(), size, out.buffer(), out.size());
+      } finally {
+        deflater.end();
+      }
+    }
+  }
+
+  private final CountingOutputStream output;
+  private final ExecutorService executor;
+  // Compress entries ahead of the one being written, but not too many at a time so the buffered
+  // entries don't take up too much memory.
+  private final int maxPending;
+  private final ArrayDeque<Future<Entry>> pending = new ArrayDeque<>();
+  private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+  private long entryCount = 0;
+  private ZipEntry current;
+  private ExposedByteArrayOutputStream currentContent;
+  private boolean finished = false;
+  private boolean closed = false;
+
+  /**
+   * Creates a stream that compresses entries on the given number of threads.
+   *
+   * @param out the stream the Jar is written to.
+   * @param threads the number of threads used to compress entries.
+   */
+  ParallelJarOutputStream(OutputStream out, int threads) throws IOException {
+    super(out);
+    this.output = new CountingOutputStream(out);
+    this.executor =
+        Executors.newFixedThreadPool(
+            threads,
+            runnable -> {
+              Thread thread = new Thread(runnable, "jar-creator");
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.maxPending = threads * 16;
+  }
+
+  @Override
+  public void putNextEntry(ZipEntry entry) throws IOException {
+    closeEntry();
+    current = entry;
+    currentContent =
+        new ExposedByteArrayOutputStream(entry.getSize() > 0 ? (int) entry.getSize() : 8192);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[] {(byte) b}, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (current == null) {
+      throw new ZipException("no current ZIP entry");
+    }
+    currentContent.write(b, off, len);
+  }
+
+  @Override
+  public void closeEntry() throws IOException {
+    if (current == null) {
+      return;
+    }
+    String name = current.getName();
+    long time = current.getTime();
+    int method = current.getMethod() == ZipEntry.STORED ? ZipEntry.STORED : ZipEntry.DEFLATED;
+    byte[] content = currentContent.buffer();
+    int size = currentContent.size();
+    current = null;
+    currentContent = null;
+    pending.add(executor.submit(() -> Entry.create(name, time, method, content, size)));
+    if (pending.size() >= maxPending) {
+      writeEntry(getEntry(pending.remove()));
+    }
+  }
+
+  /** Writes the remaining entries and the central directory without closing the stream. */
+  @Override
+  public void finish() throws IOException {
+    if (finished) {
+      return;
+    }
+    closeEntry();
+    while (!pending.isEmpty()) {
+      writeEntry(getEntry(pending.remove()));
+    }
+    writeCentralDirectory();
+    finished = true;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    output.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      finish();
+    } finally {
+      executor.shutdownNow();
+      // The deflater of the superclass is never used, but still holds native memory
+      def.end();
+      output.close();
+    }
+  }
+
+  private static Entry getEntry(Future<Entry> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while compressing jar entries");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  private void writeEntry(Entry entry) throws IOException {
+    long offset = output.count;
+    byte[] extra = entryCount == 0 ? JAR_MAGIC : NO_EXTRA;
+    int version = entry.method == ZipEntry.STORED ? VERSION_STORED : VERSION_DEFLATED;
+
+    writeInt(output, LOCAL_FILE_HEADER_SIGNATURE);
+    writeShort(output, version);
+    writeShort(output, UTF8_FLAG);
+    writeShort(output, entry.method);
+    writeInt(output, entry.dosTime);
+    writeInt(output, entry.crc);
+    writeInt(output, entry.dataLength);
+    writeInt(output, entry.size);
+    writeShort(output, entry.name.length);
+    writeShort(output, extra.length);
+    output.write(entry.name);
+    output.write(extra);
+    output.write(entry.data, 0, entry.dataLength);
+
+    // Sizes always fit into 32 bits since the data is held in an array, but the offset may not
+    boolean zip64 = offset >= ZIP64_MAGIC;
+    writeInt(centralDirectory, CENTRAL_DIRECTORY_HEADER_SIGNATURE);
+    writeShort(centralDirectory, zip64 ? VERSION_ZIP64 : version);
+    writeShort(centralDirectory, zip64 ? VERSION_ZIP64 : version);
+    writeShort(centralDirectory, UTF8_FLAG);
+    writeShort(centralDirectory, entry.method);
+    writeInt(centralDirectory, entry.dosTime);
+    writeInt(centralDirectory, entry.crc);
+    writeInt(centralDirectory, entry.dataLength);
+    writeInt(centralDirectory, entry.size);
+    writeShort(centralDirectory, entry.name.length);
+    writeShort(centralDirectory, extra.length + (zip64 ? 12 : 0));
+    writeShort(centralDirectory, 0); // comment length
+    writeShort(centralDirectory, 0); // disk number
+    writeShort(centralDirectory, 0); // internal attributes
+    writeInt(centralDirectory, 0); // external attributes
+    writeInt(centralDirectory, zip64 ? ZIP64_MAGIC : offset);
+    centralDirectory.write(entry.name);
+    centralDirectory.write(extra);
+    if (zip64) {
+      writeShort(centralDirectory, ZIP64_EXTRA_FIELD_ID);
+      writeShort(centralDirectory, 8);
+      writeLong(centralDirectory, offset);
+    }
+    entryCount++;
+  }
+
+  private void writeCentralDirectory() throws IOException {
+    long offset = output.count;
+    long size = centralDirectory.size();
+    centralDirectory.writeTo(output);
+    boolean zip64 = entryCount >= ZIP64_MAGIC_COUNT || offset >= ZIP64_MAGIC || size >= ZIP64_MAGIC;
+    if (zip64) {
+      long zip64EndOffset = output.count;
+      writeInt(output, ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+      writeLong(output, 44); // size of the rest of this record
+      writeShort(output, VERSION_ZIP64);
+      writeShort(output, VERSION_ZIP64);
+      writeInt(output, 0); // this disk
+      writeInt(output, 0); // disk with the central directory
+      writeLong(output, entryCount);
+      writeLong(output, entryCount);
+      writeLong(output, size);
+      writeLong(output, offset);
+      writeInt(output, ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE);
+      writeInt(output, 0); // disk with the zip64 end of central directory record
+      writeLong(output, zip64EndOffset);
+      writeInt(output, 1); // total number of disks
+    }
+    writeInt(output, END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+    writeShort(output, 0); // this disk
+    writeShort(output, 0); // disk with the central directory
+    writeShort(output, (int) Math.min(entryCount, ZIP64_MAGIC_COUNT));
+    writeShort(output, (int) Math.min(entryCount, ZIP64_MAGIC_COUNT));
+    writeInt(output, Math.min(size, ZIP64_MAGIC));
+    writeInt(output, Math.min(offset, ZIP64_MAGIC));
+    writeShort(output, 0); // comment length
+  }
+
+  /** Converts a Java timestamp into a DOS timestamp in the local time zone, like ZipEntry. */
+  private static long toDosTime(long timeMillis) {
+    LocalDateTime time =
+        LocalDateTime.ofInstant(Instant.ofEpochMilli(timeMillis), ZoneId.systemDefault());
+    if (time.getYear() < 1980) {
+      return (1 << 21) | (1 << 16); // 1980-01-01, the DOS epoch
+    }
+    return ((time.getYear() - 1980L) << 25)
+        | (time.getMonthValue() << 21)
+        | (time.getDayOfMonth() << 16)
+        | (time.getHour() << 11)
+        | (time.getMinute() << 5)
+        | (time.getSecond() >> 1);
+  }
+
+  private static void writeShort(OutputStream out, int value) throws IOException {
+    out.write(value & 0xff);
+    out.write((value >>> 8) & 0xff);
+  }
+
+  private static void writeInt(OutputStream out, long value) throws IOException {
+    writeShort(out, (int) (value & 0xffff));
+    writeShort(out, (int) ((value >>> 16) & 0xffff));
+  }
+
+  private static void writeLong(OutputStream out, long value) throws IOException {
+    writeInt(out, value & ZIP64_MAGIC);
+    writeInt(out, value >>> 32);
+  }
+
+  /** A {@link ByteArrayOutputStream} that gives access to its buffer without copying it. */
+  private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+    ExposedByteArrayOutputStream(int size) {
+      super(size);
+    }
+
+    byte[] buffer() {
+      return buf;
+    }
+  }
+
+  private static final class CountingOutputStream extends OutputStream {
+    private final OutputStream out;
+    private long count = 0;
+
+    CountingOutputStream(OutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+}
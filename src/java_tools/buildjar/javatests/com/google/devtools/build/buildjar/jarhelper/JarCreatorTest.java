@@ -0,0 +1,137 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.buildjar.jarhelper;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link JarCreator}. */
+@RunWith(JUnit4.class)
+public class JarCreatorTest {
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path input;
+
+  @Before
+  public void setUp() throws IOException {
+    input = temporaryFolder.newFolder("input").toPath();
+    Files.createDirectories(input.resolve("com/foo"));
+    Files.write(
+        input.resolve("com/foo/Foo.class"),
+        String.join("", Collections.nCopies(100, "foo")).getBytes(UTF_8));
+    Files.write(input.resolve("com/foo/Bar.class"), "bar".getBytes(UTF_8));
+    Files.write(input.resolve("com/foo/empty.txt"), new byte[0]);
+  }
+
+  private Path createJar(String name, int threads, int storedEntryThreshold) throws IOException {
+    Path jar = temporaryFolder.getRoot().toPath().resolve(name);
+    JarCreator creator = new JarCreator(jar);
+    creator.setNormalize(true);
+    creator.setCompression(true);
+    creator.setThreads(threads);
+    creator.setStoredEntryThreshold(storedEntryThreshold);
+    creator.addDirectory(input);
+    creator.execute();
+    return jar;
+  }
+
+  private static Map<String, String> readEntries(Path jar) throws IOException {
+    Map<String, String> result = new LinkedHashMap<>();
+    try (JarFile jarFile = new JarFile(jar.toFile())) {
+      for (JarEntry entry : Collections.list(jarFile.entries())) {
+        result.put(
+            entry.getName() + ":" + entry.getMethod() + ":" + entry.getTime(),
+            new String(ByteStreams.toByteArray(jarFile.getInputStream(entry)), UTF_8));
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void parallelJarHasSameEntriesAsSerialJar() throws IOException {
+    Path serial = createJar("serial.jar", 1, 0);
+    Path parallel = createJar("parallel.jar", 4, 0);
+
+    assertThat(readEntries(parallel)).containsExactlyEntriesIn(readEntries(serial)).inOrder();
+    try (JarInputStream in = new JarInputStream(Files.newInputStream(parallel))) {
+      assertThat(in.getManifest().getMainAttributes().getValue("Created-By")).isEqualTo("bazel");
+      List<String> names = new ArrayList<>();
+      for (JarEntry entry = in.getNextJarEntry(); entry != null; entry = in.getNextJarEntry()) {
+        names.add(entry.getName());
+      }
+      assertThat(names)
+          .containsExactly(
+              "com/", "com/foo/", "com/foo/Bar.class", "com/foo/Foo.class", "com/foo/empty.txt")
+          .inOrder();
+    }
+  }
+
+  @Test
+  public void parallelJarIsIndependentOfThreadCount() throws IOException {
+    byte[] twoThreads = Files.readAllBytes(createJar("two.jar", 2, 0));
+    byte[] manyThreads = Files.readAllBytes(createJar("many.jar", 16, 0));
+    assertThat(manyThreads).isEqualTo(twoThreads);
+  }
+
+  @Test
+  public void smallEntriesAreStored() throws IOException {
+    for (int threads : new int[] {1, 4}) {
+      Path jar = createJar("threshold" + threads + ".jar", threads, 10);
+      try (JarFile jarFile = new JarFile(jar.toFile())) {
+        assertThat(jarFile.getEntry("com/foo/Bar.class").getMethod()).isEqualTo(JarEntry.STORED);
+        assertThat(jarFile.getEntry("com/foo/Foo.class").getMethod()).isEqualTo(JarEntry.DEFLATED);
+      }
+    }
+  }
+
+  @Test
+  public void parallelJarWithManyEntriesUsesZip64() throws IOException {
+    Path jar = temporaryFolder.getRoot().toPath().resolve("many_entries.jar");
+    JarCreator creator = new JarCreator(jar);
+    creator.setNormalize(true);
+    creator.setThreads(4);
+    Path file = input.resolve("com/foo/Bar.class");
+    for (int i = 0; i < 70000; i++) {
+      creator.addEntry("entry" + i, file);
+    }
+    creator.execute();
+
+    try (JarFile jarFile = new JarFile(jar.toFile())) {
+      assertThat(jarFile.size()).isEqualTo(70002); // including META-INF/ and the manifest
+      assertThat(ByteStreams.toByteArray(jarFile.getInputStream(jarFile.getEntry("entry69999"))))
+          .isEqualTo("bar".getBytes(UTF_8));
+    }
+  }
+}
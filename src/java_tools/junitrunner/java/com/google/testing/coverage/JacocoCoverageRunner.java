@@ -17,6 +17,7 @@ package com.google.testing.coverage;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
 import com.google.common.collect.ImmutableSet;
@@ -29,6 +30,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.Reader;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
@@ -36,6 +38,7 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.net.URLDecoder;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -43,6 +46,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -52,6 +59,8 @@ import org.jacoco.agent.rt.RT;
 import org.jacoco.core.analysis.Analyzer;
 import org.jacoco.core.analysis.CoverageBuilder;
 import org.jacoco.core.analysis.IBundleCoverage;
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.data.ExecutionDataStore;
 import org.jacoco.core.tools.ExecFileLoader;
 import org.jacoco.report.IReportVisitor;
 import org.jacoco.report.ISourceFileLocator;
@@ -80,6 +89,7 @@ public class JacocoCoverageRunner {
   private ExecFileLoader execFileLoader;
   private HashMap<String, byte[]> uninstrumentedClasses;
   private ImmutableSet<String> pathsForCoverage = ImmutableSet.of();
+  private int parallelism = Runtime.getRuntime().availableProcessors();
 
   /**
    * Creates a new coverage runner extracting the classes jars from a wrapper file. Uses
@@ -112,6 +122,12 @@ public class JacocoCoverageRunner {
     this.pathsForCoverage = pathsForCoverage;
   }
 
+  /** Sets the number of threads used to analyze the classes. */
+  @VisibleForTesting
+  void setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
   public void create() throws IOException {
     // Read the jacoco.exec file. Multiple data files could be merged at this point
     execFileLoader = new ExecFileLoader();
@@ -121,10 +137,11 @@ public class JacocoCoverageRunner {
     // model. Typically you would create a bundle for each class folder and each jar you want in
     // your report. If you have more than one bundle you may need to add a grouping node to the
     // report. The lcov formatter doesn't seem to care, and we're only using one bundle anyway.
-    final IBundleCoverage bundleCoverage = analyzeStructure();
-
-    final Map<String, BranchCoverageDetail> branchDetails = analyzeBranch();
-    createReport(bundleCoverage, branchDetails);
+    // The branch details are collected in the same pass over the classes.
+    final CoverageBuilder coverageBuilder = new CoverageBuilder();
+    final Map<String, BranchCoverageDetail> branchDetails = new TreeMap<>();
+    analyzeClasses(coverageBuilder, branchDetails);
+    createReport(coverageBuilder.getBundle("isthisevenused"), branchDetails);
   }
 
   @VisibleForTesting
@@ -168,60 +185,95 @@ public class JacocoCoverageRunner {
   @VisibleForTesting
   IBundleCoverage analyzeStructure() throws IOException {
     final CoverageBuilder coverageBuilder = new CoverageBuilder();
-    final Analyzer analyzer = new Analyzer(execFileLoader.getExecutionDataStore(), coverageBuilder);
-    Set<String> alreadyInstrumentedClasses = new HashSet<>();
-    if (uninstrumentedClasses == null) {
-      for (File classesJar : classesJars) {
-        analyzeUninstrumentedClassesFromJar(analyzer, classesJar, alreadyInstrumentedClasses);
-      }
-    } else {
-      for (Map.Entry<String, byte[]> entry : uninstrumentedClasses.entrySet()) {
-        analyzer.analyzeClass(entry.getValue(), entry.getKey());
-      }
-    }
-
+    analyzeClasses(coverageBuilder, new TreeMap<>());
     // TODO(bazel-team): Find out where the name of the bundle can pop out in the report.
     return coverageBuilder.getBundle("isthisevenused");
   }
 
-  // Additional pass to process the branch details of the classes
-  private Map<String, BranchCoverageDetail> analyzeBranch() throws IOException {
-    final BranchDetailAnalyzer analyzer =
-        new BranchDetailAnalyzer(execFileLoader.getExecutionDataStore());
-
-    Map<String, BranchCoverageDetail> result = new TreeMap<>();
-    Set<String> alreadyInstrumentedClasses = new HashSet<>();
-    if (uninstrumentedClasses == null) {
-      for (File classesJar : classesJars) {
-        analyzeUninstrumentedClassesFromJar(analyzer, classesJar, alreadyInstrumentedClasses);
-        result.putAll(analyzer.getBranchDetails());
+  /** The results of analyzing a single class. */
+  private static class ClassAnalysis {
+    final List<IClassCoverage> coverage = new ArrayList<>();
+    Map<String, BranchCoverageDetail> branchDetails;
+  }
+
+  /**
+   * Analyzes the structure and the branch details of all uninstrumented classes, spreading the
+   * classes across a fork-join pool. The results are merged in the order of the classes, so the
+   * report doesn't depend on the order in which the classes finish.
+   *
+   * <p>The uninstrumented classes in the classes jars are named using the .class.uninstrumented
+   * suffix.
+   */
+  private void analyzeClasses(
+      CoverageBuilder coverageBuilder, Map<String, BranchCoverageDetail> branchDetails)
+      throws IOException {
+    ExecutionDataStore executionDataStore = execFileLoader.getExecutionDataStore();
+    List<Callable<ClassAnalysis>> tasks = new ArrayList<>();
+    List<JarFile> jarFiles = new ArrayList<>();
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      if (uninstrumentedClasses == null) {
+        Set<String> alreadyInstrumentedClasses = new HashSet<>();
+        for (File classesJar : classesJars) {
+          JarFile jarFile = new JarFile(classesJar);
+          jarFiles.add(jarFile);
+          for (JarEntry jarEntry : Collections.list(jarFile.entries())) {
+            String jarEntryName = jarEntry.getName();
+            if (jarEntryName.endsWith(".class.uninstrumented")
+                && alreadyInstrumentedClasses.add(jarEntryName)) {
+              // JarFile can be read concurrently, so the classes are read by the tasks as well.
+              tasks.add(
+                  () ->
+                      analyzeClass(
+                          executionDataStore,
+                          jarEntryName,
+                          ByteStreams.toByteArray(jarFile.getInputStream(jarEntry))));
+            }
+          }
+        }
+      } else {
+        for (Map.Entry<String, byte[]> entry : uninstrumentedClasses.entrySet()) {
+          tasks.add(() -> analyzeClass(executionDataStore, entry.getKey(), entry.getValue()));
+        }
       }
-    } else {
-      for (Map.Entry<String, byte[]> entry : uninstrumentedClasses.entrySet()) {
-        analyzer.analyzeClass(entry.getValue(), entry.getKey());
+      for (Future<ClassAnalysis> future : pool.invokeAll(tasks)) {
+        ClassAnalysis analysis = getAnalysis(future);
+        for (IClassCoverage coverage : analysis.coverage) {
+          coverageBuilder.visitCoverage(coverage);
+        }
+        branchDetails.putAll(analysis.branchDetails);
+      }
+    } finally {
+      pool.shutdownNow();
+      for (JarFile jarFile : jarFiles) {
+        jarFile.close();
       }
-      result.putAll(analyzer.getBranchDetails());
     }
-    return result;
   }
 
   /**
-   * Analyzes all uninstrumented class files found in the given jar.
-   *
-   * <p>The uninstrumented classes are named using the .class.uninstrumented suffix.
+   * Analyzes a single class. Jacoco's analyzers aren't thread-safe, so every class gets its own.
    */
-  private void analyzeUninstrumentedClassesFromJar(
-      Analyzer analyzer, File jar, Set<String> alreadyInstrumentedClasses) throws IOException {
-    JarFile jarFile = new JarFile(jar);
-    Enumeration<JarEntry> jarFileEntries = jarFile.entries();
-    while (jarFileEntries.hasMoreElements()) {
-      JarEntry jarEntry = jarFileEntries.nextElement();
-      String jarEntryName = jarEntry.getName();
-      if (jarEntryName.endsWith(".class.uninstrumented")
-          && !alreadyInstrumentedClasses.contains(jarEntryName)) {
-        analyzer.analyzeAll(jarFile.getInputStream(jarEntry), jarEntryName);
-        alreadyInstrumentedClasses.add(jarEntryName);
-      }
+  private static ClassAnalysis analyzeClass(
+      ExecutionDataStore executionDataStore, String name, byte[] content) throws IOException {
+    ClassAnalysis result = new ClassAnalysis();
+    new Analyzer(executionDataStore, result.coverage::add)
+        .analyzeAll(new ByteArrayInputStream(content), name);
+    BranchDetailAnalyzer branchAnalyzer = new BranchDetailAnalyzer(executionDataStore);
+    branchAnalyzer.analyzeAll(new ByteArrayInputStream(content), name);
+    result.branchDetails = branchAnalyzer.getBranchDetails();
+    return result;
+  }
+
+  private static ClassAnalysis getAnalysis(Future<ClassAnalysis> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while analyzing classes for coverage");
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), IOException.class);
+      throw new IOException(e.getCause());
     }
   }
 
@@ -24,6 +24,7 @@ import java.io.PrintWriter;
 import java.io.Writer;
 import java.nio.file.Files;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -65,17 +66,23 @@ public class JacocoLCOVFormatter {
 
       private Map<String, Map<String, IClassCoverage>> sourceToClassCoverage = new TreeMap<>();
       private Map<String, ISourceFileCoverage> sourceToFileCoverage = new TreeMap<>();
+      // Maps every suffix of an exec path that follows a '/' to the first exec path that has it,
+      // so that looking up a source file doesn't scan all exec paths.
+      private Map<String, String> execPathsBySuffix;
 
       private String getExecPathForEntryName(String fileName) {
         if (execPathsOfUninstrumentedFiles.isEmpty()) {
           return fileName;
         }
-        for (String execPath : execPathsOfUninstrumentedFiles) {
-          if (execPath.endsWith("/" + fileName)) {
-            return execPath;
+        if (execPathsBySuffix == null) {
+          execPathsBySuffix = new HashMap<>();
+          for (String execPath : execPathsOfUninstrumentedFiles) {
+            for (int i = execPath.indexOf('/'); i != -1; i = execPath.indexOf('/', i + 1)) {
+              execPathsBySuffix.putIfAbsent(execPath.substring(i + 1), execPath);
+            }
           }
         }
-        return null;
+        return execPathsBySuffix.get(fileName);
       }
 
       @Override
@@ -129,7 +136,7 @@ public class JacocoLCOVFormatter {
       }
 
       private void processSourceFile(PrintWriter writer, String sourceFile) {
-        writer.printf("SF:%s\n", sourceFile);
+        writer.print("SF:" + sourceFile + "\n");
 
         ISourceFileCoverage srcCoverage = sourceToFileCoverage.get(sourceFile);
         if (srcCoverage != null) {
@@ -137,8 +144,9 @@ public class JacocoLCOVFormatter {
           for (IClassCoverage clsCoverage : sourceToClassCoverage.get(sourceFile).values()) {
             for (IMethodCoverage mthCoverage : clsCoverage.getMethods()) {
               String name = constructFunctionName(mthCoverage, clsCoverage.getName());
-              writer.printf("FN:%d,%s\n", mthCoverage.getFirstLine(), name);
-              writer.printf("FNDA:%d,%s\n", mthCoverage.getMethodCounter().getCoveredCount(), name);
+              writer.print("FN:" + mthCoverage.getFirstLine() + "," + name + "\n");
+              writer.print(
+                  "FNDA:" + mthCoverage.getMethodCounter().getCoveredCount() + "," + name + "\n");
             }
           }
 
@@ -151,14 +159,14 @@ public class JacocoLCOVFormatter {
                 if (executed) {
                   for (int branchIdx = 0; branchIdx < numBranches; branchIdx++) {
                     if (detail.getTakenBit(line, branchIdx)) {
-                      writer.printf("BA:%d,%d\n", line, 2); // executed, taken
+                      writer.print("BA:" + line + ",2\n"); // executed, taken
                     } else {
-                      writer.printf("BA:%d,%d\n", line, 1); // executed, not taken
+                      writer.print("BA:" + line + ",1\n"); // executed, not taken
                     }
                   }
                 } else {
                   for (int branchIdx = 0; branchIdx < numBranches; branchIdx++) {
-                    writer.printf("BA:%d,%d\n", line, 0); // not executed
+                    writer.print("BA:" + line + ",0\n"); // not executed
                   }
                 }
               }
@@ -171,7 +179,7 @@ public class JacocoLCOVFormatter {
           for (int line = firstLine; line <= lastLine; line++) {
             ICounter instructionCounter = srcCoverage.getLine(line).getInstructionCounter();
             if (instructionCounter.getTotalCount() != 0) {
-              writer.printf("DA:%d,%d\n", line, instructionCounter.getCoveredCount());
+              writer.print("DA:" + line + "," + instructionCounter.getCoveredCount() + "\n");
             }
           }
         }
@@ -20,6 +20,7 @@ import com.google.testing.junit.runner.internal.StackTraces;
 import com.google.testing.junit.runner.junit4.JUnit4InstanceModules.Config;
 import com.google.testing.junit.runner.junit4.JUnit4InstanceModules.SuiteClass;
 import com.google.testing.junit.runner.junit4.JUnit4Runner;
+import com.google.testing.junit.runner.util.TestEnvironment;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
@@ -32,7 +33,11 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -45,7 +50,9 @@ public class ExperimentalTestRunner {
    */
   static final String TEST_SUITE_PROPERTY_NAME = "bazel.test_suite";
 
-  private static URL[] classpaths = null;
+  /** Prefix of the persistent test runner request arguments that set an environment variable. */
+  static final String TEST_ENV_FLAG = "--test_env=";
+
   private static URLClassLoader targetClassLoader;
 
   private ExperimentalTestRunner() {
@@ -72,7 +79,8 @@ public class ExperimentalTestRunner {
 
     String suiteClassName = System.getProperty(TEST_SUITE_PROPERTY_NAME);
 
-    if ("true".equals(System.getenv("PERSISTENT_TEST_RUNNER"))) {
+    if ("true".equals(System.getenv("PERSISTENT_TEST_RUNNER"))
+        || Arrays.asList(args).contains("--persistent_worker")) {
       System.exit(runPersistentTestRunner(suiteClassName));
     }
 
@@ -169,6 +177,11 @@ public class ExperimentalTestRunner {
   /**
    * Run in a loop awaiting instructions for the next test run.
    *
+   * <p>Each run loads the classes of the test target in a new classloader, so that changes to the
+   * classpath and static state of the test classes don't carry over to the next run. Changes to
+   * the global state of the JVM, like system properties or threads left running, would, so the
+   * runner exits after a run that changed them and Bazel starts a fresh JVM for the next run.
+   *
    * @param suiteClassName name of the class which is passed on to JUnit to determine the test suite
    * @return 0 when we encounter an EOF from input, or non-zero values if we encounter an
    *     unrecoverable error.
@@ -188,13 +201,25 @@ public class ExperimentalTestRunner {
         PrintStream printStream = new PrintStream(outputStream, true);
         System.setOut(printStream);
         System.setErr(printStream);
-        String[] arguments = request.getArgumentsList().toArray(new String[0]);
+        String[] arguments = applyTestEnvironment(request.getArgumentsList());
         int exitCode = -1;
+        JvmStateSnapshot snapshot = JvmStateSnapshot.take();
         try {
           exitCode = runTestsInSuite(suiteClassName, arguments);
         } finally {
           System.setOut(originalStdOut);
           System.setErr(originalStdErr);
+          closeTargetClassLoader();
+        }
+
+        List<String> stateChanges = snapshot.findChanges();
+        if (!stateChanges.isEmpty()) {
+          printStream.println(
+              "The test changed the global state of the JVM, restarting the persistent test "
+                  + "runner:");
+          for (String change : stateChanges) {
+            printStream.println("  " + change);
+          }
         }
 
         WorkResponse response =
@@ -206,6 +231,10 @@ public class ExperimentalTestRunner {
         response.writeDelimitedTo(System.out);
         System.out.flush();
 
+        if (!stateChanges.isEmpty()) {
+          break;
+        }
+
       } catch (IOException e) {
         e.printStackTrace();
         return 1;
@@ -214,6 +243,38 @@ public class ExperimentalTestRunner {
     return 0;
   }
 
+  /**
+   * Sets the leading {@code --test_env=NAME=VALUE} arguments of a request as the environment of
+   * the test run, such as its shard and output files, and returns the remaining arguments.
+   */
+  private static String[] applyTestEnvironment(List<String> arguments) {
+    Map<String, String> env = new HashMap<>();
+    int i = 0;
+    for (; i < arguments.size() && arguments.get(i).startsWith(TEST_ENV_FLAG); i++) {
+      String variable = arguments.get(i).substring(TEST_ENV_FLAG.length());
+      int equals = variable.indexOf('=');
+      if (equals > 0) {
+        env.put(variable.substring(0, equals), variable.substring(equals + 1));
+      }
+    }
+    TestEnvironment.setOverrides(env);
+    return arguments.subList(i, arguments.size()).toArray(new String[0]);
+  }
+
+  /** Releases the classes loaded for the last test run. */
+  private static void closeTargetClassLoader() {
+    Thread.currentThread().setContextClassLoader(ExperimentalTestRunner.class.getClassLoader());
+    if (targetClassLoader == null) {
+      return;
+    }
+    try {
+      targetClassLoader.close();
+    } catch (IOException e) {
+      System.err.println("Exception in closing classloader:" + e.getMessage());
+    }
+    targetClassLoader = null;
+  }
+
   /**
    * Get the actual Test Suite class corresponding to the given name.
    */
@@ -236,16 +297,14 @@ public class ExperimentalTestRunner {
   }
 
   /**
-   * Used to get the classpaths which should be used to load the classes of the test target.
+   * Used to get the classpaths which should be used to load the classes of the test target. The
+   * classpaths file is read again for every run, since the dependencies of the test may change
+   * between runs of the persistent test runner.
    *
    * @throws MalformedURLException when we are unable to create a given classpath.
    * @return array of URLs containing the classpaths or null if classpaths could not be located.
    */
   private static URL[] getClasspaths() throws IOException {
-    if (classpaths != null) {
-      return classpaths;
-    }
-
     String selfLocation = System.getenv("SELF_LOCATION");
     // TODO(kush): Get this to work for windows style paths.
     String classpathFileLocation = selfLocation + "_classpaths_file";
@@ -261,7 +320,7 @@ public class ExperimentalTestRunner {
     String classloaderPrefixPath = System.getenv("CLASSLOADER_PREFIX_PATH");
     String workingDir = System.getProperty("user.dir");
     String[] targetClassPaths = new String(classPathFileBytes, StandardCharsets.UTF_8).split(":");
-    classpaths = new URL[targetClassPaths.length];
+    URL[] classpaths = new URL[targetClassPaths.length];
 
     String locationPrefix = "file://" + workingDir + "/" + classloaderPrefixPath;
 
@@ -0,0 +1,94 @@
+// Copyright 2019 The Bazel Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.testing.junit.runner;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * The parts of the global state of the JVM that tests commonly change, recorded before a test run
+ * of the persistent test runner. Tests of the next run would see changes of this state, so the
+ * runner compares the state after each run with the snapshot and only keeps the JVM if nothing
+ * changed.
+ */
+final class JvmStateSnapshot {
+  private final Properties systemProperties;
+  private final Locale locale;
+  private final TimeZone timeZone;
+  private final SecurityManager securityManager;
+  private final Set<Thread> nonDaemonThreads;
+
+  private JvmStateSnapshot() {
+    // Looking up the default time zone for the first time sets the user.timezone property
+    timeZone = TimeZone.getDefault();
+    locale = Locale.getDefault();
+    systemProperties = (Properties) System.getProperties().clone();
+    securityManager = System.getSecurityManager();
+    nonDaemonThreads = liveNonDaemonThreads();
+  }
+
+  /** Records the current state of the JVM. */
+  static JvmStateSnapshot take() {
+    return new JvmStateSnapshot();
+  }
+
+  /**
+   * Returns a description of every way the state of the JVM now differs from this snapshot, or an
+   * empty list if it doesn't.
+   */
+  List<String> findChanges() {
+    List<String> changes = new ArrayList<>();
+    Properties currentProperties = System.getProperties();
+    Set<String> names = new HashSet<>(systemProperties.stringPropertyNames());
+    names.addAll(currentProperties.stringPropertyNames());
+    for (String name : names) {
+      String before = systemProperties.getProperty(name);
+      String after = currentProperties.getProperty(name);
+      if (before == null ? after != null : !before.equals(after)) {
+        changes.add(String.format("system property %s changed from %s to %s", name, before, after));
+      }
+    }
+    if (!locale.equals(Locale.getDefault())) {
+      changes.add(String.format("default locale changed to %s", Locale.getDefault()));
+    }
+    if (!timeZone.equals(TimeZone.getDefault())) {
+      changes.add(String.format("default time zone changed to %s", TimeZone.getDefault().getID()));
+    }
+    if (securityManager != System.getSecurityManager()) {
+      changes.add("security manager changed");
+    }
+    for (Thread thread : liveNonDaemonThreads()) {
+      if (!nonDaemonThreads.contains(thread)) {
+        changes.add(String.format("non-daemon thread %s is still running", thread.getName()));
+      }
+    }
+    return changes;
+  }
+
+  private static Set<Thread> liveNonDaemonThreads() {
+    Set<Thread> threads = new HashSet<>();
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.isAlive() && !thread.isDaemon()) {
+        threads.add(thread);
+      }
+    }
+    return threads;
+  }
+}
@@ -14,6 +14,7 @@
 
 package com.google.testing.junit.runner.junit4;
 
+import com.google.testing.junit.runner.util.TestEnvironment;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.util.Properties;
@@ -30,11 +31,16 @@ class JUnit4Config {
   static final String SHOULD_INSTALL_SECURITY_MANAGER_PROPERTY
       = "com.google.testing.junit.runner.shouldInstallTestSecurityManager";
 
+  // VisibleForTesting
+  static final String PARALLEL_TEST_CLASSES_PROPERTY =
+      "com.google.testing.junit.runner.parallelTestClasses";
+
   private final String testIncludeFilterRegexp;
   private final String testExcludeFilterRegexp;
   @Nullable private final Path xmlOutputPath;
   private final String junitApiVersion;
   private final boolean shouldInstallSecurityManager;
+  private final String parallelTestClasses;
 
   private static final String XML_OUTPUT_FILE_ENV_VAR = "XML_OUTPUT_FILE";
 
@@ -64,6 +70,8 @@ class JUnit4Config {
     this.xmlOutputPath = xmlOutputPath;
     junitApiVersion = systemProperties.getProperty(JUNIT_API_VERSION_PROPERTY, "1").trim();
     shouldInstallSecurityManager = installSecurityManager(systemProperties);
+    parallelTestClasses =
+        systemProperties.getProperty(PARALLEL_TEST_CLASSES_PROPERTY, "1").trim();
   }
 
   private static boolean installSecurityManager(Properties systemProperties) {
@@ -88,7 +96,7 @@ class JUnit4Config {
   @Nullable
   public Path getXmlOutputPath() {
     if (xmlOutputPath == null) {
-      String envXmlOutputPath = System.getenv(XML_OUTPUT_FILE_ENV_VAR);
+      String envXmlOutputPath = TestEnvironment.get(XML_OUTPUT_FILE_ENV_VAR);
       return
           envXmlOutputPath == null ? null : FileSystems.getDefault().getPath(envXmlOutputPath);
     }
@@ -118,6 +126,28 @@ class JUnit4Config {
     return apiVersion;
   }
 
+  /**
+   * Returns the number of test classes of a suite that may run concurrently. The default of 1 runs
+   * test classes one after another.
+   *
+   * @throws IllegalStateException if the number is not a positive integer.
+   */
+  public int getParallelTestClasses() {
+    int threads = 0;
+    try {
+      threads = Integer.parseInt(parallelTestClasses);
+    } catch (NumberFormatException e) {
+      // ignore; handled below
+    }
+
+    if (threads < 1) {
+      throw new IllegalStateException(
+          "Invalid number of parallel test classes " + PARALLEL_TEST_CLASSES_PROPERTY + "="
+          + parallelTestClasses + " (must be a positive integer)");
+    }
+    return threads;
+  }
+
   /**
    * Returns a regular expression representing an inclusive filter.
    * Only test descriptions that match this regular expression should be run.
@@ -14,6 +14,7 @@
 
 package com.google.testing.junit.runner.junit4;
 
+import com.google.testing.junit.runner.util.TestEnvironment;
 import java.util.Arrays;
 import java.util.List;
 import javax.inject.Singleton;
@@ -63,7 +64,7 @@ public final class JUnit4InstanceModules {
 
     @Singleton
     JUnit4Options options() {
-      return JUnit4Options.parse(System.getenv(), args);
+      return JUnit4Options.parse(TestEnvironment.getAll(), args);
     }
 
     @Singleton
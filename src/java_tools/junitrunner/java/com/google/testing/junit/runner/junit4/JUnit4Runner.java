@@ -21,6 +21,7 @@ import com.google.testing.junit.runner.internal.junit4.CancellableRequestFactory
 import com.google.testing.junit.runner.model.TestSuiteModel;
 import com.google.testing.junit.runner.util.GoogleTestSecurityManager;
 import com.google.testing.junit.runner.util.Supplier;
+import com.google.testing.junit.runner.util.TestEnvironment;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -101,6 +102,14 @@ public class JUnit4Runner {
       core.addListener(runListener);
     }
 
+    // Test classes of a suite may run concurrently, with the output of each test kept together
+    TestOutputCapture outputCapture = null;
+    if (ParallelTestClassScheduler.install(
+        filteredRequest.getRunner(), config.getParallelTestClasses())) {
+      outputCapture = new TestOutputCapture();
+      core.addListener(outputCapture);
+    }
+
     File exitFile = getExitFile();
     exitFileActive(exitFile);
     try {
@@ -109,7 +118,16 @@ public class JUnit4Runner {
           installSecurityManager();
         }
         Request cancellableRequest = requestFactory.createRequest(filteredRequest);
-        return core.run(cancellableRequest);
+        if (outputCapture != null) {
+          outputCapture.install();
+        }
+        try {
+          return core.run(cancellableRequest);
+        } finally {
+          if (outputCapture != null) {
+            outputCapture.uninstall();
+          }
+        }
       } finally {
         disableSecurityManager();
       }
@@ -121,7 +139,7 @@ public class JUnit4Runner {
   // Support for "premature exit files": Tests may write this to communicate
   // to the runner in case of premature exit.
   private static File getExitFile() {
-    String exitFile = System.getenv("TEST_PREMATURE_EXIT_FILE");
+    String exitFile = TestEnvironment.get("TEST_PREMATURE_EXIT_FILE");
     return exitFile == null ? null : new File(exitFile);
   }
 
@@ -0,0 +1,91 @@
+// Copyright 2019 The Bazel Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.testing.junit.runner.junit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.runner.Runner;
+import org.junit.runners.Suite;
+import org.junit.runners.model.RunnerScheduler;
+
+/**
+ * Runs the children of a suite, usually test classes, on a fixed number of threads. The test
+ * methods of each class still run one after another on the same thread, so only test classes have
+ * to be independent of each other.
+ */
+class ParallelTestClassScheduler implements RunnerScheduler {
+  private final ExecutorService executor;
+  private final List<Future<?>> children = new ArrayList<>();
+
+  private ParallelTestClassScheduler(int threads) {
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor =
+        Executors.newFixedThreadPool(
+            threads,
+            runnable -> {
+              Thread thread =
+                  new Thread(runnable, "test-class-runner-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /**
+   * Makes the given runner run its children on {@code threads} threads if it's a suite. Other
+   * runners, e.g. for a single test class, are left alone and run their tests one after another.
+   *
+   * @return whether the runner will run its children concurrently
+   */
+  static boolean install(Runner runner, int threads) {
+    if (threads <= 1 || !(runner instanceof Suite)) {
+      return false;
+    }
+    ((Suite) runner).setScheduler(new ParallelTestClassScheduler(threads));
+    return true;
+  }
+
+  @Override
+  public void schedule(Runnable childStatement) {
+    children.add(executor.submit(childStatement));
+  }
+
+  @Override
+  public void finished() {
+    try {
+      for (Future<?> child : children) {
+        child.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while running test classes", e);
+    } catch (ExecutionException e) {
+      // Test failures are reported to the notifier, so this is a failure of the runner itself
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
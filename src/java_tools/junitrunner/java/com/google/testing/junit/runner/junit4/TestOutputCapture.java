@@ -0,0 +1,137 @@
+// Copyright 2019 The Bazel Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.testing.junit.runner.junit4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import org.junit.runner.Description;
+import org.junit.runner.notification.RunListener;
+
+/**
+ * Captures what each test writes to {@link System#out} and {@link System#err} while tests run
+ * concurrently, and writes it to the real streams in one piece when the test finishes, so that the
+ * output of tests running at the same time doesn't interleave in the test log.
+ *
+ * <p>Output is captured per thread, so output of threads started by a test and output written
+ * outside of tests, e.g. by {@code @BeforeClass} methods, goes straight to the real streams.
+ */
+@RunListener.ThreadSafe
+class TestOutputCapture extends RunListener {
+  private final ThreadLocal<CapturedOutput> currentTestOutput = new ThreadLocal<>();
+  private PrintStream realOut;
+  private PrintStream realErr;
+
+  private static class CapturedOutput {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ByteArrayOutputStream err = new ByteArrayOutputStream();
+  }
+
+  /** Replaces {@link System#out} and {@link System#err} with streams that capture test output. */
+  void install() {
+    realOut = System.out;
+    realErr = System.err;
+    System.setOut(new PrintStream(new CapturingOutputStream(realOut, /* isErr= */ false), true));
+    System.setErr(new PrintStream(new CapturingOutputStream(realErr, /* isErr= */ true), true));
+  }
+
+  /** Restores the streams replaced by {@link #install}. */
+  void uninstall() {
+    System.out.flush();
+    System.err.flush();
+    System.setOut(realOut);
+    System.setErr(realErr);
+  }
+
+  @Override
+  public void testStarted(Description description) {
+    currentTestOutput.set(new CapturedOutput());
+  }
+
+  @Override
+  public void testFinished(Description description) {
+    CapturedOutput output = currentTestOutput.get();
+    currentTestOutput.remove();
+    if (output == null || realOut == null) {
+      return;
+    }
+    // Lock both streams, so that the output of a test is written in one piece
+    synchronized (realOut) {
+      synchronized (realErr) {
+        writeTo(output.out, realOut);
+        writeTo(output.err, realErr);
+      }
+    }
+  }
+
+  private static void writeTo(ByteArrayOutputStream captured, PrintStream stream) {
+    if (captured.size() > 0) {
+      try {
+        captured.writeTo(stream);
+      } catch (IOException e) {
+        // PrintStream doesn't throw IOExceptions, it sets its error flag instead
+      }
+      stream.flush();
+    }
+  }
+
+  /**
+   * Writes to the captured output of the test running on the current thread, or to the real
+   * stream if no test is running on it.
+   */
+  private class CapturingOutputStream extends OutputStream {
+    private final PrintStream realStream;
+    private final boolean isErr;
+
+    CapturingOutputStream(PrintStream realStream, boolean isErr) {
+      this.realStream = realStream;
+      this.isErr = isErr;
+    }
+
+    private OutputStream target() {
+      CapturedOutput output = currentTestOutput.get();
+      if (output == null) {
+        return realStream;
+      }
+      return isErr ? output.err : output.out;
+    }
+
+    @Override
+    public void write(int b) {
+      OutputStream target = target();
+      try {
+        target.write(b);
+      } catch (IOException e) {
+        // Neither PrintStream nor ByteArrayOutputStream throw IOExceptions
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      OutputStream target = target();
+      try {
+        target.write(b, off, len);
+      } catch (IOException e) {
+        // Neither PrintStream nor ByteArrayOutputStream throw IOExceptions
+      }
+    }
+
+    @Override
+    public void flush() {
+      realStream.flush();
+    }
+  }
+}
@@ -14,6 +14,7 @@
 
 package com.google.testing.junit.runner.sharding;
 
+import com.google.testing.junit.runner.util.TestEnvironment;
 import java.io.File;
 import java.io.IOException;
 import javax.inject.Inject;
@@ -40,7 +41,7 @@ public class ShardingEnvironment {
    * Return true iff the current test should be sharded.
    */
   public boolean isShardingEnabled() {
-    return System.getenv("TEST_TOTAL_SHARDS") != null;
+    return TestEnvironment.get("TEST_TOTAL_SHARDS") != null;
   }
 
   /**
@@ -49,7 +50,7 @@ public class ShardingEnvironment {
    * If the environment does not specify a test shard number, returns 0.
    */
   public int getShardIndex() {
-    String shardIndex = System.getenv("TEST_SHARD_INDEX");
+    String shardIndex = TestEnvironment.get("TEST_SHARD_INDEX");
     return shardIndex == null ? 0 : Integer.parseInt(shardIndex);
   }
 
@@ -58,7 +59,7 @@ public class ShardingEnvironment {
    * test environment.
    */
   public int getTotalShards() {
-    String totalShards = System.getenv("TEST_TOTAL_SHARDS");
+    String totalShards = TestEnvironment.get("TEST_TOTAL_SHARDS");
     return totalShards == null ? 1 : Integer.parseInt(totalShards);
   }
 
@@ -67,7 +68,7 @@ public class ShardingEnvironment {
    * being sharded.
    */
   public void touchShardFile() {
-    String shardStatusPath = System.getenv("TEST_SHARD_STATUS_FILE");
+    String shardStatusPath = TestEnvironment.get("TEST_SHARD_STATUS_FILE");
     File shardFile = (shardStatusPath == null ? null : new File(shardStatusPath));
     touchShardFile(shardFile);
   }
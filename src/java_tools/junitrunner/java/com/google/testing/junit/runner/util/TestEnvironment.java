@@ -0,0 +1,49 @@
+// Copyright 2019 The Bazel Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.testing.junit.runner.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The environment variables the test runner reads, such as the sharding and XML output variables.
+ *
+ * <p>A persistent test runner serves every run of a test from the same process, so the variables
+ * that differ between runs come with each request and override those of the process.
+ */
+public final class TestEnvironment {
+  private static volatile Map<String, String> overrides = Collections.emptyMap();
+
+  private TestEnvironment() {}
+
+  /** Returns the value of the variable, or null if it is not set. */
+  public static String get(String name) {
+    String value = overrides.get(name);
+    return value != null ? value : System.getenv(name);
+  }
+
+  /** Returns all variables, with the overrides applied to the environment of the process. */
+  public static Map<String, String> getAll() {
+    Map<String, String> env = new HashMap<>(System.getenv());
+    env.putAll(overrides);
+    return Collections.unmodifiableMap(env);
+  }
+
+  /** Sets the variables that take precedence over the environment of the process. */
+  public static void setOverrides(Map<String, String> variables) {
+    overrides = Collections.unmodifiableMap(new HashMap<>(variables));
+  }
+}
@@ -0,0 +1,206 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.testing.coverage;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.core.instr.Instrumenter;
+import org.jacoco.core.runtime.IRuntime;
+import org.jacoco.core.runtime.LoggerRuntime;
+import org.jacoco.core.runtime.RuntimeData;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link JacocoCoverageRunner}. */
+@RunWith(JUnit4.class)
+public class JacocoCoverageRunnerTest {
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  /** Covered by the test. */
+  public static class Sign implements IntUnaryOperator {
+    @Override
+    public int applyAsInt(int value) {
+      if (value < 0) {
+        return -1;
+      } else if (value > 0) {
+        return 1;
+      }
+      return 0;
+    }
+  }
+
+  /** Covered by the test. */
+  public static class Clamp implements IntUnaryOperator {
+    @Override
+    public int applyAsInt(int value) {
+      return value > 10 ? 10 : value;
+    }
+  }
+
+  /** Covered by the test. */
+  public static class Collatz implements IntUnaryOperator {
+    @Override
+    public int applyAsInt(int value) {
+      int steps = 0;
+      while (value > 1) {
+        value = value % 2 == 0 ? value / 2 : 3 * value + 1;
+        steps++;
+      }
+      return steps;
+    }
+  }
+
+  /** Never run by the test. */
+  public static class Unused implements IntUnaryOperator {
+    @Override
+    public int applyAsInt(int value) {
+      return value == 0 ? 1 : value;
+    }
+  }
+
+  private static final ImmutableList<Class<?>> FIRST_JAR_CLASSES =
+      ImmutableList.of(Sign.class, Clamp.class);
+  private static final ImmutableList<Class<?>> SECOND_JAR_CLASSES =
+      ImmutableList.of(Clamp.class, Collatz.class, Unused.class);
+
+  /** Defines instrumented classes in place of the originals. */
+  private static class InstrumentedClassLoader extends ClassLoader {
+    private final Map<String, byte[]> classes;
+
+    InstrumentedClassLoader(Map<String, byte[]> classes) {
+      super(JacocoCoverageRunnerTest.class.getClassLoader());
+      this.classes = classes;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      byte[] bytes = classes.get(name);
+      if (bytes == null) {
+        return super.loadClass(name, resolve);
+      }
+      synchronized (getClassLoadingLock(name)) {
+        Class<?> loaded = findLoadedClass(name);
+        return loaded != null ? loaded : defineClass(name, bytes, 0, bytes.length);
+      }
+    }
+  }
+
+  private static byte[] classBytes(Class<?> clazz) throws IOException {
+    String resource = "/" + clazz.getName().replace('.', '/') + ".class";
+    try (InputStream in = clazz.getResourceAsStream(resource)) {
+      return ByteStreams.toByteArray(in);
+    }
+  }
+
+  /** Runs some of the classes with Jacoco and returns the execution data. */
+  private static byte[] collectExecutionData() throws Exception {
+    IRuntime runtime = new LoggerRuntime();
+    Instrumenter instrumenter = new Instrumenter(runtime);
+    Map<String, byte[]> instrumented = new HashMap<>();
+    for (Class<?> clazz : ImmutableList.of(Sign.class, Clamp.class, Collatz.class, Unused.class)) {
+      instrumented.put(
+          clazz.getName(), instrumenter.instrument(classBytes(clazz), clazz.getName()));
+    }
+    RuntimeData data = new RuntimeData();
+    runtime.startup(data);
+    try {
+      ClassLoader loader = new InstrumentedClassLoader(instrumented);
+      for (Class<?> clazz : ImmutableList.of(Sign.class, Clamp.class, Collatz.class)) {
+        IntUnaryOperator operator =
+            (IntUnaryOperator) loader.loadClass(clazz.getName()).getConstructor().newInstance();
+        operator.applyAsInt(-5);
+        operator.applyAsInt(7);
+      }
+    } finally {
+      runtime.shutdown();
+    }
+    ExecutionDataStore executionData = new ExecutionDataStore();
+    SessionInfoStore sessionInfos = new SessionInfoStore();
+    data.collect(executionData, sessionInfos, false);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ExecutionDataWriter writer = new ExecutionDataWriter(out);
+    sessionInfos.accept(writer);
+    executionData.accept(writer);
+    return out.toByteArray();
+  }
+
+  /** Writes a metadata jar with the uninstrumented classes, as Bazel does for coverage. */
+  private File writeMetadataJar(String name, List<Class<?>> classes) throws IOException {
+    File jar = temporaryFolder.newFile(name);
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+      for (Class<?> clazz : classes) {
+        out.putNextEntry(
+            new JarEntry(clazz.getName().replace('.', '/') + ".class.uninstrumented"));
+        out.write(classBytes(clazz));
+        out.closeEntry();
+      }
+      out.putNextEntry(new JarEntry(name + "-paths-for-coverage.txt"));
+      out.write(
+          "javatests/com/google/testing/coverage/JacocoCoverageRunnerTest.java\n".getBytes(UTF_8));
+      out.closeEntry();
+    }
+    return jar;
+  }
+
+  private String createReport(byte[] executionData, int parallelism, File... metadataJars)
+      throws IOException {
+    File report = temporaryFolder.newFile("coverage" + parallelism + ".dat");
+    JacocoCoverageRunner runner =
+        new JacocoCoverageRunner(
+            new ByteArrayInputStream(executionData), report.getPath(), metadataJars);
+    runner.setParallelism(parallelism);
+    runner.create();
+    return new String(Files.readAllBytes(report.toPath()), UTF_8);
+  }
+
+  @Test
+  public void parallelReportIsSameAsSerialReport() throws Exception {
+    byte[] executionData = collectExecutionData();
+    File firstJar = writeMetadataJar("first.jar", FIRST_JAR_CLASSES);
+    File secondJar = writeMetadataJar("second.jar", SECOND_JAR_CLASSES);
+
+    String serial = createReport(executionData, 1, firstJar, secondJar);
+    String parallel = createReport(executionData, 4, firstJar, secondJar);
+
+    assertThat(serial)
+        .contains("SF:javatests/com/google/testing/coverage/JacocoCoverageRunnerTest.java\n");
+    assertThat(serial).contains("FN:");
+    assertThat(serial).contains("BA:");
+    assertThat(parallel).isEqualTo(serial);
+  }
+}
@@ -0,0 +1,85 @@
+// Copyright 2019 The Bazel Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.testing.junit.runner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link JvmStateSnapshot}. */
+@RunWith(JUnit4.class)
+public class JvmStateSnapshotTest {
+  private static final String PROPERTY = "com.google.testing.junit.runner.JvmStateSnapshotTest";
+
+  @Test
+  public void testNoChanges() {
+    assertThat(JvmStateSnapshot.take().findChanges()).isEmpty();
+  }
+
+  @Test
+  public void testSystemPropertyChanged() {
+    JvmStateSnapshot snapshot = JvmStateSnapshot.take();
+    System.setProperty(PROPERTY, "value");
+    try {
+      assertThat(snapshot.findChanges())
+          .containsExactly("system property " + PROPERTY + " changed from null to value");
+    } finally {
+      System.clearProperty(PROPERTY);
+    }
+    assertThat(snapshot.findChanges()).isEmpty();
+  }
+
+  @Test
+  public void testDefaultLocaleChanged() {
+    Locale previous = Locale.getDefault();
+    Locale other = previous.equals(Locale.GERMAN) ? Locale.FRENCH : Locale.GERMAN;
+    JvmStateSnapshot snapshot = JvmStateSnapshot.take();
+    Locale.setDefault(other);
+    try {
+      assertThat(snapshot.findChanges()).containsExactly("default locale changed to " + other);
+    } finally {
+      Locale.setDefault(previous);
+    }
+  }
+
+  @Test
+  public void testNonDaemonThreadLeftRunning() throws Exception {
+    JvmStateSnapshot snapshot = JvmStateSnapshot.take();
+    CountDownLatch stop = new CountDownLatch(1);
+    Thread thread =
+        new Thread(
+            () -> {
+              try {
+                stop.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            },
+            "left-running");
+    thread.start();
+    try {
+      assertThat(snapshot.findChanges())
+          .containsExactly("non-daemon thread left-running is still running");
+    } finally {
+      stop.countDown();
+      thread.join();
+    }
+    assertThat(snapshot.findChanges()).isEmpty();
+  }
+}
@@ -17,6 +17,7 @@ package com.google.testing.junit.runner.junit4;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.devtools.build.lib.testutil.MoreAsserts.assertThrows;
 import static com.google.testing.junit.runner.junit4.JUnit4Config.JUNIT_API_VERSION_PROPERTY;
+import static com.google.testing.junit.runner.junit4.JUnit4Config.PARALLEL_TEST_CLASSES_PROPERTY;
 import static com.google.testing.junit.runner.junit4.JUnit4Config.SHOULD_INSTALL_SECURITY_MANAGER_PROPERTY;
 
 import com.google.testing.junit.runner.util.GoogleTestSecurityManager;
@@ -104,4 +105,29 @@ public class JUnit4ConfigTest {
     JUnit4Config config = createConfigWithProperties(properties);
     assertThat(config.shouldInstallSecurityManager()).isFalse();
   }
+
+  @Test
+  public void testGetParallelTestClasses_defaultValue() {
+    JUnit4Config config = createConfigWithProperties(new Properties());
+    assertThat(config.getParallelTestClasses()).isEqualTo(1);
+  }
+
+  @Test
+  public void testGetParallelTestClasses() {
+    Properties properties = new Properties();
+    properties.put(PARALLEL_TEST_CLASSES_PROPERTY, "4");
+    JUnit4Config config = createConfigWithProperties(properties);
+    assertThat(config.getParallelTestClasses()).isEqualTo(4);
+  }
+
+  @Test
+  public void testGetParallelTestClasses_failsIfNotPositive() {
+    Properties properties = new Properties();
+    properties.put(PARALLEL_TEST_CLASSES_PROPERTY, "0");
+    JUnit4Config config = createConfigWithProperties(properties);
+
+    IllegalStateException expected =
+        assertThrows(IllegalStateException.class, () -> config.getParallelTestClasses());
+    assertThat(expected).hasMessageThat().contains(PARALLEL_TEST_CLASSES_PROPERTY + "=0");
+  }
 }
@@ -51,6 +51,8 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 import org.junit.After;
 import org.junit.Test;
@@ -397,6 +399,35 @@ public class JUnit4RunnerTest {
     assertThat(e).hasMessageThat().startsWith("Unsupported JUnit Runner API version");
   }
 
+  @Test
+  public void testParallelTestClasses() throws Exception {
+    Properties properties = createProperties("1", false);
+    properties.setProperty(JUnit4Config.PARALLEL_TEST_CLASSES_PROPERTY, "2");
+    config = new JUnit4Config(null, null, null, properties);
+    // Each test waits for the other, so they only pass if they run at the same time
+    SampleConcurrentTest.barrier = new CyclicBarrier(2);
+
+    ByteArrayOutputStream testOutput = new ByteArrayOutputStream();
+    PrintStream previousOut = System.out;
+    System.setOut(new PrintStream(testOutput, true));
+    Result result;
+    try {
+      result = createRunner(SampleConcurrentSuite.class).run();
+    } finally {
+      System.setOut(previousOut);
+    }
+
+    assertWithMessage(result.getFailures().toString())
+        .that(result.getFailureCount())
+        .isEqualTo(0);
+    assertThat(result.getRunCount()).isEqualTo(2);
+    // The output of each test is written in one piece after the test finished
+    String output = new String(testOutput.toByteArray(), Charset.defaultCharset());
+    assertThat(output).contains("start First\nend First\n");
+    assertThat(output).contains("start Second\nend Second\n");
+    assertThat(System.out).isSameInstanceAs(previousOut);
+  }
+
   /**
    * Uninstall {@link GoogleTestSecurityManager} if it is installed. If it was installed, it will
    * be reinstalled after the test completes.
@@ -510,6 +541,34 @@ public class JUnit4RunnerTest {
   public static class SampleSuite {}
 
 
+  /** Sample test that waits for another instance to run at the same time. */
+  public abstract static class SampleConcurrentTest {
+    static CyclicBarrier barrier;
+
+    @Test
+    public void testThatWaitsForOtherTest() throws Exception {
+      String name = getClass().getSimpleName();
+      System.out.println("start " + name);
+      barrier.await(10, TimeUnit.SECONDS);
+      System.out.println("end " + name);
+    }
+  }
+
+  /** First sample concurrent test. */
+  @RunWith(JUnit4.class)
+  public static class First extends SampleConcurrentTest {}
+
+  /** Second sample concurrent test. */
+  @RunWith(JUnit4.class)
+  public static class Second extends SampleConcurrentTest {}
+
+
+  /** Sample suite of tests that need to run concurrently. */
+  @RunWith(Suite.class)
+  @Suite.SuiteClasses({JUnit4RunnerTest.First.class, JUnit4RunnerTest.Second.class})
+  public static class SampleConcurrentSuite {}
+
+
   private static class StubShardingEnvironment extends ShardingEnvironment {
 
     @Override
@@ -16,7 +16,9 @@ package com.google.testing.junit.runner.sharding;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.devtools.build.lib.testutil.TestUtils;
+import com.google.testing.junit.runner.util.TestEnvironment;
 import java.io.File;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -39,4 +41,19 @@ public class ShardingEnvironmentTest {
     }
   }
 
+  /** The persistent test runner passes the shard of each run with the request. */
+  @Test
+  public void testShardFromTestEnvironmentOverrides() {
+    TestEnvironment.setOverrides(
+        ImmutableMap.of("TEST_SHARD_INDEX", "1", "TEST_TOTAL_SHARDS", "3"));
+    try {
+      ShardingEnvironment shardingEnvironment = new ShardingEnvironment();
+      assertThat(shardingEnvironment.isShardingEnabled()).isTrue();
+      assertThat(shardingEnvironment.getShardIndex()).isEqualTo(1);
+      assertThat(shardingEnvironment.getTotalShards()).isEqualTo(3);
+    } finally {
+      TestEnvironment.setOverrides(ImmutableMap.of());
+    }
+  }
+
 }
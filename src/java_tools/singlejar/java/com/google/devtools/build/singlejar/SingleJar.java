@@ -236,10 +236,11 @@ public class SingleJar {
       }
 
       // Copy the jars into the jar file.
+      List<File> jars = new ArrayList<>();
       for (String inputJar : inputJars) {
-        File jar = fileSystem.getFile(inputJar);
-        combiner.addZip(jar);
+        jars.add(fileSystem.getFile(inputJar));
       }
+      combiner.addZips(jars);
 
       // Close the output file. If something goes wrong here, delete the file.
       combiner.close();
@@ -29,12 +29,21 @@ import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.CRC32;
 import java.util.zip.Deflater;
@@ -257,6 +266,11 @@ public class ZipCombiner implements AutoCloseable {
     return total;
   }
 
+  /** Number of ZIP files whose central directories {@link #addZips} reads ahead. */
+  private static final int READ_AHEAD_FILES = 16;
+  /** Number of threads {@link #addZips} reads central directories on. */
+  private static final int READ_AHEAD_THREADS = 4;
+
   private final OutputMode mode;
   private final ZipEntryFilter entryFilter;
   private final FilterCallback callback;
@@ -277,7 +291,10 @@ public class ZipCombiner implements AutoCloseable {
     this.mode = mode;
     this.entryFilter = entryFilter;
     this.callback = new FilterCallback();
-    this.out = new ZipWriter(new BufferedOutputStream(out), UTF_8);
+    // ZipWriter buffers file output itself so it can copy entries directly between files
+    this.out =
+        new ZipWriter(
+            out instanceof FileOutputStream ? out : new BufferedOutputStream(out), UTF_8);
     this.entries = new HashMap<>();
     this.actions = new HashMap<>();
   }
@@ -426,26 +443,99 @@ public class ZipCombiner implements AutoCloseable {
    */
   public void addZip(File zipFile) throws IOException {
     try (ZipReader zip = new ZipReader(zipFile)) {
-      for (ZipFileEntry entry : zip.entries()) {
-        String filename = entry.getName();
-        EntryAction action = getAction(filename);
-        switch (action.getType()) {
-          case SKIP:
-            break;
-          case COPY:
-          case RENAME:
-            writeEntry(zip, entry, action);
-            break;
-          case MERGE:
-            entries.put(filename, null);
-            InputStream in = zip.getRawInputStream(entry);
-            if (entry.getMethod() == Compression.DEFLATED) {
-              in = new InflaterInputStream(in, getInflater());
-            }
-            action.getStrategy().merge(in, action.getMergeBuffer());
-            break;
+      addZip(zip);
+    }
+  }
+
+  /**
+   * Adds the contents of the given ZIP files to the combined ZIP file in order, with the same
+   * result as calling {@link #addZip(File)} for each of them. The central directories of the next
+   * few ZIP files are read on background threads while the entries of earlier ones are written.
+   *
+   * @param zipFiles the ZIP files to add to the combined ZIP file
+   * @throws IOException if there is an error reading the ZIP files or writing entries to the
+   *     combined ZIP file
+   */
+  public void addZips(List<File> zipFiles) throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(READ_AHEAD_THREADS, runnable -> {
+      Thread thread = new Thread(runnable, "zip-combiner-reader");
+      thread.setDaemon(true);
+      return thread;
+    });
+    Deque<Future<ZipReader>> readers = new ArrayDeque<>();
+    try {
+      Iterator<File> next = zipFiles.iterator();
+      while (next.hasNext() || !readers.isEmpty()) {
+        // Keep a bounded number of files open ahead of the one being written
+        while (next.hasNext() && readers.size() < READ_AHEAD_FILES) {
+          File zipFile = next.next();
+          readers.add(executor.submit(() -> new ZipReader(zipFile)));
+        }
+        try (ZipReader zip = getReader(readers.remove())) {
+          addZip(zip);
+        }
+      }
+    } finally {
+      // This part only finds readers left if an exception occurred. Cancelling them wouldn't stop
+      // a task that's already opening its file, so wait for each of them and close the result.
+      for (Future<ZipReader> reader : readers) {
+        try {
+          getReader(reader).close();
+        } catch (IOException | RuntimeException e) {
+          // There's already an exception in progress.
         }
       }
+      executor.shutdown();
+    }
+  }
+
+  private static ZipReader getReader(Future<ZipReader> reader) throws IOException {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return reader.get();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof IOException) {
+            throw (IOException) e.getCause();
+          } else if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+          } else if (e.getCause() instanceof Error) {
+            throw (Error) e.getCause();
+          }
+          throw new IllegalStateException(e.getCause());
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /** Adds the contents of an open ZIP file to the combined ZIP file. */
+  private void addZip(ZipReader zip) throws IOException {
+    for (ZipFileEntry entry : zip.entries()) {
+      String filename = entry.getName();
+      EntryAction action = getAction(filename);
+      switch (action.getType()) {
+        case SKIP:
+          break;
+        case COPY:
+        case RENAME:
+          writeEntry(zip, entry, action);
+          break;
+        case MERGE:
+          entries.put(filename, null);
+          InputStream in = zip.getRawInputStream(entry);
+          if (entry.getMethod() == Compression.DEFLATED) {
+            in = new InflaterInputStream(in, getInflater());
+          }
+          action.getStrategy().merge(in, action.getMergeBuffer());
+          break;
+      }
     }
   }
 
@@ -540,8 +630,12 @@ public class ZipCombiner implements AutoCloseable {
       outEntry.setMethod(Compression.STORED);
       outEntry.setCompressedSize(entry.getSize());
     } else {
-      // Entry compression agrees with output mode; use the raw file data as is.
-      data = zip.getRawInputStream(entry);
+      // Entry compression agrees with output mode; copy the raw file data as is.
+      out.putNextEntry(outEntry);
+      out.writeRawData(zip, entry);
+      out.closeEntry();
+      entries.put(outEntry.getName(), outEntry);
+      return;
     }
     writeEntry(outEntry, data);
   }
@@ -37,6 +37,11 @@ final class CountingOutputStream extends FilterOutputStream {
     return count;
   }
 
+  /** Counts bytes that were written to the wrapped stream's destination by other means. */
+  void addCount(long bytes) {
+    count += bytes;
+  }
+
   @Override public void write(int b) throws IOException {
     out.write(b);
     count++;
@@ -22,7 +22,10 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.zip.ZipEntry;
@@ -172,6 +175,60 @@ public class ZipReader implements Closeable, AutoCloseable {
     return new ZipEntryInputStream(this, entry, /* raw */ true);
   }
 
+  /**
+   * Transfers the raw contents of the specified ZIP file entry to the given channel, using
+   * {@link FileChannel#transferTo} so that the operating system can copy the data without it
+   * passing through the Java heap.
+   *
+   * <p><em>NOTE:</em> No inflating will take place; The data transferred will be the exact byte
+   * content of the ZIP file entry on disk. Unlike the streams returned by
+   * {@link #getRawInputStream}, this method only uses positional reads, so it may be called
+   * concurrently with other transfers from the same ZIP file.
+   *
+   * @param entry the ZIP file entry
+   * @param target the channel to transfer the contents of the entry to
+   * @return the number of bytes transferred, which is the compressed size of the entry
+   * @throws ZipException if a ZIP format error has occurred
+   * @throws IOException if an I/O error has occurred
+   */
+  public long transferRawTo(ZipFileEntry entry, WritableByteChannel target) throws IOException {
+    if (!zipData.getEntry(entry.getName()).equals(entry)) {
+      throw new ZipException(String.format(
+          "Zip file '%s' does not contain the requested entry '%s'.", file.getName(),
+          entry.getName()));
+    }
+    FileChannel channel = in.getChannel();
+    ByteBuffer fileHeader = ByteBuffer.allocate(LocalFileHeader.FIXED_DATA_SIZE);
+    while (fileHeader.hasRemaining()) {
+      if (channel.read(fileHeader, entry.getLocalHeaderOffset() + fileHeader.position()) < 0) {
+        throw new ZipException(String.format("The file '%s' is not a correctly formatted zip "
+            + "file: Unexpected end of file while reading the File Header at file offset %d.",
+            file.getName(), entry.getLocalHeaderOffset()));
+      }
+    }
+    byte[] header = fileHeader.array();
+    if (!ZipUtil.arrayStartsWith(header, ZipUtil.intToLittleEndian(LocalFileHeader.SIGNATURE))) {
+      throw new ZipException(String.format("The file '%s' is not a correctly formatted zip file: "
+          + "Expected a File Header at file offset %d, but was not present.",
+          file.getName(), entry.getLocalHeaderOffset()));
+    }
+    long dataOffset = entry.getLocalHeaderOffset() + LocalFileHeader.FIXED_DATA_SIZE
+        + ZipUtil.getUnsignedShort(header, LocalFileHeader.FILENAME_LENGTH_OFFSET)
+        + ZipUtil.getUnsignedShort(header, LocalFileHeader.EXTRA_FIELD_LENGTH_OFFSET);
+    long size = entry.getCompressedSize();
+    long transferred = 0;
+    while (transferred < size) {
+      long n = channel.transferTo(dataOffset + transferred, size - transferred, target);
+      if (n <= 0 && dataOffset + transferred >= channel.size()) {
+        throw new ZipException(String.format("The file '%s' is not a correctly formatted zip "
+            + "file: Unexpected end of file while reading the data of entry '%s'.",
+            file.getName(), entry.getName()));
+      }
+      transferred += n;
+    }
+    return transferred;
+  }
+
   /**
    * Closes the ZIP file.
    *
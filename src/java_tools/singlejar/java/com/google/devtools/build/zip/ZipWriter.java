@@ -16,17 +16,26 @@ package com.google.devtools.build.zip;
 
 import com.google.devtools.build.zip.ZipFileEntry.Flag;
 
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.zip.ZipException;
 
 /**
  * This class implements an output stream filter for writing files in the ZIP file format. It does
  * not perform its own compression and so allows writing of already compressed file data.
+ *
+ * <p>When writing to a {@link FileOutputStream}, the writer buffers its output itself and copies
+ * the data of entries from other ZIP files with {@link #writeRawData} directly between the files.
  */
 public class ZipWriter extends OutputStream {
   private final CountingOutputStream stream;
+  /** The channel of the output file, or null if not writing to a file. */
+  private final FileChannel fileChannel;
   private final ZipFileData zipData;
   private final boolean allowZip64;
   private boolean writingPrefix;
@@ -52,7 +61,13 @@ public class ZipWriter extends OutputStream {
    * @param allowZip64 whether the output Zip should be allowed to use Zip64 extensions 
    */
   public ZipWriter(OutputStream out, Charset charset, boolean allowZip64) {
-    this.stream = new CountingOutputStream(out);
+    if (out instanceof FileOutputStream) {
+      this.fileChannel = ((FileOutputStream) out).getChannel();
+      this.stream = new CountingOutputStream(new BufferedOutputStream(out));
+    } else {
+      this.fileChannel = null;
+      this.stream = new CountingOutputStream(out);
+    }
     this.zipData = new ZipFileData(charset);
     this.allowZip64 = allowZip64;
     this.finished = false;
@@ -139,6 +154,38 @@ public class ZipWriter extends OutputStream {
     bytesWritten += len;
   }
 
+  /**
+   * Writes the raw, possibly compressed, data of an entry in another ZIP file as the data of the
+   * current entry. When writing to a file, the data is copied directly from the input to the
+   * output file without passing through the Java heap.
+   *
+   * @param zip the ZIP file to copy the data from
+   * @param zipEntry the entry of {@code zip} whose data to copy
+   * @throws ZipException if a ZIP format error has occurred
+   * @throws IOException if an I/O error has occurred
+   */
+  public synchronized void writeRawData(ZipReader zip, ZipFileEntry zipEntry) throws IOException {
+    checkNotFinished();
+    if (entry == null) {
+      throw new ZipException("Cannot write zip contents without first setting a ZipEntry.");
+    }
+    if (fileChannel != null) {
+      // Make sure everything written so far is in the file before appending to it directly
+      stream.flush();
+      long transferred = zip.transferRawTo(zipEntry, fileChannel);
+      stream.addCount(transferred);
+      bytesWritten += transferred;
+    } else {
+      try (InputStream in = zip.getRawInputStream(zipEntry)) {
+        byte[] buf = new byte[0x10000];
+        int r;
+        while ((r = in.read(buf)) != -1) {
+          write(buf, 0, r);
+        }
+      }
+    }
+  }
+
   /**
    * Finishes writing the contents of the ZIP output stream without closing the underlying stream.
    * Use this method when applying multiple filters in succession to the same output stream.
@@ -152,6 +199,7 @@ public class ZipWriter extends OutputStream {
       finishEntry();
     }
     writeCentralDirectory();
+    stream.flush();
     finished = true;
   }
 
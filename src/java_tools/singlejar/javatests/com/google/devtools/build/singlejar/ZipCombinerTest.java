@@ -30,6 +30,7 @@ import com.google.devtools.build.zip.ZipUtil;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -134,6 +135,39 @@ public class ZipCombinerTest {
     assertEntry(zipInput, filename, date.getTime(), content.getBytes(ISO_8859_1));
   }
 
+  @Test
+  public void testFileOutputIsIdenticalToStreamOutput() throws IOException {
+    List<File> inputs =
+        Arrays.asList(sampleZipWithTwoEntries(), sampleZipWithOneUncompressedEntry(),
+            sampleZip2());
+    for (OutputMode mode : OutputMode.values()) {
+      ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      try (ZipCombiner zipCombiner = new ZipCombiner(mode, expected)) {
+        zipCombiner.addFile("a.txt", ZipCombiner.DOS_EPOCH, new ByteArrayInputStream(new byte[1]));
+        for (File input : inputs) {
+          zipCombiner.addZip(input);
+        }
+      }
+      // Writing to a file copies the entries' data directly from the input files
+      File actual = tmp.newFile();
+      try (ZipCombiner zipCombiner = new ZipCombiner(mode, new FileOutputStream(actual))) {
+        zipCombiner.addFile("a.txt", ZipCombiner.DOS_EPOCH, new ByteArrayInputStream(new byte[1]));
+        zipCombiner.addZips(inputs);
+      }
+      assertThat(Files.readAllBytes(actual.toPath())).isEqualTo(expected.toByteArray());
+    }
+  }
+
+  @Test
+  public void testAddZipsReportsMissingFile() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ZipCombiner zipCombiner = new ZipCombiner(out)) {
+      List<File> inputs = Arrays.asList(sampleZip(), new File(tmp.getRoot(), "missing.zip"));
+      assertThrows(IOException.class, () -> zipCombiner.addZips(inputs));
+      assertThat(zipCombiner.containsFile("hello.txt")).isTrue();
+    }
+  }
+
   @Test
   public void testCompressedDontCare() throws IOException {
     ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -44,6 +44,7 @@ import com.google.devtools.build.lib.vfs.PathFragment;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.lang.ref.SoftReference;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -289,6 +290,13 @@ public final class Runfiles implements RunfilesApi {
    */
   private final boolean legacyExternalRunfiles;
 
+  /**
+   * The entries of the runfiles tree computed by {@link #getRunfilesInputs}, unless collected, or
+   * null if they were never cached. Only set without pruning manifests, when the entries don't
+   * depend on the execution phase.
+   */
+  @Nullable private volatile SoftReference<RunfilesManifest> cachedRunfilesInputs;
+
   @AutoCodec.Instantiator
   @VisibleForSerialization
   Runfiles(
@@ -436,11 +444,32 @@ public final class Runfiles implements RunfilesApi {
    *     symlinks are silently discarded, and conflicts are overwritten.
    * @param location Location for eventHandler warnings. Ignored if eventHandler is null.
    * @param resolver The {@link ArtifactPathResolver} to use for the pruning manifest, if present.
-   * @return Map<PathFragment, Artifact> path fragment to artifact, of normal source tree entries
-   *     and elements that live outside the source tree. Null values represent empty input files.
+   * @return path fragment to artifact, of normal source tree entries and elements that live
+   *     outside the source tree, sorted by path. Null values represent empty input files.
    */
-  public Map<PathFragment, Artifact> getRunfilesInputs(EventHandler eventHandler, Location location,
+  public RunfilesManifest getRunfilesInputs(EventHandler eventHandler, Location location,
       ArtifactPathResolver resolver) throws IOException {
+    // Without pruning manifests, the entries only depend on this object. They are computed again
+    // when events may need to be reported.
+    boolean cacheable = pruningManifests.isEmpty();
+    SoftReference<RunfilesManifest> cachedReference = cachedRunfilesInputs;
+    if (cacheable && eventHandler == null && cachedReference != null) {
+      RunfilesManifest cached = cachedReference.get();
+      if (cached != null) {
+        return cached;
+      }
+    }
+    RunfilesManifest runfilesInputs =
+        RunfilesManifest.copyOf(computeRunfilesInputs(eventHandler, location, resolver));
+    if (cacheable) {
+      cachedRunfilesInputs = new SoftReference<>(runfilesInputs);
+    }
+    return runfilesInputs;
+  }
+
+  private Map<PathFragment, Artifact> computeRunfilesInputs(
+      EventHandler eventHandler, Location location, ArtifactPathResolver resolver)
+      throws IOException {
     ConflictChecker checker = new ConflictChecker(conflictPolicy, eventHandler, location);
     Map<PathFragment, Artifact> manifest = getSymlinksAsMap(checker);
     // Add unconditional artifacts (committed to inclusion on construction of runfiles).
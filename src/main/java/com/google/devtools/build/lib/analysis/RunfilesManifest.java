@@ -0,0 +1,131 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.analysis;
+
+import com.google.common.base.Preconditions;
+import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.concurrent.ThreadSafety.Immutable;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * The entries of a runfiles tree, mapping paths relative to the runfiles directory to artifacts.
+ * Null values represent empty files.
+ *
+ * <p>The entries are kept in two arrays sorted by path, which takes a fraction of the memory of a
+ * hash map. Entries are iterated in path order, the order of manifest files, and created as they
+ * are iterated. {@link #get} and {@link #containsKey} are O(log(n)) using binary search.
+ *
+ * <p>This map is immutable.
+ */
+@Immutable
+public final class RunfilesManifest extends AbstractMap<PathFragment, Artifact> {
+
+  private static final RunfilesManifest EMPTY =
+      new RunfilesManifest(new PathFragment[0], new Artifact[0]);
+
+  private final PathFragment[] paths;
+  private final Artifact[] artifacts;
+
+  private RunfilesManifest(PathFragment[] paths, Artifact[] artifacts) {
+    this.paths = paths;
+    this.artifacts = artifacts;
+  }
+
+  /** Returns a manifest with the entries of {@code entries}, which must not have null keys. */
+  public static RunfilesManifest copyOf(Map<PathFragment, Artifact> entries) {
+    if (entries instanceof RunfilesManifest) {
+      return (RunfilesManifest) entries;
+    }
+    if (entries.isEmpty()) {
+      return EMPTY;
+    }
+    PathFragment[] paths = entries.keySet().toArray(new PathFragment[0]);
+    Arrays.sort(paths);
+    Artifact[] artifacts = new Artifact[paths.length];
+    for (int i = 0; i < paths.length; i++) {
+      artifacts[i] = entries.get(Preconditions.checkNotNull(paths[i]));
+    }
+    return new RunfilesManifest(paths, artifacts);
+  }
+
+  @Override
+  public int size() {
+    return paths.length;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return paths.length == 0;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return indexOf(key) >= 0;
+  }
+
+  @Override
+  @Nullable
+  public Artifact get(Object key) {
+    int index = indexOf(key);
+    return index >= 0 ? artifacts[index] : null;
+  }
+
+  private int indexOf(Object key) {
+    if (!(key instanceof PathFragment)) {
+      return -1;
+    }
+    return Arrays.binarySearch(paths, (PathFragment) key);
+  }
+
+  @Override
+  public Set<Map.Entry<PathFragment, Artifact>> entrySet() {
+    return new AbstractSet<Map.Entry<PathFragment, Artifact>>() {
+      @Override
+      public int size() {
+        return paths.length;
+      }
+
+      @Override
+      public Iterator<Map.Entry<PathFragment, Artifact>> iterator() {
+        return new Iterator<Map.Entry<PathFragment, Artifact>>() {
+          private int next = 0;
+
+          @Override
+          public boolean hasNext() {
+            return next < paths.length;
+          }
+
+          @Override
+          public Map.Entry<PathFragment, Artifact> next() {
+            if (next >= paths.length) {
+              throw new NoSuchElementException();
+            }
+            Map.Entry<PathFragment, Artifact> entry =
+                new AbstractMap.SimpleImmutableEntry<>(paths[next], artifacts[next]);
+            next++;
+            return entry;
+          }
+        };
+      }
+    };
+  }
+}
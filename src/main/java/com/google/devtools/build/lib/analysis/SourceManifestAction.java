@@ -34,11 +34,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 import java.util.Map;
 import javax.annotation.Nullable;
 
@@ -135,7 +131,7 @@ public final class SourceManifestAction extends AbstractFileWriteAction {
   @Override
   public DeterministicWriter newDeterministicWriter(ActionExecutionContext ctx)
       throws IOException {
-    final Map<PathFragment, Artifact> runfilesInputs =
+    final RunfilesManifest runfilesInputs =
         runfiles.getRunfilesInputs(ctx.getEventHandler(), getOwner().getLocation(),
             ctx.getPathResolver());
     return out -> writeFile(out, runfilesInputs);
@@ -161,32 +157,17 @@ public final class SourceManifestAction extends AbstractFileWriteAction {
   }
 
   /**
-   * Sort the entries in both the normal and root manifests and write the output
-   * file.
+   * Writes the entries of the manifest, which are already sorted by path, to the output file.
    *
    * @param out is the message stream to write errors to.
    * @param output The actual mapping of the output manifest.
    * @throws IOException
    */
-  private void writeFile(OutputStream out, Map<PathFragment, Artifact> output) throws IOException {
+  private void writeFile(OutputStream out, RunfilesManifest output) throws IOException {
     Writer manifestFile = new BufferedWriter(new OutputStreamWriter(out, ISO_8859_1));
-
-    Comparator<Map.Entry<PathFragment, Artifact>> fragmentComparator =
-          new Comparator<Map.Entry<PathFragment, Artifact>>() {
-      @Override
-      public int compare(Map.Entry<PathFragment, Artifact> path1,
-                         Map.Entry<PathFragment, Artifact> path2) {
-        return path1.getKey().compareTo(path2.getKey());
-      }
-    };
-
-    List<Map.Entry<PathFragment, Artifact>> sortedManifest = new ArrayList<>(output.entrySet());
-    Collections.sort(sortedManifest, fragmentComparator);
-
-    for (Map.Entry<PathFragment, Artifact> line : sortedManifest) {
+    for (Map.Entry<PathFragment, Artifact> line : output.entrySet()) {
       manifestWriter.writeEntry(manifestFile, line.getKey(), line.getValue());
     }
-
     manifestFile.flush();
   }
 
@@ -27,6 +27,7 @@ import com.google.devtools.build.lib.actions.Artifact;
 import com.google.devtools.build.lib.concurrent.ThreadSafety.Immutable;
 import com.google.devtools.build.lib.skyframe.serialization.autocodec.AutoCodec;
 import com.google.devtools.build.lib.util.Fingerprint;
+import com.google.devtools.build.lib.vfs.Path;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -102,6 +103,13 @@ public final class SymlinkTreeAction extends AbstractAction {
     env.addTo(fp);
   }
 
+  /**
+   * Keeps the output manifest, which describes the existing tree to an in-process update. Every way
+   * of creating the tree deletes the manifest before changing the tree and writes it back last.
+   */
+  @Override
+  public void prepare(Path execRoot) {}
+
   @Override
   public ActionResult execute(ActionExecutionContext actionExecutionContext)
       throws ActionExecutionException, InterruptedException {
@@ -24,6 +24,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Interner;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.MapDifference;
@@ -32,6 +33,7 @@ import com.google.common.collect.Multimap;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 import com.google.devtools.build.lib.cmdline.Label;
+import com.google.devtools.build.lib.concurrent.BlazeInterners;
 import com.google.devtools.build.lib.skyframe.serialization.DeserializationContext;
 import com.google.devtools.build.lib.skyframe.serialization.ObjectCodec;
 import com.google.devtools.build.lib.skyframe.serialization.SerializationContext;
@@ -232,6 +234,73 @@ public final class BuildOptions implements Cloneable, Serializable {
     return new BuildOptions(nativeOptionsBuilder.build(), ImmutableMap.copyOf(skylarkOptionsMap));
   }
 
+  /**
+   * Returns options equal to these whose fragments are shared with {@code base} and with other
+   * options where possible.
+   *
+   * <p>Fragments equal to the fragment of the same class in {@code base} are replaced by that
+   * fragment, and the other fragments by a canonical instance with the same values. The digests of
+   * the resulting fragments are computed once and reused by {@link #equals} and {@link #hashCode}
+   * of all options containing them, and {@link #diff} skips fragments shared by both sides.
+   * Configurations created by transitions thereby cost one pass over the values of their fragments
+   * instead of one per comparison, and hold only the fragments they actually changed.
+   *
+   * <p>This is meant for the output of configuration transitions, which clone their input and
+   * modify some of its fragments. Neither the returned options nor {@code base} may be modified
+   * afterwards.
+   */
+  public BuildOptions withSharedFragments(BuildOptions base) {
+    ImmutableMap.Builder<Class<? extends FragmentOptions>, FragmentOptions> sharedOptions =
+        ImmutableMap.builderWithExpectedSize(fragmentOptionsMap.size());
+    boolean changed = false;
+    for (Map.Entry<Class<? extends FragmentOptions>, FragmentOptions> entry :
+        fragmentOptionsMap.entrySet()) {
+      FragmentOptions options = entry.getValue();
+      FragmentOptions baseOptions = base.fragmentOptionsMap.get(entry.getKey());
+      FragmentOptions shared;
+      if (options == baseOptions) {
+        shared = options;
+        freeze(shared);
+      } else {
+        byte[] digest = fragmentDigest(options);
+        if (baseOptions != null && Arrays.equals(digest, freeze(baseOptions))) {
+          shared = baseOptions;
+        } else {
+          shared = fragmentInterner.intern(options);
+          frozenFragmentDigests.asMap().putIfAbsent(shared, digest);
+        }
+      }
+      changed |= shared != options;
+      sharedOptions.put(entry.getKey(), shared);
+    }
+    return changed ? new BuildOptions(sharedOptions.build(), skylarkOptionsMap) : this;
+  }
+
+  /**
+   * Digests of the {@link FragmentOptions#cacheKey} of fragments that are no longer modified, by
+   * identity. See {@link #withSharedFragments}.
+   */
+  private static final Cache<FragmentOptions, byte[]> frozenFragmentDigests =
+      CacheBuilder.newBuilder().weakKeys().build();
+
+  /** Canonical instances of the fragments of transition outputs. */
+  private static final Interner<FragmentOptions> fragmentInterner =
+      BlazeInterners.newWeakInterner();
+
+  /** Records that {@code options} won't be modified anymore and returns its digest. */
+  private static byte[] freeze(FragmentOptions options) {
+    return frozenFragmentDigests.asMap().computeIfAbsent(options, BuildOptions::digest);
+  }
+
+  private static byte[] fragmentDigest(FragmentOptions options) {
+    byte[] digest = frozenFragmentDigests.getIfPresent(options);
+    return digest != null ? digest : digest(options);
+  }
+
+  private static byte[] digest(FragmentOptions options) {
+    return new Fingerprint().addString(options.cacheKey()).digestAndReset();
+  }
+
   private boolean fingerprintAndHashCodeInitialized() {
     return fingerprint != null;
   }
@@ -257,7 +326,7 @@ public final class BuildOptions implements Cloneable, Serializable {
       for (Map.Entry<Class<? extends FragmentOptions>, FragmentOptions> entry :
           fragmentOptionsMap.entrySet()) {
         fingerprint.addString(entry.getKey().getName());
-        fingerprint.addString(entry.getValue().cacheKey());
+        fingerprint.addBytes(fragmentDigest(entry.getValue()));
       }
       for (Map.Entry<Label, Object> entry : skylarkOptionsMap.entrySet()) {
         fingerprint.addString(entry.getKey().toString());
@@ -72,6 +72,16 @@ public final class ConfigMatchingProvider implements TransitiveInfoProvider {
     return matches;
   }
 
+  /** Returns the names of the native options this matcher's conditions read. */
+  public ImmutableSet<String> getOptionNames() {
+    return settingsMap.keySet();
+  }
+
+  /** Whether any of this matcher's conditions are on label-keyed settings. */
+  public boolean hasFlagSettings() {
+    return !flagSettingsMap.isEmpty();
+  }
+
   /**
    * Returns true if this matcher's conditions are a proper superset of another matcher's
    * conditions, i.e. if this matcher is a specialization of the other one.
@@ -252,11 +252,13 @@ public final class ConfigurationResolver {
             return null;
           }
           toOptions =
-              applyTransition(
-                  currentConfiguration.getOptions(),
-                  transition,
-                  buildSettingPackages,
-                  env.getListener());
+              shareFragments(
+                  applyTransition(
+                      currentConfiguration.getOptions(),
+                      transition,
+                      buildSettingPackages,
+                      env.getListener()),
+                  currentConfiguration.getOptions());
         } catch (TransitionException e) {
           throw new ConfiguredTargetFunction.DependencyEvaluationException(e);
         }
@@ -546,6 +548,20 @@ public final class ConfigurationResolver {
     return StarlarkTransition.validate(transition, buildSettingPackages, result);
   }
 
+  /**
+   * Returns {@code toOptions} with the fragments they have in common with {@code fromOptions}
+   * shared, so that comparing and diffing them against the configurations of the build only looks
+   * at the fragments the transition changed. See {@link BuildOptions#withSharedFragments}.
+   */
+  private static List<BuildOptions> shareFragments(
+      List<BuildOptions> toOptions, BuildOptions fromOptions) {
+    List<BuildOptions> sharedOptions = new ArrayList<>(toOptions.size());
+    for (BuildOptions options : toOptions) {
+      sharedOptions.add(options.withSharedFragments(fromOptions));
+    }
+    return sharedOptions;
+  }
+
   private static BuildOptions addDefaultStarlarkOptions(
       BuildOptions fromOptions, ImmutableMap<Label, Object> buildSettingDefaults) {
     BuildOptions.Builder optionsWithDefaults = null;
@@ -331,6 +331,17 @@ public class BuildRequestOptions extends OptionsBase {
               + "with caution.")
   public boolean useAsyncExecution;
 
+  @Option(
+      name = "experimental_async_output_deletion",
+      defaultValue = "false",
+      documentationCategory = OptionDocumentationCategory.UNDOCUMENTED,
+      effectTags = {OptionEffectTag.EXECUTION},
+      help =
+          "If set to true, old output directories of actions, such as those of tree artifacts, "
+              + "are moved out of the way before the action runs and deleted in the background, "
+              + "instead of being deleted before the action can start.")
+  public boolean asyncOutputDeletion;
+
   /**
    * Converter for jobs: Takes keyword ({@value #FLAG_SYNTAX}). Values must be between 1 and
    * MAX_JOBS.
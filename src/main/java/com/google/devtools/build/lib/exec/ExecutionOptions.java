@@ -478,6 +478,17 @@ public class ExecutionOptions extends OptionsBase {
               + "test log. Otherwise, Bazel generates a test.xml as part of the test action.")
   public boolean splitXmlGeneration;
 
+  @Option(
+      name = "experimental_inprocess_symlink_creation",
+      defaultValue = "false",
+      documentationCategory = OptionDocumentationCategory.EXECUTION_STRATEGY,
+      effectTags = {OptionEffectTag.EXECUTION},
+      help =
+          "If this flag is set, Bazel creates runfiles symlink trees itself instead of running "
+              + "the build-runfiles tool, and only changes the symlinks that differ from the "
+              + "previous manifest of the tree.")
+  public boolean inprocessSymlinkCreation;
+
   /** Converter for the --flaky_test_attempts option. */
   public static class TestAttemptsConverter extends PerLabelOptions.PerLabelOptionsConverter {
     private static final int MIN_VALUE = 1;
@@ -14,15 +14,21 @@
 
 package com.google.devtools.build.lib.exec;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.devtools.build.lib.actions.ActionExecutionContext;
 import com.google.devtools.build.lib.actions.ActionInputHelper;
 import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.CommandLineExpansionException;
 import com.google.devtools.build.lib.actions.ExecException;
 import com.google.devtools.build.lib.actions.ExecutionRequirements;
 import com.google.devtools.build.lib.actions.ExecutionStrategy;
@@ -32,6 +38,8 @@ import com.google.devtools.build.lib.actions.Spawn;
 import com.google.devtools.build.lib.actions.SpawnActionContext;
 import com.google.devtools.build.lib.actions.SpawnContinuation;
 import com.google.devtools.build.lib.actions.SpawnResult;
+import com.google.devtools.build.lib.actions.Spawns;
+import com.google.devtools.build.lib.actions.UserExecException;
 import com.google.devtools.build.lib.analysis.RunfilesSupplierImpl;
 import com.google.devtools.build.lib.analysis.actions.SpawnAction;
 import com.google.devtools.build.lib.analysis.test.TestActionContext;
@@ -41,6 +49,7 @@ import com.google.devtools.build.lib.analysis.test.TestRunnerAction.ResolvedPath
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos;
 import com.google.devtools.build.lib.buildeventstream.TestFileNameConstants;
 import com.google.devtools.build.lib.events.Reporter;
+import com.google.devtools.build.lib.util.Fingerprint;
 import com.google.devtools.build.lib.util.OS;
 import com.google.devtools.build.lib.util.Pair;
 import com.google.devtools.build.lib.util.io.FileOutErr;
@@ -83,6 +92,34 @@ public class StandaloneTestStrategy extends TestStrategy {
 
   public static final TestPolicy DEFAULT_LOCAL_POLICY = new TestPolicy(ENV_VARS);
 
+  /**
+   * Environment variables that differ between the runs, shards and attempts of a test. The
+   * persistent test runner gets them with each request rather than when it starts, so that all runs
+   * of a test share one worker.
+   */
+  private static final ImmutableSet<String> PER_RUN_ENV_VARS =
+      ImmutableSet.of(
+          "TESTBRIDGE_TEST_ONLY",
+          "TEST_RANDOM_SEED",
+          "TEST_SHARD_INDEX",
+          "TEST_TOTAL_SHARDS");
+
+  /** Like {@link #PER_RUN_ENV_VARS}, but with paths that the test setup script made absolute. */
+  private static final ImmutableSet<String> PER_RUN_PATH_ENV_VARS =
+      ImmutableSet.of(
+          "TEST_INFRASTRUCTURE_FAILURE_FILE",
+          "TEST_LOGSPLITTER_OUTPUT_FILE",
+          "TEST_PREMATURE_EXIT_FILE",
+          "TEST_SHARD_STATUS_FILE",
+          "TEST_UNDECLARED_OUTPUTS_ANNOTATIONS",
+          "TEST_UNDECLARED_OUTPUTS_ANNOTATIONS_DIR",
+          "TEST_UNDECLARED_OUTPUTS_DIR",
+          "TEST_UNDECLARED_OUTPUTS_MANIFEST",
+          "TEST_UNDECLARED_OUTPUTS_ZIP",
+          "TEST_UNUSED_RUNFILES_LOG_FILE",
+          "TEST_WARNINGS_OUTPUT_FILE",
+          "XML_OUTPUT_FILE");
+
   protected final Path tmpDirRoot;
 
   public StandaloneTestStrategy(
@@ -121,6 +158,41 @@ public class StandaloneTestStrategy extends TestStrategy {
     }
     executionInfo.put(ExecutionRequirements.TIMEOUT, "" + getTimeout(action).getSeconds());
 
+    ImmutableList<String> args = getArgs(action);
+    ImmutableList<Artifact> tools = ImmutableList.of();
+    Path workerArgsFile = null;
+    Path workerTmpDir = null;
+    ImmutableList<String> requestArgs = ImmutableList.of();
+    if (supportsPersistentTestRunner(action, executionInfo)) {
+      // The test setup script and the test executable start the worker, the per-run environment
+      // and the test arguments are passed in a flag file so that they end up in the work request.
+      // The worker only depends on the test executable, so the runs, shards and attempts of the
+      // test share it. Bazel restarts the worker when any of the tools changes.
+      workerArgsFile = tmpDirRoot.getChild(TestStrategy.getTmpDirName(action) + ".worker_args");
+      workerTmpDir =
+          actionExecutionContext
+              .getPathResolver()
+              .convertPath(tmpDirRoot.getChild(getWorkerTmpDirName(action)));
+      env =
+          setupEnvironment(
+              action, actionExecutionContext.getClientEnv(), execRoot, runfilesDir, workerTmpDir);
+      args = getPersistentTestRunnerArgs(action, workerArgsFile);
+      ImmutableList.Builder<String> requestArgsBuilder = ImmutableList.builder();
+      requestArgsBuilder.addAll(removePerRunEnvironment(env, execRoot));
+      try {
+        requestArgsBuilder.addAll(action.getExecutionSettings().getArgs().arguments());
+      } catch (CommandLineExpansionException e) {
+        throw new UserExecException(e);
+      }
+      requestArgs = requestArgsBuilder.build();
+      tools =
+          ImmutableList.of(
+              action.getTestSetupScript(), action.getExecutionSettings().getExecutable());
+      env.put("PERSISTENT_TEST_RUNNER", "true");
+    } else {
+      executionInfo.remove(ExecutionRequirements.SUPPORTS_WORKERS);
+    }
+
     ResourceSet localResourceUsage =
         action
             .getTestProperties()
@@ -130,18 +202,78 @@ public class StandaloneTestStrategy extends TestStrategy {
     Spawn spawn =
         new SimpleSpawn(
             action,
-            getArgs(action),
+            args,
             ImmutableMap.copyOf(env),
             ImmutableMap.copyOf(executionInfo),
             new RunfilesSupplierImpl(
                 runfilesDir.relativeTo(execRoot), action.getExecutionSettings().getRunfiles()),
             ImmutableMap.of(),
             /*inputs=*/ ImmutableList.copyOf(action.getInputs()),
-            /*tools=*/ ImmutableList.<Artifact>of(),
+            tools,
             ImmutableList.copyOf(action.getSpawnOutputs()),
             localResourceUsage);
     return new StandaloneTestRunnerSpawn(
-        action, actionExecutionContext, spawn, tmpDir, workingDirectory, execRoot);
+        action,
+        actionExecutionContext,
+        spawn,
+        tmpDir,
+        workingDirectory,
+        execRoot,
+        workerArgsFile,
+        workerTmpDir,
+        requestArgs);
+  }
+
+  /**
+   * Returns whether the test declared that it can run in a persistent worker and is run in a way
+   * the worker supports: the test setup script starts the test executable directly.
+   */
+  private static boolean supportsPersistentTestRunner(
+      TestRunnerAction action, Map<String, String> executionInfo) {
+    return "1".equals(executionInfo.get(ExecutionRequirements.SUPPORTS_WORKERS))
+        && OS.getCurrent() != OS.WINDOWS
+        && !action.isUsingTestWrapperInsteadOfTestSetupScript()
+        && !action.isCoverageMode()
+        && action.getExecutionSettings().getRunUnder() == null;
+  }
+
+  /** Returns the name of the temporary directory that the runs of a persistent test share. */
+  private static String getWorkerTmpDirName(TestRunnerAction action) {
+    Fingerprint digest = new Fingerprint();
+    digest.addPath(action.getExecutionSettings().getExecutable().getExecPath());
+    return digest.hexDigestAndReset() + ".worker";
+  }
+
+  /**
+   * Removes the variables that differ between runs of the test from {@code env} and returns them as
+   * {@code --test_env=NAME=VALUE} arguments for the persistent test runner, with paths made
+   * absolute because the runner doesn't run in the exec root.
+   */
+  private static ImmutableList<String> removePerRunEnvironment(
+      Map<String, String> env, Path execRoot) {
+    ImmutableList.Builder<String> testEnv = ImmutableList.builder();
+    for (String name : ImmutableSortedSet.copyOf(env.keySet())) {
+      String value;
+      if (PER_RUN_ENV_VARS.contains(name)) {
+        value = env.remove(name);
+      } else if (PER_RUN_PATH_ENV_VARS.contains(name)) {
+        value = execRoot.getRelative(env.remove(name)).getPathString();
+      } else {
+        continue;
+      }
+      testEnv.add("--test_env=" + name + "=" + value);
+    }
+    return testEnv.build();
+  }
+
+  private static ImmutableList<String> getPersistentTestRunnerArgs(
+      TestRunnerAction action, Path workerArgsFile) {
+    return ImmutableList.of(
+        action.getTestSetupScript().getExecPath().getCallablePathString(),
+        // Anything the script prints to stdout would be mistaken for a work response.
+        "--no_echo",
+        action.getExecutionSettings().getExecutable().getRootRelativePath().getCallablePathString(),
+        "@" + workerArgsFile.getPathString());
   }
 
   private ImmutableList<Pair<String, Path>> renameOutputs(
@@ -392,8 +524,11 @@ public class StandaloneTestStrategy extends TestStrategy {
             "TEST_NAME", action.getTestName(),
             "TEST_BINARY", testBinaryName),
         // Pass the execution info of the action which is identical to the supported tags set on the
-        // test target. In particular, this does not set the test timeout on the spawn.
-        ImmutableMap.copyOf(action.getExecutionInfo()),
+        // test target. In particular, this does not set the test timeout on the spawn. The XML
+        // generation never runs in a persistent worker, even if the test does.
+        ImmutableMap.copyOf(
+            Maps.filterKeys(
+                action.getExecutionInfo(), k -> !k.equals(ExecutionRequirements.SUPPORTS_WORKERS))),
         null,
         ImmutableMap.of(),
         /*inputs=*/ ImmutableList.of(action.getTestXmlGeneratorScript(), action.getTestLog()),
@@ -423,6 +558,9 @@ public class StandaloneTestStrategy extends TestStrategy {
     private final Path tmpDir;
     private final Path workingDirectory;
     private final Path execRoot;
+    @Nullable private final Path workerArgsFile;
+    @Nullable private final Path workerTmpDir;
+    private final ImmutableList<String> requestArgs;
 
     StandaloneTestRunnerSpawn(
         TestRunnerAction testAction,
@@ -430,13 +568,19 @@ public class StandaloneTestStrategy extends TestStrategy {
         Spawn spawn,
         Path tmpDir,
         Path workingDirectory,
-        Path execRoot) {
+        Path execRoot,
+        @Nullable Path workerArgsFile,
+        @Nullable Path workerTmpDir,
+        ImmutableList<String> requestArgs) {
       this.testAction = testAction;
       this.actionExecutionContext = actionExecutionContext;
       this.spawn = spawn;
       this.tmpDir = tmpDir;
       this.workingDirectory = workingDirectory;
       this.execRoot = execRoot;
+      this.workerArgsFile = workerArgsFile;
+      this.workerTmpDir = workerTmpDir;
+      this.requestArgs = requestArgs;
     }
 
     @Override
@@ -448,6 +592,10 @@ public class StandaloneTestStrategy extends TestStrategy {
     public TestAttemptContinuation beginExecution()
         throws InterruptedException, IOException, ExecException {
       prepareFileSystem(testAction, actionExecutionContext.getExecRoot(), tmpDir, workingDirectory);
+      if (workerArgsFile != null) {
+        workerTmpDir.createDirectoryAndParents();
+        FileSystemUtils.writeLinesAs(workerArgsFile, UTF_8, requestArgs);
+      }
       return beginTestAttempt(testAction, spawn, actionExecutionContext, execRoot);
     }
 
@@ -568,6 +716,11 @@ public class StandaloneTestStrategy extends TestStrategy {
       if (streamed != null) {
         streamed.close();
       }
+      boolean persistent = Spawns.supportsWorkers(spawn);
+      if (persistent) {
+        // The test setup script leaves this to Bazel when the test runs in a persistent worker.
+        UndeclaredTestOutputs.process(resolvedPaths);
+      }
 
       // SpawnActionContext guarantees the first entry to correspond to the spawn passed in (there
       // may be additional entries due to tree artifact handling).
@@ -590,9 +743,10 @@ public class StandaloneTestStrategy extends TestStrategy {
       // If the test did not create a test.xml, and --experimental_split_xml_generation is enabled,
       // then we run a separate action to create a test.xml from test.log. We do this as a spawn
       // rather than doing it locally in-process, as the test.log file may only exist remotely (when
-      // remote execution is enabled), and we do not want to have to download it.
+      // remote execution is enabled), and we do not want to have to download it. A test that runs
+      // in a persistent worker always gets its test.xml this way.
       Path xmlOutputPath = resolvedPaths.getXmlOutputPath();
-      if (executionOptions.splitXmlGeneration
+      if ((executionOptions.splitXmlGeneration || persistent)
           && fileOutErr.getOutputPath().exists()
           && !xmlOutputPath.exists()) {
         Spawn xmlGeneratingSpawn = createXmlGeneratingSpawn(testAction, primaryResult);
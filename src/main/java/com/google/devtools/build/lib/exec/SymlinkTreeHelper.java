@@ -13,10 +13,15 @@
 // limitations under the License.
 package com.google.devtools.build.lib.exec;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.devtools.build.lib.actions.ActionExecutionContext;
 import com.google.devtools.build.lib.actions.ExecException;
 import com.google.devtools.build.lib.actions.UserExecException;
@@ -28,8 +33,23 @@ import com.google.devtools.build.lib.util.OsUtils;
 import com.google.devtools.build.lib.util.io.OutErr;
 import com.google.devtools.build.lib.vfs.FileSystemUtils;
 import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import com.google.devtools.build.lib.vfs.Symlinks;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Helper class responsible for the symlink tree creation. Used to generate runfiles and fileset
@@ -39,6 +59,32 @@ public final class SymlinkTreeHelper {
   @VisibleForTesting
   public static final String BUILD_RUNFILES = "build-runfiles" + OsUtils.executableExtension();
 
+  /** The number of changed entries handled by each thread of an in-process update. */
+  private static final int MIN_ENTRIES_PER_THREAD = 1000;
+
+  private static final int MAX_THREADS = 16;
+
+  /**
+   * Holds the threads shared by the in-process updates of all symlink trees, which are only
+   * created once a tree with many changed entries is updated.
+   */
+  private static class ExecutorHolder {
+    static final ExecutorService executor = createExecutor();
+
+    private static ExecutorService createExecutor() {
+      ThreadPoolExecutor executor =
+          new ThreadPoolExecutor(
+              MAX_THREADS,
+              MAX_THREADS,
+              60L,
+              TimeUnit.SECONDS,
+              new LinkedBlockingQueue<>(),
+              new ThreadFactoryBuilder().setNameFormat("symlink-tree-%d").setDaemon(true).build());
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+    }
+  }
+
   private final Path inputManifest;
   private final Path symlinkTreeRoot;
   private final boolean filesetTree;
@@ -86,7 +132,8 @@ public final class SymlinkTreeHelper {
   }
 
   /**
-   * Creates symlink tree using appropriate method. At this time tree always created using
+   * Creates symlink tree using appropriate method. Runfiles trees are created in process with
+   * {@code --experimental_inprocess_symlink_creation}, other trees are always created using
    * build-runfiles helper application.
    *
    * @param owner action instance that requested symlink tree creation
@@ -99,8 +146,14 @@ public final class SymlinkTreeHelper {
       BinTools binTools,
       ImmutableMap<String, String> shellEnvironment,
       boolean enableRunfiles)
-      throws ExecException {
-    if (enableRunfiles) {
+      throws ExecException, InterruptedException {
+    if (enableRunfiles && !filesetTree && createsSymlinksInProcess(actionExecutionContext)) {
+      try {
+        createSymlinksDirectly();
+      } catch (IOException e) {
+        throw new UserExecException(e.getMessage(), e);
+      }
+    } else if (enableRunfiles) {
       try {
         createSymlinksUsingCommand(
             actionExecutionContext.getExecRoot(),
@@ -121,6 +174,195 @@ public final class SymlinkTreeHelper {
     }
   }
 
+  private static boolean createsSymlinksInProcess(ActionExecutionContext actionExecutionContext) {
+    ExecutionOptions options =
+        actionExecutionContext.getOptions().getOptions(ExecutionOptions.class);
+    return options != null && options.inprocessSymlinkCreation;
+  }
+
+  /**
+   * Creates the runfiles symlink tree without running build-runfiles.
+   *
+   * <p>The output manifest left by the previous run, of either this method or build-runfiles, is
+   * used as the description of the existing tree. Only the entries that differ between it and the
+   * input manifest are deleted and created, in parallel for large changes, so an incremental build
+   * doesn't walk the whole tree. Without an output manifest the tree is created from scratch. The
+   * output manifest is removed before the tree is changed and written back last, so an interrupted
+   * run leads to a full update next time.
+   */
+  @VisibleForTesting
+  void createSymlinksDirectly() throws IOException, InterruptedException {
+    Map<PathFragment, String> entries = readManifest(inputManifest);
+    Path outputManifest = symlinkTreeRoot.getChild("MANIFEST");
+    Map<PathFragment, String> previousEntries = null;
+    if (outputManifest.isFile(Symlinks.NOFOLLOW)) {
+      try {
+        previousEntries = readManifest(outputManifest);
+      } catch (IOException e) {
+        // Rebuild the tree from scratch.
+      }
+    }
+    if (previousEntries == null) {
+      symlinkTreeRoot.deleteTree();
+      previousEntries = ImmutableMap.of();
+    } else {
+      outputManifest.delete();
+    }
+
+    Set<PathFragment> directories = getParentDirectories(entries.keySet());
+    Set<PathFragment> previousDirectories = getParentDirectories(previousEntries.keySet());
+    // Directories that are no longer needed are deleted with everything below them.
+    Set<PathFragment> staleDirectories = new HashSet<>();
+    for (PathFragment directory : previousDirectories) {
+      if (!directories.contains(directory)) {
+        staleDirectories.add(directory);
+        PathFragment parent = directory.getParentDirectory();
+        if (!previousDirectories.contains(parent) || directories.contains(parent)) {
+          symlinkTreeRoot.getRelative(directory).deleteTree();
+        }
+      }
+    }
+    List<PathFragment> staleEntries = new ArrayList<>();
+    for (Map.Entry<PathFragment, String> entry : previousEntries.entrySet()) {
+      PathFragment path = entry.getKey();
+      if (!entry.getValue().equals(entries.get(path))
+          && !staleDirectories.contains(path.getParentDirectory())) {
+        staleEntries.add(path);
+      }
+    }
+    forEachEntry(staleEntries, path -> symlinkTreeRoot.getRelative(path).delete());
+
+    symlinkTreeRoot.createDirectoryAndParents();
+    for (PathFragment directory : new TreeSet<>(directories)) {
+      if (!previousDirectories.contains(directory)) {
+        symlinkTreeRoot.getRelative(directory).createDirectory();
+      }
+    }
+    List<PathFragment> newEntries = new ArrayList<>();
+    for (Map.Entry<PathFragment, String> entry : entries.entrySet()) {
+      if (!entry.getValue().equals(previousEntries.get(entry.getKey()))) {
+        newEntries.add(entry.getKey());
+      }
+    }
+    forEachEntry(
+        newEntries, path -> createEntry(symlinkTreeRoot.getRelative(path), entries.get(path)));
+
+    FileSystemUtils.copyFile(inputManifest, outputManifest);
+  }
+
+  private static void createEntry(Path path, String target) throws IOException {
+    try {
+      createFileOrSymlink(path, target);
+    } catch (IOException e) {
+      // The tree differs from its output manifest, for example because it was changed by hand.
+      path.deleteTree();
+      createFileOrSymlink(path, target);
+    }
+  }
+
+  private static void createFileOrSymlink(Path path, String target) throws IOException {
+    if (target.isEmpty()) {
+      // No target means an empty file.
+      FileSystemUtils.createEmptyFile(path);
+      path.chmod(0555);
+    } else {
+      path.createSymbolicLink(PathFragment.create(target));
+    }
+  }
+
+  /**
+   * Reads a runfiles manifest, with lines of the form "link target", into a map from link to
+   * target. An empty target stands for an empty file.
+   */
+  private static Map<PathFragment, String> readManifest(Path manifest) throws IOException {
+    Map<PathFragment, String> entries = new HashMap<>();
+    int lineNumber = 0;
+    for (String line : FileSystemUtils.readLines(manifest, ISO_8859_1)) {
+      lineNumber++;
+      int delimiter = line.indexOf(' ');
+      if (delimiter <= 0 || line.indexOf(' ', delimiter + 1) >= 0) {
+        throw new IOException(
+            String.format("%s: malformed line %d: '%s'", manifest, lineNumber, line));
+      }
+      PathFragment link = PathFragment.create(line.substring(0, delimiter));
+      String target = line.substring(delimiter + 1);
+      if (link.isAbsolute() || (!target.isEmpty() && !PathFragment.create(target).isAbsolute())) {
+        throw new IOException(
+            String.format(
+                "%s: expected relative link and absolute target at line %d: '%s'",
+                manifest, lineNumber, line));
+      }
+      entries.put(link, target);
+    }
+    return entries;
+  }
+
+  private static Set<PathFragment> getParentDirectories(Set<PathFragment> entries) {
+    Set<PathFragment> directories = new HashSet<>();
+    for (PathFragment entry : entries) {
+      for (PathFragment parent = entry.getParentDirectory();
+          parent.segmentCount() > 0 && directories.add(parent);
+          parent = parent.getParentDirectory()) {}
+    }
+    return directories;
+  }
+
+  /** An operation on an entry of the symlink tree. */
+  @FunctionalInterface
+  private interface EntryOperation {
+    void apply(PathFragment entry) throws IOException;
+  }
+
+  /** Applies {@code operation} to all entries, in parallel if there are many. */
+  private static void forEachEntry(List<PathFragment> entries, EntryOperation operation)
+      throws IOException, InterruptedException {
+    int threads = Math.min(MAX_THREADS, entries.size() / MIN_ENTRIES_PER_THREAD);
+    if (threads <= 1) {
+      for (PathFragment entry : entries) {
+        operation.apply(entry);
+      }
+      return;
+    }
+    // Stops the shards that are still running once one of them fails or the update is interrupted.
+    AtomicBoolean stopped = new AtomicBoolean();
+    List<Future<?>> futures = new ArrayList<>();
+    for (List<PathFragment> shard :
+        Lists.partition(entries, (entries.size() + threads - 1) / threads)) {
+      futures.add(
+          ExecutorHolder.executor.submit(
+              () -> {
+                for (PathFragment entry : shard) {
+                  if (stopped.get()) {
+                    break;
+                  }
+                  operation.apply(entry);
+                }
+                return null;
+              }));
+    }
+    try {
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          Throwables.propagateIfPossible(e.getCause(), IOException.class);
+          throw new IllegalStateException(e.getCause());
+        }
+      }
+    } finally {
+      // The threads are shared, so wait for the remaining shards instead of shutting them down,
+      // which also keeps them from changing the tree after this method returns.
+      stopped.set(true);
+      for (Future<?> future : futures) {
+        try {
+          Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException e) {
+          // Only the first failure is reported.
+        }
+      }
+    }
+  }
+
   @VisibleForTesting
   Command createCommand(
       Path execRoot, BinTools binTools, ImmutableMap<String, String> shellEnvironment) {
@@ -0,0 +1,125 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.exec;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.io.ByteStreams;
+import com.google.devtools.build.lib.analysis.test.TestRunnerAction.ResolvedPaths;
+import com.google.devtools.build.lib.vfs.Path;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes the manifest, annotations and zip file of the undeclared outputs of a test run, like the
+ * test setup script does after the test exits. Tests that run in a persistent worker don't exit
+ * after each run, so Bazel does this for them.
+ *
+ * <p>Unlike the script, the manifest derives the mime types from the file names rather than from
+ * the file contents.
+ */
+final class UndeclaredTestOutputs {
+  private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+
+  private UndeclaredTestOutputs() {}
+
+  static void process(ResolvedPaths resolvedPaths) throws IOException {
+    Path outputsDir = resolvedPaths.getUndeclaredOutputsDir();
+    List<Path> outputs = new ArrayList<>();
+    if (outputsDir.isDirectory()) {
+      collectFiles(outputsDir, outputs);
+    }
+    outputs.sort(Comparator.comparing(output -> output.relativeTo(outputsDir).getPathString()));
+    if (!outputs.isEmpty()) {
+      writeManifest(outputsDir, outputs, resolvedPaths.getUndeclaredOutputsManifestPath());
+      writeZip(outputsDir, outputs, resolvedPaths.getUndeclaredOutputsZipPath());
+    }
+    writeAnnotations(
+        resolvedPaths.getUndeclaredOutputsAnnotationsDir(),
+        resolvedPaths.getUndeclaredOutputsAnnotationsPath());
+  }
+
+  private static void collectFiles(Path dir, List<Path> files) throws IOException {
+    for (Path child : dir.getDirectoryEntries()) {
+      if (child.isDirectory()) {
+        collectFiles(child, files);
+      } else if (child.isFile()) {
+        files.add(child);
+      }
+    }
+  }
+
+  /** Writes a line with the relative path, size and mime type of each output. */
+  private static void writeManifest(Path outputsDir, List<Path> outputs, Path manifest)
+      throws IOException {
+    StringBuilder content = new StringBuilder();
+    for (Path output : outputs) {
+      String mimeType = URLConnection.guessContentTypeFromName(output.getBaseName());
+      content
+          .append(output.relativeTo(outputsDir).getPathString())
+          .append('\t')
+          .append(output.getFileSize())
+          .append('\t')
+          .append(mimeType != null ? mimeType : DEFAULT_MIME_TYPE)
+          .append('\n');
+    }
+    try (OutputStream out = manifest.getOutputStream()) {
+      out.write(content.toString().getBytes(UTF_8));
+    }
+  }
+
+  private static void writeZip(Path outputsDir, List<Path> outputs, Path zip) throws IOException {
+    try (ZipOutputStream out = new ZipOutputStream(zip.getOutputStream())) {
+      for (Path output : outputs) {
+        out.putNextEntry(new ZipEntry(output.relativeTo(outputsDir).getPathString()));
+        try (InputStream in = output.getInputStream()) {
+          ByteStreams.copy(in, out);
+        }
+        out.closeEntry();
+      }
+    }
+  }
+
+  /** Concatenates the annotation parts that the test wrote, if any. */
+  private static void writeAnnotations(Path annotationsDir, Path annotations) throws IOException {
+    if (!annotationsDir.isDirectory()) {
+      return;
+    }
+    List<Path> parts = new ArrayList<>();
+    for (Path child : annotationsDir.getDirectoryEntries()) {
+      if (child.getBaseName().endsWith(".part")) {
+        parts.add(child);
+      }
+    }
+    if (parts.isEmpty()) {
+      return;
+    }
+    parts.sort(Comparator.comparing(Path::getBaseName));
+    try (OutputStream out = annotations.getOutputStream()) {
+      for (Path part : parts) {
+        try (InputStream in = part.getInputStream()) {
+          ByteStreams.copy(in, out);
+        }
+      }
+    }
+  }
+}
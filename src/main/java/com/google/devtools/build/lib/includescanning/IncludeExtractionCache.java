@@ -0,0 +1,150 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.includescanning;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import com.google.common.io.BaseEncoding;
+import com.google.devtools.build.lib.includescanning.IncludeParser.GrepIncludesFileType;
+import com.google.devtools.build.lib.includescanning.IncludeParser.Inclusion;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import javax.annotation.Nullable;
+
+/**
+ * A content-addressed store of the inclusions extracted from files, kept in a directory that
+ * outlives the output base.
+ *
+ * <p>The inclusions of a file only depend on its contents, so they are stored under the digest of
+ * the file. Include scanning of an action walks the inclusions of every reachable header, and a
+ * clean machine would otherwise read and parse all of them again. With a directory that is shared
+ * or restored between machines, like the one of {@code --disk_cache}, only files whose contents
+ * were never seen are parsed.
+ *
+ * <p>Every entry starts with a line naming the format and the digest it was stored under, ends with
+ * a line holding the CRC32 checksum of the inclusions in between, and is written to a temporary
+ * file that is renamed into place. Entries that don't match or can't be parsed are ignored and
+ * overwritten, so a corrupt, truncated or stale store never changes the result of include
+ * scanning.
+ */
+final class IncludeExtractionCache {
+  private static final Logger logger = Logger.getLogger(IncludeExtractionCache.class.getName());
+
+  /** Changes when the stored format or the inclusions extracted from a file change. */
+  private static final String FORMAT_VERSION = "inclusions-v2";
+
+  /** The length of the line with the checksum of the inclusions that ends every entry. */
+  private static final int TRAILER_LENGTH = "crc32 00000000\n".length();
+
+  private final Path directory;
+
+  IncludeExtractionCache(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Returns the inclusions stored for a file with {@code digest}, or null if there are none or
+   * they can't be read.
+   */
+  @Nullable
+  List<Inclusion> get(byte[] digest, GrepIncludesFileType fileType) {
+    String key = BaseEncoding.base16().lowerCase().encode(digest);
+    Path entry = getEntryPath(key, fileType);
+    byte[] content;
+    try {
+      content = FileSystemUtils.readContent(entry);
+    } catch (IOException e) {
+      // Most likely, the file wasn't stored yet.
+      return null;
+    }
+    String header = header(key);
+    int bodyStart = header.length();
+    int bodyEnd = content.length - TRAILER_LENGTH;
+    if (bodyEnd < bodyStart
+        || !new String(content, 0, bodyStart, ISO_8859_1).equals(header)
+        || !new String(content, bodyEnd, TRAILER_LENGTH, ISO_8859_1)
+            .equals(trailer(content, bodyStart, bodyEnd - bodyStart))) {
+      logger.log(Level.WARNING, "Ignoring include extraction cache entry " + entry);
+      return null;
+    }
+    try {
+      return IncludeParser.processIncludes(
+          entry, new ByteArrayInputStream(content, bodyStart, bodyEnd - bodyStart));
+    } catch (IOException | RuntimeException e) {
+      // The checksum matched, but the inclusions still can't be parsed.
+      logger.log(Level.WARNING, "Ignoring include extraction cache entry " + entry, e);
+      return null;
+    }
+  }
+
+  /**
+   * Stores the inclusions extracted from a file with {@code digest}. Failures are logged, since the
+   * store is only an optimization.
+   */
+  void put(byte[] digest, GrepIncludesFileType fileType, Collection<Inclusion> inclusions) {
+    String key = BaseEncoding.base16().lowerCase().encode(digest);
+    Path entry = getEntryPath(key, fileType);
+    Path temp = entry.getParentDirectory().getChild(key + "." + UUID.randomUUID() + ".tmp");
+    try {
+      entry.getParentDirectory().createDirectoryAndParents();
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      for (Inclusion inclusion : inclusions) {
+        body.write(IncludeParser.formatInclusion(inclusion).getBytes(ISO_8859_1));
+        body.write('\n');
+      }
+      byte[] bodyBytes = body.toByteArray();
+      try (OutputStream out = temp.getOutputStream()) {
+        out.write(header(key).getBytes(ISO_8859_1));
+        out.write(bodyBytes);
+        out.write(trailer(bodyBytes, 0, bodyBytes.length).getBytes(ISO_8859_1));
+      }
+      temp.renameTo(entry);
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Failed to store include extraction cache entry " + entry, e);
+      try {
+        temp.delete();
+      } catch (IOException ignored) {
+        // The temporary file may not have been created.
+      }
+    }
+  }
+
+  private Path getEntryPath(String key, GrepIncludesFileType fileType) {
+    // Spread the entries over subdirectories to keep directories small.
+    return directory
+        .getChild(fileType.getFileType())
+        .getChild(key.substring(0, 2))
+        .getChild(key);
+  }
+
+  private static String header(String key) {
+    return FORMAT_VERSION + " " + key + "\n";
+  }
+
+  private static String trailer(byte[] content, int offset, int length) {
+    CRC32 checksum = new CRC32();
+    checksum.update(content, offset, length);
+    return String.format("crc32 %08x\n", checksum.getValue());
+  }
+}
@@ -20,8 +20,8 @@ import com.google.common.base.Preconditions;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Sets;
 import com.google.common.io.CharStreams;
 import com.google.common.util.concurrent.Futures;
@@ -33,6 +33,7 @@ import com.google.devtools.build.lib.actions.Artifact;
 import com.google.devtools.build.lib.actions.ArtifactFactory;
 import com.google.devtools.build.lib.actions.ArtifactRoot;
 import com.google.devtools.build.lib.actions.ExecException;
+import com.google.devtools.build.lib.actions.FileArtifactValue;
 import com.google.devtools.build.lib.cmdline.PackageIdentifier;
 import com.google.devtools.build.lib.events.Event;
 import com.google.devtools.build.lib.includescanning.IncludeParser.Inclusion.Kind;
@@ -564,13 +565,27 @@ class IncludeParser {
   /** The externally-scoped immutable hints helper that is shared by all scanners. */
   private final Hints hints;
 
+  /** Where to look up and store the inclusions of files parsed locally, if anywhere. */
+  @Nullable private final IncludeExtractionCache extractionCache;
+
   /**
    * Constructs a new FileParser.
    *
    * @param hints regexps for converting computed includes into simple strings
    */
   public IncludeParser(Hints hints) {
+    this(hints, /*extractionCache=*/ null);
+  }
+
+  /**
+   * Constructs a new FileParser.
+   *
+   * @param hints regexps for converting computed includes into simple strings
+   * @param extractionCache where to look up the inclusions of files by digest before parsing them
+   */
+  IncludeParser(Hints hints, @Nullable IncludeExtractionCache extractionCache) {
     this.hints = hints;
+    this.extractionCache = extractionCache;
   }
 
   /**
@@ -678,12 +693,17 @@ class IncludeParser {
   private static final Pattern BS_NL_PAT = Pattern.compile("\\\\" + "\n");
 
   // Keep this in sync with the grep-includes binary's scanning output format.
-  private static final ImmutableMap<Character, Kind> KIND_MAP = ImmutableMap.of(
+  private static final ImmutableBiMap<Character, Kind> KIND_MAP = ImmutableBiMap.of(
       '"', Kind.QUOTE,
       '<', Kind.ANGLE,
       'q', Kind.NEXT_QUOTE,
       'a', Kind.NEXT_ANGLE);
 
+  /** Returns the line for {@code inclusion} in the format read by {@link #processIncludes}. */
+  static String formatInclusion(Inclusion inclusion) {
+    return KIND_MAP.inverse().get(inclusion.kind) + inclusion.getPathString();
+  }
+
   /**
    * Processes the output generated by an auxiliary include-scanning binary. Closes the stream upon
    * completion.
@@ -862,9 +882,7 @@ class IncludeParser {
     } else {
       try (SilentCloseable c =
           Profiler.instance().profile(ProfilerTask.SCANNER, file.getExecPathString())) {
-        inclusions =
-            extractInclusions(
-                FileSystemUtils.readContent(actionExecutionContext.getInputPath(file)));
+        inclusions = extractInclusionsLocally(file, actionExecutionContext);
       } catch (IOException e) {
         if (remoteIncludeScanner != null) {
           logger.log(
@@ -923,9 +941,7 @@ class IncludeParser {
       try (SilentCloseable c =
           Profiler.instance().profile(ProfilerTask.SCANNER, file.getExecPathString())) {
         inclusions =
-            Futures.immediateFuture(
-                extractInclusions(
-                    FileSystemUtils.readContent(actionExecutionContext.getInputPath(file))));
+            Futures.immediateFuture(extractInclusionsLocally(file, actionExecutionContext));
       } catch (IOException e) {
         if (remoteIncludeScanner != null) {
           logger.log(
@@ -959,6 +975,31 @@ class IncludeParser {
     return inclusions;
   }
 
+  /**
+   * Extracts the inclusions of {@code file} by reading it, unless the extraction cache has the
+   * inclusions of a file with the same digest.
+   */
+  private List<Inclusion> extractInclusionsLocally(
+      Artifact file, ActionExecutionContext actionExecutionContext) throws IOException {
+    byte[] digest = null;
+    if (extractionCache != null) {
+      FileArtifactValue metadata = actionExecutionContext.getMetadataProvider().getMetadata(file);
+      digest = metadata == null ? null : metadata.getDigest();
+    }
+    if (digest != null) {
+      List<Inclusion> inclusions = extractionCache.get(digest, getFileType());
+      if (inclusions != null) {
+        return inclusions;
+      }
+    }
+    List<Inclusion> inclusions =
+        extractInclusions(FileSystemUtils.readContent(actionExecutionContext.getInputPath(file)));
+    if (digest != null) {
+      extractionCache.put(digest, getFileType(), inclusions);
+    }
+    return inclusions;
+  }
+
   /**
    * Returns type of the scanned file.
    *
@@ -261,6 +261,12 @@ public class IncludeScanningModule extends BlazeModule {
         ActionGraph actionGraph,
         Supplier<ArtifactsToOwnerLabels> topLevelArtifactsToAccountingGroups)
         throws ExecutorInitException, InterruptedException {
+      IncludeScanningOptions options = buildRequest.getOptions(IncludeScanningOptions.class);
+      IncludeExtractionCache extractionCache =
+          options.includeExtractionCache == null
+              ? null
+              : new IncludeExtractionCache(
+                  env.getWorkingDirectory().getRelative(options.includeExtractionCache));
       try {
         includeScannerSupplier.init(
             new IncludeParser(
@@ -269,7 +275,8 @@ public class IncludeScanningModule extends BlazeModule {
                         env.getSkyframeExecutor()
                             .evaluateSkyKeyForExecutionSetup(
                                 env.getReporter(), IncludeHintsFunction.INCLUDE_HINTS_KEY),
-                    env.getSkyframeBuildView().getArtifactFactory())));
+                    env.getSkyframeBuildView().getArtifactFactory()),
+                extractionCache));
       } catch (ExecException e) {
         throw new ExecutorInitException("could not initialize include hints", e);
       }
@@ -14,7 +14,9 @@
 package com.google.devtools.build.lib.includescanning;
 
 import com.google.devtools.build.lib.actions.LocalHostCapacity;
+import com.google.devtools.build.lib.util.OptionsUtils;
 import com.google.devtools.build.lib.util.ResourceConverter;
+import com.google.devtools.build.lib.vfs.PathFragment;
 import com.google.devtools.common.options.Option;
 import com.google.devtools.common.options.OptionDocumentationCategory;
 import com.google.devtools.common.options.OptionEffectTag;
@@ -101,6 +103,23 @@ public class IncludeScanningOptions extends OptionsBase {
               + " profile (e.g. the number of processors).")
   public int includeScanningParallelism;
 
+  @Option(
+      name = "experimental_include_extraction_cache",
+      defaultValue = "null",
+      converter = OptionsUtils.PathFragmentConverter.class,
+      documentationCategory = OptionDocumentationCategory.UNDOCUMENTED,
+      effectTags = {
+        OptionEffectTag.BAZEL_INTERNAL_CONFIGURATION,
+        OptionEffectTag.EXECUTION,
+        OptionEffectTag.HOST_MACHINE_RESOURCE_OPTIMIZATIONS
+      },
+      help =
+          "A directory where include scanning stores the '#include' lines of the files it parses "
+              + "locally, by file digest, and looks them up before parsing a file. The directory "
+              + "can be shared between workspaces and machines, e.g. restored on CI machines "
+              + "together with the --disk_cache.")
+  public PathFragment includeExtractionCache;
+
   @Option(
       name = "experimental_async_include_scanner",
       documentationCategory = OptionDocumentationCategory.UNDOCUMENTED,
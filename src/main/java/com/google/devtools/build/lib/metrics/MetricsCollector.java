@@ -16,6 +16,8 @@ package com.google.devtools.build.lib.metrics;
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 import com.google.devtools.build.lib.actions.ActionCompletionEvent;
+import com.google.devtools.build.lib.actions.ActionRewoundEvent;
+import com.google.devtools.build.lib.actions.ActionStartedEvent;
 import com.google.devtools.build.lib.analysis.AnalysisPhaseCompleteEvent;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildMetrics;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildMetrics.ActionSummary;
@@ -23,33 +25,64 @@ import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.Bui
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildMetrics.PackageMetrics;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildMetrics.TargetMetrics;
 import com.google.devtools.build.lib.buildtool.buildevent.BuildCompleteEvent;
+import com.google.devtools.build.lib.clock.BlazeClock;
+import com.google.devtools.build.lib.metrics.MetricsRegistry.Counter;
+import com.google.devtools.build.lib.metrics.MetricsRegistry.Histogram;
 import com.google.devtools.build.lib.metrics.MetricsModule.Options;
 import com.google.devtools.build.lib.runtime.CommandEnvironment;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 class MetricsCollector {
 
   private final CommandEnvironment env;
+  private final MetricsRegistry registry;
   private final boolean bepPublishUsedHeapSizePostBuild;
+  private final boolean metricsInBuildToolLogs;
   private final AtomicLong executedActionCount = new AtomicLong();
+  private final AtomicLong runningActionCount = new AtomicLong();
+  private final Counter actionsStarted;
+  private final Counter actionsCompleted;
+  private final Histogram actionDurations;
 
   private int actionsConstructed;
   private int targetsLoaded;
   private int targetsConfigured;
   private int packagesLoaded;
 
-  MetricsCollector(CommandEnvironment env) {
+  MetricsCollector(CommandEnvironment env, MetricsRegistry registry) {
     this.env = env;
+    this.registry = registry;
     Options options = env.getOptions().getOptions(Options.class);
     this.bepPublishUsedHeapSizePostBuild =
         options != null && options.bepPublishUsedHeapSizePostBuild;
+    this.metricsInBuildToolLogs = options != null && options.metricsInBuildToolLogs;
+    this.actionsStarted =
+        registry.counter("bazel_actions_started_total", "Number of actions started.");
+    this.actionsCompleted =
+        registry.counter("bazel_actions_completed_total", "Number of actions completed.");
+    this.actionDurations =
+        registry.histogram(
+            "bazel_action_duration_milliseconds",
+            "Wall time of the executed actions.",
+            10,
+            100,
+            1000,
+            10_000,
+            60_000,
+            600_000);
+    registry.gauge(
+        "bazel_actions_running",
+        "Number of actions running in the current command.",
+        runningActionCount::get);
     env.getEventBus().register(this);
   }
 
-  static void installInEnv(CommandEnvironment env) {
-    new MetricsCollector(env);
+  static void installInEnv(CommandEnvironment env, MetricsRegistry registry) {
+    new MetricsCollector(env, registry);
   }
 
   @Subscribe
@@ -60,14 +93,41 @@ class MetricsCollector {
     packagesLoaded = event.getPkgManagerStats().getPackagesLoaded();
   }
 
+  @Subscribe
+  @AllowConcurrentEvents
+  public void onActionStarted(ActionStartedEvent event) {
+    actionsStarted.increment();
+    runningActionCount.incrementAndGet();
+  }
+
   @Subscribe
   @AllowConcurrentEvents
   public void onActionComplete(ActionCompletionEvent event) {
     executedActionCount.incrementAndGet();
+    actionsCompleted.increment();
+    runningActionCount.decrementAndGet();
+    actionDurations.observe(
+        TimeUnit.NANOSECONDS.toMillis(BlazeClock.nanoTime() - event.getRelativeActionStartTime()));
+  }
+
+  /**
+   * A rewound action doesn't complete, but posts another {@link ActionStartedEvent} when it is
+   * executed again.
+   */
+  @Subscribe
+  @AllowConcurrentEvents
+  public void onActionRewound(ActionRewoundEvent event) {
+    runningActionCount.decrementAndGet();
   }
 
   @Subscribe
   public void onBuildComplete(BuildCompleteEvent event) {
+    if (metricsInBuildToolLogs) {
+      event
+          .getResult()
+          .getBuildToolLogCollection()
+          .addDirectValue("metrics", registry.toText().getBytes(StandardCharsets.UTF_8));
+    }
     env.getEventBus().post(new BuildMetricsEvent(createBuildMetrics()));
   }
 
@@ -17,16 +17,30 @@ import com.google.common.collect.ImmutableList;
 import com.google.devtools.build.lib.runtime.BlazeModule;
 import com.google.devtools.build.lib.runtime.Command;
 import com.google.devtools.build.lib.runtime.CommandEnvironment;
+import com.google.devtools.build.lib.util.OptionsUtils;
+import com.google.devtools.build.lib.vfs.PathFragment;
 import com.google.devtools.common.options.Option;
 import com.google.devtools.common.options.OptionDocumentationCategory;
 import com.google.devtools.common.options.OptionEffectTag;
 import com.google.devtools.common.options.OptionsBase;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Duration;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * A blaze module that installs metrics instrumentations and issues a {@link BuildMetricsEvent} at
  * the end of the build.
+ *
+ * <p>It also maintains a {@link MetricsRegistry} for the lifetime of the server, which can be
+ * exported while a build is running with {@code --experimental_metrics_textfile}.
  */
 public class MetricsModule extends BlazeModule {
+  private static final Logger logger = Logger.getLogger(MetricsModule.class.getName());
 
   /** Metrics options. */
   public static final class Options extends OptionsBase {
@@ -39,6 +53,64 @@ public class MetricsModule extends BlazeModule {
             "When set we collect and publish used_heap_size_post_build "
                 + "from build_event_stream.proto. This forces a full GC and is off by default.")
     public boolean bepPublishUsedHeapSizePostBuild;
+
+    @Option(
+        name = "experimental_metrics_textfile",
+        defaultValue = "null",
+        converter = OptionsUtils.PathFragmentConverter.class,
+        documentationCategory = OptionDocumentationCategory.LOGGING,
+        effectTags = {OptionEffectTag.AFFECTS_OUTPUTS, OptionEffectTag.BAZEL_MONITORING},
+        help =
+            "If set, Bazel periodically writes its metrics (actions, heap, garbage collection) to"
+                + " this file in the Prometheus text exposition format while the build is running,"
+                + " e.g. for the textfile collector of the Prometheus node exporter.")
+    public PathFragment metricsTextFile;
+
+    @Option(
+        name = "experimental_metrics_textfile_interval",
+        defaultValue = "10s",
+        documentationCategory = OptionDocumentationCategory.LOGGING,
+        effectTags = {OptionEffectTag.BAZEL_MONITORING},
+        help = "How often to write the file given by --experimental_metrics_textfile.")
+    public Duration metricsTextFileInterval;
+
+    @Option(
+        name = "experimental_metrics_in_build_tool_logs",
+        defaultValue = "false",
+        documentationCategory = OptionDocumentationCategory.LOGGING,
+        effectTags = {OptionEffectTag.AFFECTS_OUTPUTS, OptionEffectTag.BAZEL_MONITORING},
+        help =
+            "If set, the metrics are also published at the end of the build, in the Prometheus"
+                + " text exposition format, as a build tool log in the build event protocol.")
+    public boolean metricsInBuildToolLogs;
+  }
+
+  private final MetricsRegistry registry = new MetricsRegistry();
+  private MetricsTextFileWriter textFileWriter;
+
+  public MetricsModule() {
+    registerJvmGauges(registry);
+  }
+
+  private static void registerJvmGauges(MetricsRegistry registry) {
+    MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    registry.gauge(
+        "jvm_heap_used_bytes",
+        "Used JVM heap in bytes.",
+        () -> memoryBean.getHeapMemoryUsage().getUsed());
+    registry.gauge(
+        "jvm_heap_committed_bytes",
+        "Committed JVM heap in bytes.",
+        () -> memoryBean.getHeapMemoryUsage().getCommitted());
+    List<GarbageCollectorMXBean> gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+    registry.gauge(
+        "jvm_gc_collections",
+        "Number of garbage collections since the server started.",
+        () -> gcBeans.stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum());
+    registry.gauge(
+        "jvm_gc_collection_seconds",
+        "Time spent in garbage collection since the server started.",
+        () -> gcBeans.stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum() / 1000.0);
   }
 
   @Override
@@ -48,9 +120,27 @@ public class MetricsModule extends BlazeModule {
 
   @Override
   public void beforeCommand(CommandEnvironment env) {
-    MetricsCollector.installInEnv(env);
+    MetricsCollector.installInEnv(env, registry);
+    Options options = env.getOptions().getOptions(Options.class);
+    if (options != null && options.metricsTextFile != null) {
+      textFileWriter =
+          new MetricsTextFileWriter(
+              registry, env.getWorkingDirectory().getRelative(options.metricsTextFile));
+      textFileWriter.start(options.metricsTextFileInterval);
+    }
   }
 
   @Override
-  public void afterCommand() {}
+  public void afterCommand() {
+    if (textFileWriter != null) {
+      try {
+        textFileWriter.stop();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Failed to write metrics", e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      textFileWriter = null;
+    }
+  }
 }
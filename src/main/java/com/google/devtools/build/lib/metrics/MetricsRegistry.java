@@ -0,0 +1,241 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.metrics;
+
+import com.google.common.base.Preconditions;
+import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadSafe;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * A registry of named counters, gauges and histograms that can be read while a command is running.
+ *
+ * <p>The metrics can be written in the Prometheus text exposition format with {@link #writeText}.
+ * Registering a metric under a name that is already in use returns the existing counter or
+ * histogram, so that values accumulate over the lifetime of the server, while gauges are replaced
+ * so that they always read the state of the current command.
+ */
+@ThreadSafe
+public final class MetricsRegistry {
+  private static final Pattern VALID_NAME = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+
+  private final ConcurrentMap<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+  private abstract static class Metric {
+    final String name;
+    final String help;
+
+    Metric(String name, String help) {
+      this.name = name;
+      this.help = help;
+    }
+
+    abstract String type();
+
+    abstract void writeSamples(Appendable out) throws IOException;
+  }
+
+  /** A monotonically increasing count. */
+  public static final class Counter extends Metric {
+    private final LongAdder value = new LongAdder();
+
+    private Counter(String name, String help) {
+      super(name, help);
+    }
+
+    public void increment() {
+      value.increment();
+    }
+
+    public void add(long delta) {
+      Preconditions.checkArgument(delta >= 0, "Counters can't decrease: %s", delta);
+      value.add(delta);
+    }
+
+    public long get() {
+      return value.sum();
+    }
+
+    @Override
+    String type() {
+      return "counter";
+    }
+
+    @Override
+    void writeSamples(Appendable out) throws IOException {
+      out.append(name).append(' ').append(Long.toString(get())).append('\n');
+    }
+  }
+
+  private static final class Gauge extends Metric {
+    private final DoubleSupplier supplier;
+
+    private Gauge(String name, String help, DoubleSupplier supplier) {
+      super(name, help);
+      this.supplier = supplier;
+    }
+
+    @Override
+    String type() {
+      return "gauge";
+    }
+
+    @Override
+    void writeSamples(Appendable out) throws IOException {
+      out.append(name).append(' ').append(formatDouble(supplier.getAsDouble())).append('\n');
+    }
+  }
+
+  /** A distribution of values, counted in buckets with fixed inclusive upper bounds. */
+  public static final class Histogram extends Metric {
+    private final long[] upperBounds;
+    // One more bucket than bounds, for the values above the largest bound.
+    private final LongAdder[] buckets;
+    private final LongAdder sum = new LongAdder();
+
+    private Histogram(String name, String help, long[] upperBounds) {
+      super(name, help);
+      this.upperBounds = upperBounds;
+      this.buckets = new LongAdder[upperBounds.length + 1];
+      for (int i = 0; i < buckets.length; i++) {
+        buckets[i] = new LongAdder();
+      }
+    }
+
+    public void observe(long value) {
+      int index = Arrays.binarySearch(upperBounds, value);
+      buckets[index >= 0 ? index : -index - 1].increment();
+      sum.add(value);
+    }
+
+    /** Returns the number of values observed so far. */
+    public long getCount() {
+      long count = 0;
+      for (LongAdder bucket : buckets) {
+        count += bucket.sum();
+      }
+      return count;
+    }
+
+    @Override
+    String type() {
+      return "histogram";
+    }
+
+    @Override
+    void writeSamples(Appendable out) throws IOException {
+      // Buckets are cumulative in the exposition format.
+      long cumulative = 0;
+      for (int i = 0; i < upperBounds.length; i++) {
+        cumulative += buckets[i].sum();
+        out.append(name)
+            .append("_bucket{le=\"")
+            .append(Long.toString(upperBounds[i]))
+            .append("\"} ")
+            .append(Long.toString(cumulative))
+            .append('\n');
+      }
+      cumulative += buckets[upperBounds.length].sum();
+      out.append(name)
+          .append("_bucket{le=\"+Inf\"} ")
+          .append(Long.toString(cumulative))
+          .append('\n');
+      out.append(name).append("_sum ").append(Long.toString(sum.sum())).append('\n');
+      out.append(name).append("_count ").append(Long.toString(cumulative)).append('\n');
+    }
+  }
+
+  /** Returns the counter named {@code name}, registering it if necessary. */
+  public Counter counter(String name, String help) {
+    return getOrRegister(name, Counter.class, () -> new Counter(name, help));
+  }
+
+  /**
+   * Returns the histogram named {@code name}, registering it with the given bucket bounds if
+   * necessary.
+   */
+  public Histogram histogram(String name, String help, long... upperBounds) {
+    long[] bounds = upperBounds.clone();
+    Arrays.sort(bounds);
+    return getOrRegister(name, Histogram.class, () -> new Histogram(name, help, bounds));
+  }
+
+  /**
+   * Registers a gauge named {@code name} whose value is read from {@code supplier} whenever the
+   * metrics are written. Replaces any gauge previously registered under the same name.
+   */
+  public void gauge(String name, String help, DoubleSupplier supplier) {
+    checkName(name);
+    metrics.compute(
+        name,
+        (n, previous) -> {
+          Preconditions.checkState(
+              previous == null || previous instanceof Gauge, "%s is not a gauge", name);
+          return new Gauge(name, help, supplier);
+        });
+  }
+
+  private <T extends Metric> T getOrRegister(String name, Class<T> type, Supplier<T> factory) {
+    checkName(name);
+    Metric metric = metrics.computeIfAbsent(name, n -> factory.get());
+    Preconditions.checkState(type.isInstance(metric), "%s is not a %s", name, type.getSimpleName());
+    return type.cast(metric);
+  }
+
+  private static void checkName(String name) {
+    Preconditions.checkArgument(VALID_NAME.matcher(name).matches(), "Invalid name: %s", name);
+  }
+
+  /** Writes all metrics, sorted by name, in the Prometheus text exposition format. */
+  public void writeText(Appendable out) throws IOException {
+    for (Metric metric : metrics.values()) {
+      out.append("# HELP ").append(metric.name).append(' ').append(escapeHelp(metric.help));
+      out.append('\n');
+      out.append("# TYPE ").append(metric.name).append(' ').append(metric.type()).append('\n');
+      metric.writeSamples(out);
+    }
+  }
+
+  /** Returns all metrics in the Prometheus text exposition format. */
+  public String toText() {
+    StringBuilder builder = new StringBuilder();
+    try {
+      writeText(builder);
+    } catch (IOException e) {
+      throw new IllegalStateException("StringBuilder can't throw IOException", e);
+    }
+    return builder.toString();
+  }
+
+  private static String escapeHelp(String help) {
+    return help.replace("\\", "\\\\").replace("\n", "\\n");
+  }
+
+  private static String formatDouble(double value) {
+    if (Double.isNaN(value)) {
+      return "NaN";
+    } else if (Double.isInfinite(value)) {
+      return value > 0 ? "+Inf" : "-Inf";
+    } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+      return Long.toString((long) value);
+    }
+    return Double.toString(value);
+  }
+}
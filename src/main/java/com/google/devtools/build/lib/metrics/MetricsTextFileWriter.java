@@ -0,0 +1,81 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.metrics;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Periodically writes the metrics of a {@link MetricsRegistry} to a file in the Prometheus text
+ * exposition format, e.g. for the textfile collector of the Prometheus node exporter.
+ *
+ * <p>The file is replaced atomically, so readers never see a partially written file.
+ */
+final class MetricsTextFileWriter {
+  private static final Logger logger = Logger.getLogger(MetricsTextFileWriter.class.getName());
+
+  private final MetricsRegistry registry;
+  private final Path file;
+  private final Path tmpFile;
+  private final ScheduledExecutorService executor;
+
+  MetricsTextFileWriter(MetricsRegistry registry, Path file) {
+    this.registry = registry;
+    this.file = file;
+    this.tmpFile = file.getParentDirectory().getChild(file.getBaseName() + ".tmp");
+    this.executor =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("metrics-textfile-writer")
+                .setDaemon(true)
+                .build());
+  }
+
+  /** Starts writing the metrics every {@code interval}. */
+  void start(Duration interval) {
+    long intervalMillis = Math.max(1, interval.toMillis());
+    executor.scheduleWithFixedDelay(
+        this::writeQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /** Stops the periodic writes and writes the final values of the metrics. */
+  void stop() throws IOException, InterruptedException {
+    executor.shutdownNow();
+    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    write();
+  }
+
+  private void writeQuietly() {
+    try {
+      write();
+    } catch (IOException e) {
+      // Keep trying on the next interval; the final write in stop() reports errors.
+      logger.log(Level.WARNING, "Failed to write metrics to " + file, e);
+    }
+  }
+
+  private void write() throws IOException {
+    FileSystemUtils.writeContent(tmpFile, StandardCharsets.UTF_8, registry.toText());
+    tmpFile.renameTo(file);
+  }
+}
@@ -46,7 +46,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedTransferQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -405,6 +405,20 @@ public final class Profiler {
   private volatile long profileStartTime;
   private volatile boolean recordAllDurations = false;
 
+  /**
+   * Only every n-th VFS task that would otherwise be written to the profile file is actually
+   * written; 1 means that all of them are. Histograms and the slowest-task aggregation are not
+   * affected by sampling.
+   */
+  private volatile int vfsSamplingRate = 1;
+
+  /**
+   * Per-thread count of the VFS tasks seen since the last one that was written to the profile file.
+   * A single-element array so that counting doesn't allocate.
+   */
+  private final ThreadLocal<int[]> vfsTasksSinceLastSample =
+      ThreadLocal.withInitial(() -> new int[1]);
+
   /** This counter provides a unique id for every task, used to provide a parent/child relation. */
   private AtomicInteger taskId = new AtomicInteger();
 
@@ -500,6 +514,7 @@ public final class Profiler {
    *     some tasks may get aggregated if they finished quick enough
    * @param clock a {@code BlazeClock.instance()}
    * @param execStartTimeNanos execution start time in nanos obtained from {@code clock.nanoTime()}
+   * @param vfsSamplingRate write only every n-th VFS task to {@code stream}; 1 writes all of them
    */
   public synchronized void start(
       ImmutableSet<ProfilerTask> profiledTasks,
@@ -512,9 +527,11 @@ public final class Profiler {
       Clock clock,
       long execStartTimeNanos,
       boolean enabledCpuUsageProfiling,
-      boolean slimProfile)
+      boolean slimProfile,
+      int vfsSamplingRate)
       throws IOException {
     Preconditions.checkState(!isActive(), "Profiler already active");
+    Preconditions.checkArgument(vfsSamplingRate >= 1, vfsSamplingRate);
     initHistograms();
 
     this.profiledTasks = profiledTasks;
@@ -528,6 +545,7 @@ public final class Profiler {
     // reset state for the new profiling session
     taskId.set(0);
     this.recordAllDurations = recordAllDurations;
+    this.vfsSamplingRate = vfsSamplingRate;
     this.taskStack = new TaskStack();
     FileWriter writer = null;
     if (stream != null && format != null) {
@@ -643,6 +661,21 @@ public final class Profiler {
     return (recordAllDurations || duration >= type.minDuration);
   }
 
+  /**
+   * Returns whether a task that is slow enough to be recorded should also be written to the profile
+   * file, which is only the case for every n-th VFS task if VFS sampling is enabled.
+   */
+  private boolean isSampledForWriting(ProfilerTask type) {
+    int rate = vfsSamplingRate;
+    if (rate == 1 || !type.isVfs()) {
+      return true;
+    }
+    int[] counter = vfsTasksSinceLastSample.get();
+    boolean sampled = counter[0] == 0;
+    counter[0] = (counter[0] + 1) % rate;
+    return sampled;
+  }
+
   /**
    * Adds task directly to the main queue bypassing task stack. Used for simple tasks that are known
    * to not have any subtasks.
@@ -679,7 +712,7 @@ public final class Profiler {
     if (wasTaskSlowEnoughToRecord(type, duration)) {
       TaskData data = localStack.create(startTimeNanos, type, description);
       data.duration = duration;
-      if (currentWriter != null) {
+      if (currentWriter != null && isSampledForWriting(type)) {
         currentWriter.enqueue(data);
       }
 
@@ -843,7 +876,9 @@ public final class Profiler {
       }
       boolean shouldRecordTask = wasTaskSlowEnoughToRecord(type, data.duration);
       FileWriter writer = writerRef.get();
-      if ((shouldRecordTask || data.counts != null) && writer != null) {
+      if ((shouldRecordTask || data.counts != null)
+          && writer != null
+          && isSampledForWriting(type)) {
         writer.enqueue(data);
       }
 
@@ -871,7 +906,8 @@ public final class Profiler {
     protected IOException savedException;
 
     FileWriter() {
-      this.queue = new LinkedBlockingDeque<>();
+      // Tasks are enqueued by every profiled thread, so use a queue that doesn't lock on insertion.
+      this.queue = new LinkedTransferQueue<>();
       this.thread = new Thread(this, "profile-writer-thread");
     }
 
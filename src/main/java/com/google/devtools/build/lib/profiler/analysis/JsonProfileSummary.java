@@ -0,0 +1,340 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.profiler.analysis;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.devtools.build.lib.profiler.CpuUsageTimeSeries;
+import com.google.devtools.build.lib.profiler.ProfilePhase;
+import com.google.devtools.build.lib.profiler.ProfilerTask;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Summary statistics of a profile in JSON trace format, as written by the profiler with {@code
+ * --experimental_generate_json_trace_profile}.
+ *
+ * <p>The profile is read in a single streaming pass and only aggregates are retained, so memory use
+ * does not depend on the number of events in the profile. The only exception is the critical path,
+ * which is retained in full, but it is usually short.
+ */
+public final class JsonProfileSummary {
+  /** The default number of slowest actions retained by {@link #read}. */
+  public static final int DEFAULT_SLOWEST_ACTIONS_COUNT = 20;
+
+  /** The bucket size used to compute the action parallelism over time. */
+  public static final long PARALLELISM_BUCKET_SIZE_MILLIS = 1000;
+
+  private static final int GZIP_MAGIC_FIRST_BYTE = 0x1f;
+  private static final int GZIP_MAGIC_SECOND_BYTE = 0x8b;
+
+  private static final ImmutableMap<String, ProfilePhase> PHASES_BY_DESCRIPTION;
+
+  static {
+    ImmutableMap.Builder<String, ProfilePhase> builder = ImmutableMap.builder();
+    for (ProfilePhase phase : ProfilePhase.values()) {
+      builder.put(phase.description, phase);
+    }
+    PHASES_BY_DESCRIPTION = builder.build();
+  }
+
+  /** Aggregated durations of all the events of one category. */
+  public static final class CategoryStats {
+    private long count;
+    private long totalDurationNanos;
+    private long maxDurationNanos;
+
+    private void add(long durationNanos) {
+      count++;
+      totalDurationNanos += durationNanos;
+      maxDurationNanos = Math.max(maxDurationNanos, durationNanos);
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getTotalDurationNanos() {
+      return totalDurationNanos;
+    }
+
+    public long getMaxDurationNanos() {
+      return maxDurationNanos;
+    }
+
+    public double getMeanDurationNanos() {
+      return count == 0 ? 0 : (double) totalDurationNanos / count;
+    }
+  }
+
+  /** A single event of the profile that has a duration. */
+  public static final class TraceEvent {
+    private final String category;
+    private final String name;
+    private final long startTimeNanos;
+    private final long durationNanos;
+
+    TraceEvent(String category, String name, long startTimeNanos, long durationNanos) {
+      this.category = category;
+      this.name = name;
+      this.startTimeNanos = startTimeNanos;
+      this.durationNanos = durationNanos;
+    }
+
+    public String getCategory() {
+      return category;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /** Returns the start time of the event, relative to the start of the profile. */
+    public long getStartTimeNanos() {
+      return startTimeNanos;
+    }
+
+    public long getDurationNanos() {
+      return durationNanos;
+    }
+  }
+
+  private static final Comparator<TraceEvent> BY_DURATION =
+      Comparator.comparingLong(TraceEvent::getDurationNanos);
+
+  private final int slowestActionsCount;
+  private final Map<String, CategoryStats> statsByCategory = new TreeMap<>();
+  private final EnumMap<ProfilePhase, Long> phaseDurations = new EnumMap<>(ProfilePhase.class);
+  private final List<TraceEvent> criticalPath = new ArrayList<>();
+  // A min-heap, so that the fastest of the retained actions can be evicted cheaply.
+  private final PriorityQueue<TraceEvent> slowestActions;
+  private final CpuUsageTimeSeries actionParallelism =
+      new CpuUsageTimeSeries(/* startTimeMillis= */ 0, PARALLELISM_BUCKET_SIZE_MILLIS);
+
+  private long eventCount;
+  private long endTimeNanos;
+  private ProfilePhase currentPhase;
+  private long currentPhaseStartNanos;
+
+  private JsonProfileSummary(int slowestActionsCount) {
+    this.slowestActionsCount = slowestActionsCount;
+    this.slowestActions = new PriorityQueue<>(slowestActionsCount + 1, BY_DURATION);
+  }
+
+  /** Returns true iff {@code profileFile} looks like a (possibly gzipped) JSON trace profile. */
+  public static boolean isJsonProfile(Path profileFile) throws IOException {
+    try (InputStream in = profileFile.getInputStream()) {
+      int first = in.read();
+      return first == '{'
+          || first == '['
+          || (first == GZIP_MAGIC_FIRST_BYTE && in.read() == GZIP_MAGIC_SECOND_BYTE);
+    }
+  }
+
+  /**
+   * Reads a profile in JSON trace format from {@code in}, which may be gzip-compressed, and
+   * summarizes it. Retains the {@code slowestActionsCount} slowest actions.
+   */
+  public static JsonProfileSummary read(InputStream in, int slowestActionsCount)
+      throws IOException {
+    JsonProfileSummary summary = new JsonProfileSummary(slowestActionsCount);
+    try (JsonReader reader =
+        new JsonReader(new InputStreamReader(maybeDecompress(in), StandardCharsets.UTF_8))) {
+      if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+        reader.beginObject();
+        while (reader.hasNext()) {
+          if (reader.nextName().equals("traceEvents")) {
+            summary.readEvents(reader);
+          } else {
+            reader.skipValue();
+          }
+        }
+        reader.endObject();
+      } else {
+        // The trace event format also allows the bare array of events.
+        summary.readEvents(reader);
+      }
+    }
+    summary.finishCurrentPhase(summary.endTimeNanos);
+    return summary;
+  }
+
+  public static JsonProfileSummary read(Path profileFile, int slowestActionsCount)
+      throws IOException {
+    try (InputStream in = profileFile.getInputStream()) {
+      return read(in, slowestActionsCount);
+    }
+  }
+
+  private static InputStream maybeDecompress(InputStream in) throws IOException {
+    // The buffer size of 262144 matches the one the profiler writes with.
+    BufferedInputStream buffered = new BufferedInputStream(in, 262144);
+    buffered.mark(2);
+    boolean gzipped =
+        buffered.read() == GZIP_MAGIC_FIRST_BYTE && buffered.read() == GZIP_MAGIC_SECOND_BYTE;
+    buffered.reset();
+    return gzipped ? new GZIPInputStream(buffered, 262144) : buffered;
+  }
+
+  private void readEvents(JsonReader reader) throws IOException {
+    reader.beginArray();
+    while (reader.hasNext()) {
+      readEvent(reader);
+    }
+    reader.endArray();
+  }
+
+  private void readEvent(JsonReader reader) throws IOException {
+    String category = null;
+    String name = null;
+    String phase = null;
+    long tsMicros = 0;
+    long durMicros = 0;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "cat":
+          category = reader.nextString();
+          break;
+        case "name":
+          name = reader.nextString();
+          break;
+        case "ph":
+          phase = reader.nextString();
+          break;
+        case "ts":
+          tsMicros = reader.nextLong();
+          break;
+        case "dur":
+          durMicros = reader.nextLong();
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    if (category == null || "M".equals(phase) || "C".equals(phase)) {
+      // Metadata events (e.g. thread names) and counter events (e.g. the local cpu usage) don't
+      // describe work done by Bazel.
+      return;
+    }
+    eventCount++;
+    long startNanos = TimeUnit.MICROSECONDS.toNanos(tsMicros);
+    long durationNanos = TimeUnit.MICROSECONDS.toNanos(durMicros);
+    endTimeNanos = Math.max(endTimeNanos, startNanos + durationNanos);
+    statsByCategory.computeIfAbsent(category, c -> new CategoryStats()).add(durationNanos);
+
+    if (category.equals(ProfilerTask.PHASE.description)) {
+      ProfilePhase profilePhase = PHASES_BY_DESCRIPTION.get(name);
+      if (profilePhase != null) {
+        finishCurrentPhase(startNanos);
+        currentPhase = profilePhase;
+        currentPhaseStartNanos = startNanos;
+      }
+    } else if (category.equals(ProfilerTask.CRITICAL_PATH_COMPONENT.description)) {
+      criticalPath.add(new TraceEvent(category, name, startNanos, durationNanos));
+    } else if (category.equals(ProfilerTask.ACTION.description)) {
+      actionParallelism.addRange(
+          TimeUnit.NANOSECONDS.toMillis(startNanos),
+          TimeUnit.NANOSECONDS.toMillis(startNanos + durationNanos));
+      addToSlowestActions(new TraceEvent(category, name, startNanos, durationNanos));
+    }
+  }
+
+  private void addToSlowestActions(TraceEvent action) {
+    if (slowestActionsCount <= 0) {
+      return;
+    }
+    if (slowestActions.size() < slowestActionsCount) {
+      slowestActions.add(action);
+    } else if (action.getDurationNanos() > slowestActions.peek().getDurationNanos()) {
+      slowestActions.poll();
+      slowestActions.add(action);
+    }
+  }
+
+  /** A phase lasts until the next phase marker, or until the end of the profile. */
+  private void finishCurrentPhase(long phaseEndNanos) {
+    if (currentPhase != null) {
+      phaseDurations.merge(
+          currentPhase, Math.max(0, phaseEndNanos - currentPhaseStartNanos), Long::sum);
+      currentPhase = null;
+    }
+  }
+
+  /** Returns the number of events in the profile, excluding metadata and counter events. */
+  public long getEventCount() {
+    return eventCount;
+  }
+
+  /** Returns the end time of the last event, relative to the start of the profile. */
+  public long getTotalDurationNanos() {
+    return endTimeNanos;
+  }
+
+  /** Returns the statistics of every category (i.e. {@link ProfilerTask}), sorted by name. */
+  public Map<String, CategoryStats> getStatsByCategory() {
+    return statsByCategory;
+  }
+
+  /** Returns the duration of every phase that occurs in the profile, in order. */
+  public EnumMap<ProfilePhase, Long> getPhaseDurations() {
+    return phaseDurations;
+  }
+
+  /** Returns the components of the critical path, in the order in which they were executed. */
+  public ImmutableList<TraceEvent> getCriticalPath() {
+    return ImmutableList.copyOf(criticalPath);
+  }
+
+  /** Returns the sum of the durations of all the critical path components. */
+  public long getCriticalPathDurationNanos() {
+    long total = 0;
+    for (TraceEvent component : criticalPath) {
+      total += component.getDurationNanos();
+    }
+    return total;
+  }
+
+  /** Returns the slowest actions, slowest first. */
+  public ImmutableList<TraceEvent> getSlowestActions() {
+    return ImmutableList.sortedCopyOf(BY_DURATION.reversed(), slowestActions);
+  }
+
+  /**
+   * Returns the average number of actions running in parallel for each consecutive interval of
+   * {@link #PARALLELISM_BUCKET_SIZE_MILLIS} since the start of the profile.
+   */
+  public double[] getActionParallelism() {
+    int buckets =
+        (int) (TimeUnit.NANOSECONDS.toMillis(endTimeNanos) / PARALLELISM_BUCKET_SIZE_MILLIS) + 1;
+    return actionParallelism.toDoubleArray(buckets);
+  }
+}
@@ -0,0 +1,137 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.profiler.output;
+
+import com.google.devtools.build.lib.profiler.ProfilePhase;
+import com.google.devtools.build.lib.profiler.analysis.JsonProfileSummary;
+import com.google.devtools.build.lib.profiler.analysis.JsonProfileSummary.CategoryStats;
+import com.google.devtools.build.lib.profiler.analysis.JsonProfileSummary.TraceEvent;
+import com.google.devtools.build.lib.util.TimeUtilities;
+import java.io.PrintStream;
+import java.util.Map;
+
+/** Output {@link JsonProfileSummary} in text format. */
+public final class JsonProfileText extends TextPrinter {
+
+  private final JsonProfileSummary summary;
+
+  public JsonProfileText(PrintStream out, JsonProfileSummary summary) {
+    super(out);
+    this.summary = summary;
+  }
+
+  public void print() {
+    printPhaseSummary();
+    printCategoryStatistics();
+    printCriticalPath();
+    printSlowestActions();
+    printActionParallelism();
+    printLn();
+  }
+
+  /** Print a table with runtime and runtime percentage per phase and total. */
+  private void printPhaseSummary() {
+    print("\n=== PHASE SUMMARY INFORMATION ===\n");
+    long totalDuration = summary.getTotalDurationNanos();
+    for (Map.Entry<ProfilePhase, Long> entry : summary.getPhaseDurations().entrySet()) {
+      lnPrintf(
+          THREE_COLUMN_FORMAT,
+          "Total " + entry.getKey().nick + " phase time",
+          TimeUtilities.prettyTime(entry.getValue()),
+          prettyPercentage((double) entry.getValue() / totalDuration));
+    }
+    lnPrintf(THREE_COLUMN_FORMAT, "Total run time", TimeUtilities.prettyTime(totalDuration), "");
+    printLn();
+  }
+
+  /**
+   * Prints a table of task categories with their total, average and maximum duration as well as
+   * how many tasks of each category there were.
+   */
+  private void printCategoryStatistics() {
+    lnPrint("=== TASK STATISTICS ===\n");
+    lnPrint("Total time (across all threads) spent on:");
+    lnPrintf("%40s %10s %8s %11s %11s", "Category", "Total", "Count", "Average", "Max");
+    for (Map.Entry<String, CategoryStats> entry : summary.getStatsByCategory().entrySet()) {
+      CategoryStats stats = entry.getValue();
+      lnPrintf(
+          "%40s %10s %8d %11s %11s",
+          entry.getKey(),
+          TimeUtilities.prettyTime(stats.getTotalDurationNanos()),
+          stats.getCount(),
+          TimeUtilities.prettyTime(stats.getMeanDurationNanos()),
+          TimeUtilities.prettyTime(stats.getMaxDurationNanos()));
+    }
+    printLn();
+  }
+
+  private void printCriticalPath() {
+    if (summary.getCriticalPath().isEmpty()) {
+      return;
+    }
+    lnPrint("=== CRITICAL PATH ===\n");
+    lnPrintf(
+        TWO_COLUMN_FORMAT,
+        "Critical path",
+        TimeUtilities.prettyTime(summary.getCriticalPathDurationNanos()));
+    down();
+    for (TraceEvent component : summary.getCriticalPath()) {
+      lnPrintf(
+          "%11s  %s", TimeUtilities.prettyTime(component.getDurationNanos()), component.getName());
+    }
+    up();
+    printLn();
+  }
+
+  private void printSlowestActions() {
+    if (summary.getSlowestActions().isEmpty()) {
+      return;
+    }
+    lnPrint("=== SLOWEST ACTIONS ===\n");
+    for (TraceEvent action : summary.getSlowestActions()) {
+      lnPrintf("%11s  %s", TimeUtilities.prettyTime(action.getDurationNanos()), action.getName());
+    }
+    printLn();
+  }
+
+  /** Prints the average and peak number of actions running in parallel. */
+  private void printActionParallelism() {
+    double[] parallelism = summary.getActionParallelism();
+    double peak = 0;
+    double sum = 0;
+    int activeBuckets = 0;
+    for (double value : parallelism) {
+      peak = Math.max(peak, value);
+      if (value > 0) {
+        sum += value;
+        activeBuckets++;
+      }
+    }
+    if (activeBuckets == 0) {
+      return;
+    }
+    lnPrint("=== ACTION PARALLELISM ===\n");
+    lnPrintf(
+        TWO_COLUMN_FORMAT,
+        "Average parallel actions",
+        String.format("%.2f", sum / activeBuckets));
+    lnPrintf(TWO_COLUMN_FORMAT, "Peak parallel actions", String.format("%.2f", peak));
+    lnPrintf(
+        TWO_COLUMN_FORMAT,
+        "Time with actions running",
+        TimeUtilities.prettyTime(
+            activeBuckets * JsonProfileSummary.PARALLELISM_BUCKET_SIZE_MILLIS * 1_000_000L));
+    printLn();
+  }
+}
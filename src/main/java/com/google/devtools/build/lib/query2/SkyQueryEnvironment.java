@@ -66,6 +66,7 @@ import com.google.devtools.build.lib.pkgcache.PathPackageLocator;
 import com.google.devtools.build.lib.profiler.AutoProfiler;
 import com.google.devtools.build.lib.query2.engine.AllRdepsFunction;
 import com.google.devtools.build.lib.query2.engine.Callback;
+import com.google.devtools.build.lib.query2.engine.DenseKeyInterner;
 import com.google.devtools.build.lib.query2.engine.KeyExtractor;
 import com.google.devtools.build.lib.query2.engine.MinDepthUniquifier;
 import com.google.devtools.build.lib.query2.engine.OutputFormatterCallback;
@@ -74,11 +75,11 @@ import com.google.devtools.build.lib.query2.engine.QueryException;
 import com.google.devtools.build.lib.query2.engine.QueryExpression;
 import com.google.devtools.build.lib.query2.engine.QueryExpressionContext;
 import com.google.devtools.build.lib.query2.engine.QueryExpressionMapper;
-import com.google.devtools.build.lib.query2.engine.QueryUtil.MinDepthUniquifierImpl;
+import com.google.devtools.build.lib.query2.engine.QueryUtil.InterningMinDepthUniquifierImpl;
+import com.google.devtools.build.lib.query2.engine.QueryUtil.InterningUniquifierImpl;
 import com.google.devtools.build.lib.query2.engine.QueryUtil.MutableKeyExtractorBackedMapImpl;
 import com.google.devtools.build.lib.query2.engine.QueryUtil.NonExceptionalUniquifier;
 import com.google.devtools.build.lib.query2.engine.QueryUtil.ThreadSafeMutableKeyExtractorBackedSetImpl;
-import com.google.devtools.build.lib.query2.engine.QueryUtil.UniquifierImpl;
 import com.google.devtools.build.lib.query2.engine.StreamableQueryEnvironment;
 import com.google.devtools.build.lib.query2.engine.ThreadSafeOutputFormatterCallback;
 import com.google.devtools.build.lib.query2.engine.Uniquifier;
@@ -158,6 +159,9 @@ public class SkyQueryEnvironment extends AbstractBlazeQueryEnvironment<Target>
   protected GraphBackedRecursivePackageProvider graphBackedRecursivePackageProvider;
   protected ListeningExecutorService executor;
   private RecursivePackageProviderBackedTargetPatternResolver resolver;
+  // Shared by all the uniquifiers created during a query evaluation. Note that target uniquifiers
+  // use the target's label, which is itself a SkyKey.
+  private DenseKeyInterner<SkyKey> skyKeyInterner;
   protected final SkyKey universeKey;
   private final ImmutableList<TargetPatternKey> universeTargetPatternKeys;
 
@@ -224,6 +228,7 @@ public class SkyQueryEnvironment extends AbstractBlazeQueryEnvironment<Target>
     this.universeTargetPatternKeys =
         PrepareDepsOfPatternsFunction.getTargetPatternKeys(
             PrepareDepsOfPatternsFunction.getSkyKeys(universeKey, eventHandler));
+    this.skyKeyInterner = new DenseKeyInterner<>(queryEvaluationParallelismLevel);
   }
 
   @Override
@@ -280,6 +285,9 @@ public class SkyQueryEnvironment extends AbstractBlazeQueryEnvironment<Target>
             eventHandler,
             FilteringPolicies.NO_FILTER,
             packageSemaphore);
+    // Uniquifiers from a previous evaluation keep their own reference to the old interner, so we
+    // can drop it here rather than retaining every key ever seen by this environment.
+    skyKeyInterner = new DenseKeyInterner<>(queryEvaluationParallelismLevel);
   }
 
   /**
@@ -667,25 +675,23 @@ public class SkyQueryEnvironment extends AbstractBlazeQueryEnvironment<Target>
   @ThreadSafe
   @Override
   public NonExceptionalUniquifier<Target> createUniquifier() {
-    return new UniquifierImpl<>(TargetKeyExtractor.INSTANCE, queryEvaluationParallelismLevel);
+    return new InterningUniquifierImpl<>(TargetKeyExtractor.INSTANCE, skyKeyInterner);
   }
 
   @ThreadSafe
   @Override
   public MinDepthUniquifier<Target> createMinDepthUniquifier() {
-    return new MinDepthUniquifierImpl<>(
-        TargetKeyExtractor.INSTANCE, queryEvaluationParallelismLevel);
+    return new InterningMinDepthUniquifierImpl<>(TargetKeyExtractor.INSTANCE, skyKeyInterner);
   }
 
   @ThreadSafe
   public MinDepthUniquifier<SkyKey> createMinDepthSkyKeyUniquifier() {
-    return new MinDepthUniquifierImpl<>(
-        SkyKeyKeyExtractor.INSTANCE, queryEvaluationParallelismLevel);
+    return new InterningMinDepthUniquifierImpl<>(SkyKeyKeyExtractor.INSTANCE, skyKeyInterner);
   }
 
   @ThreadSafe
   public Uniquifier<SkyKey> createSkyKeyUniquifier() {
-    return new UniquifierImpl<>(SkyKeyKeyExtractor.INSTANCE, queryEvaluationParallelismLevel);
+    return new InterningUniquifierImpl<>(SkyKeyKeyExtractor.INSTANCE, skyKeyInterner);
   }
 
   private ImmutableSet<PathFragment> getBlacklistedExcludes(TargetPatternKey targetPatternKey)
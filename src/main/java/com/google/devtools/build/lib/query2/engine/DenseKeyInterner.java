@@ -0,0 +1,65 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.query2.engine;
+
+import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadSafe;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Assigns dense, non-negative {@code int} ids to keys of type {@code K}, in the order in which the
+ * keys are first seen.
+ *
+ * <p>A single instance is meant to be shared by all the uniquifiers of a query evaluation (see
+ * {@link QueryUtil.InterningUniquifierImpl} and {@link QueryUtil.InterningMinDepthUniquifierImpl}).
+ * Each key is then retained once, in this interner, and each uniquifier only needs a bit (or an
+ * {@code int}) per id instead of a hash set entry per key.
+ */
+@ThreadSafe
+public final class DenseKeyInterner<K> {
+  /** The id returned by {@link #getIdIfPresent} for keys that have not been interned. */
+  public static final int ABSENT = -1;
+
+  private final ConcurrentMap<K, Integer> ids;
+  private final AtomicInteger nextId = new AtomicInteger();
+
+  public DenseKeyInterner(int concurrencyLevel) {
+    this.ids =
+        new ConcurrentHashMap<>(
+            /*initialCapacity=*/ 16, /*loadFactor=*/ 0.75f, /*concurrencyLevel=*/ concurrencyLevel);
+  }
+
+  /** Returns the id of {@code key}, assigning it a fresh one if it hasn't been seen before. */
+  public int intern(K key) {
+    // ConcurrentHashMap#computeIfAbsent synchronizes even when the key is already present, so
+    // optimistically try a plain lookup first.
+    Integer id = ids.get(key);
+    if (id != null) {
+      return id;
+    }
+    return ids.computeIfAbsent(key, k -> nextId.getAndIncrement());
+  }
+
+  /** Returns the id of {@code key}, or {@link #ABSENT} if it was never interned. */
+  public int getIdIfPresent(K key) {
+    Integer id = ids.get(key);
+    return id != null ? id : ABSENT;
+  }
+
+  /** Returns the number of ids assigned so far. */
+  public int size() {
+    return nextId.get();
+  }
+}
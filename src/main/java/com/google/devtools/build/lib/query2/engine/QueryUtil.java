@@ -301,6 +301,59 @@ public final class QueryUtil {
     }
   }
 
+  /**
+   * A {@link Uniquifier} that records each seen key as a single bit, indexed by the key's id in a
+   * {@link DenseKeyInterner} that may be shared with other uniquifiers.
+   *
+   * <p>This uses much less memory than {@link UniquifierImpl} when the same keys are uniquified by
+   * several uniquifiers, and doesn't contend on a shared hash table once a key has been interned.
+   */
+  public static class InterningUniquifierImpl<T, K> implements NonExceptionalUniquifier<T> {
+    private final KeyExtractor<T, ? extends K> extractor;
+    private final DenseKeyInterner<K> interner;
+    private final SegmentedAtomicIntArray alreadySeen = new SegmentedAtomicIntArray();
+
+    public InterningUniquifierImpl(
+        KeyExtractor<T, ? extends K> extractor, DenseKeyInterner<K> interner) {
+      this.extractor = extractor;
+      this.interner = interner;
+    }
+
+    @Override
+    public boolean uniquePure(T element) {
+      int id = interner.getIdIfPresent(extractor.extractKey(element));
+      return id == DenseKeyInterner.ABSENT
+          || (alreadySeen.get(id >>> 5) & (1 << (id & 31))) == 0;
+    }
+
+    @Override
+    public boolean unique(T element) {
+      int id = interner.intern(extractor.extractKey(element));
+      int wordIndex = id >>> 5;
+      int mask = 1 << (id & 31);
+      while (true) {
+        int word = alreadySeen.get(wordIndex);
+        if ((word & mask) != 0) {
+          return false;
+        }
+        if (alreadySeen.compareAndSet(wordIndex, word, word | mask)) {
+          return true;
+        }
+      }
+    }
+
+    @Override
+    public ImmutableList<T> unique(Iterable<T> newElements) {
+      ImmutableList.Builder<T> result = ImmutableList.builder();
+      for (T element : newElements) {
+        if (unique(element)) {
+          result.add(element);
+        }
+      }
+      return result.build();
+    }
+  }
+
   /** A trivial {@link MinDepthUniquifier} implementation. */
   public static class MinDepthUniquifierImpl<T, K> implements MinDepthUniquifier<T> {
     private final KeyExtractor<T, K> extractor;
@@ -352,4 +405,61 @@ public final class QueryUtil {
           : true;
     }
   }
+
+  /**
+   * A {@link MinDepthUniquifier} that records the minimum depth at which each key was seen in an
+   * {@code int} array, indexed by the key's id in a {@link DenseKeyInterner} that may be shared with
+   * other uniquifiers.
+   *
+   * <p>Unlike {@link MinDepthUniquifierImpl}, this doesn't allocate an object per seen key, and
+   * lowers depths with a compare-and-set loop rather than a lock.
+   */
+  public static class InterningMinDepthUniquifierImpl<T, K> implements MinDepthUniquifier<T> {
+    private final KeyExtractor<T, ? extends K> extractor;
+    private final DenseKeyInterner<K> interner;
+    /** Holds {@code depth + 1} for seen keys, and 0 for unseen ones. */
+    private final SegmentedAtomicIntArray minDepthPlusOne = new SegmentedAtomicIntArray();
+
+    public InterningMinDepthUniquifierImpl(
+        KeyExtractor<T, ? extends K> extractor, DenseKeyInterner<K> interner) {
+      this.extractor = extractor;
+      this.interner = interner;
+    }
+
+    @Override
+    public final ImmutableList<T> uniqueAtDepthLessThanOrEqualTo(
+        Iterable<T> newElements, int depth) {
+      ImmutableList.Builder<T> resultBuilder = ImmutableList.builder();
+      for (T newElement : newElements) {
+        if (uniqueAtDepthLessThanOrEqualTo(newElement, depth)) {
+          resultBuilder.add(newElement);
+        }
+      }
+      return resultBuilder.build();
+    }
+
+    @Override
+    public boolean uniqueAtDepthLessThanOrEqualTo(T newElement, int depth) {
+      int id = interner.intern(extractor.extractKey(newElement));
+      while (true) {
+        int previous = minDepthPlusOne.get(id);
+        if (previous != 0 && previous - 1 <= depth) {
+          return false;
+        }
+        if (minDepthPlusOne.compareAndSet(id, previous, depth + 1)) {
+          return true;
+        }
+      }
+    }
+
+    @Override
+    public boolean uniqueAtDepthLessThanOrEqualToPure(T newElement, int depth) {
+      int id = interner.getIdIfPresent(extractor.extractKey(newElement));
+      if (id == DenseKeyInterner.ABSENT) {
+        return true;
+      }
+      int previous = minDepthPlusOne.get(id);
+      return previous == 0 || depth < previous - 1;
+    }
+  }
 }
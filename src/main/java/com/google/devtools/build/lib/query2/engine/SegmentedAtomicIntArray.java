@@ -0,0 +1,87 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.query2.engine;
+
+import com.google.common.base.Preconditions;
+import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadSafe;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An unbounded array of {@code int}s, all initially zero, that supports atomic updates.
+ *
+ * <p>Storage is allocated lazily in fixed-size segments, so the memory used is proportional to the
+ * highest index written rather than to the maximum possible index. Reads and compare-and-set
+ * operations on an already allocated segment are lock-free; only allocating a segment takes a lock.
+ */
+@ThreadSafe
+final class SegmentedAtomicIntArray {
+  private static final int SEGMENT_SHIFT = 12;
+  private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+  private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+  private static final int INITIAL_NUM_SEGMENTS = 4;
+
+  /**
+   * The segments allocated so far. Only ever replaced, while holding the lock on {@code this}, by
+   * a larger copy. A segment is never published in a stale copy, so readers that observe a missing
+   * segment re-check under the lock.
+   */
+  private volatile AtomicReferenceArray<AtomicIntegerArray> segments =
+      new AtomicReferenceArray<>(INITIAL_NUM_SEGMENTS);
+
+  /** Returns the value at {@code index}. */
+  int get(int index) {
+    AtomicIntegerArray segment = getSegmentIfPresent(index >>> SEGMENT_SHIFT);
+    return segment == null ? 0 : segment.get(index & SEGMENT_MASK);
+  }
+
+  /**
+   * Atomically sets the value at {@code index} to {@code update} iff the current value is {@code
+   * expect}.
+   */
+  boolean compareAndSet(int index, int expect, int update) {
+    return getOrCreateSegment(index).compareAndSet(index & SEGMENT_MASK, expect, update);
+  }
+
+  private AtomicIntegerArray getOrCreateSegment(int index) {
+    Preconditions.checkArgument(index >= 0, index);
+    int segmentIndex = index >>> SEGMENT_SHIFT;
+    AtomicIntegerArray segment = getSegmentIfPresent(segmentIndex);
+    return segment != null ? segment : createSegment(segmentIndex);
+  }
+
+  private AtomicIntegerArray getSegmentIfPresent(int segmentIndex) {
+    AtomicReferenceArray<AtomicIntegerArray> current = segments;
+    return segmentIndex < current.length() ? current.get(segmentIndex) : null;
+  }
+
+  private synchronized AtomicIntegerArray createSegment(int segmentIndex) {
+    AtomicReferenceArray<AtomicIntegerArray> current = segments;
+    if (segmentIndex >= current.length()) {
+      AtomicReferenceArray<AtomicIntegerArray> grown =
+          new AtomicReferenceArray<>(Math.max(segmentIndex + 1, current.length() * 2));
+      for (int i = 0; i < current.length(); i++) {
+        grown.set(i, current.get(i));
+      }
+      segments = grown;
+      current = grown;
+    }
+    AtomicIntegerArray segment = current.get(segmentIndex);
+    if (segment == null) {
+      segment = new AtomicIntegerArray(SEGMENT_SIZE);
+      current.set(segmentIndex, segment);
+    }
+    return segment;
+  }
+}
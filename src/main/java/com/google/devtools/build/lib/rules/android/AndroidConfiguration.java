@@ -37,6 +37,7 @@ import com.google.devtools.build.lib.rules.cpp.CppConfiguration.DynamicMode;
 import com.google.devtools.build.lib.rules.cpp.CppOptions.DynamicModeConverter;
 import com.google.devtools.build.lib.rules.cpp.CppOptions.LibcTopLabelConverter;
 import com.google.devtools.build.lib.skylarkbuildapi.android.AndroidConfigurationApi;
+import com.google.devtools.build.lib.vfs.PathFragment;
 import com.google.devtools.common.options.Converters;
 import com.google.devtools.common.options.EnumConverter;
 import com.google.devtools.common.options.Option;
@@ -600,6 +601,17 @@ public class AndroidConfiguration extends BuildConfiguration.Fragment
         help = "Whether dexbuilder supports being run in local worker mode.")
     public boolean useWorkersWithDexbuilder;
 
+    @Option(
+        name = "experimental_dexbuilder_cache_dir",
+        defaultValue = "null",
+        documentationCategory = OptionDocumentationCategory.UNDOCUMENTED,
+        effectTags = {OptionEffectTag.EXECUTION},
+        help =
+            "Absolute path of a directory in which dexbuilder caches dexed classes across builds "
+                + "and output bases. The directory is outside the execution root, so dexbuilder "
+                + "actions then neither run sandboxed nor remotely.")
+    public String dexbuilderCacheDir;
+
     @Option(
         name = "experimental_android_rewrite_dexes_with_rex",
         defaultValue = "false",
@@ -1009,6 +1021,7 @@ public class AndroidConfiguration extends BuildConfiguration.Fragment
       host.dexoptsSupportedInDexMerger = dexoptsSupportedInDexMerger;
       host.dexoptsSupportedInDexSharder = dexoptsSupportedInDexSharder;
       host.useWorkersWithDexbuilder = useWorkersWithDexbuilder;
+      host.dexbuilderCacheDir = dexbuilderCacheDir;
       host.manifestMerger = manifestMerger;
       host.manifestMergerOrder = manifestMergerOrder;
       host.androidAaptVersion = androidAaptVersion;
@@ -1056,6 +1069,7 @@ public class AndroidConfiguration extends BuildConfiguration.Fragment
   private final ImmutableList<String> dexoptsSupportedInDexMerger;
   private final ImmutableList<String> dexoptsSupportedInDexSharder;
   private final boolean useWorkersWithDexbuilder;
+  @Nullable private final String dexbuilderCacheDir;
   private final boolean desugarJava8;
   private final boolean desugarJava8Libs;
   private final boolean checkDesugarDeps;
@@ -1105,6 +1119,7 @@ public class AndroidConfiguration extends BuildConfiguration.Fragment
     this.dexoptsSupportedInDexMerger = ImmutableList.copyOf(options.dexoptsSupportedInDexMerger);
     this.dexoptsSupportedInDexSharder = ImmutableList.copyOf(options.dexoptsSupportedInDexSharder);
     this.useWorkersWithDexbuilder = options.useWorkersWithDexbuilder;
+    this.dexbuilderCacheDir = options.dexbuilderCacheDir;
     this.desugarJava8 = options.desugarJava8;
     this.desugarJava8Libs = options.desugarJava8Libs;
     this.checkDesugarDeps = options.checkDesugarDeps;
@@ -1170,6 +1185,10 @@ public class AndroidConfiguration extends BuildConfiguration.Fragment
       throw new InvalidConfigurationException(
           "Java 8 library support requires --desugar_java8 to be enabled.");
     }
+    if (dexbuilderCacheDir != null && !PathFragment.create(dexbuilderCacheDir).isAbsolute()) {
+      throw new InvalidConfigurationException(
+          "--experimental_dexbuilder_cache_dir must be an absolute path");
+    }
   }
 
   @Override
@@ -1251,6 +1270,12 @@ public class AndroidConfiguration extends BuildConfiguration.Fragment
     return useWorkersWithDexbuilder;
   }
 
+  /** Returns the directory dexbuilder caches dexed classes in, or null to not cache on disk. */
+  @Nullable
+  public String getDexbuilderCacheDir() {
+    return dexbuilderCacheDir;
+  }
+
   @Override
   public boolean desugarJava8() {
     return desugarJava8;
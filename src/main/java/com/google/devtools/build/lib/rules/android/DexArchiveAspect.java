@@ -27,6 +27,7 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
@@ -482,12 +483,22 @@ public final class DexArchiveAspect extends NativeAspectClass implements Configu
       Artifact jar,
       Set<String> incrementalDexopts,
       Artifact dexArchive) {
-    CustomCommandLine args =
+    AndroidConfiguration androidConfig = getAndroidConfig(ruleContext);
+    CustomCommandLine.Builder args =
         new CustomCommandLine.Builder()
             .addExecPath("--input_jar", jar)
             .addExecPath("--output_zip", dexArchive)
-            .addAll(ImmutableList.copyOf(incrementalDexopts))
-            .build();
+            .addAll(ImmutableList.copyOf(incrementalDexopts));
+    ImmutableMap.Builder<String, String> executionInfo = ImmutableMap.builder();
+    if (androidConfig.useWorkersWithDexbuilder()) {
+      executionInfo.putAll(ExecutionRequirements.WORKER_MODE_ENABLED);
+    }
+    if (androidConfig.getDexbuilderCacheDir() != null) {
+      args.add("--dex_cache_dir", androidConfig.getDexbuilderCacheDir());
+      // The cache directory is outside the execution root and shared between actions.
+      executionInfo.put(ExecutionRequirements.NO_SANDBOX, "");
+      executionInfo.put(ExecutionRequirements.NO_REMOTE, "");
+    }
     SpawnAction.Builder dexbuilder =
         new SpawnAction.Builder()
             .useDefaultShellEnvironment()
@@ -499,10 +510,9 @@ public final class DexArchiveAspect extends NativeAspectClass implements Configu
             .setProgressMessage(
                 "Dexing %s with applicable dexopts %s", jar.prettyPrint(), incrementalDexopts)
             // Always use params file for compatibility with WorkerSpawnStrategy
-            .addCommandLine(args, ParamFileInfo.builder(UNQUOTED).setUseAlways(true).build());
-    if (getAndroidConfig(ruleContext).useWorkersWithDexbuilder()) {
-      dexbuilder.setExecutionInfo(ExecutionRequirements.WORKER_MODE_ENABLED);
-    }
+            .addCommandLine(
+                args.build(), ParamFileInfo.builder(UNQUOTED).setUseAlways(true).build())
+            .setExecutionInfo(executionInfo.build());
     ruleContext.registerAction(dexbuilder.build(ruleContext));
     return dexArchive;
   }
@@ -271,6 +271,12 @@ public final class CcCompilationHelper {
 
   private CcCompilationContext ccCompilationContext;
 
+  /**
+   * The compile variables shared by all compile actions of this target, computed from {@link
+   * #ccCompilationContext} when the first action is created.
+   */
+  @Nullable private CcToolchainVariables targetBuildVariables;
+
   private final RuleErrorConsumer ruleErrorConsumer;
   private final ActionRegistry actionRegistry;
   private final ActionConstructionContext actionConstructionContext;
@@ -690,6 +696,7 @@ public final class CcCompilationHelper {
     }
 
     ccCompilationContext = initializeCcCompilationContext();
+    targetBuildVariables = null;
 
     boolean compileHeaderModules = featureConfiguration.isEnabled(CppRuleClasses.HEADER_MODULES);
     Preconditions.checkState(
@@ -1458,12 +1465,10 @@ public final class CcCompilationHelper {
           cppConfiguration.getCSFdoInstrument(),
           cppConfiguration);
     }
-    return CompileBuildVariables.setupVariablesOrReportRuleError(
+    return CompileBuildVariables.setupActionVariablesOrReportRuleError(
         ruleErrorConsumer,
         featureConfiguration,
-        ccToolchain,
-        configuration.getOptions(),
-        cppConfiguration,
+        getTargetBuildVariables(),
         toPathString(sourceFile),
         toPathString(builder.getOutputFile()),
         toPathString(gcnoFile),
@@ -1475,16 +1480,31 @@ public final class CcCompilationHelper {
         cppModuleMap,
         usePic,
         builder.getTempOutputFile(),
-        CppHelper.getFdoBuildStamp(cppConfiguration, fdoContext, featureConfiguration),
         dotdFileExecPath,
         ImmutableList.copyOf(variablesExtensions),
         allAdditionalBuildVariables.build(),
-        ccCompilationContext.getDirectModuleMaps(),
-        ccCompilationContext.getIncludeDirs(),
-        ccCompilationContext.getQuoteIncludeDirs(),
-        ccCompilationContext.getSystemIncludeDirs(),
-        ccCompilationContext.getFrameworkIncludeDirs(),
-        ccCompilationContext.getDefines());
+        ccCompilationContext.getDirectModuleMaps());
+  }
+
+  /**
+   * Returns the compile variables that don't depend on the compiled source, so that the variables
+   * of each compile action only hold what is specific to the action.
+   */
+  private CcToolchainVariables getTargetBuildVariables() {
+    if (targetBuildVariables == null) {
+      targetBuildVariables =
+          CompileBuildVariables.setupTargetVariables(
+              ccToolchain,
+              configuration.getOptions(),
+              cppConfiguration,
+              CppHelper.getFdoBuildStamp(cppConfiguration, fdoContext, featureConfiguration),
+              ccCompilationContext.getIncludeDirs(),
+              ccCompilationContext.getQuoteIncludeDirs(),
+              ccCompilationContext.getSystemIncludeDirs(),
+              ccCompilationContext.getFrameworkIncludeDirs(),
+              ccCompilationContext.getDefines());
+    }
+    return targetBuildVariables;
   }
 
   private static String toPathString(Artifact a) {
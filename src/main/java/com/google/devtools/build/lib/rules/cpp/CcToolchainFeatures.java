@@ -52,6 +52,7 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import javax.annotation.Nullable;
 
@@ -569,22 +570,51 @@ public class CcToolchainFeatures implements Serializable {
         @Nullable ArtifactExpander expander,
         List<String> commandLine)
         throws ExpansionException {
+      if (appliesTo(action, enabledFeatureNames)) {
+        expandFlagGroups(variables, expander, commandLine);
+      }
+    }
+
+    /**
+     * Returns whether the flags of this set apply to the given {@code action} when the given
+     * features are enabled, regardless of the variables.
+     */
+    private boolean appliesTo(String action, Set<String> enabledFeatureNames) {
+      return actions.contains(action)
+          && isWithFeaturesSatisfied(withFeatureSets, enabledFeatureNames);
+    }
+
+    /** Adds the flags to {@code commandLine} if all the variables they require are available. */
+    private void expandFlagGroups(
+        CcToolchainVariables variables,
+        @Nullable ArtifactExpander expander,
+        List<String> commandLine)
+        throws ExpansionException {
       for (String variable : expandIfAllAvailable) {
         if (!variables.isAvailable(variable, expander)) {
           return;
         }
       }
-      if (!isWithFeaturesSatisfied(withFeatureSets, enabledFeatureNames)) {
-        return;
-      }
-      if (!actions.contains(action)) {
-        return;
-      }
       for (FlagGroup flagGroup : flagGroups) {
         flagGroup.expandCommandLine(variables, expander, commandLine);
       }
     }
 
+    /**
+     * Returns the flag sets of {@code flagSets} that apply to the given {@code action} when the
+     * given features are enabled.
+     */
+    private static ImmutableList<FlagSet> applyingTo(
+        List<FlagSet> flagSets, String action, Set<String> enabledFeatureNames) {
+      ImmutableList.Builder<FlagSet> applying = ImmutableList.builder();
+      for (FlagSet flagSet : flagSets) {
+        if (flagSet.appliesTo(action, enabledFeatureNames)) {
+          applying.add(flagSet);
+        }
+      }
+      return applying.build();
+    }
+
     @Override
     public boolean equals(@Nullable Object object) {
       if (object instanceof FlagSet) {
@@ -1235,6 +1265,13 @@ public class CcToolchainFeatures implements Serializable {
 
     private final PathFragment ccToolchainPath;
 
+    /**
+     * The command line templates of the actions, computed on first use. See {@link
+     * #getCommandLineTemplate}.
+     */
+    private final ConcurrentHashMap<String, ImmutableList<Pair<String, ImmutableList<FlagSet>>>>
+        commandLineTemplates = new ConcurrentHashMap<>();
+
     /**
      * {@link FeatureConfiguration} instance that doesn't produce any command lines. This is to be
      * used when creation of the real {@link FeatureConfiguration} failed, the rule error was
@@ -1319,6 +1356,24 @@ public class CcToolchainFeatures implements Serializable {
         String action, CcToolchainVariables variables, @Nullable ArtifactExpander expander)
         throws ExpansionException {
       List<String> commandLine = new ArrayList<>();
+      for (Pair<String, ImmutableList<FlagSet>> flagSets : getCommandLineTemplate(action)) {
+        for (FlagSet flagSet : flagSets.getSecond()) {
+          flagSet.expandFlagGroups(variables, expander, commandLine);
+        }
+      }
+      return commandLine;
+    }
+
+    /**
+     * Returns the command line for the given {@code action} like {@link #getCommandLine}, but
+     * evaluates the conditions on the enabled features again instead of using the command line
+     * template of the action.
+     */
+    @VisibleForTesting
+    List<String> getCommandLineWithoutTemplate(
+        String action, CcToolchainVariables variables, @Nullable ArtifactExpander expander)
+        throws ExpansionException {
+      List<String> commandLine = new ArrayList<>();
       if (actionIsConfigured(action)) {
         actionConfigByActionName
             .get(action)
@@ -1343,20 +1398,52 @@ public class CcToolchainFeatures implements Serializable {
         throws ExpansionException {
       ImmutableList.Builder<Pair<String, List<String>>> perFeatureExpansions =
           ImmutableList.builder();
-      if (actionIsConfigured(action)) {
+      for (Pair<String, ImmutableList<FlagSet>> flagSets : getCommandLineTemplate(action)) {
         List<String> commandLine = new ArrayList<>();
-        ActionConfig actionConfig = actionConfigByActionName.get(action);
-        actionConfig.expandCommandLine(variables, enabledFeatureNames, expander, commandLine);
-        perFeatureExpansions.add(Pair.of(actionConfig.getName(), commandLine));
+        for (FlagSet flagSet : flagSets.getSecond()) {
+          flagSet.expandFlagGroups(variables, expander, commandLine);
+        }
+        perFeatureExpansions.add(Pair.of(flagSets.getFirst(), commandLine));
+      }
+      return perFeatureExpansions.build();
+    }
+
+    /**
+     * Returns the flag sets of the action config and the enabled features that apply to the given
+     * {@code action}, grouped by the name of the action config or feature they belong to.
+     *
+     * <p>Which flag sets apply only depends on the enabled features, which are fixed for this
+     * configuration, so the result is computed once per action. Expanding a command line then only
+     * evaluates the conditions that depend on the variables of the action.
+     */
+    private ImmutableList<Pair<String, ImmutableList<FlagSet>>> getCommandLineTemplate(
+        String action) {
+      ImmutableList<Pair<String, ImmutableList<FlagSet>>> template =
+          commandLineTemplates.get(action);
+      if (template == null) {
+        template = commandLineTemplates.computeIfAbsent(action, this::createCommandLineTemplate);
       }
+      return template;
+    }
 
+    private ImmutableList<Pair<String, ImmutableList<FlagSet>>> createCommandLineTemplate(
+        String action) {
+      ImmutableList.Builder<Pair<String, ImmutableList<FlagSet>>> template =
+          ImmutableList.builder();
+      if (actionIsConfigured(action)) {
+        ActionConfig actionConfig = actionConfigByActionName.get(action);
+        template.add(
+            Pair.of(
+                actionConfig.getName(),
+                FlagSet.applyingTo(actionConfig.getFlagSets(), action, enabledFeatureNames)));
+      }
       for (Feature feature : enabledFeatures) {
-        List<String> commandLine = new ArrayList<>();
-        feature.expandCommandLine(action, variables, enabledFeatureNames, expander, commandLine);
-        perFeatureExpansions.add(Pair.of(feature.getName(), commandLine));
+        template.add(
+            Pair.of(
+                feature.getName(),
+                FlagSet.applyingTo(feature.getFlagSets(), action, enabledFeatureNames)));
       }
-
-      return perFeatureExpansions.build();
+      return template.build();
     }
 
     /** @return the environment variables (key/value pairs) for the given {@code action}. */
@@ -455,6 +455,10 @@ public abstract class CcToolchainVariables implements CcToolchainVariablesApi {
 
   abstract Map<String, String> getStringVariablesMap();
 
+  /** Returns the variables this object falls back to for variables it doesn't define itself. */
+  @Nullable
+  abstract CcToolchainVariables getParent();
+
   @Nullable
   abstract VariableValue getNonStructuredVariable(String name);
 
@@ -1258,6 +1262,24 @@ public abstract class CcToolchainVariables implements CcToolchainVariablesApi {
       return new MapVariables(
           parent, ImmutableMap.copyOf(variablesMap), ImmutableMap.copyOf(stringVariablesMap));
     }
+
+    /**
+     * Returns the same variables as {@link #build}, but interned, so that equal variables with the
+     * same parent are represented by a single object.
+     *
+     * <p>Interning hashes all the values, so it's only worth it for variables that are the parent
+     * of the variables of many actions, and that are likely to be built more than once.
+     */
+    public CcToolchainVariables buildInterned() {
+      if (stringVariablesMap.isEmpty() && variablesMap.size() == 1) {
+        return SingleVariables.create(
+            parent,
+            variablesMap.keySet().iterator().next(),
+            variablesMap.values().iterator().next());
+      }
+      return MapVariables.create(
+          parent, ImmutableMap.copyOf(variablesMap), ImmutableMap.copyOf(stringVariablesMap));
+    }
   }
 
   /**
@@ -1305,6 +1327,12 @@ public abstract class CcToolchainVariables implements CcToolchainVariablesApi {
       return stringVariablesMap;
     }
 
+    @Override
+    @Nullable
+    CcToolchainVariables getParent() {
+      return parent;
+    }
+
     @Override
     VariableValue getNonStructuredVariable(String name) {
       if (variablesMap.containsKey(name)) {
@@ -1386,6 +1414,12 @@ public abstract class CcToolchainVariables implements CcToolchainVariablesApi {
       return ImmutableMap.of();
     }
 
+    @Override
+    @Nullable
+    CcToolchainVariables getParent() {
+      return parent;
+    }
+
     @Override
     VariableValue getNonStructuredVariable(String name) {
       if (this.name.equals(name)) {
@@ -17,6 +17,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.devtools.build.lib.actions.Artifact;
 import com.google.devtools.build.lib.analysis.config.BuildOptions;
 import com.google.devtools.build.lib.events.Location;
@@ -134,39 +135,139 @@ public enum CompileBuildVariables {
       Iterable<PathFragment> systemIncludeDirs,
       Iterable<PathFragment> frameworkIncludeDirs,
       Iterable<String> defines) {
+    return setupActionVariablesOrReportRuleError(
+        ruleErrorConsumer,
+        featureConfiguration,
+        setupTargetVariables(
+            ccToolchainProvider,
+            buildOptions,
+            cppConfiguration,
+            fdoStamp,
+            includeDirs,
+            quoteIncludeDirs,
+            systemIncludeDirs,
+            frameworkIncludeDirs,
+            defines),
+        sourceFile,
+        outputFile,
+        gcnoFile,
+        isUsingFission,
+        dwoFile,
+        ltoIndexingFile,
+        includes,
+        userCompileFlags,
+        cppModuleMap,
+        usePic,
+        fakeOutputFile,
+        dotdFileExecPath,
+        variablesExtensions,
+        additionalBuildVariables,
+        directModuleMaps);
+  }
+
+  /**
+   * Returns the variables of the compile actions of a target that don't depend on the compiled
+   * file: the include paths and the preprocessor defines, layered on top of the variables of the
+   * toolchain.
+   *
+   * <p>The result is interned, and meant to be computed once per target and passed as {@code
+   * targetVariables} to {@link #setupActionVariablesOrReportRuleError} for every compile action of
+   * the target. The actions then only hold the variables specific to them.
+   */
+  public static CcToolchainVariables setupTargetVariables(
+      CcToolchainProvider ccToolchainProvider,
+      BuildOptions buildOptions,
+      CppConfiguration cppConfiguration,
+      String fdoStamp,
+      Iterable<PathFragment> includeDirs,
+      Iterable<PathFragment> quoteIncludeDirs,
+      Iterable<PathFragment> systemIncludeDirs,
+      Iterable<PathFragment> frameworkIncludeDirs,
+      Iterable<String> defines) {
+    return addTargetVariables(
+            CcToolchainVariables.builder(
+                ccToolchainProvider.getBuildVariables(buildOptions, cppConfiguration)),
+            fdoStamp,
+            getSafePathStrings(includeDirs),
+            getSafePathStrings(quoteIncludeDirs),
+            getSafePathStrings(systemIncludeDirs),
+            getSafePathStrings(frameworkIncludeDirs),
+            defines)
+        .buildInterned();
+  }
+
+  /**
+   * Returns the variables of a single compile action, with {@code targetVariables} as parent.
+   *
+   * @param targetVariables the result of {@link #setupTargetVariables} for the target of the action
+   */
+  public static CcToolchainVariables setupActionVariablesOrReportRuleError(
+      RuleErrorConsumer ruleErrorConsumer,
+      FeatureConfiguration featureConfiguration,
+      CcToolchainVariables targetVariables,
+      String sourceFile,
+      String outputFile,
+      String gcnoFile,
+      boolean isUsingFission,
+      String dwoFile,
+      String ltoIndexingFile,
+      ImmutableList<String> includes,
+      Iterable<String> userCompileFlags,
+      CppModuleMap cppModuleMap,
+      boolean usePic,
+      PathFragment fakeOutputFile,
+      String dotdFileExecPath,
+      ImmutableList<VariablesExtension> variablesExtensions,
+      ImmutableMap<String, String> additionalBuildVariables,
+      Iterable<Artifact> directModuleMaps) {
     try {
-      return setupVariablesOrThrowEvalException(
-          featureConfiguration,
-          ccToolchainProvider,
-          buildOptions,
-          cppConfiguration,
-          sourceFile,
-          outputFile,
-          gcnoFile,
-          isUsingFission,
-          dwoFile,
-          ltoIndexingFile,
-          includes,
-          userCompileFlags,
-          cppModuleMap,
-          usePic,
-          toPathString(fakeOutputFile),
-          fdoStamp,
-          dotdFileExecPath,
-          variablesExtensions,
-          additionalBuildVariables,
-          directModuleMaps,
-          getSafePathStrings(includeDirs),
-          getSafePathStrings(quoteIncludeDirs),
-          getSafePathStrings(systemIncludeDirs),
-          getSafePathStrings(frameworkIncludeDirs),
-          defines);
+      CcToolchainVariables actionVariables =
+          addActionVariables(
+                  CcToolchainVariables.builder(targetVariables),
+                  featureConfiguration,
+                  sourceFile,
+                  outputFile,
+                  gcnoFile,
+                  isUsingFission,
+                  dwoFile,
+                  ltoIndexingFile,
+                  includes,
+                  userCompileFlags,
+                  cppModuleMap,
+                  usePic,
+                  toPathString(fakeOutputFile),
+                  dotdFileExecPath,
+                  variablesExtensions,
+                  additionalBuildVariables,
+                  directModuleMaps)
+              .build();
+      checkTargetVariablesNotOverwritten(targetVariables, actionVariables);
+      return actionVariables;
     } catch (EvalException e) {
       ruleErrorConsumer.ruleError(e.getMessage());
       return CcToolchainVariables.EMPTY;
     }
   }
 
+  /**
+   * Fails like {@link CcToolchainVariables.Builder} does for variables added twice if a variable of
+   * the action, e.g. one added by a {@link VariablesExtension}, has the name of a variable of the
+   * target, which it would otherwise silently shadow.
+   */
+  private static void checkTargetVariablesNotOverwritten(
+      CcToolchainVariables targetVariables, CcToolchainVariables actionVariables) {
+    for (String name :
+        Iterables.concat(
+            actionVariables.getVariablesMap().keySet(),
+            actionVariables.getStringVariablesMap().keySet())) {
+      Preconditions.checkArgument(
+          !targetVariables.getVariablesMap().containsKey(name)
+              && !targetVariables.getStringVariablesMap().containsKey(name),
+          "Cannot overwrite variable '%s'",
+          name);
+    }
+  }
+
   public static CcToolchainVariables setupVariablesOrThrowEvalException(
       FeatureConfiguration featureConfiguration,
       CcToolchainProvider ccToolchainProvider,
@@ -194,16 +295,95 @@ public enum CompileBuildVariables {
       Iterable<String> frameworkIncludeDirs,
       Iterable<String> defines)
       throws EvalException {
-    Preconditions.checkNotNull(directModuleMaps);
+    CcToolchainVariables.Builder buildVariables =
+        CcToolchainVariables.builder(
+            ccToolchainProvider.getBuildVariables(buildOptions, cppConfiguration));
+    addTargetVariables(
+        buildVariables,
+        fdoStamp,
+        includeDirs,
+        quoteIncludeDirs,
+        systemIncludeDirs,
+        frameworkIncludeDirs,
+        defines);
+    return addActionVariables(
+            buildVariables,
+            featureConfiguration,
+            sourceFile,
+            outputFile,
+            gcnoFile,
+            isUsingFission,
+            dwoFile,
+            ltoIndexingFile,
+            includes,
+            userCompileFlags,
+            cppModuleMap,
+            usePic,
+            fakeOutputFile,
+            dotdFileExecPath,
+            variablesExtensions,
+            additionalBuildVariables,
+            directModuleMaps)
+        .build();
+  }
+
+  private static CcToolchainVariables.Builder addTargetVariables(
+      CcToolchainVariables.Builder buildVariables,
+      String fdoStamp,
+      Iterable<String> includeDirs,
+      Iterable<String> quoteIncludeDirs,
+      Iterable<String> systemIncludeDirs,
+      Iterable<String> frameworkIncludeDirs,
+      Iterable<String> defines) {
     Preconditions.checkNotNull(includeDirs);
     Preconditions.checkNotNull(quoteIncludeDirs);
     Preconditions.checkNotNull(systemIncludeDirs);
     Preconditions.checkNotNull(frameworkIncludeDirs);
     Preconditions.checkNotNull(defines);
-    CcToolchainVariables.Builder buildVariables =
-        CcToolchainVariables.builder(
-            ccToolchainProvider.getBuildVariables(buildOptions, cppConfiguration));
+    buildVariables.addStringSequenceVariable(INCLUDE_PATHS.getVariableName(), includeDirs);
+    buildVariables.addStringSequenceVariable(
+        QUOTE_INCLUDE_PATHS.getVariableName(), quoteIncludeDirs);
+    buildVariables.addStringSequenceVariable(
+        SYSTEM_INCLUDE_PATHS.getVariableName(), systemIncludeDirs);
+    buildVariables.addStringSequenceVariable(
+        FRAMEWORK_PATHS.getVariableName(), frameworkIncludeDirs);
+
+    Iterable<String> allDefines;
+    if (fdoStamp != null) {
+      // Stamp FDO builds with FDO subtype string
+      allDefines =
+          ImmutableList.<String>builder()
+              .addAll(defines)
+              .add(CppConfiguration.FDO_STAMP_MACRO + "=\"" + fdoStamp + "\"")
+              .build();
+    } else {
+      allDefines = defines;
+    }
+
+    buildVariables.addStringSequenceVariable(PREPROCESSOR_DEFINES.getVariableName(), allDefines);
+    return buildVariables;
+  }
 
+  private static CcToolchainVariables.Builder addActionVariables(
+      CcToolchainVariables.Builder buildVariables,
+      FeatureConfiguration featureConfiguration,
+      String sourceFile,
+      String outputFile,
+      String gcnoFile,
+      boolean isUsingFission,
+      String dwoFile,
+      String ltoIndexingFile,
+      ImmutableList<String> includes,
+      Iterable<String> userCompileFlags,
+      CppModuleMap cppModuleMap,
+      boolean usePic,
+      String fakeOutputFile,
+      String dotdFileExecPath,
+      ImmutableList<VariablesExtension> variablesExtensions,
+      ImmutableMap<String, String> additionalBuildVariables,
+      Iterable<Artifact> directModuleMaps)
+      throws EvalException {
+    Preconditions.checkNotNull(directModuleMaps);
     buildVariables.addStringSequenceVariable(
         USER_COMPILE_FLAGS.getVariableName(), userCompileFlags);
 
@@ -239,33 +419,11 @@ public enum CompileBuildVariables {
       // Module inputs will be set later when the action is executed.
       buildVariables.addStringSequenceVariable(MODULE_FILES.getVariableName(), ImmutableSet.of());
     }
-    buildVariables.addStringSequenceVariable(INCLUDE_PATHS.getVariableName(), includeDirs);
-    buildVariables.addStringSequenceVariable(
-        QUOTE_INCLUDE_PATHS.getVariableName(), quoteIncludeDirs);
-    buildVariables.addStringSequenceVariable(
-        SYSTEM_INCLUDE_PATHS.getVariableName(), systemIncludeDirs);
 
     if (!includes.isEmpty()) {
       buildVariables.addStringSequenceVariable(INCLUDES.getVariableName(), includes);
     }
 
-    buildVariables.addStringSequenceVariable(
-        FRAMEWORK_PATHS.getVariableName(), frameworkIncludeDirs);
-
-    Iterable<String> allDefines;
-    if (fdoStamp != null) {
-      // Stamp FDO builds with FDO subtype string
-      allDefines =
-          ImmutableList.<String>builder()
-              .addAll(defines)
-              .add(CppConfiguration.FDO_STAMP_MACRO + "=\"" + fdoStamp + "\"")
-              .build();
-    } else {
-      allDefines = defines;
-    }
-
-    buildVariables.addStringSequenceVariable(PREPROCESSOR_DEFINES.getVariableName(), allDefines);
-
     if (usePic) {
       if (!featureConfiguration.isEnabled(CppRuleClasses.PIC)
           && !featureConfiguration.isEnabled(CppRuleClasses.SUPPORTS_PIC)) {
@@ -294,8 +452,7 @@ public enum CompileBuildVariables {
     for (VariablesExtension extension : variablesExtensions) {
       extension.addVariables(buildVariables);
     }
-
-    return buildVariables.build();
+    return buildVariables;
   }
 
   /** Get the safe path strings for a list of paths to use in the build variables. */
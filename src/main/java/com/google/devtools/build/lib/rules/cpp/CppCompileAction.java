@@ -1055,17 +1055,27 @@ public class CppCompileAction extends AbstractAction
 
   @Override
   public Iterable<Artifact> getAllowedDerivedInputs() {
+    HashSet<Artifact> result = getAllowedDerivedInputsExceptDeclaredIncludeSrcs();
+    addNonSources(result, getDeclaredIncludeSrcs());
+    return unmodifiableSet(result);
+  }
+
+  /**
+   * Returns the allowed derived inputs that are specific to this action. The declared include
+   * sources are left out, since {@link HeaderDiscovery} indexes them once for all the actions of
+   * the compilation context.
+   */
+  private HashSet<Artifact> getAllowedDerivedInputsExceptDeclaredIncludeSrcs() {
     HashSet<Artifact> result = new HashSet<>();
     addNonSources(result, mandatoryInputs);
     addNonSources(result, additionalPrunableHeaders);
     addNonSources(result, inputsForInvalidation);
-    addNonSources(result, getDeclaredIncludeSrcs());
     addNonSources(result, ccCompilationContext.getTransitiveModules(usePic));
     Artifact artifact = getSourceFile();
     if (!artifact.isSourceArtifact()) {
       result.add(artifact);
     }
-    return unmodifiableSet(result);
+    return result;
   }
 
   /**
@@ -1357,7 +1367,8 @@ public class CppCompileAction extends AbstractAction
             .setSourceFile(getSourceFile())
             .setDependencies(dependencies.build())
             .setPermittedSystemIncludePrefixes(getPermittedSystemIncludePrefixes(execRoot))
-            .setAllowedDerivedinputs(getAllowedDerivedInputs());
+            .setAllowedDerivedinputs(getAllowedDerivedInputsExceptDeclaredIncludeSrcs())
+            .setDeclaredIncludeSrcs(getDeclaredIncludeSrcs());
 
     if (needsIncludeValidation) {
       discoveryBuilder.shouldValidateInclusions();
@@ -1383,7 +1394,8 @@ public class CppCompileAction extends AbstractAction
             .setDependencies(
                 processDepset(actionExecutionContext, execRoot, dotDContents).getDependencies())
             .setPermittedSystemIncludePrefixes(getPermittedSystemIncludePrefixes(execRoot))
-            .setAllowedDerivedinputs(getAllowedDerivedInputs());
+            .setAllowedDerivedinputs(getAllowedDerivedInputsExceptDeclaredIncludeSrcs())
+            .setDeclaredIncludeSrcs(getDeclaredIncludeSrcs());
 
     if (needsIncludeValidation) {
       discoveryBuilder.shouldValidateInclusions();
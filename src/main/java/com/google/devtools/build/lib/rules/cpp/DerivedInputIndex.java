@@ -0,0 +1,154 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.rules.cpp;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.collect.nestedset.NestedSet;
+import com.google.devtools.build.lib.concurrent.ThreadSafety.Immutable;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Maps exec paths to the derived artifacts that a compile action is allowed to include, for {@link
+ * HeaderDiscovery}.
+ *
+ * <p>File artifacts are looked up by exact exec path. Tree artifacts are kept in a trie of path
+ * segments, so that finding the tree artifact containing a header takes one step per segment of
+ * the header path instead of a scan over all tree artifacts.
+ *
+ * <p>The indexes of the declared include sources of a compilation context are shared by the
+ * compile actions using them through {@link #forDeclaredIncludeSrcs}, so that the actions of a
+ * target don't each index the transitive headers of the target again.
+ */
+@Immutable
+final class DerivedInputIndex {
+
+  /**
+   * The indexes of nested sets, by identity. The values are weakly referenced, so an index is
+   * shared by the actions of a target that discover their inputs around the same time, typically
+   * all of them, without keeping an index per target for the lifetime of the analysis graph.
+   */
+  private static final LoadingCache<NestedSet<Artifact>, DerivedInputIndex> SHARED_INDEXES =
+      CacheBuilder.newBuilder()
+          .weakKeys()
+          .weakValues()
+          .build(
+              new CacheLoader<NestedSet<Artifact>, DerivedInputIndex>() {
+                @Override
+                public DerivedInputIndex load(NestedSet<Artifact> artifacts) {
+                  return of(artifacts);
+                }
+              });
+
+  static final DerivedInputIndex EMPTY = new DerivedInputIndex(new HashMap<>(), new TreeNode());
+
+  private final Map<PathFragment, Artifact> fileArtifacts;
+  private final TreeNode treeArtifacts;
+
+  private DerivedInputIndex(Map<PathFragment, Artifact> fileArtifacts, TreeNode treeArtifacts) {
+    this.fileArtifacts = fileArtifacts;
+    this.treeArtifacts = treeArtifacts;
+  }
+
+  /** Returns an index of the derived artifacts in {@code artifacts}. */
+  static DerivedInputIndex of(Iterable<Artifact> artifacts) {
+    Map<PathFragment, Artifact> fileArtifacts = new HashMap<>();
+    TreeNode treeArtifacts = new TreeNode();
+    for (Artifact a : artifacts) {
+      if (a.isSourceArtifact()) {
+        continue;
+      }
+      if (a.isTreeArtifact()) {
+        treeArtifacts.add(a);
+      }
+      // We may encounter duplicate keys in the derived inputs if two artifacts have different
+      // owners. Just use the first one. The two artifacts must be generated by equivalent
+      // (shareable) actions in order to have not generated a conflict in Bazel. If on an
+      // incremental build one changes without the other one changing, then if their paths remain
+      // the same, that will trigger an action conflict and fail the build. If one path changes,
+      // then this action will be re-analyzed, and will execute in Skyframe. It can legitimately
+      // get an action cache hit in that case, since even if it previously depended on the
+      // artifact whose path changed, that is not taken into account by the action cache, and it
+      // will get an action cache hit using the remaining un-renamed artifact.
+      fileArtifacts.putIfAbsent(a.getExecPath(), a);
+    }
+    return new DerivedInputIndex(fileArtifacts, treeArtifacts);
+  }
+
+  /**
+   * Returns the index of the derived artifacts in {@code declaredIncludeSrcs}, shared with the
+   * other actions using the same nested set.
+   */
+  static DerivedInputIndex forDeclaredIncludeSrcs(NestedSet<Artifact> declaredIncludeSrcs) {
+    if (declaredIncludeSrcs.isEmpty()) {
+      return EMPTY;
+    }
+    return SHARED_INDEXES.getUnchecked(declaredIncludeSrcs);
+  }
+
+  /** Returns the artifact with exec path {@code execPath}, or null if there is none. */
+  @Nullable
+  Artifact get(PathFragment execPath) {
+    return fileArtifacts.get(execPath);
+  }
+
+  /**
+   * Returns a tree artifact containing the file at {@code execPath}, or null if there is none.
+   */
+  @Nullable
+  Artifact findOwningTreeArtifact(PathFragment execPath) {
+    TreeNode node = treeArtifacts;
+    if (node.children == null) {
+      return null;
+    }
+    PathFragment dir = execPath.getParentDirectory();
+    for (String segment : dir.getSegments()) {
+      node = node.children.get(segment);
+      if (node == null) {
+        return null;
+      }
+      if (node.treeArtifact != null) {
+        return node.treeArtifact;
+      }
+      if (node.children == null) {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /** A node of the trie of tree artifacts, with one level per exec path segment. */
+  private static final class TreeNode {
+    @Nullable private Map<String, TreeNode> children;
+    @Nullable private Artifact treeArtifact;
+
+    void add(Artifact treeArtifact) {
+      TreeNode node = this;
+      for (String segment : treeArtifact.getExecPath().getSegments()) {
+        if (node.children == null) {
+          node.children = new HashMap<>();
+        }
+        node = node.children.computeIfAbsent(segment, s -> new TreeNode());
+      }
+      if (node.treeArtifact == null) {
+        node.treeArtifact = treeArtifact;
+      }
+    }
+  }
+}
@@ -15,8 +15,6 @@
 package com.google.devtools.build.lib.rules.cpp;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableSet;
 import com.google.devtools.build.lib.actions.Action;
 import com.google.devtools.build.lib.actions.ActionExecutionException;
 import com.google.devtools.build.lib.actions.Artifact;
@@ -26,23 +24,25 @@ import com.google.devtools.build.lib.cmdline.PackageIdentifier;
 import com.google.devtools.build.lib.cmdline.RepositoryName;
 import com.google.devtools.build.lib.collect.nestedset.NestedSet;
 import com.google.devtools.build.lib.collect.nestedset.NestedSetBuilder;
+import com.google.devtools.build.lib.collect.nestedset.Order;
 import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadCompatible;
 import com.google.devtools.build.lib.vfs.FileSystemUtils;
 import com.google.devtools.build.lib.vfs.Path;
 import com.google.devtools.build.lib.vfs.PathFragment;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * HeaderDiscovery checks whether all header files that a compile action uses are actually declared
  * as inputs.
  *
+ * <p>Allowed inputs are looked up in {@link DerivedInputIndex}es: one for the inputs specific to
+ * the action, and one for the declared include sources, which is shared by the actions compiling
+ * with the same compilation context.
+ *
  * <p>Tree artifacts: a tree artifact with path P causes any header file prefixed by P to be
- * accepted. Testing whether a used header file is prefixed by any tree artifact is linear search,
- * but the result is cached. If all files in a tree artifact are at the root of the artifact, the
- * entire check is performed by hash lookups.
+ * accepted. The index keeps tree artifacts in a trie of path segments, so testing whether a used
+ * header file is prefixed by any tree artifact takes one lookup per segment of the header path.
  */
 public class HeaderDiscovery {
 
@@ -60,28 +60,11 @@ public class HeaderDiscovery {
   private final Collection<Path> dependencies;
   private final List<Path> permittedSystemIncludePrefixes;
 
-  /**
-   * allowedDerivedInputsMap maps paths of derived artifacts to the artifacts. These only include
-   * file artifacts.
-   */
-  private final ImmutableMap<PathFragment, Artifact> allowedDerivedInputsMap;
-
-  /**
-   * {@link #treeArtifacts} contains tree artifacts given as input to the action.
-   *
-   * <p>Header files whose prefix is in this set are considered as included, and will not trigger a
-   * header inclusion error.
-   */
-  private final ImmutableSet<Artifact> treeArtifacts;
+  /** Indexes the derived inputs specific to the action. */
+  private final DerivedInputIndex allowedDerivedInputs;
 
-  /**
-   * {@link #pathToOwningTreeArtifact} caches answers to "does a fragment have a prefix in {@link
-   * #treeArtifacts}".
-   *
-   * <p>It is initialized to (a.path, a) for each a in {@link #treeArtifacts}, in order to speed up
-   * the typical case of headers coming from a flat tree artifact.
-   */
-  private final HashMap<PathFragment, Artifact> pathToOwningTreeArtifact;
+  /** Indexes the derived declared include sources, shared with other actions. */
+  private final DerivedInputIndex declaredIncludeSrcs;
 
   /**
    * Creates a HeaderDiscover instance
@@ -89,8 +72,8 @@ public class HeaderDiscovery {
    * @param action the action instance requiring header discovery
    * @param sourceFile the source file for the compile
    * @param shouldValidateInclusions true if include validation should be performed
-   * @param allowedDerivedInputsMap see javadoc for {@link #allowedDerivedInputsMap}
-   * @param treeArtifacts see javadoc for {@link #treeArtifacts}
+   * @param allowedDerivedInputs see javadoc for {@link #allowedDerivedInputs}
+   * @param declaredIncludeSrcs see javadoc for {@link #declaredIncludeSrcs}
    */
   private HeaderDiscovery(
       Action action,
@@ -98,20 +81,15 @@ public class HeaderDiscovery {
       boolean shouldValidateInclusions,
       Collection<Path> dependencies,
       List<Path> permittedSystemIncludePrefixes,
-      ImmutableMap<PathFragment, Artifact> allowedDerivedInputsMap,
-      ImmutableSet<Artifact> treeArtifacts) {
+      DerivedInputIndex allowedDerivedInputs,
+      DerivedInputIndex declaredIncludeSrcs) {
     this.action = Preconditions.checkNotNull(action);
     this.sourceFile = Preconditions.checkNotNull(sourceFile);
     this.shouldValidateInclusions = shouldValidateInclusions;
     this.dependencies = dependencies;
     this.permittedSystemIncludePrefixes = permittedSystemIncludePrefixes;
-    this.allowedDerivedInputsMap = allowedDerivedInputsMap;
-    this.treeArtifacts = treeArtifacts;
-
-    this.pathToOwningTreeArtifact = new HashMap<>();
-    for (Artifact a : treeArtifacts) {
-      pathToOwningTreeArtifact.put(a.getExecPath(), a);
-    }
+    this.allowedDerivedInputs = allowedDerivedInputs;
+    this.declaredIncludeSrcs = declaredIncludeSrcs;
   }
 
   /**
@@ -152,7 +130,10 @@ public class HeaderDiscovery {
           continue;
         }
       }
-      Artifact artifact = allowedDerivedInputsMap.get(execPathFragment);
+      Artifact artifact = allowedDerivedInputs.get(execPathFragment);
+      if (artifact == null) {
+        artifact = declaredIncludeSrcs.get(execPathFragment);
+      }
       if (artifact == null) {
         try {
           RepositoryName repository =
@@ -193,15 +174,11 @@ public class HeaderDiscovery {
   }
 
   private Artifact findOwningTreeArtifact(PathFragment execPathFragment) {
-    PathFragment dir = execPathFragment.getParentDirectory();
-    Artifact artifact = pathToOwningTreeArtifact.get(dir);
+    Artifact artifact = allowedDerivedInputs.findOwningTreeArtifact(execPathFragment);
     if (artifact != null) {
       return artifact;
     }
-    return treeArtifacts.stream()
-        .filter(a -> dir.startsWith(a.getExecPath()))
-        .findAny()
-        .orElse(null);
+    return declaredIncludeSrcs.findOwningTreeArtifact(execPathFragment);
   }
 
   /** A Builder for HeaderDiscovery */
@@ -213,6 +190,7 @@ public class HeaderDiscovery {
     private Collection<Path> dependencies;
     private List<Path> permittedSystemIncludePrefixes;
     private Iterable<Artifact> allowedDerivedInputs;
+    private NestedSet<Artifact> declaredIncludeSrcs = NestedSetBuilder.emptySet(Order.STABLE_ORDER);
 
     /** Sets the action for which to discover inputs. */
     public Builder setAction(Action action) {
@@ -250,34 +228,26 @@ public class HeaderDiscovery {
       return this;
     }
 
+    /**
+     * Sets the declared include sources of the compilation context, which are permitted inputs in
+     * addition to {@link #setAllowedDerivedinputs}. Their index is shared with the other actions
+     * setting the same nested set.
+     */
+    public Builder setDeclaredIncludeSrcs(NestedSet<Artifact> declaredIncludeSrcs) {
+      this.declaredIncludeSrcs = declaredIncludeSrcs;
+      return this;
+    }
+
     /** Creates a CppHeaderDiscovery instance. */
     public HeaderDiscovery build() {
-      Map<PathFragment, Artifact> allowedDerivedInputsMap = new HashMap<>();
-      ImmutableSet.Builder<Artifact> treeArtifacts = ImmutableSet.builder();
-      for (Artifact a : allowedDerivedInputs) {
-        if (a.isTreeArtifact()) {
-          treeArtifacts.add(a);
-        }
-        // We may encounter duplicate keys in the derived inputs if two artifacts have different
-        // owners. Just use the first one. The two artifacts must be generated by equivalent
-        // (shareable) actions in order to have not generated a conflict in Bazel. If on an
-        // incremental build one changes without the other one changing, then if their paths remain
-        // the same, that will trigger an action conflict and fail the build. If one path changes,
-        // then this action will be re-analyzed, and will execute in Skyframe. It can legitimately
-        // get an action cache hit in that case, since even if it previously depended on the
-        // artifact whose path changed, that is not taken into account by the action cache, and it
-        // will get an action cache hit using the remaining un-renamed artifact.
-        allowedDerivedInputsMap.putIfAbsent(a.getExecPath(), a);
-      }
-
       return new HeaderDiscovery(
           action,
           sourceFile,
           shouldValidateInclusions,
           dependencies,
           permittedSystemIncludePrefixes,
-          ImmutableMap.copyOf(allowedDerivedInputsMap),
-          treeArtifacts.build());
+          DerivedInputIndex.of(allowedDerivedInputs),
+          DerivedInputIndex.forDeclaredIncludeSrcs(declaredIncludeSrcs));
     }
   }
 }
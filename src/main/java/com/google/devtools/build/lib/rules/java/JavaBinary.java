@@ -23,6 +23,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.ExecutionRequirements;
 import com.google.devtools.build.lib.actions.MutableActionGraph.ActionConflictException;
 import com.google.devtools.build.lib.analysis.ConfiguredTarget;
 import com.google.devtools.build.lib.analysis.FilesToRunProvider;
@@ -38,6 +39,7 @@ import com.google.devtools.build.lib.analysis.actions.FileWriteAction;
 import com.google.devtools.build.lib.analysis.actions.LazyWritePathsFileAction;
 import com.google.devtools.build.lib.analysis.config.CompilationMode;
 import com.google.devtools.build.lib.analysis.configuredtargets.RuleConfiguredTarget.Mode;
+import com.google.devtools.build.lib.analysis.test.ExecutionInfo;
 import com.google.devtools.build.lib.cmdline.Label;
 import com.google.devtools.build.lib.collect.nestedset.NestedSet;
 import com.google.devtools.build.lib.collect.nestedset.NestedSetBuilder;
@@ -265,6 +267,7 @@ public class JavaBinary implements RuleConfiguredTargetFactory {
     }
 
     Artifact executableToRun = executableForRunfiles;
+    boolean persistentTestRunner = false;
     if (createExecutable) {
       String javaExecutable;
       if (semantics.isJavaExecutableSubstitution()) {
@@ -292,6 +295,9 @@ public class JavaBinary implements RuleConfiguredTargetFactory {
       Optional<Artifact> classpathsFile = semantics.createClasspathsFile(ruleContext, common);
       if (classpathsFile.isPresent()) {
         filesBuilder.add(classpathsFile.get());
+        // Only the ExperimentalTestRunner loads the test classes in a separate classloader, which
+        // lets it run the tests again in the same JVM.
+        persistentTestRunner = javaConfig.usePersistentTestRunner();
       }
     }
 
@@ -315,6 +321,10 @@ public class JavaBinary implements RuleConfiguredTargetFactory {
     if (generatedExtensionRegistryProvider != null) {
       builder.addNativeDeclaredProvider(generatedExtensionRegistryProvider);
     }
+    if (persistentTestRunner) {
+      builder.addNativeDeclaredProvider(
+          new ExecutionInfo(ExecutionRequirements.WORKER_MODE_ENABLED));
+    }
 
     Artifact deployJar =
         ruleContext.getImplicitOutputArtifact(JavaSemantics.JAVA_BINARY_DEPLOY_JAR);
@@ -154,6 +154,7 @@ public final class JavaCompileActionBuilder {
   private ImmutableList<String> javacJvmOpts = ImmutableList.of();
   private ImmutableMap<String, String> executionInfo = ImmutableMap.of();
   private boolean compressJar;
+  private int jarThreads = 1;
   private NestedSet<Artifact> classpathEntries = NestedSetBuilder.emptySet(Order.NAIVE_LINK_ORDER);
   private ImmutableList<Artifact> bootclasspathEntries = ImmutableList.of();
   private ImmutableList<Artifact> sourcePathEntries = ImmutableList.of();
@@ -330,6 +331,9 @@ public final class JavaCompileActionBuilder {
     if (compressJar) {
       result.add("--compress_jar");
     }
+    if (jarThreads > 1) {
+      result.add("--jar_threads", Integer.toString(jarThreads));
+    }
     result.addPath("--output_deps_proto", outputDepsProto);
     result.addExecPaths("--extclasspath", extdirInputs);
     result.addExecPaths("--bootclasspath", bootclasspathEntries);
@@ -484,6 +488,12 @@ public final class JavaCompileActionBuilder {
     return this;
   }
 
+  /** Sets the number of threads JavaBuilder compresses the output jar on. */
+  public JavaCompileActionBuilder setJarThreads(int jarThreads) {
+    this.jarThreads = jarThreads;
+    return this;
+  }
+
   public JavaCompileActionBuilder setClasspathEntries(NestedSet<Artifact> classpathEntries) {
     this.classpathEntries = classpathEntries;
     return this;
@@ -162,6 +162,7 @@ public final class JavaConfiguration extends Fragment implements JavaConfigurati
   private final ImmutableList<String> checkedConstraints;
   private final StrictDepsMode strictJavaDeps;
   private final String fixDepsTool;
+  private final int javaBuilderJarThreads;
   private final Label proguardBinary;
   private final ImmutableList<Label> extraProguardSpecs;
   private final TriState bundleTranslations;
@@ -173,6 +174,7 @@ public final class JavaConfiguration extends Fragment implements JavaConfigurati
   private final Label runtimeLabel;
   private final boolean explicitJavaTestDeps;
   private final boolean experimentalTestRunner;
+  private final boolean persistentTestRunner;
   private final boolean jplPropagateCcLinkParamsStore;
   private final boolean addTestSupportToCompileTimeDeps;
   private final boolean isJlplStrictDepsEnforced;
@@ -199,6 +201,7 @@ public final class JavaConfiguration extends Fragment implements JavaConfigurati
     this.checkedConstraints = ImmutableList.copyOf(javaOptions.checkedConstraints);
     this.strictJavaDeps = javaOptions.strictJavaDeps;
     this.fixDepsTool = javaOptions.fixDepsTool;
+    this.javaBuilderJarThreads = javaOptions.javaBuilderJarThreads;
     this.proguardBinary = javaOptions.proguard;
     this.extraProguardSpecs = ImmutableList.copyOf(javaOptions.extraProguardSpecs);
     this.enforceProguardFileExtension = javaOptions.enforceProguardFileExtension;
@@ -215,6 +218,7 @@ public final class JavaConfiguration extends Fragment implements JavaConfigurati
     this.allowRuntimeDepsOnNeverLink = javaOptions.allowRuntimeDepsOnNeverLink;
     this.explicitJavaTestDeps = javaOptions.explicitJavaTestDeps;
     this.experimentalTestRunner = javaOptions.experimentalTestRunner;
+    this.persistentTestRunner = javaOptions.persistentTestRunner;
     this.jplPropagateCcLinkParamsStore = javaOptions.jplPropagateCcLinkParamsStore;
     this.isJlplStrictDepsEnforced = javaOptions.isJlplStrictDepsEnforced;
     this.disallowResourceJars = javaOptions.disallowResourceJars;
@@ -353,6 +357,11 @@ public final class JavaConfiguration extends Fragment implements JavaConfigurati
     return fixDepsTool;
   }
 
+  /** Number of threads JavaBuilder uses to compress class jars. */
+  public int getJavaBuilderJarThreads() {
+    return javaBuilderJarThreads;
+  }
+
   /** @return proper label only if --java_launcher= is specified, otherwise null. */
   public Label getJavaLauncherLabel() {
     return javaLauncherLabel;
@@ -441,6 +450,14 @@ public final class JavaConfiguration extends Fragment implements JavaConfigurati
     return experimentalTestRunner;
   }
 
+  /**
+   * Returns true if java_test targets that use the ExperimentalTestRunner may run in a persistent
+   * worker.
+   */
+  public boolean usePersistentTestRunner() {
+    return persistentTestRunner;
+  }
+
   /**
    * Make it mandatory for java_test targets to explicitly declare any JUnit or Hamcrest
    * dependencies instead of accidentally obtaining them from the TestRunner's dependencies.
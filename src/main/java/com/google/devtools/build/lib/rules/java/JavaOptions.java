@@ -25,6 +25,7 @@ import com.google.devtools.build.lib.rules.java.JavaConfiguration.ImportDepsChec
 import com.google.devtools.build.lib.rules.java.JavaConfiguration.JavaClasspathMode;
 import com.google.devtools.build.lib.rules.java.JavaConfiguration.JavaOptimizationMode;
 import com.google.devtools.build.lib.rules.java.JavaConfiguration.OneVersionEnforcementLevel;
+import com.google.devtools.common.options.Converters.RangeConverter;
 import com.google.devtools.common.options.EnumConverter;
 import com.google.devtools.common.options.Option;
 import com.google.devtools.common.options.OptionDocumentationCategory;
@@ -68,6 +69,13 @@ public class JavaOptions extends FragmentOptions {
     }
   }
 
+  /** Converter for the --experimental_javabuilder_jar_threads option. */
+  public static class JarThreadsConverter extends RangeConverter {
+    public JarThreadsConverter() {
+      super(1, Integer.MAX_VALUE);
+    }
+  }
+
   @Option(
       name = "experimental_disallow_legacy_java_toolchain_flags",
       defaultValue = "false",
@@ -280,6 +288,18 @@ public class JavaOptions extends FragmentOptions {
       help = "Specifies which tool should be used to resolve missing dependencies.")
   public String fixDepsTool;
 
+  @Option(
+      name = "experimental_javabuilder_jar_threads",
+      defaultValue = "1",
+      converter = JarThreadsConverter.class,
+      documentationCategory = OptionDocumentationCategory.UNDOCUMENTED,
+      effectTags = {OptionEffectTag.EXECUTION},
+      help =
+          "Number of threads JavaBuilder uses to compress the class jar of each Java compilation. "
+              + "The jar is the same for any number of threads. Values greater than 1 require a "
+              + "JavaBuilder that supports --jar_threads.")
+  public int javaBuilderJarThreads;
+
   // TODO(bazel-team): This flag should ideally default to true (and eventually removed). We have
   // been accidentally supplying JUnit and Hamcrest deps to java_test targets indirectly via the
   // BazelTestRunner, and setting this flag to true fixes that behaviour.
@@ -305,6 +325,18 @@ public class JavaOptions extends FragmentOptions {
               + "the test targets have their dependencies right.")
   public boolean experimentalTestRunner;
 
+  @Option(
+      name = "experimental_persistent_test_runner",
+      defaultValue = "false",
+      documentationCategory = OptionDocumentationCategory.UNDOCUMENTED,
+      effectTags = {OptionEffectTag.EXECUTION},
+      help =
+          "Allows java_test targets that use the experimental test runner to run their tests in a "
+              + "persistent worker, which loads the test classes in a new classloader for every "
+              + "run. Requires --experimental_testrunner, and the worker is only used when the "
+              + "TestRunner strategy is set to worker, e.g. with --strategy=TestRunner=worker.")
+  public boolean persistentTestRunner;
+
   @Option(
       name = "javabuilder_top",
       defaultValue = "null",
@@ -682,6 +714,7 @@ public class JavaOptions extends FragmentOptions {
 
     host.strictJavaDeps = strictJavaDeps;
     host.fixDepsTool = fixDepsTool;
+    host.javaBuilderJarThreads = javaBuilderJarThreads;
 
     host.enforceOneVersion = enforceOneVersion;
     host.importDepsCheckingLevel = importDepsCheckingLevel;
@@ -130,6 +130,13 @@ public class CommonCommandOptions extends OptionsBase {
     }
   }
 
+  /** Converter for --experimental_profile_vfs_sampling_rate, which must be positive. */
+  public static class VfsSamplingRateConverter extends Converters.RangeConverter {
+    public VfsSamplingRateConverter() {
+      super(1, Integer.MAX_VALUE);
+    }
+  }
+
   /**
    * Converter for options (--build_request_id) that accept prefixed UUIDs. Since we do not care
    * about the structure of this value after validation, we store it as a string.
@@ -274,6 +281,19 @@ public class CommonCommandOptions extends OptionsBase {
               + " too large.")
   public boolean enableJsonProfileDiet;
 
+  @Option(
+      name = "experimental_profile_vfs_sampling_rate",
+      defaultValue = "1",
+      converter = VfsSamplingRateConverter.class,
+      documentationCategory = OptionDocumentationCategory.LOGGING,
+      effectTags = {OptionEffectTag.AFFECTS_OUTPUTS, OptionEffectTag.BAZEL_MONITORING},
+      help =
+          "If greater than 1, only every n-th VFS task (stat, readdir, digest, ...) is written to"
+              + " the profile, which keeps the profile small and cheap to write when"
+              + " --record_full_profiler_data is set. Aggregated statistics still account for all"
+              + " VFS tasks.")
+  public int profileVfsSamplingRate;
+
   // TODO(twerth): Remove after Blaze is released with cl/248143034.
   @Option(
       name = "experimental_json_profile_metadata",
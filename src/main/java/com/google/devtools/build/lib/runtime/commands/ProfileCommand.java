@@ -20,10 +20,12 @@ import com.google.devtools.build.lib.events.Event;
 import com.google.devtools.build.lib.events.EventHandler;
 import com.google.devtools.build.lib.profiler.ProfilePhase;
 import com.google.devtools.build.lib.profiler.ProfilerTask;
+import com.google.devtools.build.lib.profiler.analysis.JsonProfileSummary;
 import com.google.devtools.build.lib.profiler.analysis.ProfileInfo;
 import com.google.devtools.build.lib.profiler.analysis.ProfileInfo.InfoListener;
 import com.google.devtools.build.lib.profiler.analysis.ProfileInfo.Task;
 import com.google.devtools.build.lib.profiler.output.HtmlCreator;
+import com.google.devtools.build.lib.profiler.output.JsonProfileText;
 import com.google.devtools.build.lib.profiler.output.PhaseText;
 import com.google.devtools.build.lib.profiler.statistics.CriticalPathStatistics;
 import com.google.devtools.build.lib.profiler.statistics.MultiProfileStatistics;
@@ -266,6 +268,23 @@ public final class ProfileCommand implements BlazeCommand {
         for (String name : options.getResidue()) {
           Path profileFile = env.getWorkingDirectory().getRelative(name);
           try {
+            if (JsonProfileSummary.isJsonProfile(profileFile)) {
+              if (opts.dumpMode != null || opts.taskTree != null || opts.html) {
+                env.getReporter()
+                    .handle(
+                        Event.warn(
+                            "--dump, --task_tree and --html are not supported for JSON trace"
+                                + " profiles, printing a summary of "
+                                + name
+                                + " instead"));
+              }
+              new JsonProfileText(
+                      out,
+                      JsonProfileSummary.read(
+                          profileFile, JsonProfileSummary.DEFAULT_SLOWEST_ACTIONS_COUNT))
+                  .print();
+              continue;
+            }
             ProfileInfo info = ProfileInfo.loadProfileVerbosely(profileFile, getInfoListener(env));
 
             if (opts.dumpMode == null || !opts.dumpMode.contains("unsorted")) {
@@ -0,0 +1,109 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.skyframe;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadSafe;
+import com.google.devtools.build.lib.vfs.Path;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Deletes old output directories of actions off the critical path.
+ *
+ * <p>A directory is renamed into a trash directory, which takes a single system call, and its
+ * contents are then deleted by a low priority background thread. If the directory can't be renamed,
+ * for example because the trash directory is on another file system, it is deleted synchronously.
+ *
+ * <p>Deletions still pending when the server exits are left in the trash directory, whose contents
+ * are deleted in the background when a new deleter is created for it.
+ */
+@ThreadSafe
+final class AsynchronousOutputDeleter {
+  private static final Logger logger = Logger.getLogger(AsynchronousOutputDeleter.class.getName());
+
+  private final Path trashDirectory;
+  private final ThreadPoolExecutor service;
+
+  AsynchronousOutputDeleter(Path trashDirectory) {
+    this.trashDirectory = trashDirectory;
+    this.service =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            0L,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder()
+                .setNameFormat("output-deleter")
+                .setDaemon(true)
+                .setPriority(Thread.MIN_PRIORITY)
+                .build());
+    service.execute(
+        () -> {
+          try {
+            trashDirectory.deleteTreesBelow();
+          } catch (IOException e) {
+            logger.warning("Failed to delete contents of " + trashDirectory + ": " + e);
+          }
+        });
+  }
+
+  Path getTrashDirectory() {
+    return trashDirectory;
+  }
+
+  /**
+   * Deletes the directory at {@code path} and everything below it. When this method returns, the
+   * path no longer exists, but its contents may not have been deleted yet.
+   */
+  void deleteTree(Path path) throws IOException {
+    Path trash = trashDirectory.getChild(UUID.randomUUID().toString());
+    try {
+      trashDirectory.createDirectoryAndParents();
+      // Moving a directory to another parent updates its ".." entry, which needs write permission.
+      path.setWritable(true);
+      path.renameTo(trash);
+    } catch (IOException e) {
+      path.deleteTree();
+      return;
+    }
+    service.execute(
+        () -> {
+          try {
+            trash.deleteTree();
+          } catch (IOException e) {
+            logger.warning("Failed to delete " + path + " asynchronously: " + e);
+          }
+        });
+  }
+
+  /** Waits for all pending deletions. Only used in tests. */
+  @VisibleForTesting
+  void awaitPendingDeletions() throws InterruptedException {
+    service.shutdown();
+    service.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+  }
+
+  /** Stops accepting deletions. Pending deletions still complete in the background. */
+  void shutdown() {
+    logger.info("Finishing " + service.getQueue().size() + " pending async output deletions");
+    service.shutdown();
+  }
+}
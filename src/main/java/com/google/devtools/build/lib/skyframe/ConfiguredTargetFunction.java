@@ -35,13 +35,17 @@ import com.google.devtools.build.lib.analysis.DependencyResolver;
 import com.google.devtools.build.lib.analysis.DependencyResolver.DependencyKind;
 import com.google.devtools.build.lib.analysis.DependencyResolver.InconsistentAspectOrderException;
 import com.google.devtools.build.lib.analysis.EmptyConfiguredTarget;
+import com.google.devtools.build.lib.analysis.PlatformOptions;
 import com.google.devtools.build.lib.analysis.ResolvedToolchainContext;
 import com.google.devtools.build.lib.analysis.TargetAndConfiguration;
 import com.google.devtools.build.lib.analysis.config.BuildConfiguration;
 import com.google.devtools.build.lib.analysis.config.BuildOptions;
 import com.google.devtools.build.lib.analysis.config.BuildOptions.OptionsDiffForReconstruction;
 import com.google.devtools.build.lib.analysis.config.ConfigMatchingProvider;
+import com.google.devtools.build.lib.analysis.config.ConfigurationFragmentFactory;
 import com.google.devtools.build.lib.analysis.config.ConfigurationResolver;
+import com.google.devtools.build.lib.analysis.config.CoreOptions;
+import com.google.devtools.build.lib.analysis.config.FragmentOptions;
 import com.google.devtools.build.lib.analysis.config.InvalidConfigurationException;
 import com.google.devtools.build.lib.analysis.configuredtargets.MergedConfiguredTarget.DuplicateException;
 import com.google.devtools.build.lib.analysis.configuredtargets.RuleConfiguredTarget;
@@ -59,7 +63,9 @@ import com.google.devtools.build.lib.events.Event;
 import com.google.devtools.build.lib.events.EventKind;
 import com.google.devtools.build.lib.events.StoredEventHandler;
 import com.google.devtools.build.lib.packages.Aspect;
+import com.google.devtools.build.lib.packages.Attribute;
 import com.google.devtools.build.lib.packages.BuildType;
+import com.google.devtools.build.lib.packages.ConfigurationFragmentPolicy;
 import com.google.devtools.build.lib.packages.NoSuchTargetException;
 import com.google.devtools.build.lib.packages.NonconfigurableAttributeMapper;
 import com.google.devtools.build.lib.packages.Package;
@@ -89,6 +95,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
@@ -258,6 +265,22 @@ public final class ConfiguredTargetFunction implements SkyFunction {
           nonceVersion.get());
     }
 
+    // With retroactive trimming, a target which was already analyzed under a configuration that
+    // trims to a subset of this one produces the same result, so reuse it instead.
+    if (configuration != null && configuration.trimConfigurationsRetroactively()) {
+      Optional<SkyKey> canonicalKey = configuredTargetCache.get(configuredTargetKey);
+      if (canonicalKey.isPresent() && !canonicalKey.get().equals(configuredTargetKey)) {
+        SkyValue canonicalValue = env.getValue(canonicalKey.get());
+        if (canonicalValue == null) {
+          return null;
+        }
+        if (configuredTargetProgress != null) {
+          configuredTargetProgress.doneReuseTrimmedTarget();
+        }
+        return canonicalValue;
+      }
+    }
+
     // This line is only needed for accurate error messaging. Say this target has a circular
     // dependency with one of its deps. With this line, loading this target fails so Bazel
     // associates the corresponding error with this target, as expected. Without this line,
@@ -358,6 +381,10 @@ public final class ConfiguredTargetFunction implements SkyFunction {
               configConditions,
               toolchainContext,
               transitivePackagesForPackageRootResolution);
+      if (configuration != null && configuration.trimConfigurationsRetroactively()) {
+        recordTrimmedConfiguration(
+            configuredTargetKey, target, configuration, depValueMap, configConditions);
+      }
       if (configuredTargetProgress != null) {
         configuredTargetProgress.doneConfigureTarget();
       }
@@ -499,6 +526,127 @@ public final class ConfiguredTargetFunction implements SkyFunction {
             ToolchainException.class);
   }
 
+  /**
+   * Records the configuration which the target analyzed for {@code configuredTargetKey} actually
+   * depends on, so that requests for the same target under configurations which only differ in
+   * other fragments reuse its result.
+   */
+  private void recordTrimmedConfiguration(
+      ConfiguredTargetKey configuredTargetKey,
+      Target target,
+      BuildConfiguration configuration,
+      OrderedSetMultimap<DependencyKind, ConfiguredTargetAndData> depValueMap,
+      ImmutableMap<Label, ConfigMatchingProvider> configConditions) {
+    Set<Class<? extends FragmentOptions>> requiredOptions =
+        getRequiredOptions(configuredTargetKey, target, depValueMap, configConditions);
+    // Record the key even if its configuration can't be trimmed, so that the targets depending on
+    // it can look up what it requires.
+    BuildOptions trimmedOptions =
+        requiredOptions == null
+            ? configuration.getOptions()
+            : configuration.getOptions().trim(requiredOptions);
+    configuredTargetCache.putIfAbsent(
+        configuredTargetKey,
+        BuildOptions.diffForReconstruction(defaultBuildOptions, trimmedOptions));
+  }
+
+  /**
+   * Returns the options classes which the target and its dependencies in the same configuration
+   * read, or null if the target may depend on options not covered by them.
+   *
+   * <p>The options read by the target itself are those of the configuration fragments declared by
+   * its rule class, as with {@link CoreOptions.ConfigsMode#ON}, and those its {@code select()}
+   * conditions match against. The options read by a dependency are those of the configuration it
+   * was recorded with, which only apply if that configuration agrees with this target's.
+   * Dependencies whose configuration differs after a transition, which weren't recorded, or which
+   * are in the host configuration keep the whole configuration, as do conditions on flag values.
+   */
+  @Nullable
+  private Set<Class<? extends FragmentOptions>> getRequiredOptions(
+      ConfiguredTargetKey configuredTargetKey,
+      Target target,
+      OrderedSetMultimap<DependencyKind, ConfiguredTargetAndData> depValueMap,
+      ImmutableMap<Label, ConfigMatchingProvider> configConditions) {
+    ConfiguredRuleClassProvider provider = (ConfiguredRuleClassProvider) ruleClassProvider;
+    Set<Class<? extends BuildConfiguration.Fragment>> fragments =
+        new HashSet<>(provider.getUniversalFragments());
+    if (target instanceof Rule) {
+      Rule rule = (Rule) target;
+      ConfigurationFragmentPolicy fragmentPolicy =
+          rule.getRuleClassObject().getConfigurationFragmentPolicy();
+      for (ConfigurationFragmentFactory factory : provider.getConfigurationFragments()) {
+        if (fragmentPolicy.isLegalConfigurationFragment(factory.creates())) {
+          fragments.add(factory.creates());
+        }
+      }
+      for (Attribute attribute : rule.getAttributes()) {
+        if (attribute.isLateBound()
+            && attribute.getLateBoundDefault().getFragmentClass() != null
+            && BuildConfiguration.Fragment.class.isAssignableFrom(
+                attribute.getLateBoundDefault().getFragmentClass())) {
+          fragments.add(
+              attribute
+                  .getLateBoundDefault()
+                  .getFragmentClass()
+                  .asSubclass(BuildConfiguration.Fragment.class));
+        }
+      }
+      for (String option : rule.getRuleClassObject().getOptionReferenceFunction().apply(rule)) {
+        Class<? extends BuildConfiguration.Fragment> fragment =
+            provider.getConfigurationFragmentForOption(option);
+        // Null values come from CoreOptions, which is never trimmed.
+        if (fragment != null) {
+          fragments.add(fragment);
+        }
+      }
+    }
+    // The branches of select() are chosen by the options the config_settings read.
+    for (ConfigMatchingProvider condition : configConditions.values()) {
+      if (condition.hasFlagSettings()) {
+        // Feature flags and Starlark build settings aren't part of any fragment.
+        return null;
+      }
+      for (String option : condition.getOptionNames()) {
+        Class<? extends BuildConfiguration.Fragment> fragment =
+            provider.getConfigurationFragmentForOption(option);
+        if (fragment != null) {
+          fragments.add(fragment);
+        }
+      }
+    }
+    Set<Class<? extends FragmentOptions>> requiredOptions =
+        new HashSet<>(BuildConfiguration.getOptionsClasses(fragments, provider));
+    // Toolchain resolution and platform mappings read the platforms.
+    requiredOptions.add(PlatformOptions.class);
+
+    OptionsDiffForReconstruction configurationDiff =
+        configuredTargetKey.getConfigurationKey().getOptionsDiff();
+    for (ConfiguredTargetAndData dep : depValueMap.values()) {
+      BuildConfiguration depConfiguration = dep.getConfiguration();
+      if (depConfiguration == null) {
+        // Source files don't depend on the configuration of this target.
+        continue;
+      }
+      if (depConfiguration.isHostConfiguration()) {
+        // The host configuration is created from the options of this target, e.g. --host_javabase,
+        // which belong to fragments this target doesn't necessarily declare.
+        return null;
+      }
+      Optional<OptionsDiffForReconstruction> depTrimmedDiff =
+          configuredTargetCache.getTrimmedConfiguration(
+              ConfiguredTargetKey.inTargetConfig(dep.getConfiguredTarget()));
+      if (!depTrimmedDiff.isPresent()
+          || !OptionsDiffForReconstruction.compareFragments(
+                  depTrimmedDiff.get(), configurationDiff)
+              .isSubsetOrEqual()) {
+        return null;
+      }
+      requiredOptions.addAll(
+          defaultBuildOptions.applyDiff(depTrimmedDiff.get()).getFragmentClasses());
+    }
+    return requiredOptions;
+  }
+
   /**
    * Returns the target-specific execution platform constraints, based on the rule definition and
    * any constraints added by the target.
@@ -660,15 +808,6 @@ public final class ConfiguredTargetFunction implements SkyFunction {
             .collect(Collectors.toList());
     if (configLabels.isEmpty()) {
       return NO_CONFIG_CONDITIONS;
-    } else if (ctgValue.getConfiguration().trimConfigurationsRetroactively()) {
-      String message =
-          target.getLabel()
-              + " has configurable attributes, but these are not supported in retroactive trimming "
-              + "mode.";
-      env.getListener().handle(Event.error(TargetUtils.getLocationMaybe(target), message));
-      throw new DependencyEvaluationException(
-          new ConfiguredValueCreationException(
-              message, ctgValue.getLabel(), ctgValue.getConfiguration()));
     }
 
     // Collect the actual deps without a configuration transition (since by definition config
@@ -22,18 +22,28 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class ConfiguredTargetProgressReceiver {
 
   private AtomicInteger configuredTargetsCompleted = new AtomicInteger();
+  private AtomicInteger trimmedTargetsReused = new AtomicInteger();
 
   /** Register that a target has been configured. */
   void doneConfigureTarget() {
     configuredTargetsCompleted.incrementAndGet();
   }
 
+  /**
+   * Register that a target was not analyzed again because it had been analyzed under a
+   * configuration which trims to a subset of its configuration.
+   */
+  void doneReuseTrimmedTarget() {
+    trimmedTargetsReused.incrementAndGet();
+  }
+
   /**
    * Reset all instance variables of this object to a state equal to that of a newly
    * constructed object.
    */
   public void reset() {
     configuredTargetsCompleted.set(0);
+    trimmedTargetsReused.set(0);
   }
 
   /**
@@ -44,6 +54,9 @@ public class ConfiguredTargetProgressReceiver {
     String progress = "" + configuredTargetsCompleted + " ";
     progress += (configuredTargetsCompleted.get() != 1) ? "targets" : "target";
     progress += " configured";
+    if (trimmedTargetsReused.get() > 0) {
+      progress += ", " + trimmedTargetsReused + " reused after trimming";
+    }
     return progress;
   }
 }
@@ -15,6 +15,7 @@ package com.google.devtools.build.lib.skyframe;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.devtools.build.lib.actions.FileValue;
@@ -31,6 +32,8 @@ import com.google.devtools.build.skyframe.SkyFunctionException;
 import com.google.devtools.build.skyframe.SkyFunctionException.Transience;
 import com.google.devtools.build.skyframe.SkyKey;
 import com.google.devtools.build.skyframe.SkyValue;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
@@ -155,14 +158,21 @@ public final class GlobFunction implements SkyFunction {
       // Now that we have the directory listing, we do three passes over it so as to maximize
       // skyframe batching:
       // (1) Process every dirent, keeping track of values we need to request if the dirent cannot
-      //     be processed with current information (symlink targets and subdirectory globs/package
-      //     lookups for some subdirectories).
+      //     be processed with current information (symlink targets, package lookups for
+      //     subdirectories).
       // (2) Get those values and process the symlinks, keeping track of subdirectory globs/package
-      //     lookups we may need to request in case the symlink's target is a directory.
+      //     lookups we may need to request in case the symlink's target is a directory. Also keep
+      //     track of the globs of the subdirectories that turned out not to be packages.
       // (3) Process the necessary subdirectories.
+      //
+      // Looking up the packages of subdirectories here rather than in their own GlobFunction
+      // evaluations means that we don't create glob nodes for subpackages at all, and that we can
+      // prefetch the directory listings of all the other subdirectories in a single batch, since we
+      // know that their globs will need them.
       int direntsSize = listingValue.getDirents().size();
       Map<SkyKey, Dirent> symlinkFileMap = Maps.newHashMapWithExpectedSize(direntsSize);
       Map<SkyKey, Dirent> subdirMap = Maps.newHashMapWithExpectedSize(direntsSize);
+      Map<SkyKey, Dirent> subdirPkgLookupMap = Maps.newHashMapWithExpectedSize(direntsSize);
       Map<Dirent, Object> sortedResultMap = Maps.newTreeMap();
       String subdirPattern = patternHeadIsStarStar ? glob.getPattern() : patternTail;
       // First pass: do normal files and collect SkyKeys to request for subdirectories and symlinks.
@@ -187,9 +197,13 @@ public final class GlobFunction implements SkyFunction {
         }
 
         if (direntType == Dirent.Type.DIRECTORY) {
-          SkyKey keyToRequest = getSkyKeyForSubdir(fileName, glob, subdirPattern);
-          if (keyToRequest != null) {
-            subdirMap.put(keyToRequest, dirent);
+          if (subdirPattern != null) {
+            subdirPkgLookupMap.put(getPackageLookupKeyForSubdir(fileName, glob), dirent);
+          } else {
+            SkyKey keyToRequest = getSkyKeyForSubdir(fileName, glob, subdirPattern);
+            if (keyToRequest != null) {
+              subdirMap.put(keyToRequest, dirent);
+            }
           }
         } else if (globMatchesBareFile) {
           sortedResultMap.put(dirent, glob.getSubdir().getRelative(fileName));
@@ -197,11 +211,16 @@ public final class GlobFunction implements SkyFunction {
       }
 
       Map<SkyKey, SkyValue> subdirAndSymlinksResult =
-          env.getValues(Sets.union(subdirMap.keySet(), symlinkFileMap.keySet()));
+          env.getValues(
+              Sets.union(
+                  Sets.union(subdirMap.keySet(), subdirPkgLookupMap.keySet()),
+                  symlinkFileMap.keySet()));
       if (env.valuesMissing()) {
         return null;
       }
       Map<SkyKey, Dirent> symlinkSubdirMap = Maps.newHashMapWithExpectedSize(symlinkFileMap.size());
+      Map<SkyKey, Dirent> subdirGlobMap = Maps.newHashMapWithExpectedSize(subdirPkgLookupMap.size());
+      List<SkyKey> keysToPrefetch = new ArrayList<>();
       // Second pass: process the symlinks and subdirectories from the first pass, and maybe
       // collect further SkyKeys if fully resolved symlink targets are themselves directories.
       // Also process any known directories.
@@ -229,19 +248,43 @@ public final class GlobFunction implements SkyFunction {
           } else if (globMatchesBareFile) {
             sortedResultMap.put(dirent, glob.getSubdir().getRelative(fileName));
           }
+        } else if (subdirPkgLookupMap.containsKey(lookedUpKeyAndValue.getKey())) {
+          Dirent dirent = subdirPkgLookupMap.get(lookedUpKeyAndValue.getKey());
+          if (getSubdirMatchesFromSkyValue(dirent.getName(), glob, lookedUpKeyAndValue.getValue())
+              == null) {
+            // The subdirectory is a separate package or repository, so ignore it.
+            continue;
+          }
+          PathFragment subdir = glob.getSubdir().getRelative(dirent.getName());
+          subdirGlobMap.put(
+              GlobValue.internalKey(
+                  glob.getPackageId(),
+                  glob.getPackageRoot(),
+                  subdir,
+                  subdirPattern,
+                  glob.excludeDirs()),
+              dirent);
+          addKeysToPrefetchForSubdirGlob(subdir, subdirPattern, glob, keysToPrefetch);
         } else {
           processSubdir(lookedUpKeyAndValue, subdirMap, glob, sortedResultMap);
         }
       }
 
-      Map<SkyKey, SkyValue> symlinkSubdirResult = env.getValues(symlinkSubdirMap.keySet());
+      Map<SkyKey, SkyValue> subdirGlobResult =
+          env.getValues(
+              Iterables.concat(
+                  symlinkSubdirMap.keySet(), subdirGlobMap.keySet(), keysToPrefetch));
       if (env.valuesMissing()) {
         return null;
       }
-      // Third pass: do needed subdirectories of symlinked directories discovered during the second
-      // pass.
-      for (Map.Entry<SkyKey, SkyValue> lookedUpKeyAndValue : symlinkSubdirResult.entrySet()) {
-        processSubdir(lookedUpKeyAndValue, symlinkSubdirMap, glob, sortedResultMap);
+      // Third pass: do needed subdirectories discovered during the second pass, including those of
+      // symlinked directories.
+      for (Map.Entry<SkyKey, SkyValue> lookedUpKeyAndValue : subdirGlobResult.entrySet()) {
+        if (symlinkSubdirMap.containsKey(lookedUpKeyAndValue.getKey())) {
+          processSubdir(lookedUpKeyAndValue, symlinkSubdirMap, glob, sortedResultMap);
+        } else if (subdirGlobMap.containsKey(lookedUpKeyAndValue.getKey())) {
+          processSubdir(lookedUpKeyAndValue, subdirGlobMap, glob, sortedResultMap);
+        }
       }
       for (Map.Entry<Dirent, Object> fileMatches : sortedResultMap.entrySet()) {
         addToMatches(fileMatches.getValue(), matches);
@@ -297,6 +340,37 @@ public final class GlobFunction implements SkyFunction {
     }
   }
 
+  /**
+   * Adds to {@code keysToPrefetch} the keys that the {@link GlobFunction} evaluation of {@code
+   * subdirPattern} in {@code subdir} will request once it knows that {@code subdir} is not a
+   * package, so that they can be computed in parallel with those of the other subdirectories.
+   *
+   * <p>This must stay in sync with {@link #compute}: requesting a key that the subdirectory's glob
+   * wouldn't have requested may make us fail on an error that wouldn't otherwise matter.
+   */
+  private void addKeysToPrefetchForSubdirGlob(
+      PathFragment subdir, String subdirPattern, GlobDescriptor glob, List<SkyKey> keysToPrefetch) {
+    int slashPos = subdirPattern.indexOf('/');
+    String subdirPatternHead = slashPos == -1 ? subdirPattern : subdirPattern.substring(0, slashPos);
+    if (!alwaysUseDirListing && !containsGlobs(subdirPatternHead)) {
+      return;
+    }
+    keysToPrefetch.add(
+        DirectoryListingValue.key(
+            RootedPath.toRootedPath(
+                glob.getPackageRoot(),
+                glob.getPackageId().getPackageFragment().getRelative(subdir))));
+    if (slashPos != -1 && "**".equals(subdirPatternHead)) {
+      keysToPrefetch.add(
+          GlobValue.internalKey(
+              glob.getPackageId(),
+              glob.getPackageRoot(),
+              subdir,
+              subdirPattern.substring(slashPos + 1),
+              glob.excludeDirs()));
+    }
+  }
+
   /** Returns true if the given pattern contains globs. */
   private static boolean containsGlobs(String pattern) {
     return pattern.contains("*") || pattern.contains("?");
@@ -328,13 +402,7 @@ public final class GlobFunction implements SkyFunction {
       if (glob.excludeDirs()) {
         return null;
       } else {
-        return PackageLookupValue.key(
-            PackageIdentifier.create(
-                glob.getPackageId().getRepository(),
-                glob.getPackageId()
-                    .getPackageFragment()
-                    .getRelative(glob.getSubdir())
-                    .getRelative(fileName)));
+        return getPackageLookupKeyForSubdir(fileName, glob);
       }
     } else {
       // There is some more pattern to match. Get the glob for the subdirectory. Note that this
@@ -349,6 +417,17 @@ public final class GlobFunction implements SkyFunction {
     }
   }
 
+  /** Returns the key of the {@link PackageLookupValue} for the subdirectory {@code fileName}. */
+  private static SkyKey getPackageLookupKeyForSubdir(String fileName, GlobDescriptor glob) {
+    return PackageLookupValue.key(
+        PackageIdentifier.create(
+            glob.getPackageId().getRepository(),
+            glob.getPackageId()
+                .getPackageFragment()
+                .getRelative(glob.getSubdir())
+                .getRelative(fileName)));
+  }
+
   /**
    * Returns matches coming from the directory {@code fileName} if appropriate, either an individual
    * file or a nested set of files.
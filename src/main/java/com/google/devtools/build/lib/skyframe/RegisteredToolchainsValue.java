@@ -15,6 +15,7 @@
 package com.google.devtools.build.lib.skyframe;
 
 import com.google.auto.value.AutoValue;
+import com.google.auto.value.extension.memoized.Memoized;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Interner;
 import com.google.devtools.build.lib.analysis.platform.DeclaredToolchainInfo;
@@ -95,4 +96,10 @@ public abstract class RegisteredToolchainsValue implements SkyValue {
   }
 
   public abstract ImmutableList<DeclaredToolchainInfo> registeredToolchains();
+
+  /** Returns an index of {@link #registeredToolchains} for toolchain resolution. */
+  @Memoized
+  ToolchainResolutionIndex index() {
+    return ToolchainResolutionIndex.of(registeredToolchains());
+  }
 }
@@ -32,12 +32,15 @@ import com.google.devtools.build.lib.events.EventHandler;
 import com.google.devtools.build.lib.packages.NoSuchThingException;
 import com.google.devtools.build.lib.skyframe.PlatformLookupUtil.InvalidPlatformException;
 import com.google.devtools.build.lib.skyframe.RegisteredToolchainsFunction.InvalidToolchainLabelException;
+import com.google.devtools.build.lib.skyframe.ToolchainResolutionIndex.IndexedToolchain;
+import com.google.devtools.build.lib.skyframe.ToolchainResolutionIndex.SatisfiedConstraints;
 import com.google.devtools.build.skyframe.SkyFunction;
 import com.google.devtools.build.skyframe.SkyFunctionException;
 import com.google.devtools.build.skyframe.SkyKey;
 import com.google.devtools.build.skyframe.SkyValue;
 import com.google.errorprone.annotations.FormatMethod;
 import com.google.errorprone.annotations.FormatString;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -83,7 +86,7 @@ public class SingleToolchainResolutionFunction implements SkyFunction {
         key.availableExecutionPlatformKeys(),
         key.targetPlatformKey(),
         configuration.trimConfigurationsRetroactively(),
-        toolchains.registeredToolchains(),
+        toolchains.index(),
         env,
         debug ? env.getListener() : null);
   }
@@ -99,7 +102,7 @@ public class SingleToolchainResolutionFunction implements SkyFunction {
       List<ConfiguredTargetKey> availableExecutionPlatformKeys,
       ConfiguredTargetKey targetPlatformKey,
       boolean sanityCheckConfigurations,
-      ImmutableList<DeclaredToolchainInfo> toolchains,
+      ToolchainResolutionIndex toolchains,
       Environment env,
       @Nullable EventHandler eventHandler)
       throws ToolchainResolutionFunctionException, InterruptedException {
@@ -124,6 +127,14 @@ public class SingleToolchainResolutionFunction implements SkyFunction {
     }
 
     PlatformInfo targetPlatform = platforms.get(targetPlatformKey);
+    SatisfiedConstraints targetPlatformConstraints =
+        toolchains.getSatisfiedConstraints(targetPlatform);
+    Map<ConfiguredTargetKey, SatisfiedConstraints> executionPlatformConstraints = new HashMap<>();
+    for (ConfiguredTargetKey executionPlatformKey : availableExecutionPlatformKeys) {
+      executionPlatformConstraints.put(
+          executionPlatformKey,
+          toolchains.getSatisfiedConstraints(platforms.get(executionPlatformKey)));
+    }
 
     // Platforms may exist multiple times in availableExecutionPlatformKeys. The Set lets this code
     // check whether a platform has already been seen during processing.
@@ -132,16 +143,14 @@ public class SingleToolchainResolutionFunction implements SkyFunction {
     ToolchainTypeInfo toolchainType = null;
 
     debugMessage(eventHandler, "Looking for toolchain of type %s...", toolchainTypeLabel);
-    for (DeclaredToolchainInfo toolchain : toolchains) {
-      // Make sure the type matches.
-      if (!toolchain.toolchainType().typeLabel().equals(toolchainTypeLabel)) {
-        continue;
-      }
+    for (IndexedToolchain indexedToolchain : toolchains.getToolchains(toolchainTypeLabel)) {
+      DeclaredToolchainInfo toolchain = indexedToolchain.getToolchain();
       debugMessage(eventHandler, "  Considering toolchain %s...", toolchain.toolchainLabel());
 
       // Make sure the target platform matches.
-      if (!checkConstraints(
-          eventHandler, toolchain.targetConstraints(), "target", targetPlatform)) {
+      if (!indexedToolchain.matchesTargetPlatform(targetPlatformConstraints)) {
+        debugMismatchedConstraints(
+            eventHandler, toolchain.targetConstraints(), "target", targetPlatform);
         debugMessage(
             eventHandler,
             "  Rejected toolchain %s, because of target platform mismatch",
@@ -151,9 +160,13 @@ public class SingleToolchainResolutionFunction implements SkyFunction {
 
       // Find the matching execution platforms.
       for (ConfiguredTargetKey executionPlatformKey : availableExecutionPlatformKeys) {
-        PlatformInfo executionPlatform = platforms.get(executionPlatformKey);
-        if (!checkConstraints(
-            eventHandler, toolchain.execConstraints(), "execution", executionPlatform)) {
+        if (!indexedToolchain.matchesExecutionPlatform(
+            executionPlatformConstraints.get(executionPlatformKey))) {
+          debugMismatchedConstraints(
+              eventHandler,
+              toolchain.execConstraints(),
+              "execution",
+              platforms.get(executionPlatformKey));
           continue;
         }
 
@@ -202,14 +215,18 @@ public class SingleToolchainResolutionFunction implements SkyFunction {
   }
 
   /**
-   * Returns {@code true} iff all constraints set by the toolchain and in the {@link PlatformInfo}
-   * match.
+   * Reports the constraints set by the toolchain or in the {@link PlatformInfo} which don't match,
+   * if the given {@link EventHandler} is not {@code null}. Whether they match is answered by the
+   * {@link ToolchainResolutionIndex}, so this is only needed to debug toolchain resolution.
    */
-  private static boolean checkConstraints(
+  private static void debugMismatchedConstraints(
       @Nullable EventHandler eventHandler,
       ConstraintCollection toolchainConstraints,
       String platformType,
       PlatformInfo platform) {
+    if (eventHandler == null) {
+      return;
+    }
 
     // Check every constraint_setting in either the toolchain or the platform.
     ImmutableSet<ConstraintSettingInfo> mismatchSettings =
@@ -229,7 +246,6 @@ public class SingleToolchainResolutionFunction implements SkyFunction {
           platformType,
           platform.label());
     }
-    return mismatchSettings.isEmpty();
   }
 
   @Nullable
@@ -206,6 +206,10 @@ public final class SkyframeActionExecutor {
 
   private boolean bazelRemoteExecutionEnabled;
 
+  // Deletes old tree artifact outputs in the background with --experimental_async_output_deletion,
+  // null otherwise. Kept across builds, so that pending deletions aren't interrupted.
+  @Nullable private AsynchronousOutputDeleter outputDeleter;
+
   SkyframeActionExecutor(
       ActionKeyContext actionKeyContext,
       AtomicReference<ActionExecutionStatusReporter> statusReporterRef,
@@ -419,6 +423,28 @@ public final class SkyframeActionExecutor {
     this.outputService = outputService;
     RemoteOptions remoteOptions = options.getOptions(RemoteOptions.class);
     this.bazelRemoteExecutionEnabled = remoteOptions != null && remoteOptions.isRemoteEnabled();
+    setUpOutputDeleter(options.getOptions(BuildRequestOptions.class).asyncOutputDeletion);
+  }
+
+  private void setUpOutputDeleter(boolean asyncOutputDeletion) {
+    if (!asyncOutputDeletion) {
+      if (outputDeleter != null) {
+        outputDeleter.shutdown();
+        outputDeleter = null;
+      }
+      return;
+    }
+    // The trash directory is next to the exec root, so that renaming outputs into it doesn't cross
+    // file systems and actions don't see it.
+    Path trashDirectory =
+        executorEngine.getExecRoot().getParentDirectory().getChild("_deleted_outputs");
+    if (outputDeleter != null && !outputDeleter.getTrashDirectory().equals(trashDirectory)) {
+      outputDeleter.shutdown();
+      outputDeleter = null;
+    }
+    if (outputDeleter == null) {
+      outputDeleter = new AsynchronousOutputDeleter(trashDirectory);
+    }
   }
 
   public void setActionLogBufferPathGenerator(
@@ -911,6 +937,9 @@ public final class SkyframeActionExecutor {
               metadataHandler);
           if (!actionFileSystemType().inMemoryFileSystem()) {
             try (SilentCloseable d = profiler.profile(ProfilerTask.INFO, "action.prepare")) {
+              if (outputDeleter != null) {
+                deleteTreeArtifactOutputsAsynchronously(action);
+              }
               // This call generally deletes any files at locations that are declared outputs of the
               // action, although some actions perform additional work, while others intentionally
               // keep previous outputs in place.
@@ -1135,6 +1164,21 @@ public final class SkyframeActionExecutor {
     }
   }
 
+  /**
+   * Moves the old directories of the tree artifact outputs of {@code action} out of the way to be
+   * deleted in the background, instead of having {@link Action#prepare} delete them recursively.
+   */
+  private void deleteTreeArtifactOutputsAsynchronously(Action action) throws IOException {
+    for (Artifact output : action.getOutputs()) {
+      if (output.isTreeArtifact()) {
+        Path path = output.getPath();
+        if (path.isDirectory(Symlinks.NOFOLLOW)) {
+          outputDeleter.deleteTree(path);
+        }
+      }
+    }
+  }
+
   private void createOutputDirectories(Action action, ActionExecutionContext context)
       throws ActionExecutionException {
     try {
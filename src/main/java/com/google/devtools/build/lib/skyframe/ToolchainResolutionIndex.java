@@ -0,0 +1,156 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.skyframe;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.devtools.build.lib.analysis.platform.ConstraintCollection;
+import com.google.devtools.build.lib.analysis.platform.DeclaredToolchainInfo;
+import com.google.devtools.build.lib.analysis.platform.PlatformInfo;
+import com.google.devtools.build.lib.cmdline.Label;
+import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadSafe;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index of registered toolchains which answers whether a toolchain matches a platform without
+ * comparing their constraints.
+ *
+ * <p>Toolchains are grouped by type, in registration order. The distinct constraint collections
+ * used by the toolchains are numbered, and for each platform the collections it satisfies are
+ * computed once, as a bit set. Checking a toolchain against a platform is then a lookup of one bit.
+ *
+ * <p>The index is shared by all toolchain resolutions using equal registered toolchains, typically
+ * those of every target of every configuration in the build.
+ */
+@ThreadSafe
+final class ToolchainResolutionIndex {
+
+  /**
+   * The indexes of lists of registered toolchains. The values are weakly referenced, so that an
+   * index only lives as long as a {@link RegisteredToolchainsValue} using it.
+   */
+  private static final LoadingCache<ImmutableList<DeclaredToolchainInfo>, ToolchainResolutionIndex>
+      indexes =
+          CacheBuilder.newBuilder()
+              .weakValues()
+              .build(
+                  new CacheLoader<
+                      ImmutableList<DeclaredToolchainInfo>, ToolchainResolutionIndex>() {
+                    @Override
+                    public ToolchainResolutionIndex load(
+                        ImmutableList<DeclaredToolchainInfo> toolchains) {
+                      return new ToolchainResolutionIndex(toolchains);
+                    }
+                  });
+
+  private final ImmutableListMultimap<Label, IndexedToolchain> toolchainsByType;
+  private final ImmutableList<ConstraintCollection> constraintCollections;
+  private final ConcurrentHashMap<ConstraintCollection, BitSet> satisfiedCollectionsByPlatform =
+      new ConcurrentHashMap<>();
+
+  private ToolchainResolutionIndex(List<DeclaredToolchainInfo> toolchains) {
+    // Numbers the collections in order of appearance.
+    Map<ConstraintCollection, Integer> collectionIds = new LinkedHashMap<>();
+    ImmutableListMultimap.Builder<Label, IndexedToolchain> toolchainsByType =
+        ImmutableListMultimap.builder();
+    for (DeclaredToolchainInfo toolchain : toolchains) {
+      toolchainsByType.put(
+          toolchain.toolchainType().typeLabel(),
+          new IndexedToolchain(
+              toolchain,
+              collectionIds.computeIfAbsent(
+                  toolchain.execConstraints(), unused -> collectionIds.size()),
+              collectionIds.computeIfAbsent(
+                  toolchain.targetConstraints(), unused -> collectionIds.size())));
+    }
+    this.toolchainsByType = toolchainsByType.build();
+    this.constraintCollections = ImmutableList.copyOf(collectionIds.keySet());
+  }
+
+  /** Returns the index of {@code toolchains}, shared with other users of equal toolchains. */
+  static ToolchainResolutionIndex of(ImmutableList<DeclaredToolchainInfo> toolchains) {
+    return indexes.getUnchecked(toolchains);
+  }
+
+  /** Returns the toolchains of the given type, in registration order. */
+  ImmutableList<IndexedToolchain> getToolchains(Label toolchainType) {
+    return toolchainsByType.get(toolchainType);
+  }
+
+  /**
+   * Returns the constraint collections of toolchains satisfied by {@code platform}, to be passed to
+   * {@link IndexedToolchain#matchesExecutionPlatform} and {@link
+   * IndexedToolchain#matchesTargetPlatform}.
+   */
+  SatisfiedConstraints getSatisfiedConstraints(PlatformInfo platform) {
+    return new SatisfiedConstraints(
+        satisfiedCollectionsByPlatform.computeIfAbsent(
+            platform.constraints(), this::computeSatisfiedCollections));
+  }
+
+  private BitSet computeSatisfiedCollections(ConstraintCollection platformConstraints) {
+    BitSet satisfied = new BitSet(constraintCollections.size());
+    for (int i = 0; i < constraintCollections.size(); i++) {
+      // Mismatches are explained by SingleToolchainResolutionFunction when debugging.
+      if (constraintCollections.get(i).diff(platformConstraints).isEmpty()) {
+        satisfied.set(i);
+      }
+    }
+    return satisfied;
+  }
+
+  /** The constraint collections of the indexed toolchains that a platform satisfies. */
+  static final class SatisfiedConstraints {
+    private final BitSet collections;
+
+    private SatisfiedConstraints(BitSet collections) {
+      this.collections = collections;
+    }
+  }
+
+  /** A registered toolchain with the numbers of its constraint collections. */
+  static final class IndexedToolchain {
+    private final DeclaredToolchainInfo toolchain;
+    private final int execConstraintsId;
+    private final int targetConstraintsId;
+
+    private IndexedToolchain(
+        DeclaredToolchainInfo toolchain, int execConstraintsId, int targetConstraintsId) {
+      this.toolchain = toolchain;
+      this.execConstraintsId = execConstraintsId;
+      this.targetConstraintsId = targetConstraintsId;
+    }
+
+    DeclaredToolchainInfo getToolchain() {
+      return toolchain;
+    }
+
+    /** Returns whether the execution constraints of this toolchain are satisfied. */
+    boolean matchesExecutionPlatform(SatisfiedConstraints executionPlatform) {
+      return executionPlatform.collections.get(execConstraintsId);
+    }
+
+    /** Returns whether the target constraints of this toolchain are satisfied. */
+    boolean matchesTargetPlatform(SatisfiedConstraints targetPlatform) {
+      return targetPlatform.collections.get(targetConstraintsId);
+    }
+  }
+}
@@ -161,6 +161,31 @@ public final class TrimmedConfigurationCache<KeyT, DescriptorT, ConfigurationT>
     return Optional.empty();
   }
 
+  /**
+   * Returns the trimmed configuration which the given key is the canonical invocation for.
+   *
+   * <p>If the key is not currently canonical for any configuration of its descriptor, or if it has
+   * been the subject of an {@link #invalidate(KeyT)} and not revalidated since, an absent {@link
+   * Optional} is returned.
+   */
+  public Optional<ConfigurationT> getTrimmedConfiguration(KeyT key) {
+    ConcurrentHashMap<ConfigurationT, KeyAndState<KeyT>> trimmingsOfDescriptor =
+        descriptors.get(getDescriptorFor(key));
+    if (trimmingsOfDescriptor == null) {
+      // There are no entries at all for this descriptor.
+      return Optional.empty();
+    }
+    for (Entry<ConfigurationT, KeyAndState<KeyT>> entry : trimmingsOfDescriptor.entrySet()) {
+      KeyAndState<KeyT> keyAndState = entry.getValue();
+      if (keyAndState.getKey().equals(key)) {
+        return keyAndState.getState().isKnownValid()
+            ? Optional.of(entry.getKey())
+            : Optional.empty();
+      }
+    }
+    return Optional.empty();
+  }
+
   /**
    * Returns whether the given trimmed configuration and key are a suitable substitute for the
    * candidate configuration.
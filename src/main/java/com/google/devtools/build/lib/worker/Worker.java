@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -141,6 +142,38 @@ class Worker {
     return !process.finished();
   }
 
+  /** Returns whether the worker process was started and has exited since. */
+  boolean hasExited() {
+    return process != null && process.finished();
+  }
+
+  /**
+   * Returns whether the worker process exits with status 0 within {@code gracePeriod}. A worker
+   * that shuts down after answering a request, like the test runner after a test changed global
+   * state of the JVM, may be handed the next request before it is gone and never read it.
+   */
+  boolean exitedCleanly(Duration gracePeriod) throws InterruptedException {
+    if (process == null) {
+      return false;
+    }
+    long deadline = System.nanoTime() + gracePeriod.toNanos();
+    while (!process.finished() && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    return process.finished() && process.exitValue() == 0;
+  }
+
+  /**
+   * Kills the worker process without waiting for it to exit, e.g. because a request ran past its
+   * timeout. The worker must still be destroyed afterwards.
+   */
+  void kill() {
+    Subprocess process = this.process;
+    if (process != null) {
+      process.destroy();
+    }
+  }
+
   InputStream getInputStream() {
     return process.getInputStream();
   }
@@ -107,10 +107,24 @@ final class WorkerFactory extends BaseKeyedPooledObjectFactory<WorkerKey, Worker
     p.getObject().destroy();
   }
 
-  /** The worker is considered to be valid when its files have not changed on disk. */
+  /**
+   * The worker is considered to be valid when its process hasn't exited and its files have not
+   * changed on disk. Workers may exit after any request, e.g. the test runner does so after a test
+   * changed global state of the JVM.
+   */
   @Override
   public boolean validateObject(WorkerKey key, PooledObject<Worker> p) {
     Worker worker = p.getObject();
+    if (worker.hasExited()) {
+      if (workerOptions.workerVerbose && reporter != null) {
+        reporter.handle(
+            Event.info(
+                String.format(
+                    "%s worker (id %d) has exited and will be replaced",
+                    key.getMnemonic(), worker.getWorkerId())));
+      }
+      return false;
+    }
     boolean hashMatches =
         key.getWorkerFilesCombinedHash().equals(worker.getWorkerFilesCombinedHash());
 
@@ -22,6 +22,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
 import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.devtools.build.lib.actions.ActionExecutionMetadata;
 import com.google.devtools.build.lib.actions.ActionInput;
 import com.google.devtools.build.lib.actions.ActionInputHelper;
@@ -54,7 +55,13 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
+import javax.annotation.Nullable;
 
 /**
  * A spawn runner that launches Spawns the first time they are used in a persistent mode and then
@@ -69,6 +76,16 @@ final class WorkerSpawnRunner implements SpawnRunner {
   public static final String REASON_NO_EXECUTION_INFO =
       "because the action's execution info does not contain 'supports-workers=1'";
 
+  private static final int POSIX_TIMEOUT_EXIT_CODE = /*SIGNAL_BASE=*/128 + /*SIGALRM=*/14;
+
+  /** How long to wait for a worker that stopped responding to finish a clean exit. */
+  private static final Duration CLEAN_EXIT_GRACE_PERIOD = Duration.ofSeconds(1);
+
+  /** Kills workers whose request ran past the spawn's timeout. */
+  private static final ScheduledExecutorService TIMEOUT_KILLER =
+      Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder().setNameFormat("worker-timeout-%d").setDaemon(true).build());
+
   /** Pattern for @flagfile.txt and --flagfile=flagfile.txt */
   private static final Pattern FLAG_FILE_PATTERN = Pattern.compile("(?:@|--?flagfile=)(.+)");
 
@@ -172,6 +189,15 @@ final class WorkerSpawnRunner implements SpawnRunner {
     WorkResponse response = execInWorker(spawn, key, workRequest, context, inputFiles, outputs);
     Duration wallTime = Duration.ofMillis(System.currentTimeMillis() - startTime);
 
+    if (response == null) {
+      return new SpawnResult.Builder()
+          .setRunnerName(getName())
+          .setExitCode(POSIX_TIMEOUT_EXIT_CODE)
+          .setStatus(SpawnResult.Status.TIMEOUT)
+          .setWallTime(wallTime)
+          .build();
+    }
+
     FileOutErr outErr = context.getFileOutErr();
     response.getOutputBytes().writeTo(outErr.getErrorStream());
 
@@ -276,6 +302,11 @@ final class WorkerSpawnRunner implements SpawnRunner {
     return arg.matches("^@.*//.*");
   }
 
+  /**
+   * Sends the request to a worker and returns its response, or null if the worker was killed
+   * because the request ran past the spawn's timeout.
+   */
+  @Nullable
   private WorkResponse execInWorker(
       Spawn spawn,
       WorkerKey key,
@@ -286,19 +317,11 @@ final class WorkerSpawnRunner implements SpawnRunner {
       throws InterruptedException, ExecException {
     Worker worker = null;
     WorkResponse response;
+    AtomicBoolean timedOut = new AtomicBoolean();
 
     ActionExecutionMetadata owner = spawn.getResourceOwner();
     try {
-      try {
-        worker = workers.borrowObject(key);
-      } catch (IOException e) {
-        throw new UserExecException(
-            ErrorMessage.builder()
-                .message("IOException while borrowing a worker from the pool:")
-                .exception(e)
-                .build()
-                .toString());
-      }
+      worker = borrowWorker(key);
 
       try {
         context.prefetchInputs();
@@ -314,60 +337,30 @@ final class WorkerSpawnRunner implements SpawnRunner {
       try (ResourceHandle handle =
           ResourceManager.instance().acquireResources(owner, spawn.getLocalResources())) {
         context.report(ProgressStatus.EXECUTING, getName());
-        try {
-          worker.prepareExecution(inputFiles, outputs, key.getWorkerFilesWithHashes().keySet());
-        } catch (IOException e) {
-          throw new UserExecException(
-              ErrorMessage.builder()
-                  .message("IOException while preparing the execution environment of a worker:")
-                  .logFile(worker.getLogFile())
-                  .exception(e)
-                  .build()
-                  .toString());
-        }
-
-        try {
-          request.writeDelimitedTo(worker.getOutputStream());
-          worker.getOutputStream().flush();
-        } catch (IOException e) {
-          throw new UserExecException(
-              ErrorMessage.builder()
-                  .message(
-                      "Worker process quit or closed its stdin stream when we tried to send a"
-                          + " WorkRequest:")
-                  .logFile(worker.getLogFile())
-                  .exception(e)
-                  .build()
-                  .toString());
-        }
-
-        RecordingInputStream recordingStream = new RecordingInputStream(worker.getInputStream());
-        recordingStream.startRecording(4096);
-        try {
-          // response can be null when the worker has already closed stdout at this point and thus
-          // the InputStream is at EOF.
-          response = WorkResponse.parseDelimitedFrom(recordingStream);
-        } catch (IOException e) {
-          // If protobuf couldn't parse the response, try to print whatever the failing worker wrote
-          // to stdout - it's probably a stack trace or some kind of error message that will help
-          // the user figure out why the compiler is failing.
-          recordingStream.readRemaining();
-          throw new UserExecException(
-              ErrorMessage.builder()
-                  .message(
-                      "Worker process returned an unparseable WorkResponse!\n\n"
-                          + "Did you try to print something to stdout? Workers aren't allowed to "
-                          + "do this, as it breaks the protocol between Bazel and the worker "
-                          + "process.")
-                  .logText(recordingStream.getRecordedDataAsString())
-                  .exception(e)
-                  .build()
-                  .toString());
+        Duration timeout = Spawns.getTimeout(spawn);
+        prepareWorker(worker, key, inputFiles, outputs);
+        response = sendRequest(worker, request, timeout, timedOut);
+        if (response == null
+            && !timedOut.get()
+            && worker.exitedCleanly(CLEAN_EXIT_GRACE_PERIOD)) {
+          // The worker shut down after its previous request before it could read this one, so the
+          // request was never started and can go to a fresh worker.
+          invalidateWorker(key, worker);
+          worker = null;
+          worker = borrowWorker(key);
+          prepareWorker(worker, key, inputFiles, outputs);
+          response = sendRequest(worker, request, timeout, timedOut);
         }
       }
 
       context.lockOutputFiles();
 
+      if (timedOut.get()) {
+        invalidateWorker(key, worker);
+        worker = null;
+        return null;
+      }
+
       if (response == null) {
         throw new UserExecException(
             ErrorMessage.builder()
@@ -390,11 +383,7 @@ final class WorkerSpawnRunner implements SpawnRunner {
       }
     } catch (ExecException e) {
       if (worker != null) {
-        try {
-          workers.invalidateObject(key, worker);
-        } catch (IOException e1) {
-          // The original exception is more important / helpful, so we'll just ignore this one.
-        }
+        invalidateWorker(key, worker);
         worker = null;
       }
 
@@ -407,4 +396,113 @@ final class WorkerSpawnRunner implements SpawnRunner {
 
     return response;
   }
+
+  private Worker borrowWorker(WorkerKey key) throws InterruptedException, UserExecException {
+    try {
+      return workers.borrowObject(key);
+    } catch (IOException e) {
+      throw new UserExecException(
+          ErrorMessage.builder()
+              .message("IOException while borrowing a worker from the pool:")
+              .exception(e)
+              .build()
+              .toString());
+    }
+  }
+
+  private void invalidateWorker(WorkerKey key, Worker worker) throws InterruptedException {
+    try {
+      workers.invalidateObject(key, worker);
+    } catch (IOException e) {
+      // The original failure is more important / helpful, so we'll just ignore this one.
+    }
+  }
+
+  private static void prepareWorker(
+      Worker worker, WorkerKey key, Map<PathFragment, Path> inputFiles, SandboxOutputs outputs)
+      throws UserExecException {
+    try {
+      worker.prepareExecution(inputFiles, outputs, key.getWorkerFilesWithHashes().keySet());
+    } catch (IOException e) {
+      throw new UserExecException(
+          ErrorMessage.builder()
+              .message("IOException while preparing the execution environment of a worker:")
+              .logFile(worker.getLogFile())
+              .exception(e)
+              .build()
+              .toString());
+    }
+  }
+
+  /**
+   * Writes the request to the worker and reads its response. Returns null if the worker closed
+   * stdout without responding or if it was killed after {@code timeout}, in which case {@code
+   * timedOut} is set.
+   */
+  @Nullable
+  private static WorkResponse sendRequest(
+      Worker worker, WorkRequest request, Duration timeout, AtomicBoolean timedOut)
+      throws UserExecException {
+    ScheduledFuture<?> killer = null;
+    if (!timeout.isZero()) {
+      killer =
+          TIMEOUT_KILLER.schedule(
+              () -> {
+                timedOut.set(true);
+                worker.kill();
+              },
+              timeout.toMillis(),
+              TimeUnit.MILLISECONDS);
+    }
+    try {
+      try {
+        request.writeDelimitedTo(worker.getOutputStream());
+        worker.getOutputStream().flush();
+      } catch (IOException e) {
+        if (timedOut.get()) {
+          return null;
+        }
+        throw new UserExecException(
+            ErrorMessage.builder()
+                .message(
+                    "Worker process quit or closed its stdin stream when we tried to send a"
+                        + " WorkRequest:")
+                .logFile(worker.getLogFile())
+                .exception(e)
+                .build()
+                .toString());
+      }
+
+      RecordingInputStream recordingStream = new RecordingInputStream(worker.getInputStream());
+      recordingStream.startRecording(4096);
+      try {
+        // response can be null when the worker has already closed stdout at this point and thus
+        // the InputStream is at EOF.
+        return WorkResponse.parseDelimitedFrom(recordingStream);
+      } catch (IOException e) {
+        if (timedOut.get()) {
+          return null;
+        }
+        // If protobuf couldn't parse the response, try to print whatever the failing worker wrote
+        // to stdout - it's probably a stack trace or some kind of error message that will help
+        // the user figure out why the compiler is failing.
+        recordingStream.readRemaining();
+        throw new UserExecException(
+            ErrorMessage.builder()
+                .message(
+                    "Worker process returned an unparseable WorkResponse!\n\n"
+                        + "Did you try to print something to stdout? Workers aren't allowed to "
+                        + "do this, as it breaks the protocol between Bazel and the worker "
+                        + "process.")
+                .logText(recordingStream.getRecordedDataAsString())
+                .exception(e)
+                .build()
+                .toString());
+      }
+    } finally {
+      if (killer != null) {
+        killer.cancel(false);
+      }
+    }
+  }
 }
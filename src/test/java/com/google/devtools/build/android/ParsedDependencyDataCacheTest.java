@@ -0,0 +1,135 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.android;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.devtools.build.android.ParsedAndroidDataBuilder.file;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.jimfs.Jimfs;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ParsedDependencyDataCache}. */
+@RunWith(JUnit4.class)
+public class ParsedDependencyDataCacheTest {
+
+  private FileSystem fs;
+  private Path source;
+  private Path manifest;
+
+  @Before
+  public void createCleanEnvironment() throws Exception {
+    fs = Jimfs.newFileSystem();
+    source = Files.createDirectory(fs.getPath("source"));
+    manifest = Files.createFile(source.resolve("AndroidManifest.xml"));
+    ParsedDependencyDataCache.enable();
+  }
+
+  @After
+  public void disableCache() {
+    ParsedDependencyDataCache.disable();
+  }
+
+  private SerializedAndroidData serialize(String name, ParsedAndroidData data) throws Exception {
+    Path symbols = fs.getPath(name + ".bin");
+    AndroidDataSerializer serializer = AndroidDataSerializer.create();
+    UnwrittenMergedAndroidData.of(manifest, data, ParsedAndroidDataBuilder.empty())
+        .serializeTo(serializer);
+    serializer.flushTo(symbols);
+    return new SerializedAndroidData(ImmutableList.of(), ImmutableList.of(), name, symbols);
+  }
+
+  private static ParsedAndroidData load(SerializedAndroidData... dependencies) {
+    return ParsedAndroidData.loadedFrom(
+        ImmutableList.copyOf(dependencies),
+        MoreExecutors.newDirectExecutorService(),
+        AndroidParsedDataDeserializer.create());
+  }
+
+  @Test
+  public void reloadsOnlyChangedDependencies() throws Exception {
+    SerializedAndroidData one =
+        serialize(
+            "one",
+            ParsedAndroidDataBuilder.buildOn(source)
+                .overwritable(file("layout/one").source("layout/one.xml"))
+                .build());
+    SerializedAndroidData two =
+        serialize(
+            "two",
+            ParsedAndroidDataBuilder.buildOn(source)
+                .overwritable(file("layout/two").source("layout/two.xml"))
+                .build());
+
+    ParsedAndroidData first = load(one, two);
+    assertThat(ParsedDependencyDataCache.missCount()).isEqualTo(2);
+    assertThat(load(one, two)).isEqualTo(first);
+    assertThat(ParsedDependencyDataCache.hitCount()).isEqualTo(2);
+
+    two =
+        serialize(
+            "two",
+            ParsedAndroidDataBuilder.buildOn(source)
+                .overwritable(file("layout/three").source("layout/three.xml"))
+                .build());
+    ParsedAndroidData changed = load(one, two);
+    assertThat(ParsedDependencyDataCache.hitCount()).isEqualTo(3);
+    assertThat(ParsedDependencyDataCache.missCount()).isEqualTo(3);
+
+    ParsedDependencyDataCache.disable();
+    assertThat(changed).isEqualTo(load(one, two));
+    assertThat(changed).isNotEqualTo(first);
+  }
+
+  @Test
+  public void deserializersWithDifferentFiltersDontShareData() throws Exception {
+    SerializedAndroidData one =
+        serialize(
+            "one",
+            ParsedAndroidDataBuilder.buildOn(source)
+                .overwritable(file("layout/one").source("layout/one.xml"))
+                .build());
+
+    load(one);
+    ParsedAndroidData.loadedFrom(
+        ImmutableList.of(one),
+        MoreExecutors.newDirectExecutorService(),
+        AndroidParsedDataDeserializer.withFilteredResources(ImmutableList.of("layout/one.xml")));
+    assertThat(ParsedDependencyDataCache.hitCount()).isEqualTo(0);
+    assertThat(ParsedDependencyDataCache.missCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void dependencyParseErrorsDontFailTheMerge() throws Exception {
+    Path values = Files.createDirectories(fs.getPath("legacy/res/values"));
+    Files.write(values.resolve("broken.xml"), "<resources><string".getBytes(UTF_8));
+    // Resources without serialized data are parsed from their sources.
+    SerializedAndroidData legacy =
+        new SerializedAndroidData(
+            ImmutableList.of(values.getParent()), ImmutableList.of(), "legacy", null);
+
+    ParsedAndroidData cached = load(legacy);
+    ParsedDependencyDataCache.disable();
+    assertThat(load(legacy)).isEqualTo(cached);
+  }
+}
@@ -67,7 +67,8 @@ public class DexConversionEnqueuerTest {
             zip,
             newDirectExecutorService(),
             new DexConverter(new Dexing(new DxContext(), new DexOptions(), new CfOptions())),
-            cache);
+            cache,
+            /*diskCache=*/ null);
   }
 
   /** Makes sure there's always a future returning {@code null} at the end. */
@@ -0,0 +1,125 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.android.dexer;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.devtools.build.android.dexer.Dexing.DexingKey;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link DexDiskCache}. */
+@RunWith(JUnit4.class)
+public class DexDiskCacheTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private Path root;
+
+  @Before
+  public void setUp() throws Exception {
+    root = tmp.getRoot().toPath().resolve("dex_cache");
+  }
+
+  @Test
+  public void testGetReturnsWhatWasPut() throws Exception {
+    DexDiskCache cache = new DexDiskCache(root, 1000);
+    DexingKey key = DexingKey.create(false, true, 2, new byte[] {1, 2, 3});
+    assertThat(cache.get(key)).isNull();
+
+    cache.put(key, new byte[] {4, 5});
+    assertThat(cache.get(key)).isEqualTo(new byte[] {4, 5});
+    // Equal keys find the same entry, but dexing options matter
+    assertThat(cache.get(DexingKey.create(false, true, 2, new byte[] {1, 2, 3})))
+        .isEqualTo(new byte[] {4, 5});
+    assertThat(cache.get(DexingKey.create(true, true, 2, new byte[] {1, 2, 3}))).isNull();
+  }
+
+  @Test
+  public void testEntriesAreSharedBetweenInstances() throws Exception {
+    DexingKey key = DexingKey.create(false, false, 1, new byte[] {1});
+    new DexDiskCache(root, 1000).put(key, new byte[] {2});
+    assertThat(new DexDiskCache(root, 1000).get(key)).isEqualTo(new byte[] {2});
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsedEntries() throws Exception {
+    DexDiskCache cache = new DexDiskCache(root, 25);
+    DexingKey first = DexingKey.create(false, false, 1, new byte[] {1});
+    DexingKey second = DexingKey.create(false, false, 1, new byte[] {2});
+    DexingKey third = DexingKey.create(false, false, 1, new byte[] {3});
+    cache.put(first, new byte[10]);
+    cache.put(second, new byte[10]);
+    // Make the first entry look older than the second, then use it
+    Files.setLastModifiedTime(cache.pathFor(first), FileTime.fromMillis(1000));
+    Files.setLastModifiedTime(cache.pathFor(second), FileTime.fromMillis(2000));
+    assertThat(cache.get(first)).isNotNull();
+
+    cache.put(third, new byte[10]);
+    assertThat(cache.get(second)).isNull();
+    assertThat(cache.get(first)).isNotNull();
+    assertThat(cache.get(third)).isNotNull();
+  }
+
+  @Test
+  public void testEvictsOnlyOldTemporaryFiles() throws Exception {
+    Files.createDirectories(root.resolve("00"));
+    Path recent = Files.write(root.resolve("00").resolve("recent.tmp"), new byte[10]);
+    Path stale = Files.write(root.resolve("00").resolve("stale.tmp"), new byte[10]);
+    // Make both look older than any entry, but only the stale one older than the cutoff
+    long now = System.currentTimeMillis();
+    Files.setLastModifiedTime(recent, FileTime.fromMillis(now - 1000));
+    Files.setLastModifiedTime(
+        stale, FileTime.fromMillis(now - DexDiskCache.TEMP_FILE_MIN_AGE_MILLIS - 1000));
+    DexDiskCache cache = new DexDiskCache(root, 15);
+
+    DexingKey key = DexingKey.create(false, false, 1, new byte[] {1});
+    cache.put(key, new byte[10]);
+    assertThat(Files.exists(stale)).isFalse();
+    assertThat(Files.exists(recent)).isTrue();
+    assertThat(cache.get(key)).isNull();
+  }
+
+  @Test
+  public void testListsEntriesOnlyIfNoProcessDidRecently() throws Exception {
+    DexingKey first = DexingKey.create(false, false, 1, new byte[] {1});
+    DexingKey second = DexingKey.create(false, false, 1, new byte[] {2});
+    DexingKey third = DexingKey.create(false, false, 1, new byte[] {3});
+    DexDiskCache firstProcess = new DexDiskCache(root, 15);
+    firstProcess.put(first, new byte[10]);
+    Path firstEntry = firstProcess.pathFor(first);
+    Files.setLastModifiedTime(firstEntry, FileTime.fromMillis(1000));
+
+    // Another process that adds an entry right after doesn't list the cache
+    new DexDiskCache(root, 15).put(second, new byte[10]);
+    assertThat(new DexDiskCache(root, 15).get(first)).isNotNull();
+
+    // Once the last listing is old enough, the next process to add an entry evicts
+    Files.setLastModifiedTime(firstEntry, FileTime.fromMillis(1000));
+    Files.setLastModifiedTime(
+        root.resolve(DexDiskCache.SCAN_STAMP),
+        FileTime.fromMillis(
+            System.currentTimeMillis() - DexDiskCache.SCAN_INTERVAL_MILLIS - 1000));
+    DexDiskCache cache = new DexDiskCache(root, 15);
+    cache.put(third, new byte[10]);
+    assertThat(cache.get(first)).isNull();
+  }
+}
@@ -18,9 +18,11 @@ import static com.google.common.truth.Truth.assertThat;
 import com.android.SdkConstants;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Multimap;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.devtools.build.android.resources.JavaIdentifierValidator.InvalidJavaIdentifier;
@@ -36,9 +38,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -58,6 +62,12 @@ public class RClassGeneratorTest {
     temp = Files.createTempDirectory(toString());
   }
 
+  @After
+  public void tearDown() {
+    // Don't let cached symbols leak into other tests
+    ResourceSymbols.disableSymbolCache();
+  }
+
   @Test
   public void plainInts() throws Exception {
     checkSimpleInts(true);
@@ -117,6 +127,54 @@ public class RClassGeneratorTest {
         finalFields);
   }
 
+  @Test
+  public void writeClassesOfPackagesConcurrently() throws Exception {
+    ResourceSymbols symbolValues =
+        createSymbolFile(
+            "R.txt",
+            "int attr agility 0x7f010000",
+            "int id someTextView 0x7f080000",
+            "int string ok 0x7f100001");
+    Multimap<String, ResourceSymbols> libMap = ArrayListMultimap.create();
+    libMap.put("com.foo", createSymbolFile("foo.R.txt", "int attr agility 0x1"));
+    libMap.put("com.bar", createSymbolFile("bar.R.txt", "int id someTextView 0x1"));
+    libMap.put("com.bar", createSymbolFile("bar2.R.txt", "int string ok 0x1"));
+    Path out = Files.createDirectories(temp.resolve("classes"));
+    ListeningExecutorService executor =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(3));
+    try {
+      symbolValues.writeClassesTo(libMap, "com.app", out, true, executor);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    checkFilesInPackage(out.resolve("com/foo"), "R.class", "R$attr.class");
+    checkFilesInPackage(out.resolve("com/bar"), "R.class", "R$id.class", "R$string.class");
+    checkFilesInPackage(
+        out.resolve("com/app"), "R.class", "R$attr.class", "R$id.class", "R$string.class");
+    checkInnerClass(
+        out,
+        "com.bar.R$string",
+        checkTopLevelClass(out, "com.bar.R", "com.bar.R$id", "com.bar.R$string"),
+        ImmutableMap.of("ok", 0x7f100001),
+        ImmutableMap.<String, List<Integer>>of(),
+        true);
+  }
+
+  @Test
+  public void symbolCacheSharesSymbolsOfSameContents() throws Exception {
+    ResourceSymbols.enableSymbolCache();
+    ResourceSymbols first =
+        createSymbolFile("first/R.txt", "int string symbolCacheSharesSymbols 0x7f100001");
+    ResourceSymbols second =
+        createSymbolFile("second/R.txt", "int string symbolCacheSharesSymbols 0x7f100001");
+    ResourceSymbols other =
+        createSymbolFile("other/R.txt", "int string symbolCacheSharesSymbols 0x7f100002");
+
+    assertThat(second).isSameInstanceAs(first);
+    assertThat(other).isNotSameInstanceAs(first);
+  }
+
   @Test
   public void checkFileWriteThrowsOnExisting() throws Exception {
     checkFileWriteThrowsOnExisting(SdkConstants.FN_COMPILED_RESOURCE_CLASS);
@@ -0,0 +1,89 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.analysis;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.Maps;
+import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.ArtifactRoot;
+import com.google.devtools.build.lib.actions.util.ActionsTestUtil;
+import com.google.devtools.build.lib.testutil.FoundationTestCase;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import com.google.devtools.build.lib.vfs.Root;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link RunfilesManifest}. */
+@RunWith(JUnit4.class)
+public class RunfilesManifestTest extends FoundationTestCase {
+  private Artifact artifactA;
+  private Artifact artifactB;
+
+  @Before
+  public final void createArtifacts() throws Exception {
+    ArtifactRoot root = ArtifactRoot.asSourceRoot(Root.fromPath(scratch.resolve("/workspace")));
+    artifactA = ActionsTestUtil.createArtifact(root, "a");
+    artifactB = ActionsTestUtil.createArtifact(root, "b");
+  }
+
+  @Test
+  public void testEntriesSortedByPath() {
+    Map<PathFragment, Artifact> entries = new HashMap<>();
+    entries.put(PathFragment.create("ws/z"), artifactA);
+    entries.put(PathFragment.create("ws/b/c"), artifactB);
+    entries.put(PathFragment.create("ws/b"), null);
+    entries.put(PathFragment.create("repo/a"), artifactA);
+
+    RunfilesManifest manifest = RunfilesManifest.copyOf(entries);
+
+    assertThat(manifest.entrySet())
+        .containsExactly(
+            Maps.immutableEntry(PathFragment.create("repo/a"), artifactA),
+            Maps.immutableEntry(PathFragment.create("ws/b"), null),
+            Maps.immutableEntry(PathFragment.create("ws/b/c"), artifactB),
+            Maps.immutableEntry(PathFragment.create("ws/z"), artifactA))
+        .inOrder();
+    assertThat(manifest).isEqualTo(entries);
+  }
+
+  @Test
+  public void testLookup() {
+    Map<PathFragment, Artifact> entries = new HashMap<>();
+    entries.put(PathFragment.create("a"), artifactA);
+    entries.put(PathFragment.create("empty"), null);
+
+    RunfilesManifest manifest = RunfilesManifest.copyOf(entries);
+
+    assertThat(manifest.get(PathFragment.create("a"))).isSameInstanceAs(artifactA);
+    assertThat(manifest.containsKey(PathFragment.create("empty"))).isTrue();
+    assertThat(manifest.get(PathFragment.create("empty"))).isNull();
+    assertThat(manifest.containsKey(PathFragment.create("b"))).isFalse();
+    assertThat(manifest.containsKey("a")).isFalse();
+  }
+
+  @Test
+  public void testCopyOf() {
+    Map<PathFragment, Artifact> entries = new HashMap<>();
+    entries.put(PathFragment.create("a"), artifactA);
+    RunfilesManifest manifest = RunfilesManifest.copyOf(entries);
+
+    assertThat(RunfilesManifest.copyOf(manifest)).isSameInstanceAs(manifest);
+    assertThat(RunfilesManifest.copyOf(new HashMap<>())).isEmpty();
+  }
+}
@@ -21,6 +21,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.ArtifactPathResolver;
 import com.google.devtools.build.lib.actions.ArtifactRoot;
 import com.google.devtools.build.lib.actions.util.ActionsTestUtil;
 import com.google.devtools.build.lib.cmdline.LabelConstants;
@@ -455,4 +456,29 @@ public class RunfilesTest extends FoundationTestCase {
     assertThat(runfiles.getEmptyFilenames())
         .containsExactly("my-artifact-empty", "my-symlink-empty");
   }
+
+  @Test
+  public void testGetRunfilesInputsSortedAndReused() throws Exception {
+    ArtifactRoot root = ArtifactRoot.asSourceRoot(Root.fromPath(scratch.resolve("/workspace")));
+    Artifact artifactB = ActionsTestUtil.createArtifact(root, "b");
+    Artifact artifactA = ActionsTestUtil.createArtifact(root, "a");
+    Runfiles runfiles =
+        new Runfiles.Builder("TESTING")
+            .addArtifact(artifactB)
+            .addArtifact(artifactA)
+            .addRootSymlink(PathFragment.create("c"), artifactA)
+            .build();
+
+    RunfilesManifest inputs =
+        runfiles.getRunfilesInputs(null, null, ArtifactPathResolver.IDENTITY);
+
+    assertThat(inputs.entrySet())
+        .containsExactly(
+            Maps.immutableEntry(PathFragment.create("TESTING/a"), artifactA),
+            Maps.immutableEntry(PathFragment.create("TESTING/b"), artifactB),
+            Maps.immutableEntry(PathFragment.create("c"), artifactA))
+        .inOrder();
+    assertThat(runfiles.getRunfilesInputs(null, null, ArtifactPathResolver.IDENTITY))
+        .isSameInstanceAs(inputs);
+  }
 }
@@ -13,15 +13,28 @@
 // limitations under the License.
 package com.google.devtools.build.lib.analysis.actions;
 
+import static com.google.common.truth.Truth.assertThat;
+
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.devtools.build.lib.actions.Action;
+import com.google.devtools.build.lib.actions.ActionContext;
 import com.google.devtools.build.lib.actions.ActionEnvironment;
+import com.google.devtools.build.lib.actions.ActionExecutionContext;
 import com.google.devtools.build.lib.actions.Artifact;
 import com.google.devtools.build.lib.actions.util.ActionsTestUtil;
+import com.google.devtools.build.lib.actions.util.DummyExecutor;
 import com.google.devtools.build.lib.analysis.util.ActionTester;
 import com.google.devtools.build.lib.analysis.util.ActionTester.ActionCombinationFactory;
 import com.google.devtools.build.lib.analysis.util.BuildViewTestCase;
+import com.google.devtools.build.lib.exec.BinTools;
+import com.google.devtools.build.lib.exec.ExecutionOptions;
+import com.google.devtools.build.lib.exec.SymlinkTreeStrategy;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import com.google.devtools.build.lib.vfs.Symlinks;
+import com.google.devtools.common.options.OptionsParser;
+import com.google.devtools.common.options.OptionsProvider;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -68,4 +81,67 @@ public class SymlinkTreeActionTest extends BuildViewTestCase {
         },
         actionKeyContext);
   }
+
+  @Test
+  public void testInProcessUpdateKeepsUnchangedSymlinks() throws Exception {
+    Artifact inputManifest = getBinArtifactWithNoOwner("dir/test.runfiles_manifest");
+    Artifact outputManifest = getBinArtifactWithNoOwner("dir/test.runfiles/MANIFEST");
+    SymlinkTreeAction action =
+        new SymlinkTreeAction(
+            ActionsTestUtil.NULL_ACTION_OWNER,
+            inputManifest,
+            outputManifest,
+            /*filesetTree=*/ false,
+            ActionEnvironment.EMPTY,
+            /*enableRunfiles=*/ true);
+    Path runfiles = outputManifest.getPath().getParentDirectory();
+    scratch.file(inputManifest.getPath().getPathString(), "ws/a /src/a", "ws/b /src/b");
+    executeInProcess(action);
+    long unchangedNodeId = runfiles.getRelative("ws/a").stat(Symlinks.NOFOLLOW).getNodeId();
+
+    scratch.overwriteFile(inputManifest.getPath().getPathString(), "ws/a /src/a", "ws/b /src/b2");
+    executeInProcess(action);
+
+    assertThat(runfiles.getRelative("ws/a").stat(Symlinks.NOFOLLOW).getNodeId())
+        .isEqualTo(unchangedNodeId);
+    assertThat(runfiles.getRelative("ws/b").readSymbolicLink())
+        .isEqualTo(PathFragment.create("/src/b2"));
+  }
+
+  /** Prepares and executes the action as Skyframe does, with in-process symlink creation. */
+  private void executeInProcess(SymlinkTreeAction action) throws Exception {
+    OptionsParser options = OptionsParser.builder().optionsClasses(ExecutionOptions.class).build();
+    options.parse("--experimental_inprocess_symlink_creation");
+    SymlinkTreeStrategy strategy =
+        new SymlinkTreeStrategy(
+            /*outputService=*/ null,
+            BinTools.forUnitTesting(directories, analysisMock.getEmbeddedTools()));
+    DummyExecutor executor =
+        new DummyExecutor(fileSystem, getExecRoot()) {
+          @Override
+          public <T extends ActionContext> T getContext(Class<? extends T> type) {
+            return type.cast(strategy);
+          }
+
+          @Override
+          public OptionsProvider getOptions() {
+            return options;
+          }
+        };
+    action.prepare(getExecRoot());
+    action.execute(
+        new ActionExecutionContext(
+            executor,
+            /*actionInputFileCache=*/ null,
+            /*actionInputPrefetcher=*/ null,
+            actionKeyContext,
+            /*metadataHandler=*/ null,
+            /*fileOutErr=*/ null,
+            reporter,
+            /*clientEnv=*/ ImmutableMap.of(),
+            /*topLevelFilesets=*/ ImmutableMap.of(),
+            /*artifactExpander=*/ null,
+            /*actionFileSystem=*/ null,
+            /*skyframeDepsResult=*/ null));
+  }
 }
@@ -29,6 +29,7 @@ import com.google.devtools.build.lib.rules.java.JavaOptions;
 import com.google.devtools.build.lib.rules.proto.ProtoConfiguration;
 import com.google.devtools.build.lib.rules.python.PythonOptions;
 import com.google.devtools.build.lib.skyframe.serialization.testutils.TestUtils;
+import com.google.devtools.common.options.OptionDefinition;
 import com.google.devtools.common.options.OptionsParser;
 import java.util.AbstractMap;
 import java.util.stream.Collectors;
@@ -111,6 +112,50 @@ public final class BuildOptionsTest {
     assertThat(diffTwoThree.areSame()).isTrue();
   }
 
+  @Test
+  public void withSharedFragments_sharesUnchangedFragmentsWithBase() throws Exception {
+    BuildOptions base =
+        BuildOptions.of(ImmutableList.of(CoreOptions.class, CppOptions.class), "--cpu=k8");
+    BuildOptions transitioned = base.clone();
+    transitioned.get(CoreOptions.class).cpu = "armeabi-v7a";
+
+    BuildOptions shared = transitioned.withSharedFragments(base);
+
+    assertThat(shared).isEqualTo(transitioned);
+    assertThat(shared.hashCode()).isEqualTo(transitioned.hashCode());
+    assertThat(shared).isNotEqualTo(base);
+    assertThat(shared.get(CppOptions.class)).isSameInstanceAs(base.get(CppOptions.class));
+    assertThat(shared.get(CoreOptions.class).cpu).isEqualTo("armeabi-v7a");
+    assertThat(
+            BuildOptions.diff(base, shared).getFirst().keySet().stream()
+                .map(OptionDefinition::getOptionName)
+                .collect(Collectors.toSet()))
+        .containsExactly("cpu");
+  }
+
+  @Test
+  public void withSharedFragments_internsChangedFragments() throws Exception {
+    BuildOptions base = BuildOptions.of(BUILD_CONFIG_OPTIONS, "--cpu=k8");
+    BuildOptions first = base.clone();
+    first.get(CoreOptions.class).cpu = "armeabi-v7a";
+    BuildOptions second = base.clone();
+    second.get(CoreOptions.class).cpu = "armeabi-v7a";
+
+    assertThat(first.withSharedFragments(base).get(CoreOptions.class))
+        .isSameInstanceAs(second.withSharedFragments(base).get(CoreOptions.class));
+  }
+
+  @Test
+  public void withSharedFragments_unchangedOptionsHaveBaseFragments() throws Exception {
+    BuildOptions base = BuildOptions.of(BUILD_CONFIG_OPTIONS, "--cpu=k8");
+
+    BuildOptions shared = base.clone().withSharedFragments(base);
+
+    assertThat(shared).isEqualTo(base);
+    assertThat(shared.get(CoreOptions.class)).isSameInstanceAs(base.get(CoreOptions.class));
+    assertThat(base.withSharedFragments(base)).isSameInstanceAs(base);
+  }
+
   @Test
   public void optionsDiff_differentFragments() throws Exception {
     BuildOptions one = BuildOptions.of(ImmutableList.of(CppOptions.class));
@@ -30,6 +30,7 @@ import com.google.devtools.build.lib.actions.ActionExecutionException;
 import com.google.devtools.build.lib.actions.ActionInputPrefetcher;
 import com.google.devtools.build.lib.actions.ActionKeyContext;
 import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.ExecutionRequirements;
 import com.google.devtools.build.lib.actions.Spawn;
 import com.google.devtools.build.lib.actions.SpawnActionContext;
 import com.google.devtools.build.lib.actions.SpawnContinuation;
@@ -700,4 +701,95 @@ public final class StandaloneTestStrategyTest extends BuildViewTestCase {
       fail("Test stdout file missing: " + outErr.getOutputPath());
     }
   }
+
+  @Test
+  public void testPersistentTestRunnerGetsPerRunEnvironmentInRequest() throws Exception {
+    ExecutionOptions executionOptions = Options.getDefaults(ExecutionOptions.class);
+    Path tmpDirRoot = TestStrategy.getTmpRoot(rootDirectory, outputBase, executionOptions);
+    BinTools binTools = BinTools.forUnitTesting(directories, analysisMock.getEmbeddedTools());
+    TestedStandaloneTestStrategy standaloneTestStrategy =
+        new TestedStandaloneTestStrategy(executionOptions, binTools, tmpDirRoot);
+
+    // setup a test action that supports workers
+    scratch.file(
+        "standalone/persistent_test.bzl",
+        "def _impl(ctx):",
+        "    executable = ctx.actions.declare_file(ctx.label.name)",
+        "    ctx.actions.write(executable, 'mocked out', is_executable = True)",
+        "    return [",
+        "        DefaultInfo(executable = executable),",
+        "        testing.ExecutionInfo({'supports-workers': '1'}),",
+        "    ]",
+        "persistent_test = rule(implementation = _impl, test = True)");
+    scratch.file(
+        "standalone/BUILD",
+        "load(':persistent_test.bzl', 'persistent_test')",
+        "persistent_test(",
+        "    name = \"persistent_test\",",
+        "    size = \"small\",",
+        ")");
+    TestRunnerAction testRunnerAction = getTestAction("//standalone:persistent_test");
+    Path execRoot = outputBase.getRelative("execroot");
+
+    SpawnResult expectedSpawnResult =
+        new SpawnResult.Builder().setStatus(Status.SUCCESS).setRunnerName("worker").build();
+    List<Spawn> spawns = new ArrayList<>();
+    when(spawnActionContext.beginExecution(any(), any()))
+        .thenAnswer(
+            (invocation) -> {
+              Spawn spawn = invocation.getArgument(0);
+              spawns.add(spawn);
+              if (spawns.size() == 1) {
+                // The test writes an undeclared output.
+                Path outputsDir = execRoot.getRelative(testRunnerAction.getUndeclaredOutputsDir());
+                FileSystemUtils.writeContentAsLatin1(outputsDir.getChild("out.txt"), "hello");
+              }
+              return SpawnContinuation.immediate(expectedSpawnResult);
+            });
+
+    ActionExecutionContext actionExecutionContext =
+        new FakeActionExecutionContext(createTempOutErr(tmpDirRoot), spawnActionContext);
+
+    // actual StandaloneTestStrategy execution
+    execute(testRunnerAction, actionExecutionContext, standaloneTestStrategy);
+
+    // The test spawn and the split XML generation, which always runs for persistent tests.
+    assertThat(spawns).hasSize(2);
+    Spawn testSpawn = spawns.get(0);
+    assertThat(testSpawn.getExecutionInfo())
+        .containsEntry(ExecutionRequirements.SUPPORTS_WORKERS, "1");
+    assertThat(spawns.get(1).getExecutionInfo())
+        .doesNotContainKey(ExecutionRequirements.SUPPORTS_WORKERS);
+
+    // The worker only depends on the test executable and not on the run.
+    List<String> args = testSpawn.getArguments();
+    assertThat(args).hasSize(4);
+    assertThat(args.get(1)).isEqualTo("--no_echo");
+    assertThat(args.get(2)).isEqualTo("standalone/persistent_test");
+    assertThat(args.get(3)).startsWith("@");
+    assertThat(testSpawn.getToolFiles()).hasSize(2);
+    assertThat(testSpawn.getEnvironment()).containsEntry("PERSISTENT_TEST_RUNNER", "true");
+    assertThat(testSpawn.getEnvironment().get("TEST_TMPDIR")).endsWith(".worker");
+    assertThat(testSpawn.getEnvironment()).doesNotContainKey("TEST_PREMATURE_EXIT_FILE");
+    assertThat(testSpawn.getEnvironment()).doesNotContainKey("XML_OUTPUT_FILE");
+    assertThat(testSpawn.getEnvironment()).doesNotContainKey("TEST_UNDECLARED_OUTPUTS_DIR");
+
+    // The per-run environment goes in the work request, in front of the test arguments.
+    Iterable<String> requestArgs =
+        FileSystemUtils.readLines(execRoot.getRelative(args.get(3).substring(1)), UTF_8);
+    assertThat(requestArgs)
+        .containsAtLeast(
+            "--test_env=TEST_PREMATURE_EXIT_FILE="
+                + execRoot.getRelative(testRunnerAction.getExitSafeFile()).getPathString(),
+            "--test_env=XML_OUTPUT_FILE="
+                + execRoot.getRelative(testRunnerAction.getXmlOutputPath()).getPathString())
+        .inOrder();
+
+    // Bazel processes the undeclared outputs of the run instead of the test setup script.
+    Path manifest = execRoot.getRelative(testRunnerAction.getUndeclaredOutputsManifestPath());
+    assertThat(FileSystemUtils.readContent(manifest, UTF_8))
+        .isEqualTo("out.txt\t5\ttext/plain\n");
+    assertThat(execRoot.getRelative(testRunnerAction.getUndeclaredOutputsZipPath()).exists())
+        .isTrue();
+  }
 }
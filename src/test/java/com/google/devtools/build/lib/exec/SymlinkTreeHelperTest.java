@@ -15,13 +15,19 @@
 package com.google.devtools.build.lib.exec;
 
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.devtools.build.lib.testutil.MoreAsserts.assertThrows;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.devtools.build.lib.shell.Command;
 import com.google.devtools.build.lib.vfs.FileSystem;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
 import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import com.google.devtools.build.lib.vfs.Symlinks;
 import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
+import java.io.IOException;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -48,4 +54,116 @@ public final class SymlinkTreeHelperTest {
     assertThat(commandLine[1]).isEqualTo("input_manifest");
     assertThat(commandLine[2]).isEqualTo("output/MANIFEST");
   }
+
+  private static void writeManifest(Path manifest, String... lines) throws IOException {
+    manifest.getParentDirectory().createDirectoryAndParents();
+    FileSystemUtils.writeLinesAs(manifest, ISO_8859_1, lines);
+  }
+
+  @Test
+  public void createSymlinksDirectly_createsTree() throws Exception {
+    Path inputManifest = fs.getPath("/out/input_manifest");
+    Path runfiles = fs.getPath("/out/test.runfiles");
+    writeManifest(inputManifest, "ws/a /src/a", "ws/dir/b /src/b", "ws/__init__.py ");
+
+    new SymlinkTreeHelper(inputManifest, runfiles, false).createSymlinksDirectly();
+
+    assertThat(runfiles.getRelative("ws/a").readSymbolicLink())
+        .isEqualTo(PathFragment.create("/src/a"));
+    assertThat(runfiles.getRelative("ws/dir/b").readSymbolicLink())
+        .isEqualTo(PathFragment.create("/src/b"));
+    assertThat(runfiles.getRelative("ws/__init__.py").isFile(Symlinks.NOFOLLOW)).isTrue();
+    assertThat(runfiles.getRelative("ws/__init__.py").getFileSize()).isEqualTo(0);
+    assertThat(FileSystemUtils.readLines(runfiles.getChild("MANIFEST"), ISO_8859_1))
+        .containsExactly("ws/a /src/a", "ws/dir/b /src/b", "ws/__init__.py ")
+        .inOrder();
+  }
+
+  @Test
+  public void createSymlinksDirectly_updatesChangedEntries() throws Exception {
+    Path inputManifest = fs.getPath("/out/input_manifest");
+    Path runfiles = fs.getPath("/out/test.runfiles");
+    writeManifest(
+        inputManifest, "ws/a /src/a", "ws/b /src/b", "ws/dir/c /src/c", "ws/d/e /src/e");
+    SymlinkTreeHelper helper = new SymlinkTreeHelper(inputManifest, runfiles, false);
+    helper.createSymlinksDirectly();
+
+    writeManifest(inputManifest, "ws/a /src/a", "ws/b /src/b2", "ws/d /src/d", "ws/f/g /src/g");
+    helper.createSymlinksDirectly();
+
+    assertThat(runfiles.getRelative("ws/a").readSymbolicLink())
+        .isEqualTo(PathFragment.create("/src/a"));
+    assertThat(runfiles.getRelative("ws/b").readSymbolicLink())
+        .isEqualTo(PathFragment.create("/src/b2"));
+    assertThat(runfiles.getRelative("ws/d").readSymbolicLink())
+        .isEqualTo(PathFragment.create("/src/d"));
+    assertThat(runfiles.getRelative("ws/f/g").readSymbolicLink())
+        .isEqualTo(PathFragment.create("/src/g"));
+    assertThat(runfiles.getRelative("ws/dir").exists(Symlinks.NOFOLLOW)).isFalse();
+    assertThat(runfiles.getRelative("ws").getDirectoryEntries())
+        .containsExactly(
+            runfiles.getRelative("ws/a"),
+            runfiles.getRelative("ws/b"),
+            runfiles.getRelative("ws/d"),
+            runfiles.getRelative("ws/f"));
+    assertThat(FileSystemUtils.readLines(runfiles.getChild("MANIFEST"), ISO_8859_1))
+        .containsExactly("ws/a /src/a", "ws/b /src/b2", "ws/d /src/d", "ws/f/g /src/g")
+        .inOrder();
+  }
+
+  @Test
+  public void createSymlinksDirectly_updatesManyEntriesInParallel() throws Exception {
+    Path inputManifest = fs.getPath("/out/input_manifest");
+    Path runfiles = fs.getPath("/out/test.runfiles");
+    SymlinkTreeHelper helper = new SymlinkTreeHelper(inputManifest, runfiles, false);
+    // Enough changed entries to be handled by several threads.
+    String[] lines = new String[5000];
+    for (int i = 0; i < lines.length; i++) {
+      lines[i] = "ws/" + i + " /src/" + i;
+    }
+    writeManifest(inputManifest, lines);
+    helper.createSymlinksDirectly();
+
+    for (int i = 0; i < lines.length; i++) {
+      lines[i] = "ws/" + i + " /src2/" + i;
+    }
+    writeManifest(inputManifest, lines);
+    helper.createSymlinksDirectly();
+
+    assertThat(runfiles.getRelative("ws").getDirectoryEntries()).hasSize(lines.length);
+    for (int i = 0; i < lines.length; i++) {
+      assertThat(runfiles.getRelative("ws/" + i).readSymbolicLink())
+          .isEqualTo(PathFragment.create("/src2/" + i));
+    }
+  }
+
+  @Test
+  public void createSymlinksDirectly_withoutOutputManifest_recreatesTree() throws Exception {
+    Path inputManifest = fs.getPath("/out/input_manifest");
+    Path runfiles = fs.getPath("/out/test.runfiles");
+    writeManifest(inputManifest, "ws/a /src/a");
+    runfiles.getRelative("ws").createDirectoryAndParents();
+    FileSystemUtils.createEmptyFile(runfiles.getRelative("ws/stale"));
+    runfiles.getRelative("ws/a").createSymbolicLink(PathFragment.create("/src/old"));
+
+    new SymlinkTreeHelper(inputManifest, runfiles, false).createSymlinksDirectly();
+
+    assertThat(runfiles.getRelative("ws").getDirectoryEntries())
+        .containsExactly(runfiles.getRelative("ws/a"));
+    assertThat(runfiles.getRelative("ws/a").readSymbolicLink())
+        .isEqualTo(PathFragment.create("/src/a"));
+  }
+
+  @Test
+  public void createSymlinksDirectly_rejectsMalformedManifest() throws Exception {
+    Path inputManifest = fs.getPath("/out/input_manifest");
+    Path runfiles = fs.getPath("/out/test.runfiles");
+    writeManifest(inputManifest, "ws/a");
+
+    IOException e =
+        assertThrows(
+            IOException.class,
+            () -> new SymlinkTreeHelper(inputManifest, runfiles, false).createSymlinksDirectly());
+    assertThat(e).hasMessageThat().contains("malformed line 1");
+  }
 }
@@ -0,0 +1,127 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.includescanning;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devtools.build.lib.includescanning.IncludeParser.GrepIncludesFileType;
+import com.google.devtools.build.lib.includescanning.IncludeParser.Inclusion;
+import com.google.devtools.build.lib.includescanning.IncludeParser.Inclusion.Kind;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link IncludeExtractionCache}. */
+@RunWith(JUnit4.class)
+public class IncludeExtractionCacheTest {
+  private static final byte[] DIGEST = {0x12, 0x34, 0x56, 0x78};
+  private static final ImmutableList<Inclusion> INCLUSIONS =
+      ImmutableList.of(new Inclusion("a/b.h", Kind.QUOTE), new Inclusion("vector", Kind.ANGLE));
+
+  private Path directory;
+  private IncludeExtractionCache cache;
+
+  @Before
+  public final void createCache() throws Exception {
+    directory = new InMemoryFileSystem().getPath("/cache");
+    cache = new IncludeExtractionCache(directory);
+  }
+
+  private Path getEntry() {
+    return directory.getRelative("c++/12/12345678");
+  }
+
+  @Test
+  public void missingEntryIsMiss() {
+    assertThat(cache.get(DIGEST, GrepIncludesFileType.CPP)).isNull();
+  }
+
+  @Test
+  public void storedInclusionsAreReturned() {
+    cache.put(DIGEST, GrepIncludesFileType.CPP, INCLUSIONS);
+
+    assertThat(cache.get(DIGEST, GrepIncludesFileType.CPP))
+        .containsExactlyElementsIn(INCLUSIONS)
+        .inOrder();
+    assertThat(new IncludeExtractionCache(directory).get(DIGEST, GrepIncludesFileType.CPP))
+        .containsExactlyElementsIn(INCLUSIONS)
+        .inOrder();
+  }
+
+  @Test
+  public void emptyInclusionsAreStored() {
+    cache.put(DIGEST, GrepIncludesFileType.CPP, ImmutableList.of());
+
+    assertThat(cache.get(DIGEST, GrepIncludesFileType.CPP)).isEmpty();
+  }
+
+  @Test
+  public void entriesOfOtherFileTypeAreMisses() {
+    cache.put(DIGEST, GrepIncludesFileType.CPP, INCLUSIONS);
+
+    assertThat(cache.get(DIGEST, GrepIncludesFileType.SWIG)).isNull();
+  }
+
+  @Test
+  public void corruptEntryIsMiss() throws Exception {
+    cache.put(DIGEST, GrepIncludesFileType.CPP, INCLUSIONS);
+    byte[] content = FileSystemUtils.readContent(getEntry());
+    // Turn the second inclusion into empty lines, which must be caught before they are parsed.
+    int secondLine = new String(content, ISO_8859_1).indexOf("\n<vector") + 1;
+    Arrays.fill(content, secondLine, secondLine + "<vector".length(), (byte) '\n');
+    FileSystemUtils.writeContent(getEntry(), content);
+
+    assertThat(cache.get(DIGEST, GrepIncludesFileType.CPP)).isNull();
+  }
+
+  @Test
+  public void truncatedEntryIsMiss() throws Exception {
+    cache.put(DIGEST, GrepIncludesFileType.CPP, INCLUSIONS);
+    byte[] content = FileSystemUtils.readContent(getEntry());
+
+    for (int length : new int[] {0, 10, content.length / 2, content.length - 1}) {
+      FileSystemUtils.writeContent(getEntry(), Arrays.copyOf(content, length));
+      assertThat(cache.get(DIGEST, GrepIncludesFileType.CPP)).isNull();
+    }
+  }
+
+  @Test
+  public void entryOfOtherDigestIsMiss() throws Exception {
+    byte[] otherDigest = {0x12, 0x34, 0x56, 0x79};
+    cache.put(otherDigest, GrepIncludesFileType.CPP, INCLUSIONS);
+    FileSystemUtils.copyFile(directory.getRelative("c++/12/12345679"), getEntry());
+
+    assertThat(cache.get(DIGEST, GrepIncludesFileType.CPP)).isNull();
+  }
+
+  @Test
+  public void missIsOverwritten() throws Exception {
+    getEntry().getParentDirectory().createDirectoryAndParents();
+    FileSystemUtils.writeContent(getEntry(), new byte[] {'\n'});
+    assertThat(cache.get(DIGEST, GrepIncludesFileType.CPP)).isNull();
+
+    cache.put(DIGEST, GrepIncludesFileType.CPP, INCLUSIONS);
+
+    assertThat(cache.get(DIGEST, GrepIncludesFileType.CPP))
+        .containsExactlyElementsIn(INCLUSIONS)
+        .inOrder();
+  }
+}
@@ -0,0 +1,83 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.metrics;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.devtools.build.lib.metrics.MetricsRegistry.Counter;
+import com.google.devtools.build.lib.metrics.MetricsRegistry.Histogram;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link MetricsRegistry}. */
+@RunWith(JUnit4.class)
+public class MetricsRegistryTest {
+  private final MetricsRegistry registry = new MetricsRegistry();
+
+  @Test
+  public void testCounterIsSharedByName() {
+    Counter counter = registry.counter("events_total", "Events.");
+    counter.increment();
+    registry.counter("events_total", "Events.").add(2);
+    assertThat(counter.get()).isEqualTo(3);
+  }
+
+  @Test
+  public void testTextFormat() {
+    registry.counter("b_total", "A counter.").add(5);
+    registry.gauge("a_gauge", "A gauge.", () -> 1.5);
+    Histogram histogram = registry.histogram("c_millis", "A histogram.", 100, 10);
+    histogram.observe(5);
+    histogram.observe(10);
+    histogram.observe(50);
+    histogram.observe(1000);
+    assertThat(histogram.getCount()).isEqualTo(4);
+
+    assertThat(registry.toText())
+        .isEqualTo(
+            "# HELP a_gauge A gauge.\n"
+                + "# TYPE a_gauge gauge\n"
+                + "a_gauge 1.5\n"
+                + "# HELP b_total A counter.\n"
+                + "# TYPE b_total counter\n"
+                + "b_total 5\n"
+                + "# HELP c_millis A histogram.\n"
+                + "# TYPE c_millis histogram\n"
+                + "c_millis_bucket{le=\"10\"} 2\n"
+                + "c_millis_bucket{le=\"100\"} 3\n"
+                + "c_millis_bucket{le=\"+Inf\"} 4\n"
+                + "c_millis_sum 1065\n"
+                + "c_millis_count 4\n");
+  }
+
+  @Test
+  public void testGaugeIsReplaced() {
+    registry.gauge("running", "Running things.", () -> 1);
+    registry.gauge("running", "Running things.", () -> 2);
+    assertThat(registry.toText()).contains("running 2\n");
+  }
+
+  @Test
+  public void testNameClash() {
+    registry.counter("name", "A counter.");
+    try {
+      registry.histogram("name", "A histogram.", 1);
+      fail();
+    } catch (IllegalStateException expected) {
+      assertThat(expected).hasMessageThat().contains("name is not a Histogram");
+    }
+  }
+}
@@ -0,0 +1,148 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.profiler;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.devtools.build.lib.profiler.Profiler.Format.JSON_TRACE_FILE_COMPRESSED_FORMAT;
+import static com.google.devtools.build.lib.profiler.Profiler.Format.JSON_TRACE_FILE_FORMAT;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.devtools.build.lib.clock.BlazeClock;
+import com.google.devtools.build.lib.profiler.analysis.JsonProfileSummary;
+import com.google.devtools.build.lib.profiler.analysis.JsonProfileSummary.CategoryStats;
+import com.google.devtools.build.lib.profiler.analysis.JsonProfileSummary.TraceEvent;
+import com.google.devtools.build.lib.testutil.ManualClock;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.UUID;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link JsonProfileSummary}. */
+@RunWith(JUnit4.class)
+public class JsonProfileSummaryTest {
+  private final Profiler profiler = Profiler.instance();
+  private ManualClock clock;
+  private long profileStartNanos;
+
+  @Before
+  public final void setManualClock() {
+    clock = new ManualClock();
+    BlazeClock.setClock(clock);
+  }
+
+  @After
+  public void forceStopToAvoidPoisoningTheProfiler() throws IOException {
+    profiler.stop();
+  }
+
+  private ByteArrayOutputStream start(Profiler.Format format) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    profileStartNanos = clock.nanoTime();
+    profiler.start(
+        ImmutableSet.copyOf(ProfilerTask.values()),
+        buffer,
+        format,
+        "test",
+        "dummy_output_base",
+        UUID.randomUUID(),
+        /* recordAllDurations= */ true,
+        clock,
+        profileStartNanos,
+        /* enabledCpuUsageProfiling= */ false,
+        /* slimProfile= */ false,
+        /* vfsSamplingRate= */ 1);
+    return buffer;
+  }
+
+  private void logTask(long startMillis, long durationMillis, ProfilerTask type, String name) {
+    profiler.logSimpleTaskDuration(
+        profileStartNanos + Duration.ofMillis(startMillis).toNanos(),
+        Duration.ofMillis(durationMillis),
+        type,
+        name);
+  }
+
+  private void logBuild() throws IOException {
+    logTask(0, 0, ProfilerTask.PHASE, ProfilePhase.LOAD.description);
+    logTask(1000, 0, ProfilerTask.PHASE, ProfilePhase.EXECUTE.description);
+    logTask(1000, 2000, ProfilerTask.ACTION, "action 1");
+    logTask(1500, 500, ProfilerTask.ACTION, "action 2");
+    logTask(2000, 4000, ProfilerTask.ACTION, "action 3");
+    logTask(1000, 2000, ProfilerTask.CRITICAL_PATH_COMPONENT, "action 1");
+    logTask(3000, 3000, ProfilerTask.CRITICAL_PATH_COMPONENT, "action 3");
+    clock.advanceMillis(6000);
+    profiler.stop();
+  }
+
+  @Test
+  public void testSummary() throws Exception {
+    ByteArrayOutputStream buffer = start(JSON_TRACE_FILE_FORMAT);
+    logBuild();
+
+    JsonProfileSummary summary =
+        JsonProfileSummary.read(
+            new ByteArrayInputStream(buffer.toByteArray()), /* slowestActionsCount= */ 2);
+
+    assertThat(summary.getTotalDurationNanos()).isEqualTo(Duration.ofSeconds(6).toNanos());
+    assertThat(summary.getPhaseDurations())
+        .containsExactly(
+            ProfilePhase.LOAD, Duration.ofSeconds(1).toNanos(),
+            ProfilePhase.EXECUTE, Duration.ofSeconds(5).toNanos())
+        .inOrder();
+
+    CategoryStats actionStats =
+        summary.getStatsByCategory().get(ProfilerTask.ACTION.description);
+    assertThat(actionStats.getCount()).isEqualTo(3);
+    assertThat(actionStats.getTotalDurationNanos()).isEqualTo(Duration.ofMillis(6500).toNanos());
+    assertThat(actionStats.getMaxDurationNanos()).isEqualTo(Duration.ofSeconds(4).toNanos());
+
+    assertThat(Lists.transform(summary.getCriticalPath(), TraceEvent::getName))
+        .containsExactly("action 1", "action 3")
+        .inOrder();
+    assertThat(summary.getCriticalPathDurationNanos()).isEqualTo(Duration.ofSeconds(5).toNanos());
+
+    assertThat(Lists.transform(summary.getSlowestActions(), TraceEvent::getName))
+        .containsExactly("action 3", "action 1")
+        .inOrder();
+
+    double[] parallelism = summary.getActionParallelism();
+    assertThat(parallelism).hasLength(7);
+    assertThat(parallelism[0]).isWithin(1e-9).of(0);
+    assertThat(parallelism[1]).isWithin(1e-9).of(1.5);
+    assertThat(parallelism[2]).isWithin(1e-9).of(2);
+    assertThat(parallelism[5]).isWithin(1e-9).of(1);
+  }
+
+  @Test
+  public void testCompressedProfile() throws Exception {
+    ByteArrayOutputStream buffer = start(JSON_TRACE_FILE_COMPRESSED_FORMAT);
+    logBuild();
+
+    JsonProfileSummary summary =
+        JsonProfileSummary.read(
+            new ByteArrayInputStream(buffer.toByteArray()),
+            JsonProfileSummary.DEFAULT_SLOWEST_ACTIONS_COUNT);
+
+    assertThat(summary.getStatsByCategory().get(ProfilerTask.ACTION.description).getCount())
+        .isEqualTo(3);
+    assertThat(summary.getSlowestActions()).hasSize(3);
+  }
+}
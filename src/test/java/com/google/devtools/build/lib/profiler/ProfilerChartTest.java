@@ -263,7 +263,8 @@ public class ProfilerChartTest extends FoundationTestCase {
           BlazeClock.instance(),
           BlazeClock.instance().nanoTime(),
           /* enabledCpuUsageProfiling= */ false,
-          /* slimProfile= */ false);
+          /* slimProfile= */ false,
+          /* vfsSamplingRate= */ 1);
 
       // Write from multiple threads to generate multiple rows in the chart.
       for (int i = 0; i < noOfRows; i++) {
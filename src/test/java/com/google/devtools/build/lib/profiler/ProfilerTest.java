@@ -104,7 +104,8 @@ public class ProfilerTest {
         BlazeClock.instance(),
         BlazeClock.nanoTime(),
         /* enabledCpuUsageProfiling= */ false,
-        /* slimProfile= */ false);
+        /* slimProfile= */ false,
+        /* vfsSamplingRate= */ 1);
     return buffer;
   }
 
@@ -120,7 +121,8 @@ public class ProfilerTest {
         BlazeClock.instance(),
         BlazeClock.nanoTime(),
         /* enabledCpuUsageProfiling= */ false,
-        /* slimProfile= */ false);
+        /* slimProfile= */ false,
+        /* vfsSamplingRate= */ 1);
   }
 
   @Test
@@ -222,7 +224,8 @@ public class ProfilerTest {
         BlazeClock.instance(),
         BlazeClock.instance().nanoTime(),
         /* enabledCpuUsageProfiling= */ false,
-        /* slimProfile= */ false);
+        /* slimProfile= */ false,
+        /* vfsSamplingRate= */ 1);
     try (SilentCloseable c = profiler.profile(ProfilerTask.ACTION, "action task")) {
       // Next task takes less than 10 ms but should be recorded anyway.
       clock.advanceMillis(1);
@@ -240,6 +243,39 @@ public class ProfilerTest {
     assertThat(task.durationNanos).isLessThan(ProfilerTask.VFS_STAT.minDuration);
   }
 
+  @Test
+  public void testProfilerSamplingVfsEvents() throws Exception {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    profiler.start(
+        getAllProfilerTasks(),
+        buffer,
+        BINARY_BAZEL_FORMAT,
+        "basic test",
+        "dummy_output_base",
+        UUID.randomUUID(),
+        true,
+        BlazeClock.instance(),
+        BlazeClock.instance().nanoTime(),
+        /* enabledCpuUsageProfiling= */ false,
+        /* slimProfile= */ false,
+        /* vfsSamplingRate= */ 3);
+    for (int i = 0; i < 7; i++) {
+      profiler.logSimpleTask(BlazeClock.instance().nanoTime(), ProfilerTask.VFS_STAT, "stat" + i);
+    }
+    profiler.logSimpleTask(BlazeClock.instance().nanoTime(), ProfilerTask.ACTION, "action");
+    profiler.stop();
+    ProfileInfo info = ProfileInfo.loadProfile(new ByteArrayInputStream(buffer.toByteArray()));
+    info.calculateStats();
+    // With a sampling rate of 3, only the 1st, 4th and 7th of the 7 VFS tasks are written. All
+    // other tasks are unaffected, so these 3 tasks, the action and the finalization are recorded.
+    assertThat(info.allTasksById).hasSize(5);
+    assertThat(info.allTasksById.get(0).getDescription()).isEqualTo("stat0");
+    assertThat(info.allTasksById.get(1).getDescription()).isEqualTo("stat3");
+    assertThat(info.allTasksById.get(2).getDescription()).isEqualTo("stat6");
+    assertThat(info.allTasksById.get(3).type).isEqualTo(ProfilerTask.ACTION);
+    assertThat(info.allTasksById.get(4).getDescription()).isEqualTo("Finishing");
+  }
+
   @Test
   public void testProfilerRecordingOnlySlowestEvents() throws Exception {
     ByteArrayOutputStream buffer = new ByteArrayOutputStream();
@@ -255,7 +291,8 @@ public class ProfilerTest {
         BlazeClock.instance(),
         BlazeClock.instance().nanoTime(),
         /* enabledCpuUsageProfiling= */ false,
-        /* slimProfile= */ false);
+        /* slimProfile= */ false,
+        /* vfsSamplingRate= */ 1);
     profiler.logSimpleTask(10000, 20000, ProfilerTask.VFS_STAT, "stat");
     profiler.logSimpleTask(20000, 30000, ProfilerTask.REMOTE_EXECUTION, "remote execution");
 
@@ -367,7 +404,8 @@ public class ProfilerTest {
         BlazeClock.instance(),
         BlazeClock.instance().nanoTime(),
         /* enabledCpuUsageProfiling= */ false,
-        /* slimProfile= */ false);
+        /* slimProfile= */ false,
+        /* vfsSamplingRate= */ 1);
     profiler.logSimpleTask(10000, 20000, ProfilerTask.VFS_STAT, "stat");
 
     assertThat(ProfilerTask.VFS_STAT.collectsSlowestInstances()).isTrue();
@@ -590,7 +628,8 @@ public class ProfilerTest {
         badClock,
         initialNanoTime,
         /* enabledCpuUsageProfiling= */ false,
-        /* slimProfile= */ false);
+        /* slimProfile= */ false,
+        /* vfsSamplingRate= */ 1);
     profiler.logSimpleTask(badClock.nanoTime(), ProfilerTask.INFO, "some task");
     profiler.stop();
   }
@@ -644,7 +683,8 @@ public class ProfilerTest {
         BlazeClock.instance(),
         BlazeClock.instance().nanoTime(),
         /* enabledCpuUsageProfiling= */ false,
-        /* slimProfile= */ false);
+        /* slimProfile= */ false,
+        /* vfsSamplingRate= */ 1);
     profiler.logSimpleTaskDuration(
         Profiler.nanoTimeMaybe(), Duration.ofSeconds(10), ProfilerTask.INFO, "foo");
     IOException expected = assertThrows(IOException.class, () -> profiler.stop());
@@ -670,7 +710,8 @@ public class ProfilerTest {
         BlazeClock.instance(),
         BlazeClock.instance().nanoTime(),
         /* enabledCpuUsageProfiling= */ false,
-        /* slimProfile= */ false);
+        /* slimProfile= */ false,
+        /* vfsSamplingRate= */ 1);
     profiler.logSimpleTaskDuration(
         Profiler.nanoTimeMaybe(), Duration.ofSeconds(10), ProfilerTask.INFO, "foo");
     IOException expected = assertThrows(IOException.class, () -> profiler.stop());
@@ -690,7 +731,8 @@ public class ProfilerTest {
         BlazeClock.instance(),
         BlazeClock.instance().nanoTime(),
         /* enabledCpuUsageProfiling= */ false,
-        slimProfile);
+        slimProfile,
+        /* vfsSamplingRate= */ 1);
     long curTime = Profiler.nanoTimeMaybe();
     for (int i = 0; i < 100_000; i++) {
       Duration duration;
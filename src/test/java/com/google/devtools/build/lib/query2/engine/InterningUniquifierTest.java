@@ -0,0 +1,132 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.query2.engine;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devtools.build.lib.query2.engine.QueryUtil.InterningMinDepthUniquifierImpl;
+import com.google.devtools.build.lib.query2.engine.QueryUtil.InterningUniquifierImpl;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link DenseKeyInterner}, {@link InterningUniquifierImpl} and {@link
+ * InterningMinDepthUniquifierImpl}.
+ */
+@RunWith(JUnit4.class)
+public class InterningUniquifierTest {
+
+  @Test
+  public void testInternerAssignsDenseIds() {
+    DenseKeyInterner<String> interner = new DenseKeyInterner<>(/*concurrencyLevel=*/ 1);
+    assertThat(interner.getIdIfPresent("a")).isEqualTo(DenseKeyInterner.ABSENT);
+    assertThat(interner.intern("a")).isEqualTo(0);
+    assertThat(interner.intern("b")).isEqualTo(1);
+    assertThat(interner.intern("a")).isEqualTo(0);
+    assertThat(interner.getIdIfPresent("b")).isEqualTo(1);
+    assertThat(interner.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void testUniquifier() {
+    DenseKeyInterner<String> interner = new DenseKeyInterner<>(/*concurrencyLevel=*/ 1);
+    InterningUniquifierImpl<String, String> uniquifier =
+        new InterningUniquifierImpl<>(s -> s, interner);
+    assertThat(uniquifier.uniquePure("a")).isTrue();
+    assertThat(uniquifier.unique("a")).isTrue();
+    assertThat(uniquifier.uniquePure("a")).isFalse();
+    assertThat(uniquifier.unique("a")).isFalse();
+    assertThat(uniquifier.unique(ImmutableList.of("a", "b", "c", "b")))
+        .containsExactly("b", "c")
+        .inOrder();
+  }
+
+  @Test
+  public void testUniquifiersSharingAnInternerAreIndependent() {
+    DenseKeyInterner<String> interner = new DenseKeyInterner<>(/*concurrencyLevel=*/ 1);
+    InterningUniquifierImpl<String, String> first =
+        new InterningUniquifierImpl<>(s -> s, interner);
+    InterningUniquifierImpl<String, String> second =
+        new InterningUniquifierImpl<>(s -> s, interner);
+    assertThat(first.unique("a")).isTrue();
+    assertThat(second.uniquePure("a")).isTrue();
+    assertThat(second.unique("a")).isTrue();
+    assertThat(first.unique("a")).isFalse();
+    assertThat(interner.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void testUniquifierWithManyKeys() {
+    DenseKeyInterner<Integer> interner = new DenseKeyInterner<>(/*concurrencyLevel=*/ 1);
+    InterningUniquifierImpl<Integer, Integer> uniquifier =
+        new InterningUniquifierImpl<>(i -> i, interner);
+    // Spans several segments of the underlying array.
+    for (int i = 0; i < 1_000_000; i += 3) {
+      assertThat(uniquifier.unique(i)).isTrue();
+    }
+    for (int i = 0; i < 1_000_000; i++) {
+      assertThat(uniquifier.unique(i)).isEqualTo(i % 3 != 0);
+    }
+  }
+
+  @Test
+  public void testUniquifierConcurrently() throws Exception {
+    DenseKeyInterner<Integer> interner = new DenseKeyInterner<>(/*concurrencyLevel=*/ 8);
+    InterningUniquifierImpl<Integer, Integer> uniquifier =
+        new InterningUniquifierImpl<>(i -> i, interner);
+    AtomicInteger numUnique = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      futures.add(
+          executor.submit(
+              () -> {
+                for (int i = 0; i < 100_000; i++) {
+                  if (uniquifier.unique(i)) {
+                    numUnique.incrementAndGet();
+                  }
+                }
+              }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+    assertThat(numUnique.get()).isEqualTo(100_000);
+  }
+
+  @Test
+  public void testMinDepthUniquifier() {
+    DenseKeyInterner<String> interner = new DenseKeyInterner<>(/*concurrencyLevel=*/ 1);
+    InterningMinDepthUniquifierImpl<String, String> uniquifier =
+        new InterningMinDepthUniquifierImpl<>(s -> s, interner);
+    assertThat(uniquifier.uniqueAtDepthLessThanOrEqualToPure("a", 3)).isTrue();
+    assertThat(uniquifier.uniqueAtDepthLessThanOrEqualTo("a", 3)).isTrue();
+    assertThat(uniquifier.uniqueAtDepthLessThanOrEqualTo("a", 3)).isFalse();
+    assertThat(uniquifier.uniqueAtDepthLessThanOrEqualTo("a", 4)).isFalse();
+    assertThat(uniquifier.uniqueAtDepthLessThanOrEqualToPure("a", 2)).isTrue();
+    assertThat(uniquifier.uniqueAtDepthLessThanOrEqualTo("a", 0)).isTrue();
+    assertThat(uniquifier.uniqueAtDepthLessThanOrEqualTo("a", 0)).isFalse();
+    assertThat(uniquifier.uniqueAtDepthLessThanOrEqualTo(ImmutableList.of("a", "b"), 1))
+        .containsExactly("b");
+  }
+}
@@ -36,6 +36,7 @@ import com.google.common.collect.Streams;
 import com.google.common.truth.Truth;
 import com.google.devtools.build.lib.actions.Action;
 import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.ExecutionRequirements;
 import com.google.devtools.build.lib.actions.util.ActionsTestUtil;
 import com.google.devtools.build.lib.analysis.ConfiguredTarget;
 import com.google.devtools.build.lib.analysis.FilesToRunProvider;
@@ -621,6 +622,36 @@ public class AndroidBinaryTest extends AndroidBuildViewTestCase {
             "libdep.jar.dex.zip");
   }
 
+  @Test
+  public void testIncrementalDexingWithDexbuilderCacheDir() throws Exception {
+    useConfiguration(
+        "--incremental_dexing", "--experimental_dexbuilder_cache_dir=/tmp/dex_cache");
+    scratch.file(
+        "java/com/google/android/BUILD",
+        "android_binary(",
+        "  name = 'top',",
+        "  srcs = ['foo.java'],",
+        "  multidex = 'native',",
+        "  manifest = 'AndroidManifest.xml',",
+        ")");
+
+    ConfiguredTarget topTarget = getConfiguredTarget("//java/com/google/android:top");
+    assertNoEvents();
+
+    Action shardAction = getGeneratingAction(getBinArtifact("_dx/top/classes.jar", topTarget));
+    SpawnAction dexAction =
+        (SpawnAction)
+            getGeneratingAction(
+                getFirstArtifactEndingWith(
+                    getNonToolInputs(shardAction), "libtop.jar.dex.zip"));
+    assertThat(dexAction.getArguments())
+        .containsAtLeast("--dex_cache_dir", "/tmp/dex_cache")
+        .inOrder();
+    assertThat(dexAction.getExecutionInfo())
+        .containsAtLeast(
+            ExecutionRequirements.NO_SANDBOX, "", ExecutionRequirements.NO_REMOTE, "");
+  }
+
   @Test
   public void testIncrementalDexingDisabledWithBlacklistedDexopts() throws Exception {
     // Even if we mark a dx flag as supported, incremental dexing isn't used with blacklisted
@@ -0,0 +1,97 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.rules.cpp;
+
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.devtools.build.lib.rules.cpp.CcToolchainFeatures.FeatureConfiguration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Microbenchmarks for expanding command lines of a {@link FeatureConfiguration} with and without
+ * the per-action command line templates.
+ */
+public class CcToolchainFeaturesBenchmark {
+  @Param({"10", "100"})
+  int featureCount;
+
+  private FeatureConfiguration configuration;
+  private CcToolchainVariables variables;
+
+  @BeforeExperiment
+  void createConfiguration() throws Exception {
+    // Every feature has flag sets for other actions, flag sets that only apply with other
+    // features, and flag sets whose flags depend on the variables.
+    List<String> toolchain = new ArrayList<>();
+    ImmutableSet.Builder<String> enabled = ImmutableSet.builder();
+    for (int i = 0; i < featureCount; i++) {
+      String name = "feature_" + i;
+      toolchain.add("feature {");
+      toolchain.add("  name: '" + name + "'");
+      toolchain.add("  flag_set {");
+      toolchain.add("    action: 'c++-link-executable'");
+      toolchain.add("    flag_group {flag: '-link_" + i + "'}");
+      toolchain.add("  }");
+      toolchain.add("  flag_set {");
+      toolchain.add("    with_feature {feature: 'feature_" + (i + 1) + "'}");
+      toolchain.add("    action: 'c++-compile'");
+      toolchain.add("    flag_group {flag: '-with_next_" + i + "'}");
+      toolchain.add("  }");
+      toolchain.add("  flag_set {");
+      toolchain.add("    action: 'c++-compile'");
+      toolchain.add("    flag_group {");
+      toolchain.add("      expand_if_all_available: 'include_paths'");
+      toolchain.add("      iterate_over: 'include_paths'");
+      toolchain.add("      flag: '-I%{include_paths}'");
+      toolchain.add("    }");
+      toolchain.add("  }");
+      toolchain.add("}");
+      if (i % 2 == 0) {
+        enabled.add(name);
+      }
+    }
+    configuration =
+        CcToolchainFeaturesTest.buildFeatures(toolchain.toArray(new String[0]))
+            .getFeatureConfiguration(enabled.build());
+    variables =
+        CcToolchainVariables.builder()
+            .addStringSequenceVariable("include_paths", ImmutableList.of("a", "b", "c"))
+            .build();
+  }
+
+  @Benchmark
+  int expandWithTemplate(int reps) throws Exception {
+    int flags = 0;
+    for (int i = 0; i < reps; i++) {
+      flags += configuration.getCommandLine(CppActionNames.CPP_COMPILE, variables).size();
+    }
+    return flags;
+  }
+
+  @Benchmark
+  int expandWithoutTemplate(int reps) throws Exception {
+    int flags = 0;
+    for (int i = 0; i < reps; i++) {
+      flags +=
+          configuration
+              .getCommandLineWithoutTemplate(CppActionNames.CPP_COMPILE, variables, null)
+              .size();
+    }
+    return flags;
+  }
+}
@@ -1281,6 +1281,68 @@ public class CcToolchainFeaturesTest extends BuildViewTestCase {
         .doesNotContain("dummy_flag");
   }
 
+  @Test
+  public void testCommandLineTemplateMatchesExpansionWithoutTemplate() throws Exception {
+    CcToolchainFeatures features =
+        buildFeatures(
+            "action_config {",
+            "  config_name: 'c++-compile'",
+            "  action_name: 'c++-compile'",
+            "  flag_set {",
+            "    flag_group {flag: 'action_config_flag'}",
+            "  }",
+            "}",
+            "feature {",
+            "  name: 'a'",
+            "  flag_set {",
+            "    with_feature {feature: 'b'}",
+            "    action: 'c++-compile'",
+            "    flag_group {flag: 'with_b'}",
+            "  }",
+            "  flag_set {",
+            "    with_feature {not_feature: 'b'}",
+            "    action: 'c++-compile'",
+            "    action: 'c++-link-executable'",
+            "    flag_group {flag: 'without_b'}",
+            "  }",
+            "  flag_set {",
+            "    action: 'c++-compile'",
+            "    expand_if_all_available: 'v'",
+            "    flag_group {flag: '-f%{v}'}",
+            "  }",
+            "}",
+            "feature {name: 'b'}");
+    for (ImmutableSet<String> requestedFeatures :
+        ImmutableList.of(
+            ImmutableSet.of("a", "b", "c++-compile"),
+            ImmutableSet.of("a", "c++-compile"),
+            ImmutableSet.of("a"))) {
+      FeatureConfiguration configuration = features.getFeatureConfiguration(requestedFeatures);
+      for (String action :
+          ImmutableList.of(
+              CppActionNames.CPP_COMPILE, CppActionNames.CPP_LINK_EXECUTABLE, "invalid-action")) {
+        for (CcToolchainVariables variables :
+            ImmutableList.of(createVariables(), createVariables("v", "1"))) {
+          List<String> expected =
+              configuration.getCommandLineWithoutTemplate(action, variables, null);
+          // The second call uses the template the first one created.
+          assertThat(configuration.getCommandLine(action, variables))
+              .containsExactlyElementsIn(expected)
+              .inOrder();
+          assertThat(configuration.getCommandLine(action, variables))
+              .containsExactlyElementsIn(expected)
+              .inOrder();
+        }
+      }
+    }
+    assertThat(
+            features
+                .getFeatureConfiguration(ImmutableSet.of("a", "c++-compile"))
+                .getCommandLine(CppActionNames.CPP_COMPILE, createVariables("v", "1")))
+        .containsExactly("action_config_flag", "without_b", "-f1")
+        .inOrder();
+  }
+
   @Test
   public void testWithFeature_OneSetMultipleFeatures() throws Exception {
     CcToolchainFeatures features =
@@ -15,16 +15,21 @@
 package com.google.devtools.build.lib.rules.cpp;
 
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.devtools.build.lib.testutil.MoreAsserts.assertThrows;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.analysis.RuleContext;
 import com.google.devtools.build.lib.analysis.configuredtargets.RuleConfiguredTarget;
 import com.google.devtools.build.lib.analysis.util.AnalysisMock;
 import com.google.devtools.build.lib.analysis.util.BuildViewTestCase;
 import com.google.devtools.build.lib.packages.util.Crosstool.CcToolchainConfig;
 import com.google.devtools.build.lib.packages.util.MockPlatformSupport;
+import com.google.devtools.build.lib.rules.cpp.CcToolchainFeatures.FeatureConfiguration;
+import com.google.devtools.build.lib.rules.cpp.CcToolchainVariables.VariablesExtension;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -68,6 +73,79 @@ public class CompileBuildVariablesTest extends BuildViewTestCase {
         .contains("_objs/bin/bin");
   }
 
+  @Test
+  public void testCompileActionsOfTargetShareIncludePaths() throws Exception {
+    scratch.file(
+        "x/BUILD",
+        "cc_binary(name = 'bin', srcs = ['bin.cc', 'lib.cc'], defines = ['FOO'],",
+        "          includes = ['.'])");
+    scratch.file("x/bin.cc");
+    scratch.file("x/lib.cc");
+
+    CcToolchainVariables binVariables = getCompileBuildVariables("//x:bin", "bin");
+    CcToolchainVariables libVariables = getCompileBuildVariables("//x:bin", "lib");
+
+    assertThat(binVariables.getParent()).isNotNull();
+    assertThat(binVariables.getParent()).isSameInstanceAs(libVariables.getParent());
+    for (CompileBuildVariables variable :
+        ImmutableList.of(
+            CompileBuildVariables.INCLUDE_PATHS,
+            CompileBuildVariables.SYSTEM_INCLUDE_PATHS,
+            CompileBuildVariables.PREPROCESSOR_DEFINES)) {
+      // The values are inherited from the variables of the target instead of copied per action.
+      assertThat(binVariables.getVariablesMap()).doesNotContainKey(variable.getVariableName());
+      assertThat(libVariables.getVariablesMap()).doesNotContainKey(variable.getVariableName());
+      assertThat(CcToolchainVariables.toStringList(binVariables, variable.getVariableName()))
+          .isEqualTo(CcToolchainVariables.toStringList(libVariables, variable.getVariableName()));
+    }
+    assertThat(CcToolchainVariables.toStringList(
+            binVariables, CompileBuildVariables.PREPROCESSOR_DEFINES.getVariableName()))
+        .contains("FOO");
+    assertThat(binVariables.getStringVariable(CompileBuildVariables.SOURCE_FILE.getVariableName()))
+        .contains("x/bin.cc");
+    assertThat(libVariables.getStringVariable(CompileBuildVariables.SOURCE_FILE.getVariableName()))
+        .contains("x/lib.cc");
+  }
+
+  @Test
+  public void testVariablesExtensionCannotOverwriteTargetVariables() throws Exception {
+    scratch.file("x/BUILD", "cc_binary(name = 'bin', srcs = ['bin.cc'])");
+    scratch.file("x/bin.cc");
+    String includePaths = CompileBuildVariables.INCLUDE_PATHS.getVariableName();
+    CcToolchainVariables targetVariables =
+        CcToolchainVariables.builder()
+            .addStringSequenceVariable(includePaths, ImmutableList.of("a"))
+            .build();
+    VariablesExtension extension =
+        builder -> builder.addStringSequenceVariable(includePaths, ImmutableList.of("b"));
+    RuleContext ruleContext = getRuleContext(getConfiguredTarget("//x:bin"));
+
+    IllegalArgumentException e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                CompileBuildVariables.setupActionVariablesOrReportRuleError(
+                    ruleContext,
+                    FeatureConfiguration.EMPTY,
+                    targetVariables,
+                    "x/bin.cc",
+                    "x/bin.o",
+                    /* gcnoFile= */ null,
+                    /* isUsingFission= */ false,
+                    /* dwoFile= */ null,
+                    /* ltoIndexingFile= */ null,
+                    /* includes= */ ImmutableList.of(),
+                    /* userCompileFlags= */ ImmutableList.of(),
+                    /* cppModuleMap= */ null,
+                    /* usePic= */ false,
+                    /* fakeOutputFile= */ null,
+                    /* dotdFileExecPath= */ null,
+                    ImmutableList.of(extension),
+                    /* additionalBuildVariables= */ ImmutableMap.of(),
+                    /* directModuleMaps= */ ImmutableList.of()));
+    assertThat(e).hasMessageThat().contains("Cannot overwrite variable '" + includePaths + "'");
+  }
+
   @Test
   public void testPresenceOfConfigurationCompileFlags() throws Exception {
     useConfiguration("--copt=-foo");
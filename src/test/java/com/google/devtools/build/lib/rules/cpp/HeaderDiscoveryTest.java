@@ -14,6 +14,7 @@
 
 package com.google.devtools.build.lib.rules.cpp;
 
+import static com.google.common.truth.Truth.assertThat;
 import static com.google.devtools.build.lib.testutil.MoreAsserts.assertThrows;
 import static org.mockito.Mockito.mock;
 
@@ -25,6 +26,8 @@ import com.google.devtools.build.lib.actions.ArtifactResolver;
 import com.google.devtools.build.lib.actions.ArtifactRoot;
 import com.google.devtools.build.lib.actions.util.ActionsTestUtil;
 import com.google.devtools.build.lib.collect.nestedset.NestedSet;
+import com.google.devtools.build.lib.collect.nestedset.NestedSetBuilder;
+import com.google.devtools.build.lib.collect.nestedset.Order;
 import com.google.devtools.build.lib.vfs.FileSystem;
 import com.google.devtools.build.lib.vfs.Path;
 import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
@@ -56,11 +59,71 @@ public class HeaderDiscoveryTest {
                 ImmutableList.of(treeArtifact(derivedRoot.getRelative("tree_artifact2")))));
   }
 
+  @Test
+  public void acceptsHeadersInNestedDirectoriesOfTreeArtifacts() throws Exception {
+    ArtifactResolver artifactResolver = mock(ArtifactResolver.class);
+    SpecialArtifact treeArtifact = treeArtifact(derivedRoot.getRelative("tree_artifact1"));
+
+    NestedSet<Artifact> inputs =
+        checkHeaderInclusion(
+            artifactResolver,
+            ImmutableList.of(
+                derivedRoot.getRelative("tree_artifact1/foo.h"),
+                derivedRoot.getRelative("tree_artifact1/subdir/foo.h")),
+            ImmutableList.of(
+                treeArtifact, treeArtifact(derivedRoot.getRelative("tree_artifact2"))));
+
+    assertThat(inputs).containsExactly(treeArtifact);
+  }
+
+  @Test
+  public void acceptsDeclaredIncludeSrcs() throws Exception {
+    ArtifactResolver artifactResolver = mock(ArtifactResolver.class);
+    Artifact header = ActionsTestUtil.createArtifact(artifactRoot, derivedRoot.getRelative("a.h"));
+    SpecialArtifact treeArtifact = treeArtifact(derivedRoot.getRelative("tree_artifact1"));
+    NestedSet<Artifact> declaredIncludeSrcs =
+        NestedSetBuilder.create(Order.STABLE_ORDER, header, treeArtifact);
+
+    NestedSet<Artifact> inputs =
+        checkHeaderInclusion(
+            artifactResolver,
+            ImmutableList.of(
+                derivedRoot.getRelative("a.h"), derivedRoot.getRelative("tree_artifact1/b.h")),
+            ImmutableList.of(),
+            declaredIncludeSrcs);
+
+    assertThat(inputs).containsExactly(header, treeArtifact);
+  }
+
+  @Test
+  public void sharesIndexOfDeclaredIncludeSrcs() {
+    NestedSet<Artifact> declaredIncludeSrcs =
+        NestedSetBuilder.create(
+            Order.STABLE_ORDER,
+            ActionsTestUtil.createArtifact(artifactRoot, derivedRoot.getRelative("a.h")));
+
+    assertThat(DerivedInputIndex.forDeclaredIncludeSrcs(declaredIncludeSrcs))
+        .isSameInstanceAs(DerivedInputIndex.forDeclaredIncludeSrcs(declaredIncludeSrcs));
+  }
+
   private NestedSet<Artifact> checkHeaderInclusion(
       ArtifactResolver artifactResolver,
       ImmutableList<Path> dependencies,
       ImmutableList<Artifact> includedHeaders)
       throws ActionExecutionException {
+    return checkHeaderInclusion(
+        artifactResolver,
+        dependencies,
+        includedHeaders,
+        NestedSetBuilder.emptySet(Order.STABLE_ORDER));
+  }
+
+  private NestedSet<Artifact> checkHeaderInclusion(
+      ArtifactResolver artifactResolver,
+      ImmutableList<Path> dependencies,
+      ImmutableList<Artifact> includedHeaders,
+      NestedSet<Artifact> declaredIncludeSrcs)
+      throws ActionExecutionException {
     return new HeaderDiscovery.Builder()
         .shouldValidateInclusions()
         .setAction(new ActionsTestUtil.NullAction())
@@ -69,6 +132,7 @@ public class HeaderDiscoveryTest {
             ActionsTestUtil.createArtifact(artifactRoot, derivedRoot.getRelative("foo.cc")))
         .setDependencies(dependencies)
         .setAllowedDerivedinputs(includedHeaders)
+        .setDeclaredIncludeSrcs(declaredIncludeSrcs)
         .build()
         .discoverInputsFromDependencies(execRoot, artifactResolver);
   }
@@ -0,0 +1,79 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.skyframe;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.devtools.build.lib.vfs.FileSystem;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link AsynchronousOutputDeleter}. */
+@RunWith(JUnit4.class)
+public class AsynchronousOutputDeleterTest {
+  private final FileSystem fs = new InMemoryFileSystem();
+
+  private static void createTree(Path dir) throws Exception {
+    dir.getRelative("sub").createDirectoryAndParents();
+    FileSystemUtils.createEmptyFile(dir.getRelative("a"));
+    FileSystemUtils.createEmptyFile(dir.getRelative("sub/b"));
+  }
+
+  @Test
+  public void deleteTree_movesTreeAwayAndDeletesIt() throws Exception {
+    Path trash = fs.getPath("/output_base/_deleted_outputs");
+    Path tree = fs.getPath("/output_base/execroot/bin/tree");
+    createTree(tree);
+    tree.getRelative("sub").setWritable(false);
+    tree.setWritable(false);
+    AsynchronousOutputDeleter deleter = new AsynchronousOutputDeleter(trash);
+
+    deleter.deleteTree(tree);
+
+    assertThat(tree.exists()).isFalse();
+    assertThat(tree.getParentDirectory().exists()).isTrue();
+    deleter.awaitPendingDeletions();
+    assertThat(trash.getDirectoryEntries()).isEmpty();
+  }
+
+  @Test
+  public void constructor_deletesLeftoverTrash() throws Exception {
+    Path trash = fs.getPath("/output_base/_deleted_outputs");
+    createTree(trash.getChild("leftover"));
+
+    AsynchronousOutputDeleter deleter = new AsynchronousOutputDeleter(trash);
+
+    deleter.awaitPendingDeletions();
+    assertThat(trash.getDirectoryEntries()).isEmpty();
+  }
+
+  @Test
+  public void deleteTree_withoutTrashDirectory_deletesSynchronously() throws Exception {
+    Path trashParent = fs.getPath("/output_base/file");
+    trashParent.getParentDirectory().createDirectoryAndParents();
+    FileSystemUtils.createEmptyFile(trashParent);
+    Path tree = fs.getPath("/output_base/execroot/bin/tree");
+    createTree(tree);
+    AsynchronousOutputDeleter deleter =
+        new AsynchronousOutputDeleter(trashParent.getChild("_deleted_outputs"));
+
+    deleter.deleteTree(tree);
+
+    assertThat(tree.exists()).isFalse();
+  }
+}
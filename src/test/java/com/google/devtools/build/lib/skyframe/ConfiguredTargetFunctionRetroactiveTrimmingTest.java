@@ -0,0 +1,159 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.skyframe;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.devtools.build.lib.packages.Attribute.attr;
+import static com.google.devtools.build.lib.packages.BuildType.LABEL;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devtools.build.lib.analysis.ConfiguredRuleClassProvider;
+import com.google.devtools.build.lib.analysis.ConfiguredTarget;
+import com.google.devtools.build.lib.analysis.config.BuildOptions;
+import com.google.devtools.build.lib.analysis.config.HostTransition;
+import com.google.devtools.build.lib.analysis.config.transitions.PatchTransition;
+import com.google.devtools.build.lib.analysis.test.TestConfiguration;
+import com.google.devtools.build.lib.analysis.util.AnalysisTestCase;
+import com.google.devtools.build.lib.analysis.util.MockRule;
+import com.google.devtools.build.lib.analysis.util.TestAspects;
+import com.google.devtools.build.lib.analysis.util.TestAspects.DummyRuleFactory;
+import com.google.devtools.build.lib.cmdline.Label;
+import com.google.devtools.build.lib.testutil.TestRuleClassProvider;
+import com.google.devtools.build.lib.util.FileTypeSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests that {@link ConfiguredTargetFunction} reuses targets analyzed under configurations that
+ * only differ in options they don't read, with {@code --experimental_dynamic_configs=retroactive}.
+ */
+@RunWith(JUnit4.class)
+public class ConfiguredTargetFunctionRetroactiveTrimmingTest extends AnalysisTestCase {
+
+  /** Adds an argument to --test_arg, which isn't read by rules without the test fragment. */
+  private static final class AddTestArgTransition implements PatchTransition {
+    @Override
+    public BuildOptions patch(BuildOptions options) {
+      BuildOptions result = options.clone();
+      TestConfiguration.TestOptions testOptions = result.get(TestConfiguration.TestOptions.class);
+      testOptions.testArguments =
+          ImmutableList.<String>builder().addAll(testOptions.testArguments).add("arg").build();
+      return result;
+    }
+  }
+
+  /** A rule without configuration fragments which may depend on a tool in the host. */
+  private static final MockRule LEAF_RULE =
+      () ->
+          MockRule.ancestor(TestAspects.BASE_RULE.getClass())
+              .factory(DummyRuleFactory.class)
+              .define(
+                  "leaf",
+                  attr("dep", LABEL).allowedFileTypes(FileTypeSet.ANY_FILE),
+                  attr("tool", LABEL)
+                      .allowedFileTypes(FileTypeSet.ANY_FILE)
+                      .cfg(HostTransition.createFactory()));
+
+  @Before
+  public final void setUpRules() throws Exception {
+    ConfiguredRuleClassProvider.Builder builder = new ConfiguredRuleClassProvider.Builder();
+    TestRuleClassProvider.addStandardRules(builder);
+    builder.addRuleDefinition(TestAspects.BASE_RULE);
+    builder.addRuleDefinition(LEAF_RULE);
+    useRuleClassProvider(builder.build());
+    useConfiguration("--experimental_dynamic_configs=retroactive");
+    scratch.file(
+        "a/BUILD",
+        "leaf(name = 'plain')",
+        "leaf(name = 'with_tool', tool = ':tool')",
+        "leaf(name = 'tool')",
+        "config_setting(name = 'opt', values = {'compilation_mode': 'opt'})",
+        "config_setting(name = 'with_arg', values = {'test_arg': 'arg'})",
+        "leaf(",
+        "    name = 'select_on_opt',",
+        "    dep = select({':opt': ':plain', '//conditions:default': None}),",
+        ")",
+        "leaf(",
+        "    name = 'select_on_arg',",
+        "    dep = select({':with_arg': ':plain', '//conditions:default': None}),",
+        ")");
+  }
+
+  private ConfiguredTarget getConfiguredTargetAfterTransition(String label) throws Exception {
+    // Must re-enable analysis for Skyframe functions that create configured targets.
+    skyframeExecutor.getSkyframeBuildView().enableAnalysis(true);
+    try {
+      return skyframeExecutor.getConfiguredTargetForTesting(
+          reporter,
+          Label.parseAbsoluteUnchecked(label),
+          getTargetConfiguration(),
+          new AddTestArgTransition());
+    } finally {
+      skyframeExecutor.getSkyframeBuildView().enableAnalysis(false);
+    }
+  }
+
+  @Test
+  public void targetIsReusedUnderOptionsItDoesNotRead() throws Exception {
+    update("//a:plain");
+    ConfiguredTarget plain = getConfiguredTarget("//a:plain");
+
+    ConfiguredTarget plainAfterTransition = getConfiguredTargetAfterTransition("//a:plain");
+
+    assertThat(plainAfterTransition).isSameInstanceAs(plain);
+    assertThat(plainAfterTransition.getConfigurationKey())
+        .isEqualTo(plain.getConfigurationKey());
+  }
+
+  @Test
+  public void targetWithHostDependencyIsNotReused() throws Exception {
+    update("//a:with_tool");
+    ConfiguredTarget withTool = getConfiguredTarget("//a:with_tool");
+
+    ConfiguredTarget withToolAfterTransition = getConfiguredTargetAfterTransition("//a:with_tool");
+
+    // The host configuration is created from the options of the target, so they can't be trimmed.
+    assertThat(withToolAfterTransition).isNotSameInstanceAs(withTool);
+    assertThat(withToolAfterTransition.getConfigurationKey())
+        .isNotEqualTo(withTool.getConfigurationKey());
+  }
+
+  @Test
+  public void targetIsReusedIfSelectDoesNotReadTheChangedOption() throws Exception {
+    update("//a:select_on_opt");
+    ConfiguredTarget selectOnOpt = getConfiguredTarget("//a:select_on_opt");
+
+    ConfiguredTarget selectOnOptAfterTransition =
+        getConfiguredTargetAfterTransition("//a:select_on_opt");
+
+    assertThat(selectOnOptAfterTransition).isSameInstanceAs(selectOnOpt);
+  }
+
+  @Test
+  public void targetIsNotReusedIfSelectReadsTheChangedOption() throws Exception {
+    update("//a:select_on_arg");
+    ConfiguredTarget selectOnArg = getConfiguredTarget("//a:select_on_arg");
+
+    ConfiguredTarget selectOnArgAfterTransition =
+        getConfiguredTargetAfterTransition("//a:select_on_arg");
+
+    // The transition adds the --test_arg that :with_arg matches, so the selected branch changes.
+    assertThat(selectOnArgAfterTransition).isNotSameInstanceAs(selectOnArg);
+    assertThat(selectOnArgAfterTransition.getConfigurationKey())
+        .isNotEqualTo(selectOnArg.getConfigurationKey());
+  }
+}
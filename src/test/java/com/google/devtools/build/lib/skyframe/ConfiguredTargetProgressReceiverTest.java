@@ -43,12 +43,25 @@ public class ConfiguredTargetProgressReceiverTest {
         .isTrue();
   }
 
+  @Test
+  public void testReusedTrimmedTargetsCounted() {
+    // Targets whose analysis was shared through trimming are only mentioned if there are any.
+    ConfiguredTargetProgressReceiver progress = new ConfiguredTargetProgressReceiver();
+    progress.doneConfigureTarget();
+    progress.doneReuseTrimmedTarget();
+    progress.doneReuseTrimmedTarget();
+
+    assertThat(progress.getProgressString())
+        .isEqualTo("1 target configured, 2 reused after trimming");
+  }
+
   @Test
   public void testReset() {
     // After resetting, messages should be as immediately after creation.
     ConfiguredTargetProgressReceiver progress = new ConfiguredTargetProgressReceiver();
     String defaultProgress = progress.getProgressString();
     progress.doneConfigureTarget();
+    progress.doneReuseTrimmedTarget();
     assertThat(progress.getProgressString()).isNotEqualTo(defaultProgress);
     progress.reset();
     assertThat(progress.getProgressString()).isEqualTo(defaultProgress);
@@ -68,6 +68,7 @@ import com.google.devtools.build.skyframe.SkyFunctionName;
 import com.google.devtools.build.skyframe.SkyKey;
 import com.google.devtools.build.skyframe.SkyValue;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -283,6 +284,12 @@ public abstract class GlobFunctionTest {
     assertGlobMatches("*/*/c", /* => */ "a1/b1/c");
   }
 
+  @Test
+  public void testUnreadableSubpackageDirectoryIsNotListed() throws Exception {
+    fs.stubReaddirError(pkgPath.getRelative("a2/b2"), new IOException("unreadable"));
+    assertGlobMatches("**/c", /* => */ "a1/b1/c");
+  }
+
   @Test
   public void testSingleStarPatternWithChildGlob() throws Exception {
     assertGlobMatches(
@@ -787,6 +794,7 @@ public abstract class GlobFunctionTest {
   private static final class CustomInMemoryFs extends InMemoryFileSystem {
 
     private Map<Path, FileStatus> stubbedStats = Maps.newHashMap();
+    private Map<Path, IOException> stubbedReaddirErrors = Maps.newHashMap();
 
     public CustomInMemoryFs(ManualClock manualClock) {
       super(manualClock);
@@ -796,6 +804,10 @@ public abstract class GlobFunctionTest {
       stubbedStats.put(path, stubbedResult);
     }
 
+    public void stubReaddirError(Path path, IOException error) {
+      stubbedReaddirErrors.put(path, error);
+    }
+
     @Override
     public FileStatus statIfFound(Path path, boolean followSymlinks) throws IOException {
       if (stubbedStats.containsKey(path)) {
@@ -803,5 +815,13 @@ public abstract class GlobFunctionTest {
       }
       return super.statIfFound(path, followSymlinks);
     }
+
+    @Override
+    protected Collection<Dirent> readdir(Path path, boolean followSymlinks) throws IOException {
+      if (stubbedReaddirErrors.containsKey(path)) {
+        throw stubbedReaddirErrors.get(path);
+      }
+      return super.readdir(path, followSymlinks);
+    }
   }
 }
@@ -0,0 +1,161 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.skyframe;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devtools.build.lib.analysis.platform.ConstraintSettingInfo;
+import com.google.devtools.build.lib.analysis.platform.ConstraintValueInfo;
+import com.google.devtools.build.lib.analysis.platform.DeclaredToolchainInfo;
+import com.google.devtools.build.lib.analysis.platform.PlatformInfo;
+import com.google.devtools.build.lib.analysis.platform.ToolchainTypeInfo;
+import com.google.devtools.build.lib.cmdline.Label;
+import com.google.devtools.build.lib.skyframe.ToolchainResolutionIndex.IndexedToolchain;
+import com.google.devtools.build.lib.skyframe.ToolchainResolutionIndex.SatisfiedConstraints;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ToolchainResolutionIndex}. */
+@RunWith(JUnit4.class)
+public class ToolchainResolutionIndexTest {
+  private static final ToolchainTypeInfo CC_TYPE =
+      ToolchainTypeInfo.create(Label.parseAbsoluteUnchecked("//toolchain:cc"));
+  private static final ToolchainTypeInfo JAVA_TYPE =
+      ToolchainTypeInfo.create(Label.parseAbsoluteUnchecked("//toolchain:java"));
+
+  private static final ConstraintSettingInfo OS =
+      ConstraintSettingInfo.create(Label.parseAbsoluteUnchecked("//constraint:os"));
+  private static final ConstraintValueInfo LINUX =
+      ConstraintValueInfo.create(OS, Label.parseAbsoluteUnchecked("//constraint:linux"));
+  private static final ConstraintValueInfo MAC =
+      ConstraintValueInfo.create(OS, Label.parseAbsoluteUnchecked("//constraint:mac"));
+  private static final ConstraintSettingInfo CPU =
+      ConstraintSettingInfo.create(
+          Label.parseAbsoluteUnchecked("//constraint:cpu"),
+          Label.parseAbsoluteUnchecked("//constraint:x86"));
+  private static final ConstraintValueInfo X86 =
+      ConstraintValueInfo.create(CPU, Label.parseAbsoluteUnchecked("//constraint:x86"));
+  private static final ConstraintValueInfo ARM =
+      ConstraintValueInfo.create(CPU, Label.parseAbsoluteUnchecked("//constraint:arm"));
+
+  private static DeclaredToolchainInfo toolchain(
+      ToolchainTypeInfo type,
+      String label,
+      ImmutableList<ConstraintValueInfo> execConstraints,
+      ImmutableList<ConstraintValueInfo> targetConstraints)
+      throws Exception {
+    return DeclaredToolchainInfo.builder()
+        .toolchainType(type)
+        .addExecConstraints(execConstraints)
+        .addTargetConstraints(targetConstraints)
+        .toolchainLabel(Label.parseAbsoluteUnchecked(label))
+        .build();
+  }
+
+  private static PlatformInfo platform(String label, ConstraintValueInfo... constraints)
+      throws Exception {
+    return PlatformInfo.builder()
+        .setLabel(Label.parseAbsoluteUnchecked(label))
+        .addConstraints(ImmutableList.copyOf(constraints))
+        .build();
+  }
+
+  @Test
+  public void getToolchains_returnsToolchainsOfTypeInRegistrationOrder() throws Exception {
+    DeclaredToolchainInfo ccLinux =
+        toolchain(CC_TYPE, "//cc:linux", ImmutableList.of(LINUX), ImmutableList.of());
+    DeclaredToolchainInfo java =
+        toolchain(JAVA_TYPE, "//java:all", ImmutableList.of(), ImmutableList.of());
+    DeclaredToolchainInfo ccMac =
+        toolchain(CC_TYPE, "//cc:mac", ImmutableList.of(MAC), ImmutableList.of());
+
+    ToolchainResolutionIndex index =
+        ToolchainResolutionIndex.of(ImmutableList.of(ccLinux, java, ccMac));
+
+    assertThat(
+            index.getToolchains(CC_TYPE.typeLabel()).stream()
+                .map(IndexedToolchain::getToolchain)
+                .collect(toImmutableList()))
+        .containsExactly(ccLinux, ccMac)
+        .inOrder();
+    assertThat(index.getToolchains(Label.parseAbsoluteUnchecked("//toolchain:none"))).isEmpty();
+  }
+
+  @Test
+  public void matches_agreesWithConstraintDiff() throws Exception {
+    ImmutableList<ImmutableList<ConstraintValueInfo>> constraintLists =
+        ImmutableList.of(
+            ImmutableList.of(),
+            ImmutableList.of(LINUX),
+            ImmutableList.of(MAC),
+            ImmutableList.of(X86),
+            ImmutableList.of(ARM),
+            ImmutableList.of(LINUX, ARM));
+    ImmutableList.Builder<DeclaredToolchainInfo> toolchains = ImmutableList.builder();
+    int i = 0;
+    for (ImmutableList<ConstraintValueInfo> execConstraints : constraintLists) {
+      for (ImmutableList<ConstraintValueInfo> targetConstraints : constraintLists) {
+        toolchains.add(toolchain(CC_TYPE, "//cc:" + i++, execConstraints, targetConstraints));
+      }
+    }
+    ImmutableList<PlatformInfo> platforms =
+        ImmutableList.of(
+            platform("//platform:empty"),
+            platform("//platform:linux", LINUX),
+            platform("//platform:linux_arm", LINUX, ARM),
+            platform("//platform:mac_x86", MAC, X86));
+
+    ToolchainResolutionIndex index = ToolchainResolutionIndex.of(toolchains.build());
+
+    for (PlatformInfo platform : platforms) {
+      SatisfiedConstraints satisfied = index.getSatisfiedConstraints(platform);
+      for (IndexedToolchain indexed : index.getToolchains(CC_TYPE.typeLabel())) {
+        DeclaredToolchainInfo toolchain = indexed.getToolchain();
+        assertThat(indexed.matchesExecutionPlatform(satisfied))
+            .isEqualTo(toolchain.execConstraints().diff(platform.constraints()).isEmpty());
+        assertThat(indexed.matchesTargetPlatform(satisfied))
+            .isEqualTo(toolchain.targetConstraints().diff(platform.constraints()).isEmpty());
+      }
+    }
+  }
+
+  @Test
+  public void matches_usesDefaultConstraintValues() throws Exception {
+    DeclaredToolchainInfo x86 =
+        toolchain(CC_TYPE, "//cc:x86", ImmutableList.of(X86), ImmutableList.of());
+    DeclaredToolchainInfo arm =
+        toolchain(CC_TYPE, "//cc:arm", ImmutableList.of(ARM), ImmutableList.of());
+
+    ToolchainResolutionIndex index = ToolchainResolutionIndex.of(ImmutableList.of(x86, arm));
+    SatisfiedConstraints satisfied = index.getSatisfiedConstraints(platform("//platform:linux"));
+
+    ImmutableList<IndexedToolchain> toolchains = index.getToolchains(CC_TYPE.typeLabel());
+    assertThat(toolchains.get(0).matchesExecutionPlatform(satisfied)).isTrue();
+    assertThat(toolchains.get(1).matchesExecutionPlatform(satisfied)).isFalse();
+  }
+
+  @Test
+  public void of_sharesIndexOfEqualToolchains() throws Exception {
+    DeclaredToolchainInfo toolchain =
+        toolchain(CC_TYPE, "//cc:linux", ImmutableList.of(LINUX), ImmutableList.of());
+    DeclaredToolchainInfo equalToolchain =
+        toolchain(CC_TYPE, "//cc:linux", ImmutableList.of(LINUX), ImmutableList.of());
+
+    assertThat(ToolchainResolutionIndex.of(ImmutableList.of(toolchain)))
+        .isSameInstanceAs(ToolchainResolutionIndex.of(ImmutableList.of(equalToolchain)));
+  }
+}
@@ -157,6 +157,51 @@ public final class TrimmedConfigurationCacheTest {
     assertThat(cache.get(TestKey.parse("<A: 1, B: 2> //foo"))).isEmpty();
   }
 
+  @Test
+  public void getTrimmedConfiguration_onFreshCache_returnsEmpty() throws Exception {
+    assertThat(cache.getTrimmedConfiguration(TestKey.parse("<A: 1> //foo"))).isEmpty();
+  }
+
+  @Test
+  public void getTrimmedConfiguration_forCanonicalKey_returnsTrimmedConfiguration()
+      throws Exception {
+    TestKey canonicalKey = TestKey.parse("<A: 1, B: 1> //foo");
+    cache.putIfAbsent(canonicalKey, TestKey.parseConfiguration("A: 1"));
+
+    assertThat(cache.getTrimmedConfiguration(canonicalKey))
+        .hasValue(TestKey.parseConfiguration("A: 1"));
+  }
+
+  @Test
+  public void getTrimmedConfiguration_forNonCanonicalKey_returnsEmpty() throws Exception {
+    cache.putIfAbsent(TestKey.parse("<A: 1, B: 1> //foo"), TestKey.parseConfiguration("A: 1"));
+    TestKey otherKey = TestKey.parse("<A: 1, B: 2> //foo");
+    cache.putIfAbsent(otherKey, TestKey.parseConfiguration("A: 1"));
+
+    assertThat(cache.getTrimmedConfiguration(otherKey)).isEmpty();
+  }
+
+  @Test
+  public void getTrimmedConfiguration_afterInvalidating_returnsEmpty() throws Exception {
+    TestKey canonicalKey = TestKey.parse("<A: 1, B: 1> //foo");
+    cache.putIfAbsent(canonicalKey, TestKey.parseConfiguration("A: 1"));
+    cache.invalidate(canonicalKey);
+
+    assertThat(cache.getTrimmedConfiguration(canonicalKey)).isEmpty();
+  }
+
+  @Test
+  public void getTrimmedConfiguration_afterInvalidatingAndRevalidating_returnsTrimmedConfiguration()
+      throws Exception {
+    TestKey canonicalKey = TestKey.parse("<A: 1, B: 1> //foo");
+    cache.putIfAbsent(canonicalKey, TestKey.parseConfiguration("A: 1"));
+    cache.invalidate(canonicalKey);
+    cache.revalidate(canonicalKey);
+
+    assertThat(cache.getTrimmedConfiguration(canonicalKey))
+        .hasValue(TestKey.parseConfiguration("A: 1"));
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void putIfAbsent_forNonSubsetConfiguration_throwsIllegalArgumentException()
       throws Exception {
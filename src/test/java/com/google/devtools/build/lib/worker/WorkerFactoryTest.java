@@ -14,15 +14,24 @@
 package com.google.devtools.build.lib.worker;
 
 import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.hash.HashCode;
+import com.google.devtools.build.lib.util.OS;
 import com.google.devtools.build.lib.vfs.FileSystem;
 import com.google.devtools.build.lib.vfs.Path;
 import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
+import com.google.devtools.build.lib.vfs.util.FileSystems;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.time.Duration;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
@@ -32,6 +41,8 @@ public class WorkerFactoryTest {
 
   final FileSystem fs = new InMemoryFileSystem();
 
+  @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
   /**
    * Regression test for b/64689608: The execroot of the sandboxed worker process must end with the
    * workspace name, just like the normal execroot does.
@@ -53,4 +64,123 @@ public class WorkerFactoryTest {
 
     assertThat(sandboxedWorkerPath.getBaseName()).isEqualTo("workspace");
   }
+
+  private WorkerPool createWorkerPool() {
+    Path root = FileSystems.getNativeFileSystem().getPath(tempFolder.getRoot().getAbsolutePath());
+    return new WorkerPool(
+        new WorkerFactory(new WorkerOptions(), root), ImmutableMap.of("", 1), ImmutableList.of());
+  }
+
+  private WorkerKey createShellWorkerKey(String script) {
+    return new WorkerKey(
+        ImmutableList.of("/bin/sh", "-c", script),
+        ImmutableMap.of(),
+        FileSystems.getNativeFileSystem().getPath(tempFolder.getRoot().getAbsolutePath()),
+        "TestRunner",
+        HashCode.fromInt(0),
+        ImmutableSortedMap.of(),
+        false);
+  }
+
+  /** Sends a line to the worker and returns the line it answers with. */
+  private static String sendRequest(Worker worker, String request) throws Exception {
+    worker.prepareExecution(ImmutableMap.of(), null, ImmutableSet.of());
+    worker.getOutputStream().write((request + "\n").getBytes(UTF_8));
+    worker.getOutputStream().flush();
+    return new BufferedReader(new InputStreamReader(worker.getInputStream(), UTF_8)).readLine();
+  }
+
+  @Test
+  public void runningWorkerIsReused() throws Exception {
+    if (OS.getCurrent() == OS.WINDOWS) {
+      return;
+    }
+    WorkerPool pool = createWorkerPool();
+    WorkerKey key = createShellWorkerKey("while read line; do echo \"$line\"; done");
+    try {
+      Worker first = pool.borrowObject(key);
+      assertThat(sendRequest(first, "first")).isEqualTo("first");
+      pool.returnObject(key, first);
+
+      Worker second = pool.borrowObject(key);
+      assertThat(second).isSameInstanceAs(first);
+      assertThat(sendRequest(second, "second")).isEqualTo("second");
+      pool.returnObject(key, second);
+    } finally {
+      pool.close();
+    }
+  }
+
+  /**
+   * Runs two tests in a row through a worker that exits after each request, like the test runner
+   * does after a test changed global state of the JVM.
+   */
+  @Test
+  public void exitedWorkerIsReplaced() throws Exception {
+    if (OS.getCurrent() == OS.WINDOWS) {
+      return;
+    }
+    WorkerPool pool = createWorkerPool();
+    WorkerKey key = createShellWorkerKey("read line; echo \"$line\"");
+    try {
+      Worker first = pool.borrowObject(key);
+      assertThat(sendRequest(first, "first")).isEqualTo("first");
+      while (!first.hasExited()) {
+        Thread.sleep(10);
+      }
+      pool.returnObject(key, first);
+
+      Worker second = pool.borrowObject(key);
+      assertThat(second).isNotSameInstanceAs(first);
+      assertThat(sendRequest(second, "second")).isEqualTo("second");
+      pool.returnObject(key, second);
+    } finally {
+      pool.close();
+    }
+  }
+
+  /** A worker that exits on its own after a request is retried, a worker that fails is not. */
+  @Test
+  public void workerExitStatusIsDetected() throws Exception {
+    if (OS.getCurrent() == OS.WINDOWS) {
+      return;
+    }
+    WorkerPool pool = createWorkerPool();
+    WorkerKey cleanKey = createShellWorkerKey("read line; echo \"$line\"");
+    WorkerKey failingKey = createShellWorkerKey("read line; echo \"$line\"; exit 3");
+    try {
+      Worker clean = pool.borrowObject(cleanKey);
+      assertThat(sendRequest(clean, "clean")).isEqualTo("clean");
+      assertThat(clean.exitedCleanly(Duration.ofSeconds(10))).isTrue();
+      pool.invalidateObject(cleanKey, clean);
+
+      Worker failing = pool.borrowObject(failingKey);
+      assertThat(sendRequest(failing, "failing")).isEqualTo("failing");
+      assertThat(failing.exitedCleanly(Duration.ofSeconds(10))).isFalse();
+      assertThat(failing.hasExited()).isTrue();
+      pool.invalidateObject(failingKey, failing);
+    } finally {
+      pool.close();
+    }
+  }
+
+  /** Kills the worker like a request that ran past its timeout. */
+  @Test
+  public void killedWorkerDoesNotExitCleanly() throws Exception {
+    if (OS.getCurrent() == OS.WINDOWS) {
+      return;
+    }
+    WorkerPool pool = createWorkerPool();
+    WorkerKey key = createShellWorkerKey("read line; sleep 60");
+    try {
+      Worker worker = pool.borrowObject(key);
+      worker.prepareExecution(ImmutableMap.of(), null, ImmutableSet.of());
+      worker.kill();
+      assertThat(worker.exitedCleanly(Duration.ofSeconds(10))).isFalse();
+      assertThat(worker.hasExited()).isTrue();
+      pool.invalidateObject(key, worker);
+    } finally {
+      pool.close();
+    }
+  }
 }
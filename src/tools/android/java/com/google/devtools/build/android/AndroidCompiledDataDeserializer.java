@@ -244,6 +244,17 @@ public class AndroidCompiledDataDeserializer implements AndroidDataDeserializer
     this.filteredResources = filteredResources;
   }
 
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof AndroidCompiledDataDeserializer
+        && filteredResources.equals(((AndroidCompiledDataDeserializer) obj).filteredResources);
+  }
+
+  @Override
+  public int hashCode() {
+    return filteredResources.hashCode();
+  }
+
   private void readResourceTable(
       LittleEndianDataInputStream resourceTableStream, KeyValueConsumers consumers)
       throws IOException {
@@ -94,6 +94,17 @@ public class AndroidParsedDataDeserializer implements AndroidDataDeserializer {
     this.filteredResources = filteredResources;
   }
 
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof AndroidParsedDataDeserializer
+        && filteredResources.equals(((AndroidParsedDataDeserializer) obj).filteredResources);
+  }
+
+  @Override
+  public int hashCode() {
+    return filteredResources.hashCode();
+  }
+
   /**
    * Reads the serialized {@link DataKey} and {@link DataValue} to the {@link KeyValueConsumers}.
    *
@@ -102,6 +102,11 @@ public class ParsedAndroidData {
 
     ParsedAndroidData build() throws MergingException {
       checkForErrors();
+      return buildIgnoringErrors();
+    }
+
+    /** Builds the data without failing on parse errors, which {@link #copyTo} drops as well. */
+    ParsedAndroidData buildIgnoringErrors() {
       return ParsedAndroidData.of(
           ImmutableSet.copyOf(conflicts),
           ImmutableMap.copyOf(overwritingResources),
@@ -419,6 +424,27 @@ public class ParsedAndroidData {
 
     @Override
     public Void call() throws Exception {
+      if (!ParsedDependencyDataCache.isEnabled()) {
+        final Builder parsedDataBuilder = deserialize();
+        // The builder isn't threadsafe, so synchronize the copyTo call.
+        synchronized (targetBuilder) {
+          // All the resources are sorted before writing, so they can be aggregated in
+          // whatever order here.
+          parsedDataBuilder.copyTo(targetBuilder);
+        }
+        return null;
+      }
+      // Parse errors of dependencies don't fail the merge, with or without the cache.
+      ParsedAndroidData parsed =
+          ParsedDependencyDataCache.get(
+              deserializer, dependency.getSymbols(), () -> deserialize().buildIgnoringErrors());
+      synchronized (targetBuilder) {
+        parsed.copyTo(targetBuilder);
+      }
+      return null;
+    }
+
+    private Builder deserialize() throws MergingException, IOException {
       final Builder parsedDataBuilder = ParsedAndroidData.Builder.newBuilder();
       try {
         dependency.deserialize(deserializer, parsedDataBuilder.consumers());
@@ -433,13 +459,7 @@ public class ParsedAndroidData {
         // Legacy android resources -- treat them as direct dependencies.
         dependency.walk(ParsedAndroidDataBuildingPathWalker.create(parsedDataBuilder));
       }
-      // The builder isn't threadsafe, so synchronize the copyTo call.
-      synchronized (targetBuilder) {
-        // All the resources are sorted before writing, so they can be aggregated in
-        // whatever order here.
-        parsedDataBuilder.copyTo(targetBuilder);
-      }
-      return null;
+      return parsedDataBuilder;
     }
   }
 
@@ -601,6 +621,21 @@ public class ParsedAndroidData {
     return overwritingResources.entrySet();
   }
 
+  /** Copies the data to the targetBuilder, like {@link Builder#copyTo}. */
+  void copyTo(Builder targetBuilder) {
+    KeyValueConsumers consumers = targetBuilder.consumers();
+    for (Map.Entry<DataKey, DataResource> entry : overwritingResources.entrySet()) {
+      consumers.overwritingConsumer.accept(entry.getKey(), entry.getValue());
+    }
+    for (Map.Entry<DataKey, DataResource> entry : combiningResources.entrySet()) {
+      consumers.combiningConsumer.accept(entry.getKey(), entry.getValue());
+    }
+    for (Map.Entry<DataKey, DataAsset> entry : assets.entrySet()) {
+      consumers.assetConsumer.accept(entry.getKey(), entry.getValue());
+    }
+    targetBuilder.conflicts.addAll(conflicts);
+  }
+
   ParsedAndroidData overwrite(ParsedAndroidData overwritableData, boolean createConflicts) {
     Map<DataKey, DataResource> newEntries = new LinkedHashMap<>();
     Set<MergeConflict> newConflicts =
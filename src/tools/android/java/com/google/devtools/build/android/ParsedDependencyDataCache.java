@@ -0,0 +1,142 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.android;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import com.google.devtools.build.android.resources.PersistentWorkerCache;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * Keeps the data deserialized from the serialized resources of dependencies between the requests
+ * of a persistent worker.
+ *
+ * <p>Merging resources deserializes the output of every transitive resource dependency, even
+ * though a change usually only touches one of them. The cache remembers the contents of each
+ * serialized file, so only the dependencies whose serialized data changed since the last request
+ * are deserialized again, and the merge is computed from the data of the unchanged ones in memory.
+ * There is one entry per file.
+ *
+ * <p>The cache is disabled unless {@link #enable} is called, since single invocations would only
+ * pay for hashing the files.
+ */
+final class ParsedDependencyDataCache {
+
+  private static final PersistentWorkerCache<Key, Entry> cache = new PersistentWorkerCache<>();
+  private static final AtomicLong hits = new AtomicLong();
+  private static final AtomicLong misses = new AtomicLong();
+
+  private ParsedDependencyDataCache() {}
+
+  /** Keeps deserialized dependency data for the remaining lifetime of the JVM. */
+  static void enable() {
+    cache.enable();
+  }
+
+  static boolean isEnabled() {
+    return cache.isEnabled();
+  }
+
+  @VisibleForTesting
+  static void disable() {
+    cache.disable();
+    hits.set(0);
+    misses.set(0);
+  }
+
+  @VisibleForTesting
+  static long hitCount() {
+    return hits.get();
+  }
+
+  @VisibleForTesting
+  static long missCount() {
+    return misses.get();
+  }
+
+  /**
+   * Returns the data deserialized from {@code symbols} by {@code deserializer}, calling {@code
+   * loader} only if the cache is disabled or the file changed since it was last loaded.
+   */
+  static ParsedAndroidData get(
+      AndroidDataDeserializer deserializer,
+      @Nullable Path symbols,
+      Callable<ParsedAndroidData> loader)
+      throws Exception {
+    if (!cache.isEnabled() || symbols == null) {
+      return loader.call();
+    }
+    Key key = new Key(deserializer, symbols);
+    HashCode contents = hash(symbols);
+    Entry entry = cache.getIfPresent(key);
+    if (entry != null && entry.contents.equals(contents)) {
+      hits.incrementAndGet();
+      return entry.data;
+    }
+    misses.incrementAndGet();
+    ParsedAndroidData data = loader.call();
+    cache.put(key, new Entry(contents, data));
+    return data;
+  }
+
+  private static HashCode hash(Path path) throws IOException {
+    return MoreFiles.asByteSource(path).hash(Hashing.murmur3_128());
+  }
+
+  /** The data deserialized from a file, and the hash of the file contents it was read from. */
+  private static final class Entry {
+    private final HashCode contents;
+    private final ParsedAndroidData data;
+
+    Entry(HashCode contents, ParsedAndroidData data) {
+      this.contents = contents;
+      this.data = data;
+    }
+  }
+
+  /**
+   * Identifies deserialized data by the file it was read from and the deserializer, since
+   * deserializers may filter what they read.
+   */
+  private static final class Key {
+    private final AndroidDataDeserializer deserializer;
+    private final Path symbols;
+
+    Key(AndroidDataDeserializer deserializer, Path symbols) {
+      this.deserializer = deserializer;
+      this.symbols = symbols;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return deserializer.equals(other.deserializer) && symbols.equals(other.symbols);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(deserializer, symbols);
+    }
+  }
+}
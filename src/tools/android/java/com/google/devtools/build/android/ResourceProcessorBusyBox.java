@@ -17,6 +17,7 @@ package com.google.devtools.build.android;
 import com.google.devtools.build.android.AndroidResourceMerger.MergingException;
 import com.google.devtools.build.android.aapt2.Aapt2Exception;
 import com.google.devtools.build.android.resources.JavaIdentifierValidator.InvalidJavaIdentifier;
+import com.google.devtools.build.android.resources.ResourceSymbols;
 import com.google.devtools.build.lib.worker.WorkerProtocol.WorkRequest;
 import com.google.devtools.build.lib.worker.WorkerProtocol.WorkResponse;
 import com.google.devtools.common.options.EnumConverter;
@@ -205,6 +206,9 @@ public class ResourceProcessorBusyBox {
   }
 
   private static int runPersistentWorker() throws Exception {
+    // Requests mostly differ in a few dependencies, so keep the data of the others in memory.
+    ParsedDependencyDataCache.enable();
+    ResourceSymbols.enableSymbolCache();
     while (true) {
       try {
         WorkRequest request = WorkRequest.parseDelimitedFrom(System.in);
@@ -23,6 +23,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Objects;
 import java.util.regex.Pattern;
+import javax.annotation.Nullable;
 
 /**
  * Android resource and assets that have been parsed ahead of time, and summarized by an {@link
@@ -105,6 +106,12 @@ public class SerializedAndroidData {
     deserializer.read(symbols, consumers);
   }
 
+  /** Returns the serialized data, or null if the resources weren't serialized. */
+  @Nullable
+  Path getSymbols() {
+    return symbols;
+  }
+
   public String getLabel() {
     return label;
   }
@@ -21,7 +21,8 @@ import javax.annotation.Nullable;
 import org.objectweb.asm.ClassReader;
 
 /**
- * Simple memoizer for whether types are classes or interfaces.
+ * Simple memoizer for whether types are classes or interfaces.  Safe to use from the threads
+ * desugaring classes in parallel.
  */
 class ClassVsInterface {
   /** Map from internal names to whether they are an interface ({@code false} thus means class). */
@@ -32,7 +33,7 @@ class ClassVsInterface {
     this.classpath = classpath;
   }
 
-  public ClassVsInterface addKnownClass(@Nullable String internalName) {
+  public synchronized ClassVsInterface addKnownClass(@Nullable String internalName) {
     if (internalName != null) {
       Boolean previous = known.put(internalName, false);
       checkState(previous == null || !previous, "Already recorded as interface: %s", internalName);
@@ -40,7 +41,7 @@ class ClassVsInterface {
     return this;
   }
 
-  public ClassVsInterface addKnownInterfaces(String... internalNames) {
+  public synchronized ClassVsInterface addKnownInterfaces(String... internalNames) {
     for (String internalName : internalNames) {
       Boolean previous = known.put(internalName, true);
       checkState(previous == null || previous, "Already recorded as class: %s", internalName);
@@ -48,7 +49,7 @@ class ClassVsInterface {
     return this;
   }
 
-  public boolean isOuterInterface(String outerName, String innerName) {
+  public synchronized boolean isOuterInterface(String outerName, String innerName) {
     Boolean result = known.get(outerName);
     if (result == null) {
       // We could just load the outer class here, but this tolerates incomplete classpaths better.
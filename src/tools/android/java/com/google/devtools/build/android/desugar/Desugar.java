@@ -20,11 +20,16 @@ import static com.google.devtools.build.android.desugar.LambdaClassMaker.LAMBDA_
 
 import com.google.auto.value.AutoValue;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Closer;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.devtools.build.android.Converters.ExistingPathConverter;
 import com.google.devtools.build.android.Converters.PathConverter;
 import com.google.devtools.build.android.desugar.io.CoreLibraryRewriter;
@@ -43,6 +48,7 @@ import com.google.devtools.common.options.OptionMetadataTag;
 import com.google.devtools.common.options.OptionsBase;
 import com.google.devtools.common.options.OptionsParser;
 import com.google.devtools.common.options.ShellQuotedParamsFilePreProcessor;
+import java.io.ByteArrayInputStream;
 import java.io.IOError;
 import java.io.IOException;
 import java.io.InputStream;
@@ -54,12 +60,20 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.HashSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 import org.objectweb.asm.ClassReader;
@@ -368,6 +382,17 @@ class Desugar {
         metadataTags = {OptionMetadataTag.HIDDEN},
         help = "Run as a Bazel persistent worker.")
     public boolean persistentWorker;
+
+    @Option(
+        name = "num_threads",
+        defaultValue = "1",
+        documentationCategory = OptionDocumentationCategory.UNDOCUMENTED,
+        effectTags = {OptionEffectTag.EXECUTION},
+        help =
+            "Number of threads to desugar the classes in each input on.  The output is the same "
+                + "regardless of this setting.  Can't be combined with "
+                + "--desugar_supported_core_libs.")
+    public int numThreads;
   }
 
   private static final String RUNTIME_LIB_PACKAGE =
@@ -377,7 +402,7 @@ class Desugar {
   private final CoreLibraryRewriter rewriter;
   private final LambdaClassMaker lambdas;
   private final GeneratedClassStore store = new GeneratedClassStore();
-  private final Set<String> visitedExceptionTypes = new HashSet<>();
+  private final Set<String> visitedExceptionTypes = ConcurrentHashMap.newKeySet();
   /** The counter to record the times of try-with-resources desugaring is invoked. */
   private final AtomicInteger numOfTryWithResourcesInvoked = new AtomicInteger();
   /** The counter to record the times of UnsignedLongs desugaring is invoked. */
@@ -619,72 +644,210 @@ class Desugar {
       ClassVsInterface interfaceCache,
       ImmutableSet.Builder<String> interfaceLambdaMethodCollector)
       throws IOException {
+    if (options.numThreads > 1) {
+      desugarClassesInInputInParallel(
+          inputFiles,
+          outputFileProvider,
+          loader,
+          classpathReader,
+          depsCollector,
+          bootclasspathReader,
+          coreLibrarySupport,
+          interfaceCache,
+          interfaceLambdaMethodCollector);
+      return;
+    }
     for (String inputFilename : inputFiles) {
-      if ("module-info.class".equals(inputFilename)
-          || (inputFilename.endsWith("/module-info.class")
-              && Pattern.matches("META-INF/versions/[0-9]+/module-info.class", inputFilename))) {
-        continue;  // Drop module-info.class since it has no meaning on Android
+      if (isDroppedInput(inputFilename)) {
+        continue;
       }
-      if (OutputFileProvider.DESUGAR_DEPS_FILENAME.equals(inputFilename)) {
-        // TODO(kmb): rule out that this happens or merge input file with what's in depsCollector
-        continue;  // skip as we're writing a new file like this at the end or don't want it
-      }
-      try (InputStream content = inputFiles.getInputStream(inputFilename)) {
-        // We can write classes uncompressed since they need to be converted to .dex format
-        // for Android anyways. Resources are written as they were in the input jar to avoid
-        // any danger of accidentally uncompressed resources ending up in an .apk.  We also simply
-        // copy classes from Desugar's runtime library, which we build so they need no desugaring.
-        // The runtime library typically uses constructs we'd otherwise desugar, so it's easier
-        // to just skip it should it appear as a regular input (for idempotency).
-        if (inputFilename.endsWith(".class") && !inputFilename.startsWith(RUNTIME_LIB_PACKAGE)) {
-          ClassReader reader = rewriter.reader(content);
-          UnprefixingClassWriter writer = rewriter.writer(ClassWriter.COMPUTE_MAXS);
-          ClassVisitor visitor =
-              createClassVisitorsForClassesInInputs(
+      if (isDesugaredInput(inputFilename)) {
+        try (InputStream content = inputFiles.getInputStream(inputFilename)) {
+          DesugaredClass result =
+              desugarClass(
+                  inputFilename,
+                  content,
                   loader,
                   classpathReader,
                   depsCollector,
                   bootclasspathReader,
                   coreLibrarySupport,
                   interfaceCache,
-                  interfaceLambdaMethodCollector,
-                  writer,
-                  reader);
-          if (writer == visitor) {
-            // Just copy the input if there are no rewritings
-            outputFileProvider.write(inputFilename, reader.b);
-          } else {
-            reader.accept(visitor, 0);
-            String filename = writer.getClassName() + ".class";
-            checkState(
-                (options.coreLibrary && coreLibrarySupport != null)
-                    || filename.equals(inputFilename));
-            outputFileProvider.write(filename, writer.toByteArray());
+                  interfaceLambdaMethodCollector);
+          outputFileProvider.write(result.filename, result.content);
+        }
+      } else {
+        outputFileProvider.copyFrom(
+            inputFilename, inputFiles, renameCopiedInput(inputFilename, coreLibrarySupport));
+      }
+    }
+  }
+
+  /**
+   * Like {@link #desugarClassesInInput} but desugars classes on {@link DesugarOptions#numThreads}
+   * threads.  Entries are read and written on the calling thread in input order, and each class's
+   * dependency metadata and interface lambda methods are collected separately and merged in input
+   * order as well, so the result doesn't depend on the order in which the classes are processed.
+   */
+  private void desugarClassesInInputInParallel(
+      InputFileProvider inputFiles,
+      OutputFileProvider outputFileProvider,
+      ClassLoader loader,
+      @Nullable ClassReaderFactory classpathReader,
+      DependencyCollector depsCollector,
+      ClassReaderFactory bootclasspathReader,
+      @Nullable CoreLibrarySupport coreLibrarySupport,
+      ClassVsInterface interfaceCache,
+      ImmutableSet.Builder<String> interfaceLambdaMethodCollector)
+      throws IOException {
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            options.numThreads,
+            new ThreadFactoryBuilder().setNameFormat("desugar-%d").setDaemon(true).build());
+    try {
+      ArrayDeque<Future<PendingOutput>> pending = new ArrayDeque<>();
+      for (String inputFilename : inputFiles) {
+        if (isDroppedInput(inputFilename)) {
+          continue;
+        }
+        if (isDesugaredInput(inputFilename)) {
+          byte[] content;
+          try (InputStream stream = inputFiles.getInputStream(inputFilename)) {
+            content = ByteStreams.toByteArray(stream);
           }
+          pending.add(
+              executor.submit(
+                  () -> {
+                    RecordingDependencyCollector classDeps =
+                        new RecordingDependencyCollector(depsCollector);
+                    ImmutableSet.Builder<String> classLambdaMethods = ImmutableSet.builder();
+                    DesugaredClass result =
+                        desugarClass(
+                            inputFilename,
+                            new ByteArrayInputStream(content),
+                            loader,
+                            classpathReader,
+                            classDeps,
+                            bootclasspathReader,
+                            coreLibrarySupport,
+                            interfaceCache,
+                            classLambdaMethods);
+                    return () -> {
+                      classDeps.replay();
+                      interfaceLambdaMethodCollector.addAll(classLambdaMethods.build());
+                      outputFileProvider.write(result.filename, result.content);
+                    };
+                  }));
         } else {
-          // Most other files (and directories) we want to just copy, but...
-          String outputFilename = inputFilename;
-          if (options.coreLibrary && coreLibrarySupport != null && inputFilename.endsWith("/")) {
-            // rename core library directories together with files in them
-            outputFilename = coreLibrarySupport.renameCoreLibrary(inputFilename);
-          } else if (coreLibrarySupport != null
-              && !inputFilename.endsWith("/")
-              && inputFilename.startsWith("META-INF/services/")) {
-            // rename j.u.ServiceLoader files for renamed core libraries so they're found
-            String serviceName = inputFilename.substring("META-INF/services/".length());
-            if (!serviceName.contains("/")
-                && coreLibrarySupport.isRenamedCoreLibrary(serviceName.replace('.', '/'))) {
-              outputFilename =
-                  "META-INF/services/"
-                      + coreLibrarySupport
-                          .renameCoreLibrary(serviceName.replace('.', '/'))
-                          .replace('/', '.');
-            }
-          }
-          outputFileProvider.copyFrom(inputFilename, inputFiles, outputFilename);
+          String outputFilename = renameCopiedInput(inputFilename, coreLibrarySupport);
+          pending.add(
+              Futures.immediateFuture(
+                  () -> outputFileProvider.copyFrom(inputFilename, inputFiles, outputFilename)));
+        }
+        // Write out whatever is done so we don't hold on to more desugared classes than needed.
+        while (!pending.isEmpty() && pending.peek().isDone()) {
+          getPendingOutput(pending.remove()).write();
         }
       }
+      while (!pending.isEmpty()) {
+        getPendingOutput(pending.remove()).write();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static PendingOutput getPendingOutput(Future<PendingOutput> future) throws IOException {
+    try {
+      return Uninterruptibles.getUninterruptibly(future);
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException("Failed to desugar", e.getCause());
+    }
+  }
+
+  private static boolean isDroppedInput(String inputFilename) {
+    if ("module-info.class".equals(inputFilename)
+        || (inputFilename.endsWith("/module-info.class")
+            && Pattern.matches("META-INF/versions/[0-9]+/module-info.class", inputFilename))) {
+      return true; // Drop module-info.class since it has no meaning on Android
+    }
+    // Skip desugaring metadata as we're writing a new file like this at the end or don't want it
+    // TODO(kmb): rule out that this happens or merge input file with what's in depsCollector
+    return OutputFileProvider.DESUGAR_DEPS_FILENAME.equals(inputFilename);
+  }
+
+  /**
+   * Returns whether the given input is a class to desugar. We can write classes uncompressed since
+   * they need to be converted to .dex format for Android anyways. Resources are written as they
+   * were in the input jar to avoid any danger of accidentally uncompressed resources ending up in
+   * an .apk.  We also simply copy classes from Desugar's runtime library, which we build so they
+   * need no desugaring. The runtime library typically uses constructs we'd otherwise desugar, so
+   * it's easier to just skip it should it appear as a regular input (for idempotency).
+   */
+  private static boolean isDesugaredInput(String inputFilename) {
+    return inputFilename.endsWith(".class") && !inputFilename.startsWith(RUNTIME_LIB_PACKAGE);
+  }
+
+  private DesugaredClass desugarClass(
+      String inputFilename,
+      InputStream content,
+      ClassLoader loader,
+      @Nullable ClassReaderFactory classpathReader,
+      DependencyCollector depsCollector,
+      ClassReaderFactory bootclasspathReader,
+      @Nullable CoreLibrarySupport coreLibrarySupport,
+      ClassVsInterface interfaceCache,
+      ImmutableSet.Builder<String> interfaceLambdaMethodCollector)
+      throws IOException {
+    ClassReader reader = rewriter.reader(content);
+    UnprefixingClassWriter writer = rewriter.writer(ClassWriter.COMPUTE_MAXS);
+    ClassVisitor visitor =
+        createClassVisitorsForClassesInInputs(
+            loader,
+            classpathReader,
+            depsCollector,
+            bootclasspathReader,
+            coreLibrarySupport,
+            interfaceCache,
+            interfaceLambdaMethodCollector,
+            writer,
+            reader);
+    if (writer == visitor) {
+      // Just copy the input if there are no rewritings
+      return new DesugaredClass(inputFilename, reader.b);
+    }
+    reader.accept(visitor, 0);
+    String filename = writer.getClassName() + ".class";
+    checkState(
+        (options.coreLibrary && coreLibrarySupport != null) || filename.equals(inputFilename));
+    return new DesugaredClass(filename, writer.toByteArray());
+  }
+
+  /** Returns the name to copy the given input that isn't desugared to. */
+  private String renameCopiedInput(
+      String inputFilename, @Nullable CoreLibrarySupport coreLibrarySupport) {
+    // Most other files (and directories) we want to just copy, but...
+    String outputFilename = inputFilename;
+    if (options.coreLibrary && coreLibrarySupport != null && inputFilename.endsWith("/")) {
+      // rename core library directories together with files in them
+      outputFilename = coreLibrarySupport.renameCoreLibrary(inputFilename);
+    } else if (coreLibrarySupport != null
+        && !inputFilename.endsWith("/")
+        && inputFilename.startsWith("META-INF/services/")) {
+      // rename j.u.ServiceLoader files for renamed core libraries so they're found
+      String serviceName = inputFilename.substring("META-INF/services/".length());
+      if (!serviceName.contains("/")
+          && coreLibrarySupport.isRenamedCoreLibrary(serviceName.replace('.', '/'))) {
+        outputFilename =
+            "META-INF/services/"
+                + coreLibrarySupport
+                    .renameCoreLibrary(serviceName.replace('.', '/'))
+                    .replace('/', '.');
+      }
     }
+    return outputFilename;
   }
 
   /**
@@ -707,7 +870,14 @@ class Desugar {
         "Desugaring with default methods enabled moved interface lambdas");
 
     // Write out the lambda classes we generated along the way
-    ImmutableMap<Path, LambdaInfo> lambdaClasses = lambdas.drain();
+    // Sort lambda classes, which are generated in the order their users happen to be desugared in
+    // when using more than one thread, so that the output doesn't depend on --num_threads.
+    ImmutableMap<Path, LambdaInfo> lambdaClasses =
+        lambdas.drain().entrySet().stream()
+            .sorted(
+                Comparator.comparing(
+                    (Map.Entry<Path, LambdaInfo> entry) -> entry.getValue().desiredInternalName()))
+            .collect(ImmutableMap.toImmutableMap(Map.Entry::getKey, Map.Entry::getValue));
     checkState(
         !options.onlyDesugarJavac9ForLint || lambdaClasses.isEmpty(),
         "There should be no lambda classes generated: %s",
@@ -759,7 +929,9 @@ class Desugar {
     if (coreLibrarySupport != null) {
       coreLibrarySupport.makeDispatchHelpers(store);
     }
-    ImmutableMap<String, ClassNode> generatedClasses = store.drain();
+    // Companion classes are generated in the order interfaces happen to be desugared in when using
+    // more than one thread, so sort them as well.
+    ImmutableMap<String, ClassNode> generatedClasses = ImmutableSortedMap.copyOf(store.drain());
     checkState(
         generatedClasses.isEmpty() || (allowDefaultMethods && outputJava7),
         "Didn't expect generated classes but got %s",
@@ -1060,6 +1232,10 @@ class Desugar {
             || !options.rewriteCoreLibraryPrefixes.isEmpty()
             || !options.emulateCoreLibraryInterfaces.isEmpty(),
         "--desugar_supported_core_libs requires specifying renamed and/or emulated core libraries");
+    checkArgument(options.numThreads >= 1, "--num_threads must be positive");
+    checkArgument(
+        options.numThreads == 1 || !options.desugarCoreLibs,
+        "--num_threads can't be combined with --desugar_supported_core_libs");
 
     if (options.verbose) {
       System.out.printf("Lambda classes will be written under %s%n", dumpDirectory);
@@ -1206,4 +1382,69 @@ class Desugar {
 
     abstract Path getOutput();
   }
+
+  /** A desugared class and the name to write it to. */
+  private static final class DesugaredClass {
+    final String filename;
+    final byte[] content;
+
+    DesugaredClass(String filename, byte[] content) {
+      this.filename = filename;
+      this.content = content;
+    }
+  }
+
+  /** Output for an input entry that's written on the thread reading the input, in input order. */
+  private interface PendingOutput {
+    void write() throws IOException;
+  }
+
+  /**
+   * Collector that remembers the dependencies of a single class so they can be added to the
+   * input's collector in input order when desugaring classes in parallel.
+   */
+  private static final class RecordingDependencyCollector implements DependencyCollector {
+    private final DependencyCollector delegate;
+    private final List<Consumer<DependencyCollector>> calls = new ArrayList<>();
+
+    RecordingDependencyCollector(DependencyCollector delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void assumeCompanionClass(String origin, String target) {
+      calls.add(collector -> collector.assumeCompanionClass(origin, target));
+    }
+
+    @Override
+    public void missingImplementedInterface(String origin, String target) {
+      calls.add(collector -> collector.missingImplementedInterface(origin, target));
+    }
+
+    @Override
+    public void recordExtendedInterfaces(String origin, String... targets) {
+      calls.add(collector -> collector.recordExtendedInterfaces(origin, targets));
+    }
+
+    @Override
+    public void recordDefaultMethods(String origin, int count) {
+      calls.add(collector -> collector.recordDefaultMethods(origin, count));
+    }
+
+    /**
+     * Returns the metadata of the input's collector, which only includes the dependencies recorded
+     * here once they were {@linkplain #replay replayed}.
+     */
+    @Override
+    @Nullable
+    public byte[] toByteArray() {
+      return delegate.toByteArray();
+    }
+
+    /** Adds the recorded dependencies to the input's collector in the order they were recorded. */
+    void replay() {
+      calls.forEach(call -> call.accept(delegate));
+      calls.clear();
+    }
+  }
 }
@@ -22,7 +22,8 @@ import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.tree.ClassNode;
 
 /**
- * Simple wrapper around a map that holds generated classes so they can be processed later.
+ * Simple wrapper around a map that holds generated classes so they can be processed later.  Safe
+ * to use from the threads desugaring classes in parallel.
  */
 class GeneratedClassStore {
 
@@ -34,14 +35,14 @@ class GeneratedClassStore {
    * ClassVisitor#visit} the returned object to initialize the desired class, and to avoid
    * confusion, this method throws if the class had already been present.
    */
-  public ClassVisitor add(String internalClassName) {
+  public synchronized ClassVisitor add(String internalClassName) {
     ClassNode result = new ClassNode();
     checkState(
         classes.put(internalClassName, result) == null, "Already present: %s", internalClassName);
     return result;
   }
 
-  public ImmutableMap<String, ClassNode> drain() {
+  public synchronized ImmutableMap<String, ClassNode> drain() {
     ImmutableMap<String, ClassNode> result = ImmutableMap.copyOf(classes);
     classes.clear();
     return result;
@@ -43,7 +43,7 @@ class LambdaClassMaker {
     this.rootDirectory = rootDirectory;
   }
 
-  public void generateLambdaClass(String invokerInternalName, LambdaInfo lambdaInfo,
+  public synchronized void generateLambdaClass(String invokerInternalName, LambdaInfo lambdaInfo,
       MethodHandle bootstrapMethod, ArrayList<Object> bsmArgs) throws IOException {
     // Invoking the bootstrap method will dump the generated class.  Ignore any pre-existing
     // matching files, which can come from desugar's implementation using classes being desugared.
@@ -64,7 +64,7 @@ class LambdaClassMaker {
    * Returns absolute paths to .class files generated since the last call to this method together
    * with a string descriptor of the factory method.
    */
-  public ImmutableMap<Path, LambdaInfo> drain() {
+  public synchronized ImmutableMap<Path, LambdaInfo> drain() {
     ImmutableMap<Path, LambdaInfo> result = ImmutableMap.copyOf(generatedClasses);
     generatedClasses.clear();
     return result;
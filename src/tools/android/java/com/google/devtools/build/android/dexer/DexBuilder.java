@@ -43,7 +43,9 @@ import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -106,6 +108,29 @@ class DexBuilder {
       help = "Run as a Bazel persistent worker."
     )
     public boolean persistentWorker;
+
+    @Option(
+      name = "dex_cache_dir",
+      defaultValue = "null",
+      category = "misc",
+      documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+      effectTags = {OptionEffectTag.UNKNOWN},
+      converter = PathConverter.class,
+      help = "Directory to cache dexed classes in.  The cache survives restarts of persistent "
+          + "workers and is shared by all processes using the same directory."
+    )
+    public Path dexCacheDir;
+
+    @Option(
+      name = "dex_cache_max_size_mb",
+      defaultValue = "1024",
+      category = "misc",
+      documentationCategory = OptionDocumentationCategory.UNCATEGORIZED,
+      effectTags = {OptionEffectTag.UNKNOWN},
+      help = "Size in megabytes above which least recently used classes are evicted from "
+          + "--dex_cache_dir."
+    )
+    public int dexCacheMaxSizeMb;
   }
 
   public static void main(String[] args) throws Exception {
@@ -133,7 +158,8 @@ class DexBuilder {
       int threads = Math.min(options.maxThreads, in.size() / 1000 + 1);
       ExecutorService executor = newFixedThreadPool(threads);
       try (ZipOutputStream out = createZipOutputStream(options.outputZip)) {
-        produceDexArchive(in, out, executor, threads <= 1, dexing, null);
+        produceDexArchive(
+            in, out, executor, threads <= 1, dexing, null, createDiskCache(options, null));
       } finally {
         executor.shutdown();
       }
@@ -156,6 +182,8 @@ class DexBuilder {
           }
         })
         .build();
+    // Disk caches by directory, so requests using the same --dex_cache_dir share one instance
+    Map<Path, DexDiskCache> diskCaches = new HashMap<>();
     try {
       while (true) {
         WorkRequest request = WorkRequest.parseDelimitedFrom(System.in);
@@ -170,7 +198,7 @@ class DexBuilder {
         // Make sure that we exit nonzero in case uncaught errors occur during processRequest.
         int exitCode = 1;
         try {
-          processRequest(executor, dexCache, context, request.getArgumentsList());
+          processRequest(executor, dexCache, diskCaches, context, request.getArgumentsList());
           exitCode = 0; // success!
         } catch (Exception e) {
           // Deliberate catch-all so we can capture a stack trace.
@@ -205,6 +233,7 @@ class DexBuilder {
   private static void processRequest(
       ExecutorService executor,
       Cache<DexingKey, byte[]> dexCache,
+      Map<Path, DexDiskCache> diskCaches,
       DxContext context,
       List<String> args)
       throws OptionsParsingException, IOException, InterruptedException, ExecutionException {
@@ -223,8 +252,31 @@ class DexBuilder {
           executor,
           /*convertOnReaderThread*/ false,
           new Dexing(context, optionsParser.getOptions(DexingOptions.class)),
-          dexCache);
+          dexCache,
+          createDiskCache(options, diskCaches));
+    }
+  }
+
+  /**
+   * Returns the disk cache requested by {@link Options#dexCacheDir}, if any, reusing the ones in
+   * the given map if possible.
+   */
+  @Nullable
+  private static DexDiskCache createDiskCache(
+      Options options, @Nullable Map<Path, DexDiskCache> diskCaches) throws IOException {
+    if (options.dexCacheDir == null) {
+      return null;
+    }
+    checkArgument(options.dexCacheMaxSizeMb > 0,
+        "--dex_cache_max_size_mb must be strictly positive, was: %s", options.dexCacheMaxSizeMb);
+    DexDiskCache result = diskCaches != null ? diskCaches.get(options.dexCacheDir) : null;
+    if (result == null) {
+      result = new DexDiskCache(options.dexCacheDir, options.dexCacheMaxSizeMb * ONE_MEG);
+      if (diskCaches != null) {
+        diskCaches.put(options.dexCacheDir, result);
+      }
     }
+    return result;
   }
 
   private static ZipOutputStream createZipOutputStream(Path path) throws IOException {
@@ -237,7 +289,8 @@ class DexBuilder {
       ExecutorService executor,
       boolean convertOnReaderThread,
       Dexing dexing,
-      @Nullable Cache<DexingKey, byte[]> dexCache)
+      @Nullable Cache<DexingKey, byte[]> dexCache,
+      @Nullable DexDiskCache diskCache)
       throws InterruptedException, ExecutionException, IOException {
     // If we only have one thread in executor, we give a "direct" executor to the stuffer, which
     // will convert .class files to .dex inline on the same thread that reads the input jar.
@@ -246,7 +299,8 @@ class DexBuilder {
     DexConversionEnqueuer enqueuer = new DexConversionEnqueuer(in,
         convertOnReaderThread ? MoreExecutors.newDirectExecutorService() : executor,
         new DexConverter(dexing),
-        dexCache);
+        dexCache,
+        diskCache);
     Future<?> enqueuerTask = executor.submit(enqueuer);
     while (true) {
       // Wait for next future in the queue *and* for that future to finish.  To guarantee
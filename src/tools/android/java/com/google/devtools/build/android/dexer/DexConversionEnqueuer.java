@@ -51,6 +51,7 @@ class DexConversionEnqueuer implements Callable<Void> {
   private final DexConverter dexer;
   private final ExecutorService executor;
   @Nullable private final Cache<DexingKey, byte[]> dexCache;
+  @Nullable private final DexDiskCache diskCache;
 
   /** Converted content of the input file.  See {@link #getFiles()} for more details. */
   // Rate-limit to 30000 files in flight at once, which is about what we've tested.  Theoretically,
@@ -60,11 +61,12 @@ class DexConversionEnqueuer implements Callable<Void> {
   private final BlockingQueue<Future<ZipEntryContent>> files = new ArrayBlockingQueue<>(30000);
 
   public DexConversionEnqueuer(ZipFile in, ExecutorService executor, DexConverter dexer,
-      @Nullable Cache<DexingKey, byte[]> dexCache) {
+      @Nullable Cache<DexingKey, byte[]> dexCache, @Nullable DexDiskCache diskCache) {
     this.in = in;
     this.executor = executor;
     this.dexer = dexer;
     this.dexCache = dexCache;
+    this.diskCache = diskCache;
   }
 
   @Override
@@ -110,7 +112,7 @@ class DexConversionEnqueuer implements Callable<Void> {
     byte[] cached = dexCache != null ? dexCache.getIfPresent(dexer.getDexingKey(content)) : null;
     return cached != null
         ? immediateFuture(storedDexEntry(entry, cached))
-        : executor.submit(new ClassToDex(entry, content, dexer, dexCache));
+        : executor.submit(new ClassToDex(entry, content, dexer, dexCache, diskCache));
   }
 
   /**
@@ -151,7 +153,8 @@ class DexConversionEnqueuer implements Callable<Void> {
 
   /**
    * Worker to convert a {@code byte[]} representing a .class file into a {@code byte[]}
-   * representing a .dex file.
+   * representing a .dex file.  Consults the disk cache, if any, on the worker thread, so the
+   * reader thread doesn't block on it.
    */
   private static class ClassToDex implements Callable<ZipEntryContent> {
 
@@ -159,20 +162,29 @@ class DexConversionEnqueuer implements Callable<Void> {
     private final byte[] content;
     private final DexConverter dexer;
     @Nullable private final Cache<DexingKey, byte[]> dexCache;
+    @Nullable private final DexDiskCache diskCache;
 
     public ClassToDex(ZipEntry entry, byte[] content, DexConverter dexer,
-        @Nullable Cache<DexingKey, byte[]> dexCache) {
+        @Nullable Cache<DexingKey, byte[]> dexCache, @Nullable DexDiskCache diskCache) {
       this.entry = entry;
       this.content = content;
       this.dexer = dexer;
       this.dexCache = dexCache;
+      this.diskCache = diskCache;
     }
 
     @Override
     public ZipEntryContent call() throws Exception {
-      byte[] dexed = DexFiles.encode(dexer.toDexFile(content, entry.getName()));
+      DexingKey key = dexCache != null || diskCache != null ? dexer.getDexingKey(content) : null;
+      byte[] dexed = diskCache != null ? diskCache.get(key) : null;
+      if (dexed == null) {
+        dexed = DexFiles.encode(dexer.toDexFile(content, entry.getName()));
+        if (diskCache != null) {
+          diskCache.put(key, dexed);
+        }
+      }
       if (dexCache != null) {
-        dexCache.put(dexer.getDexingKey(content), dexed);
+        dexCache.put(key, dexed);
       }
       // Use .class.dex suffix expected by SplitZip
       return storedDexEntry(entry, dexed);
@@ -0,0 +1,235 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.android.dexer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.android.dx.Version;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.devtools.build.android.dexer.Dexing.DexingKey;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+
+/**
+ * Content-addressed cache of dexed classes on disk, keyed by a digest of the {@link DexingKey}.
+ * Unlike the in-memory cache of a persistent worker, entries survive worker restarts and can be
+ * shared by all DexBuilder processes pointed at the same directory.
+ *
+ * <p>Entries are written to a temporary file and then renamed into place, so concurrent readers,
+ * including other processes, only ever see complete entries.  Reading an entry bumps its
+ * modification time, and once the cache grows beyond its maximum size the least recently used
+ * entries are deleted until it's back down to {@link #TRIM_RATIO} of the maximum.  Since other
+ * processes may add and delete entries at the same time, the size is only approximate, and any
+ * I/O errors are treated as cache misses: caching is best-effort and never fails a build.
+ *
+ * <p>Finding the size of the cache means listing all of its entries, which would slow down every
+ * short-lived DexBuilder process.  So the cache is only listed when the first entry is added, and
+ * only if no process listed it in the last {@link #SCAN_INTERVAL_MILLIS}.  Until then, the cache
+ * may grow beyond its maximum size by what's added in the meantime.
+ *
+ * <p>Keys include the dx version and {@link #FORMAT_VERSION}, so a cache directory can outlive the
+ * dexer that populated it without returning stale dex files.
+ */
+class DexDiskCache {
+
+  /** Fraction of the maximum size to shrink the cache to when evicting entries. */
+  @VisibleForTesting static final double TRIM_RATIO = 0.9;
+
+  /**
+   * Temporary files younger than this are assumed to be written right now and aren't evicted.
+   * Older ones were most likely left behind by a process that died, and are evicted like entries.
+   */
+  @VisibleForTesting static final long TEMP_FILE_MIN_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  /** Change this whenever the dex files produced for a given {@link DexingKey} change. */
+  private static final int FORMAT_VERSION = 1;
+
+  /** How often to list the entries of a cache that this process didn't list yet. */
+  @VisibleForTesting static final long SCAN_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+  /** File whose modification time is the last time any process listed the cache. */
+  @VisibleForTesting static final String SCAN_STAMP = "last_scan";
+
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+  private static final long UNKNOWN_SIZE = -1;
+
+  private final Path root;
+  private final long maxSizeBytes;
+  /** The size of the cache, or {@link #UNKNOWN_SIZE} until this process lists its entries. */
+  private final AtomicLong approximateSizeBytes = new AtomicLong(UNKNOWN_SIZE);
+
+  DexDiskCache(Path root, long maxSizeBytes) throws IOException {
+    checkArgument(maxSizeBytes > 0, "Maximum cache size must be positive: %s", maxSizeBytes);
+    this.root = Files.createDirectories(root);
+    this.maxSizeBytes = maxSizeBytes;
+  }
+
+  /** Returns the cached dex file for the given key or {@code null} if there isn't one. */
+  @Nullable
+  public byte[] get(DexingKey key) {
+    Path file = pathFor(key);
+    try {
+      byte[] result = Files.readAllBytes(file);
+      // Remember that this entry was used recently so it's evicted last
+      Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+      return result;
+    } catch (IOException e) {
+      return null; // most likely a miss, or the entry was just evicted by another process
+    }
+  }
+
+  /** Caches the given dex file for the given key, evicting old entries as needed. */
+  public void put(DexingKey key, byte[] dexed) {
+    Path file = pathFor(key);
+    try {
+      Files.createDirectories(file.getParent());
+      Path tmp =
+          Files.createTempFile(file.getParent(), file.getFileName().toString(), TEMP_FILE_SUFFIX);
+      try {
+        Files.write(tmp, dexed);
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+    } catch (IOException e) {
+      return; // caching is best-effort
+    }
+    long size =
+        approximateSizeBytes.updateAndGet(
+            current -> current == UNKNOWN_SIZE ? UNKNOWN_SIZE : current + dexed.length);
+    if (size == UNKNOWN_SIZE ? isScanDue() : size > maxSizeBytes) {
+      evict();
+    }
+  }
+
+  /** Returns whether no process listed the entries of the cache recently. */
+  private boolean isScanDue() {
+    try {
+      return Files.getLastModifiedTime(root.resolve(SCAN_STAMP)).toMillis()
+          < System.currentTimeMillis() - SCAN_INTERVAL_MILLIS;
+    } catch (IOException e) {
+      return true; // most likely never listed
+    }
+  }
+
+  /**
+   * Lists the entries of the cache and deletes the least recently used ones until it's small enough
+   * again.
+   */
+  private synchronized void evict() {
+    long currentSize = approximateSizeBytes.get();
+    if (currentSize != UNKNOWN_SIZE && currentSize <= maxSizeBytes) {
+      return; // another thread already evicted
+    }
+    try {
+      List<Entry> entries = listEntries();
+      long size = totalSize(entries);
+      long targetSize = (long) (maxSizeBytes * TRIM_RATIO);
+      long minTempFileModified = System.currentTimeMillis() - TEMP_FILE_MIN_AGE_MILLIS;
+      entries.sort(Comparator.comparing(entry -> entry.lastModified));
+      for (Entry entry : entries) {
+        if (size <= targetSize) {
+          break;
+        }
+        if (entry.path.getFileName().toString().endsWith(TEMP_FILE_SUFFIX)
+            && entry.lastModified.toMillis() > minTempFileModified) {
+          continue; // probably still being written by another thread or process
+        }
+        try {
+          Files.deleteIfExists(entry.path);
+        } catch (IOException e) {
+          continue; // probably in use on a platform that doesn't allow deleting it, skip
+        }
+        size -= entry.size;
+      }
+      approximateSizeBytes.set(size);
+      Files.write(root.resolve(SCAN_STAMP), new byte[0]);
+    } catch (IOException e) {
+      // Try again with the next entry added
+    }
+  }
+
+  @VisibleForTesting
+  Path pathFor(DexingKey key) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putInt(FORMAT_VERSION);
+    hasher.putUnencodedChars(Version.VERSION);
+    hasher.putBoolean(key.localInfo());
+    hasher.putBoolean(key.optimize());
+    hasher.putInt(key.positionInfo());
+    hasher.putBytes(key.classfileContent());
+    String digest = hasher.hash().toString();
+    // Fan out into subdirectories to keep directories reasonably small
+    return root.resolve(digest.substring(0, 2)).resolve(digest.substring(2));
+  }
+
+  private List<Entry> listEntries() throws IOException {
+    List<Entry> result = new ArrayList<>();
+    // Entries are in subdirectories, next to the scan stamp.
+    try (Stream<Path> files =
+        Files.find(
+            root,
+            2,
+            (path, attributes) -> attributes.isRegularFile() && !path.getParent().equals(root))) {
+      files.forEach(
+          path -> {
+            try {
+              BasicFileAttributes attributes =
+                  Files.readAttributes(path, BasicFileAttributes.class);
+              result.add(new Entry(path, attributes.size(), attributes.lastModifiedTime()));
+            } catch (IOException e) {
+              // Deleted concurrently, ignore
+            }
+          });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    return result;
+  }
+
+  private static long totalSize(List<Entry> entries) {
+    long result = 0;
+    for (Entry entry : entries) {
+      result += entry.size;
+    }
+    return result;
+  }
+
+  private static class Entry {
+    final Path path;
+    final long size;
+    final FileTime lastModified;
+
+    Entry(Path path, long size, FileTime lastModified) {
+      this.path = path;
+      this.size = size;
+      this.lastModified = lastModified;
+    }
+  }
+}
@@ -0,0 +1,71 @@
+// Copyright 2019 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.android.resources;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
+
+/**
+ * Keeps values between the requests of a persistent worker, for the remaining lifetime of the JVM.
+ *
+ * <p>The cache is disabled unless {@link #enable} is called, since single invocations don't reuse
+ * anything. Values are softly referenced, so the cache shrinks instead of running the worker out of
+ * memory.
+ */
+public final class PersistentWorkerCache<K, V> {
+
+  @Nullable private volatile Cache<K, V> cache;
+
+  public synchronized void enable() {
+    if (cache == null) {
+      cache = CacheBuilder.newBuilder().softValues().build();
+    }
+  }
+
+  /** Drops the cached values and stops caching. */
+  public synchronized void disable() {
+    cache = null;
+  }
+
+  public boolean isEnabled() {
+    return cache != null;
+  }
+
+  /** Returns the cached value, or null if there is none or the cache is disabled. */
+  @Nullable
+  public V getIfPresent(K key) {
+    Cache<K, V> current = cache;
+    return current == null ? null : current.getIfPresent(key);
+  }
+
+  /** Caches the value, unless the cache is disabled. */
+  public void put(K key, V value) {
+    Cache<K, V> current = cache;
+    if (current != null) {
+      current.put(key, value);
+    }
+  }
+
+  /** Returns the cached value, calling {@code loader} if there is none or the cache is disabled. */
+  public V get(K key, Callable<? extends V> loader) throws Exception {
+    V value = getIfPresent(key);
+    if (value == null) {
+      value = loader.call();
+      put(key, value);
+    }
+    return value;
+  }
+}
@@ -16,10 +16,17 @@ package com.google.devtools.build.android.resources;
 import com.android.builder.core.VariantConfiguration;
 import com.android.builder.dependency.SymbolFileProvider;
 import com.android.resources.ResourceType;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -42,6 +49,9 @@ import javax.annotation.Nullable;
 public class ResourceSymbols {
   private static final Logger logger = Logger.getLogger(ResourceSymbols.class.getCanonicalName());
 
+  private static final PersistentWorkerCache<HashCode, ResourceSymbols> loadedSymbols =
+      new PersistentWorkerCache<>();
+
   /** Task to load and parse R.txt symbols */
   private static final class SymbolLoadingTask implements Callable<ResourceSymbols> {
 
@@ -53,7 +63,19 @@ public class ResourceSymbols {
 
     @Override
     public ResourceSymbols call() throws Exception {
-      List<String> lines = Files.readAllLines(rTxtSymbols, StandardCharsets.UTF_8);
+      byte[] contents = Files.readAllBytes(rTxtSymbols);
+      if (!loadedSymbols.isEnabled()) {
+        return parse(contents);
+      }
+      // Libraries are commonly depended on by many targets, so the same symbols are loaded
+      // for many requests of a worker.
+      return loadedSymbols.get(
+          Hashing.murmur3_128().hashBytes(contents), () -> parse(contents));
+    }
+
+    private ResourceSymbols parse(byte[] contents) throws IOException {
+      List<String> lines =
+          ByteSource.wrap(contents).asCharSource(StandardCharsets.UTF_8).readLines();
 
       Map<ResourceType, Map<String, FieldInitializer>> initializers =
           new EnumMap<>(ResourceType.class);
@@ -144,6 +166,22 @@ public class ResourceSymbols {
     return packageToTable;
   }
 
+  /**
+   * Keeps the symbols loaded from R.txt files in memory, keyed by the digest of the file contents,
+   * for the remaining lifetime of the JVM.
+   *
+   * <p>Meant for persistent workers, whose requests load the symbols of mostly the same libraries.
+   */
+  public static void enableSymbolCache() {
+    loadedSymbols.enable();
+  }
+
+  /** Drops the symbols kept by {@link #enableSymbolCache}, and stops caching symbols. */
+  @VisibleForTesting
+  static void disableSymbolCache() {
+    loadedSymbols.disable();
+  }
+
   public static ResourceSymbols from(FieldInitializers fieldInitializers) {
     return new ResourceSymbols(fieldInitializers);
   }
@@ -197,14 +235,50 @@ public class ResourceSymbols {
       Path classesOut,
       boolean finalFields)
       throws IOException {
+    writeClassesTo(
+        libMap, appPackageName, classesOut, finalFields, MoreExecutors.newDirectExecutorService());
+  }
+
+  /**
+   * Writes the R classes of every package in {@code libMap}, and of the app package if there is
+   * one. The classes of the different packages are written concurrently by {@code executor}.
+   */
+  public void writeClassesTo(
+      Multimap<String, ResourceSymbols> libMap,
+      String appPackageName,
+      Path classesOut,
+      boolean finalFields,
+      ListeningExecutorService executor)
+      throws IOException {
     RClassGenerator classWriter = RClassGenerator.with(classesOut, values, finalFields);
+    List<ListenableFuture<Void>> writing = new ArrayList<>();
     for (String packageName : libMap.keySet()) {
-      classWriter.write(packageName, ResourceSymbols.merge(libMap.get(packageName)).values);
+      Collection<ResourceSymbols> packageSymbols = libMap.get(packageName);
+      writing.add(
+          executor.submit(
+              () -> {
+                classWriter.write(packageName, ResourceSymbols.merge(packageSymbols).values);
+                return null;
+              }));
     }
     if (appPackageName != null) {
       // Unlike the R.java generation, we also write the app's R.class file so that the class
       // jar file can be complete (aapt doesn't generate it for us).
-      classWriter.write(appPackageName);
+      writing.add(
+          executor.submit(
+              () -> {
+                classWriter.write(appPackageName);
+                return null;
+              }));
+    }
+    try {
+      Futures.allAsList(writing).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while writing R classes", e);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), IOException.class);
+      throw new IOException("Failed to write R classes", e.getCause());
     }
   }
 }
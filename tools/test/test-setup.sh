@@ -14,9 +14,6 @@
 # See the License for the specific language governing permissions and
 # limitations under the License.
 
-# shift stderr to stdout.
-exec 2>&1
-
 no_echo=
 if [[ "$1" = "--no_echo" ]]; then
   # Don't print anything to stdout in this special case.
@@ -24,6 +21,8 @@ if [[ "$1" = "--no_echo" ]]; then
   no_echo="true"
   shift
 else
+  # shift stderr to stdout.
+  exec 2>&1
   echo 'exec ${PAGER:-/usr/bin/less} "$0" || exit 1'
   echo "Executing tests from ${TEST_TARGET}"
 fi
@@ -260,6 +259,13 @@ if [ ! -z "$TEST_SHORT_EXEC_PATH" ]; then
   TEST_PATH="${BASE}.exe"
 fi
 
+if [[ -n "$no_echo" ]]; then
+  # The persistent test runner serves all runs of the test and takes the place
+  # of this script; its stdout carries the work responses. Bazel times out and
+  # post-processes each run itself.
+  exec "${TEST_PATH}" "$@"
+fi
+
 exitCode=0
 signals="$(trap -l | sed -E 's/[0-9]+\)//g')"
 if [[ "${EXPERIMENTAL_SPLIT_XML_GENERATION}" == "1" ]]; then